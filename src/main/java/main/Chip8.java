@@ -1,35 +1,105 @@
 package main;
 
 import main.cpu.CPU;
+import main.cpu.Quirks;
+import main.cpu.QuirksDatabase;
 import main.cpu.Stack;
+import main.cpu.TimingModel;
 import main.display.DisplayFrame;
+import main.display.DisplayModel;
+import main.display.RenderMode;
+import main.display.RenderStats;
+import main.keyboard.Keyboard;
 import main.memory.Memory;
+import main.pipeline.Pipeline;
+import main.trace.Tracer;
 
+import javax.swing.SwingUtilities;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Chip8 {
+    // about the last 2 million instructions, over a minute of FIXED timing
+    private static final int TRACE_CAPACITY = 16 * 1024 * 1024;
+
     public static void main(String... args) {
         if (args.length != 0) {
             String gamePath = args[0];
-            Memory memory = new Memory();
-            boolean gameFound = true;
+            byte[] rom;
             try {
-                memory.loadGame(gamePath);
+                rom = Files.readAllBytes(Path.of(gamePath));
             } catch (IOException e) {
-                gameFound = false;
+                rom = null;
             }
-            if (gameFound) {
-                int resolutionMultiplier = 15;
-                if (args.length != 1) {
-                    resolutionMultiplier = Integer.parseInt(args[1]);
+            if (rom != null) {
+                int resolutionMultiplier = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+                RenderMode renderMode = args.length > 2 && args[2].equalsIgnoreCase("active")
+                        ? RenderMode.ACTIVE : RenderMode.PASSIVE;
+                Quirks quirks = selectQuirks(rom, args.length > 3 ? args[3] : null);
+                if (quirks == null) {
+                    System.out.println("No quirks profile with name " + args[3] + " exists");
+                    return;
+                }
+                TimingModel timing = TimingModel.FIXED;
+                if (args.length > 4) {
+                    timing = TimingModel.forName(args[4]);
+                    if (timing == null) {
+                        System.out.println("No timing model with name " + args[4] + " exists");
+                        return;
+                    }
                 }
-                DisplayFrame frame = new DisplayFrame(resolutionMultiplier);
-                CPU cpu = new CPU(new Stack(), memory, frame);
 
-                cpu.run();
+                Memory memory = new Memory(quirks.getMemorySize());
+                memory.loadGame(rom);
+                DisplayModel model = new DisplayModel();
+                Keyboard keyboard = new Keyboard();
+                CPU cpu = new CPU(new Stack(), memory, model, keyboard, quirks);
+                cpu.setTimingModel(timing);
+                if (args.length > 5) {
+                    Tracer tracer = new Tracer(TRACE_CAPACITY);
+                    tracer.setFailureDump(Path.of(args[5]));
+                    cpu.setTracer(tracer);
+                }
+
+                Pipeline pipeline = new Pipeline(cpu);
+                pipeline.setAudioLine(Pipeline.openAudioLine());
+                // the ROM starts running right away, while Swing starts up and builds the window on the EDT
+                pipeline.start();
+                AtomicReference<DisplayFrame> frame = new AtomicReference<>();
+                SwingUtilities.invokeLater(() ->
+                        frame.set(new DisplayFrame(model, keyboard, resolutionMultiplier, renderMode, pipeline)));
+                printStatsOnExit(pipeline, frame);
             }
             else System.out.println("No game with name " + args[0] + " was found");
         }
         else System.out.println("No game path was specified");
     }
+
+    /**
+     * Prints how every stage of the pipeline kept up once the emulator exits, and how frames were presented when
+     * rendering actively
+     */
+    private static void printStatsOnExit(Pipeline pipeline, AtomicReference<DisplayFrame> frame) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.print(pipeline.report());
+            RenderStats renderStats = frame.get() == null ? null : frame.get().getRenderStats();
+            if (renderStats != null) System.out.println("present: " + renderStats);
+        }, "chip8-stats"));
+    }
+
+    /**
+     * @param profileName profile given on the command line, or null to look the ROM up in the quirks database
+     * @return quirks to run the ROM with, or null if the given profile doesn't exist
+     */
+    static Quirks selectQuirks(byte[] rom, String profileName) {
+        if (profileName != null) return Quirks.forName(profileName);
+        try {
+            return QuirksDatabase.loadDefault().lookup(rom, Quirks.LEGACY);
+        } catch (IOException e) {
+            System.out.println("Could not read the quirks database, using the legacy profile");
+            return Quirks.LEGACY;
+        }
+    }
 }
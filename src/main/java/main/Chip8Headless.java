@@ -0,0 +1,56 @@
+package main;
+
+import main.cpu.CPU;
+import main.cpu.Quirks;
+import main.cpu.Stack;
+import main.cpu.TimingModel;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs a ROM for a number of frames without a window, as fast as the host allows, then prints the state the
+ * machine ended in. Nothing from AWT or Swing is loaded, so the first instruction runs as soon as the JVM is up.
+ * Arguments: a ROM path, then optionally the number of frames (600 by default), the quirks profile and the
+ * timing model. RND is seeded with 0, so a run always ends in the same state
+ */
+public class Chip8Headless {
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("No game path was specified");
+            return;
+        }
+        byte[] rom = Files.readAllBytes(Path.of(args[0]));
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        Quirks quirks = Chip8.selectQuirks(rom, args.length > 2 ? args[2] : null);
+        TimingModel timing = args.length > 3 ? TimingModel.forName(args[3]) : TimingModel.FIXED;
+        if (quirks == null || timing == null) {
+            System.out.println("Unknown quirks profile or timing model");
+            return;
+        }
+
+        Memory memory = new Memory(quirks.getMemorySize());
+        memory.loadGame(rom);
+        DisplayModel display = new DisplayModel();
+        CPU cpu = new CPU(new Stack(), memory, display, new Keyboard(), quirks);
+        cpu.setTimingModel(timing);
+        cpu.setRandomSeed(0);
+
+        int frame = 0;
+        while (frame < frames && cpu.runFrame()) frame++;
+        System.out.printf("%d frames, %d instructions, PC %04X%s%n", frame, cpu.getInstructionCount(),
+                (int) cpu.getProgramCounter(), frame < frames ? " (unsupported opcode)" : "");
+        StringBuilder screen = new StringBuilder();
+        for (int y = 0; y < display.getHeight(); y++) {
+            for (int x = 0; x < display.getWidth(); x++) {
+                screen.append(display.getPixel(x, y) != 0 ? '#' : '.');
+            }
+            screen.append('\n');
+        }
+        System.out.print(screen);
+    }
+}
@@ -0,0 +1,101 @@
+package main.analysis;
+
+import main.cpu.QuirksDatabase;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Analysis results keyed by the SHA-1 of the ROM, so every ROM is only analysed once.
+ * The block boundaries of a whole library can be written to an index file, which is what production
+ * loads at startup instead of analysing ROMs again.
+ */
+public class AnalysisCache {
+    private final RomAnalyzer analyzer;
+    private final Map<String, AnalysisResult> results;
+
+    public AnalysisCache() {
+        this.analyzer = new RomAnalyzer();
+        this.results = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return the cached result for the ROM, analysing it first if it's not cached yet
+     */
+    public AnalysisResult analyze(byte[] rom) {
+        return results.computeIfAbsent(QuirksDatabase.hash(rom), hash -> analyzer.analyze(rom));
+    }
+
+    /**
+     * @return the cached result for the hash, or null if no ROM with that hash was analysed
+     */
+    public AnalysisResult get(String romHash) {
+        return results.get(romHash);
+    }
+
+    /**
+     * Analyses every file in the directory in parallel, on all available cores
+     * @return result of every ROM, by path
+     */
+    public Map<Path, AnalysisResult> analyzeLibrary(Path directory) throws IOException {
+        List<Path> roms;
+        try (Stream<Path> files = Files.list(directory)) {
+            roms = files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        return roms.parallelStream().collect(Collectors.toConcurrentMap(path -> path, path -> {
+            try {
+                return analyze(Files.readAllBytes(path));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + path, e);
+            }
+        }));
+    }
+
+    /**
+     * Writes the block boundaries of every cached result, one ROM per line: {@code <sha1> <start> <start> ...}
+     */
+    public void writeIndex(Path index) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(index, StandardCharsets.UTF_8)) {
+            for (AnalysisResult result : results.values()) {
+                writer.write(result.getRomHash());
+                for (int start : result.getGraph().getBlockStarts()) {
+                    writer.write(' ');
+                    writer.write(Integer.toHexString(start));
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * @return block starting addresses of every ROM in an index written by writeIndex(), by ROM hash
+     */
+    public static Map<String, int[]> readIndex(Path index) throws IOException {
+        Map<String, int[]> blockStarts = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split(" ");
+                if (parts[0].isEmpty()) continue;
+                int[] starts = Arrays.stream(parts, 1, parts.length).mapToInt(s -> Integer.parseInt(s, 16)).toArray();
+                blockStarts.put(parts[0], starts);
+            }
+        }
+        return blockStarts;
+    }
+
+    public int size() {
+        return results.size();
+    }
+}
@@ -0,0 +1,73 @@
+package main.analysis;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Everything the static analysis found out about a ROM
+ */
+public class AnalysisResult {
+    private final String romHash;
+    private final ControlFlowGraph graph;
+    private final BitSet code;
+    private final BitSet spriteData;
+    private final List<SelfModifyingWrite> selfModifyingWrites;
+    private final Set<Integer> invalidInstructions;
+
+    public AnalysisResult(String romHash, ControlFlowGraph graph, BitSet code, BitSet spriteData,
+                          List<SelfModifyingWrite> selfModifyingWrites, Set<Integer> invalidInstructions) {
+        this.romHash = romHash;
+        this.graph = graph;
+        this.code = code;
+        this.spriteData = spriteData;
+        this.selfModifyingWrites = Collections.unmodifiableList(selfModifyingWrites);
+        this.invalidInstructions = Collections.unmodifiableSet(invalidInstructions);
+    }
+
+    public String getRomHash() {
+        return romHash;
+    }
+
+    public ControlFlowGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return true if the byte at the address belongs to an instruction reachable from the entry point
+     */
+    public boolean isCode(int address) {
+        return code.get(address);
+    }
+
+    /**
+     * @return true if the byte at the address is read as a sprite by a DRW, with I set by a preceding LD I, addr
+     */
+    public boolean isSpriteData(int address) {
+        return spriteData.get(address);
+    }
+
+    public int getCodeSize() {
+        return code.cardinality();
+    }
+
+    public int getSpriteDataSize() {
+        return spriteData.cardinality();
+    }
+
+    public List<SelfModifyingWrite> getSelfModifyingWrites() {
+        return selfModifyingWrites;
+    }
+
+    public boolean isSelfModifying() {
+        return !selfModifyingWrites.isEmpty();
+    }
+
+    /**
+     * @return addresses reached by control flow that don't hold a valid instruction
+     */
+    public Set<Integer> getInvalidInstructions() {
+        return invalidInstructions;
+    }
+}
@@ -0,0 +1,59 @@
+package main.analysis;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A run of instructions that is always executed from the first to the last one.
+ * Control can only enter at start and only leaves after the last instruction.
+ */
+public class BasicBlock {
+    private final int start;
+    private final int end;
+    private final int instructionCount;
+    private final List<Integer> successors;
+    private final boolean indirect;
+
+    /**
+     * @param start address of the first instruction
+     * @param end address right after the last instruction
+     * @param successors addresses control can go to after the block
+     * @param indirect true if the block ends with a jump whose target is only known at runtime (BNNN)
+     */
+    public BasicBlock(int start, int end, int instructionCount, List<Integer> successors, boolean indirect) {
+        this.start = start;
+        this.end = end;
+        this.instructionCount = instructionCount;
+        this.successors = Collections.unmodifiableList(successors);
+        this.indirect = indirect;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public int getInstructionCount() {
+        return instructionCount;
+    }
+
+    public List<Integer> getSuccessors() {
+        return successors;
+    }
+
+    public boolean isIndirect() {
+        return indirect;
+    }
+
+    public boolean contains(int address) {
+        return address >= start && address < end;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%03X-%03X -> %s%s", start, end, successors, indirect ? " (indirect)" : "");
+    }
+}
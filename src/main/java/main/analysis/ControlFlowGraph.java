@@ -0,0 +1,50 @@
+package main.analysis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Basic blocks of a ROM, ordered by address
+ */
+public class ControlFlowGraph {
+    private final NavigableMap<Integer, BasicBlock> blocks;
+
+    public ControlFlowGraph() {
+        this.blocks = new TreeMap<>();
+    }
+
+    void addBlock(BasicBlock block) {
+        blocks.put(block.getStart(), block);
+    }
+
+    /**
+     * @return the block starting at the address, or null if no block starts there
+     */
+    public BasicBlock getBlock(int start) {
+        return blocks.get(start);
+    }
+
+    /**
+     * @return the block the address belongs to, or null if it's not code
+     */
+    public BasicBlock getBlockContaining(int address) {
+        Map.Entry<Integer, BasicBlock> entry = blocks.floorEntry(address);
+        if (entry == null || !entry.getValue().contains(address)) return null;
+        return entry.getValue();
+    }
+
+    public Collection<BasicBlock> getBlocks() {
+        return Collections.unmodifiableCollection(blocks.values());
+    }
+
+    public int[] getBlockStarts() {
+        return blocks.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public int size() {
+        return blocks.size();
+    }
+}
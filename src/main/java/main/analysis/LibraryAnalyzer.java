@@ -0,0 +1,32 @@
+package main.analysis;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Command line entry point analysing a directory of ROMs: prints a summary of every ROM and writes the block index
+ */
+public class LibraryAnalyzer {
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: LibraryAnalyzer <rom directory> <index file>");
+            return;
+        }
+        AnalysisCache cache = new AnalysisCache();
+        long start = System.nanoTime();
+        Map<Path, AnalysisResult> results = cache.analyzeLibrary(Path.of(args[0]));
+        long elapsed = System.nanoTime() - start;
+
+        results.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> {
+                    AnalysisResult r = e.getValue();
+                    System.out.printf("%s %s blocks=%d code=%d sprites=%d selfModifying=%b invalid=%d%n",
+                            r.getRomHash(), e.getKey().getFileName(), r.getGraph().size(), r.getCodeSize(),
+                            r.getSpriteDataSize(), r.isSelfModifying(), r.getInvalidInstructions().size());
+                });
+        cache.writeIndex(Path.of(args[1]));
+        System.out.printf("Analysed %d ROMs in %.1f ms%n", results.size(), elapsed / 1e6);
+    }
+}
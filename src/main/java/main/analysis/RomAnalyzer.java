@@ -0,0 +1,212 @@
+package main.analysis;
+
+import main.cpu.CPU;
+import main.cpu.Opcode;
+import main.cpu.QuirksDatabase;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Disassembles a ROM without running it. Starting from 0x200 it follows jumps, calls and skips to find every reachable
+ * instruction, splits them into basic blocks, and tracks the value of I inside each block to tell sprite data apart
+ * from code and to spot writes into code.
+ * Decoding is done by CPU.decodeInstruction, so the analysis always agrees with the interpreter.
+ */
+public class RomAnalyzer {
+    private static final int ENTRY_POINT = 0x200;
+    private static final int UNKNOWN = -1;
+
+    public AnalysisResult analyze(byte[] rom) {
+        int memorySize = rom.length > Memory.CHIP8_SIZE - ENTRY_POINT ? Memory.XO_CHIP_SIZE : Memory.CHIP8_SIZE;
+        Memory memory = new Memory(memorySize);
+        memory.loadGame(rom);
+        CPU decoder = new CPU(new Stack(), memory, new DisplayModel(), new Keyboard());
+
+        NavigableMap<Integer, Opcode> instructions = new TreeMap<>();
+        Set<Integer> leaders = new TreeSet<>();
+        Set<Integer> invalid = new TreeSet<>();
+        BitSet code = new BitSet(memorySize);
+        disassemble(memory, decoder, instructions, leaders, invalid, code);
+
+        ControlFlowGraph graph = buildGraph(memory, decoder, instructions, leaders);
+        BitSet spriteData = new BitSet(memorySize);
+        List<SelfModifyingWrite> writes = new ArrayList<>();
+        trackMemoryAccesses(memory, graph, instructions, code, spriteData, writes);
+
+        return new AnalysisResult(QuirksDatabase.hash(rom), graph, code, spriteData, writes, invalid);
+    }
+
+    private void disassemble(Memory memory, CPU decoder, Map<Integer, Opcode> instructions, Set<Integer> leaders,
+                             Set<Integer> invalid, BitSet code) {
+        Deque<Integer> worklist = new ArrayDeque<>();
+        worklist.push(ENTRY_POINT);
+        leaders.add(ENTRY_POINT);
+        while (!worklist.isEmpty()) {
+            int pc = worklist.pop();
+            boolean terminated = false;
+            while (!terminated) {
+                if (pc + 1 >= memory.size()) break;
+                if (instructions.containsKey(pc)) {
+                    // falling into code that was already reached some other way: it has two predecessors
+                    leaders.add(pc);
+                    break;
+                }
+                Opcode opcode = decoder.decodeInstruction(memory.readInstruction(pc));
+                if (opcode.getType() == Opcode.OpcodeType.UNSUPPORTED) {
+                    invalid.add(pc);
+                    break;
+                }
+                instructions.put(pc, opcode);
+                int next = pc + size(opcode);
+                code.set(pc, next);
+                List<Integer> targets = successors(memory, decoder, pc, opcode);
+                if (targets == null) {
+                    pc = next;
+                    continue;
+                }
+                for (int target : targets) {
+                    leaders.add(target);
+                    worklist.push(target);
+                }
+                terminated = true;
+            }
+        }
+    }
+
+    /**
+     * @return where control can go after the instruction, or null if it simply continues with the next one
+     */
+    private List<Integer> successors(Memory memory, CPU decoder, int pc, Opcode opcode) {
+        char instruction = opcode.getInstruction();
+        int next = pc + size(opcode);
+        List<Integer> targets = new ArrayList<>(2);
+        switch (opcode.getType()) {
+            case JP_ADDR:
+                targets.add(instruction & 0x0FFF);
+                return targets;
+            case CALL_ADDR:
+                targets.add(instruction & 0x0FFF);
+                targets.add(next);
+                return targets;
+            case RET:
+            case EXIT:
+            case JP_V0_ADDR:
+                return targets;
+            case SE_VX_BYTE:
+            case SNE_VX_BYTE:
+            case SE_VX_VY:
+            case SNE_VX_VY:
+            case SKP_VX:
+            case SKNP_VX:
+                targets.add(next);
+                if (next + 1 < memory.size())
+                    targets.add(next + size(decoder.decodeInstruction(memory.readInstruction(next))));
+                return targets;
+            default:
+                return null;
+        }
+    }
+
+    private static int size(Opcode opcode) {
+        return opcode.getType() == Opcode.OpcodeType.LD_I_LONG ? 4 : 2;
+    }
+
+    private ControlFlowGraph buildGraph(Memory memory, CPU decoder, NavigableMap<Integer, Opcode> instructions,
+                                        Set<Integer> leaders) {
+        ControlFlowGraph graph = new ControlFlowGraph();
+        Integer start = null;
+        int count = 0;
+        for (Map.Entry<Integer, Opcode> entry : instructions.entrySet()) {
+            int pc = entry.getKey();
+            Opcode opcode = entry.getValue();
+            if (start == null) {
+                start = pc;
+                count = 0;
+            }
+            count++;
+            int next = pc + size(opcode);
+            List<Integer> targets = successors(memory, decoder, pc, opcode);
+            boolean endsHere = targets != null || leaders.contains(next) || !instructions.containsKey(next);
+            if (!endsHere) continue;
+            if (targets == null) {
+                targets = new ArrayList<>();
+                if (instructions.containsKey(next)) targets.add(next);
+            }
+            boolean indirect = opcode.getType() == Opcode.OpcodeType.JP_V0_ADDR;
+            graph.addBlock(new BasicBlock(start, next, count, targets, indirect));
+            start = null;
+        }
+        return graph;
+    }
+
+    /**
+     * Follows the value of I through every block, to find which bytes are drawn as sprites and which writes hit code.
+     * I is only known after LD I, addr (or the XO-CHIP long load) and becomes unknown at the start of every block
+     */
+    private void trackMemoryAccesses(Memory memory, ControlFlowGraph graph, NavigableMap<Integer, Opcode> instructions,
+                                     BitSet code, BitSet spriteData, List<SelfModifyingWrite> writes) {
+        for (BasicBlock block : graph.getBlocks()) {
+            int i = UNKNOWN;
+            for (Map.Entry<Integer, Opcode> entry : instructions.subMap(block.getStart(), block.getEnd()).entrySet()) {
+                int pc = entry.getKey();
+                char instruction = entry.getValue().getInstruction();
+                int x = (instruction & 0x0F00) >>> 8;
+                int y = (instruction & 0x00F0) >>> 4;
+                switch (entry.getValue().getType()) {
+                    case LD_I_ADDR:
+                        i = instruction & 0x0FFF;
+                        break;
+                    case LD_I_LONG:
+                        i = memory.readInstruction(pc + 2);
+                        break;
+                    case DRW_VX_VY_NIBBLE:
+                        if (i != UNKNOWN) {
+                            int n = instruction & 0x000F;
+                            spriteData.set(i, i + (n == 0 ? 32 : n));
+                        }
+                        break;
+                    case LD_VX_I:
+                        // depending on the quirks, I may have moved past the registers read
+                        i = UNKNOWN;
+                        break;
+                    case LD_I_VX:
+                        recordWrite(pc, i, i + x + 1, code, writes);
+                        i = UNKNOWN;
+                        break;
+                    case LD_B_VX:
+                        recordWrite(pc, i, i + 3, code, writes);
+                        break;
+                    case SAVE_VX_VY:
+                        recordWrite(pc, i, i + Math.abs(x - y) + 1, code, writes);
+                        break;
+                    case ADD_I_VX:
+                    case LD_F_VX:
+                    case LD_HF_VX:
+                        i = UNKNOWN;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    private void recordWrite(int pc, int start, int end, BitSet code, List<SelfModifyingWrite> writes) {
+        if (start == UNKNOWN) return;
+        int overlap = code.nextSetBit(start);
+        if (overlap != -1 && overlap < end) writes.add(new SelfModifyingWrite(pc, start, end));
+    }
+}
@@ -0,0 +1,38 @@
+package main.analysis;
+
+/**
+ * A memory write (FX33, FX55, 5XY2) whose destination, known statically, overlaps code
+ */
+public class SelfModifyingWrite {
+    private final int address;
+    private final int start;
+    private final int end;
+
+    /**
+     * @param address address of the writing instruction
+     * @param start first byte written
+     * @param end byte right after the last one written
+     */
+    public SelfModifyingWrite(int address, int start, int end) {
+        this.address = address;
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%03X writes %03X-%03X", address, start, end);
+    }
+}
@@ -0,0 +1,40 @@
+package main.audio;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free triple buffer handing audio frames from the CPU thread (single writer) to the audio thread
+ * (single reader), the same way FrameBuffer hands display frames to the renderer: the writer never waits
+ */
+public class AudioBuffer {
+    private final AtomicReference<AudioFrame> ready;
+    private AudioFrame back;
+    private AudioFrame front;
+    private long sequence;
+
+    public AudioBuffer() {
+        ready = new AtomicReference<>(new AudioFrame());
+        back = new AudioFrame();
+        front = new AudioFrame();
+    }
+
+    /**
+     * Must only be called from the thread running the CPU
+     * @param playing true while the sound timer is running
+     * @param pattern the 16 bytes of the XO-CHIP audio pattern
+     * @param pitch XO-CHIP pitch register
+     */
+    public void publish(boolean playing, char[] pattern, char pitch) {
+        back.copyFrom(playing, pattern, pitch, ++sequence);
+        back = ready.getAndSet(back);
+    }
+
+    /**
+     * Must only be called from the audio thread.
+     * @return the latest published frame. It stays valid until the next call to acquire()
+     */
+    public AudioFrame acquire() {
+        if (ready.get().getSequence() > front.getSequence()) front = ready.getAndSet(front);
+        return front;
+    }
+}
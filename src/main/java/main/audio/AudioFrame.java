@@ -0,0 +1,62 @@
+package main.audio;
+
+/**
+ * What the sound hardware is asked to play during a frame: whether the buzzer is on, and the XO-CHIP pattern and pitch.
+ * Like display frames, audio frames are filled by the CPU thread and handed over to the audio thread through an
+ * AudioBuffer, so the audio thread never sees one being written
+ */
+public class AudioFrame {
+    public static final int PATTERN_LENGTH = 16;
+
+    private final byte[] pattern;
+    private boolean playing;
+    private int pitch;
+    private volatile long sequence;
+
+    public AudioFrame() {
+        this.pattern = new byte[PATTERN_LENGTH];
+        this.pitch = 64;
+    }
+
+    /**
+     * Only ever called by the writer side of an AudioBuffer
+     */
+    void copyFrom(boolean playing, char[] pattern, char pitch, long sequence) {
+        this.playing = playing;
+        for (int i = 0; i < PATTERN_LENGTH; i++) this.pattern[i] = (byte) pattern[i];
+        this.pitch = pitch & 0xFF;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return true while the sound timer is running
+     */
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * @return bit of the 128-bit pattern, the most significant bit of the first byte coming first
+     */
+    public boolean getBit(int bit) {
+        return (pattern[bit >>> 3] & (0x80 >>> (bit & 7))) != 0;
+    }
+
+    /**
+     * @return true if no pattern was ever loaded, i.e. it's all zeros
+     */
+    public boolean isPatternEmpty() {
+        for (byte b : pattern) {
+            if (b != 0) return false;
+        }
+        return true;
+    }
+
+    public int getPitch() {
+        return pitch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+}
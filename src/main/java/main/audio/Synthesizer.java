@@ -0,0 +1,40 @@
+package main.audio;
+
+/**
+ * Turns audio frames into 8-bit signed mono samples. The 128 bits of the pattern are played in a loop, at
+ * 4000 * 2^((pitch - 64) / 48) bits per second as on XO-CHIP. ROMs that never load a pattern, i.e. all CHIP-8 and
+ * SUPER-CHIP ones, get a 500Hz square wave instead
+ */
+public class Synthesizer {
+    public static final int SAMPLE_RATE = 48000;
+    public static final int SAMPLES_PER_FRAME = SAMPLE_RATE / 60;
+
+    private static final byte AMPLITUDE = 24;
+    private static final int PATTERN_BITS = AudioFrame.PATTERN_LENGTH * 8;
+    // bits of the square wave played without a pattern: 4 on, 4 off
+    private static final int SQUARE_PERIOD = 8;
+
+    // position in the pattern, in bits with 32 fractional bits
+    private long phase;
+
+    /**
+     * @return number of samples written, which is always the number asked for
+     */
+    public int synthesize(AudioFrame frame, byte[] samples, int offset, int count) {
+        if (!frame.isPlaying()) {
+            for (int i = offset; i < offset + count; i++) samples[i] = 0;
+            phase = 0;
+            return count;
+        }
+        boolean square = frame.isPatternEmpty();
+        // rounded up, so that a bit lasting a whole number of samples doesn't spill into the next sample
+        long step = (long) Math.ceil(4000 * Math.pow(2, (frame.getPitch() - 64) / 48.0) * (1L << 32) / SAMPLE_RATE);
+        for (int i = offset; i < offset + count; i++) {
+            int bit = (int) (phase >>> 32);
+            boolean high = square ? (bit % SQUARE_PERIOD) < SQUARE_PERIOD / 2 : frame.getBit(bit);
+            samples[i] = high ? AMPLITUDE : -AMPLITUDE;
+            phase = (phase + step) & ((long) PATTERN_BITS << 32) - 1;
+        }
+        return count;
+    }
+}
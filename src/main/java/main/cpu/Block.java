@@ -0,0 +1,88 @@
+package main.cpu;
+
+/**
+ * A run of decoded instructions the CPU executes back to back, without going through decoding, idle loop checks
+ * and the frame budget for each of them. Only the last instruction can change the flow of execution, wait, halt,
+ * write memory or draw, so nothing in the middle of a block can make the CPU stop.
+ * Blocks link to the blocks execution went on with after them, so following a jump, a skip or falling through
+ * doesn't look anything up once it was seen.
+ * A skip can be followed by the JP it skips over, which makes the block end with a conditional branch. Common
+ * sequences are executed as superinstructions: entries hold one handler per instruction or sequence, and are what
+ * runs unless the frame ends within the block, in which case its instructions run one at a time
+ */
+final class Block {
+    final int start;
+    final int length;
+    final Instruction[] handlers;
+    final char[] instructions;
+    final Opcode.OpcodeType[] types;
+    final Instruction[] entries;
+    final char[] entryInstructions;
+    // the last instruction is a CALL or a RET, which link through the stack
+    final boolean calls;
+    final boolean returns;
+    final boolean draws;
+    // the block ends with a skip and the JP it skips
+    final boolean branches;
+    // flush of the block cache the block belongs to: it's stale once the cache was flushed again
+    final int epoch;
+
+    // successors seen so far, usually the fall-through or jump target and the skip target
+    Block first;
+    Block second;
+    // for a block ending with a CALL, the block the subroutine returns to
+    Block returnBlock;
+    // ring block of the tracer the instructions were last stored in, see Tracer.defineBlock()
+    long tracedIn;
+
+    // cycles of the block, and of all of its instructions but the last, with the costs they were computed for
+    private int[] costs;
+    long cost;
+    long costBeforeLast;
+
+    Block(int start, Instruction[] handlers, char[] instructions, Opcode.OpcodeType[] types, int length,
+          Instruction[] entries, char[] entryInstructions, int epoch) {
+        this.start = start;
+        this.length = length;
+        this.handlers = handlers;
+        this.instructions = instructions;
+        this.types = types;
+        this.entries = entries;
+        this.entryInstructions = entryInstructions;
+        this.epoch = epoch;
+        Opcode.OpcodeType last = length == 0 ? null : types[length - 1];
+        this.calls = last == Opcode.OpcodeType.CALL_ADDR;
+        this.returns = last == Opcode.OpcodeType.RET;
+        this.draws = last == Opcode.OpcodeType.DRW_VX_VY_NIBBLE;
+        this.branches = last == Opcode.OpcodeType.JP_ADDR && length > 1 && BlockCache.skips(types[length - 2]);
+    }
+
+    /**
+     * Works out the cycles of the block for a timing model's costs, unless they already were
+     */
+    void price(int[] costs) {
+        if (this.costs == costs) return;
+        long total = 0;
+        for (int i = 0; i < length - 1; i++) total += costs[types[i].ordinal()];
+        costBeforeLast = total;
+        cost = total + costs[types[length - 1].ordinal()];
+        this.costs = costs;
+    }
+
+    /**
+     * @return the linked successor starting at the address, null if there's none
+     */
+    Block successor(int address) {
+        if (first != null && first.start == address) return first;
+        if (second != null && second.start == address) return second;
+        return null;
+    }
+
+    /**
+     * Links a successor, replacing the second one when both are taken
+     */
+    void link(Block successor) {
+        if (first == null) first = successor;
+        else second = successor;
+    }
+}
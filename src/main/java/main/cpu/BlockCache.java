@@ -0,0 +1,234 @@
+package main.cpu;
+
+import main.memory.Memory;
+import main.memory.WriteWatcher;
+
+import java.util.Arrays;
+
+/**
+ * Decodes code into blocks the first time execution reaches it, and keeps them by address.
+ * Blocks end after any instruction that can change the flow of execution (jumps, calls, returns, skips, key waits,
+ * EXIT, the 4-byte long load), write memory, or draw, and before any instruction that doesn't decode or starts an
+ * idle loop, so the CPU checks for idle loops on block boundaries only. A skip followed by a JP doesn't end the block,
+ * the JP does.
+ * Decoding also fuses LD I, addr and DRW, a skip and JP, and ADD Vx, byte or LD Vx, DT followed by SE or SNE Vx, byte
+ * and JP into superinstructions.
+ * Writing memory holding decoded code flushes the cache, since the ROM is modifying itself: flushing only moves
+ * to a new epoch, and blocks and links of an older one are ignored from then on.
+ * With a decode table, instructions whose bytes weren't written since the table was made are not decoded again
+ */
+class BlockCache {
+    // longest block, so that decoding far ahead of where execution goes doesn't waste time
+    private static final int MAX_LENGTH = 32;
+    private static final boolean[] ENDS_BLOCK = new boolean[Opcode.OpcodeType.values().length];
+
+    static {
+        for (Opcode.OpcodeType type : new Opcode.OpcodeType[]{
+                Opcode.OpcodeType.RET, Opcode.OpcodeType.JP_ADDR, Opcode.OpcodeType.CALL_ADDR,
+                Opcode.OpcodeType.SE_VX_BYTE, Opcode.OpcodeType.SNE_VX_BYTE, Opcode.OpcodeType.SE_VX_VY,
+                Opcode.OpcodeType.SNE_VX_VY, Opcode.OpcodeType.JP_V0_ADDR, Opcode.OpcodeType.SKP_VX,
+                Opcode.OpcodeType.SKNP_VX, Opcode.OpcodeType.LD_VX_K, Opcode.OpcodeType.EXIT,
+                Opcode.OpcodeType.LD_I_LONG, Opcode.OpcodeType.DRW_VX_VY_NIBBLE, Opcode.OpcodeType.LD_B_VX,
+                Opcode.OpcodeType.LD_I_VX, Opcode.OpcodeType.SAVE_VX_VY}) {
+            ENDS_BLOCK[type.ordinal()] = true;
+        }
+    }
+
+    private static final boolean[] SKIPS = new boolean[Opcode.OpcodeType.values().length];
+
+    static {
+        for (Opcode.OpcodeType type : new Opcode.OpcodeType[]{
+                Opcode.OpcodeType.SE_VX_BYTE, Opcode.OpcodeType.SNE_VX_BYTE, Opcode.OpcodeType.SE_VX_VY,
+                Opcode.OpcodeType.SNE_VX_VY, Opcode.OpcodeType.SKP_VX, Opcode.OpcodeType.SKNP_VX}) {
+            SKIPS[type.ordinal()] = true;
+        }
+    }
+
+    private final CPU cpu;
+    private final Memory memory;
+    private final Instruction[] handlers;
+    private final IdleLoopDetector idleLoops;
+    // null if there's none, and then written is too
+    private final DecodeTable table;
+    private final boolean[] written;
+    private final int mask;
+    private final Block[] blocks;
+    // epoch in which every byte was last decoded into a block
+    private final int[] decoded;
+    private final WriteWatcher watcher;
+    private int epoch;
+
+    /**
+     * @param table decoded from memory as it is now, null to decode every instruction
+     */
+    BlockCache(CPU cpu, Memory memory, Instruction[] handlers, IdleLoopDetector idleLoops, DecodeTable table) {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.handlers = handlers;
+        this.idleLoops = idleLoops;
+        this.table = table;
+        this.written = table == null ? null : new boolean[memory.size()];
+        this.mask = memory.size() - 1;
+        this.blocks = new Block[memory.size()];
+        this.decoded = new int[memory.size()];
+        this.epoch = 1;
+        this.watcher = this::written;
+        memory.addWriteWatcher(watcher);
+    }
+
+    /**
+     * Stops watching memory, once the cache is replaced
+     */
+    void detach() {
+        memory.removeWriteWatcher(watcher);
+    }
+
+    /**
+     * @return the block starting at the address, decoded now if it wasn't yet. It's empty when the instruction
+     * at the address isn't supported
+     */
+    Block get(int address) {
+        address &= mask;
+        Block block = blocks[address];
+        if (block != null && block.epoch == epoch) return block;
+        block = decode(address);
+        blocks[address] = block;
+        return block;
+    }
+
+    /**
+     * @param previous block executed last, null if there's none
+     * @param returnLink what the stack had linked to the address a RET of the previous block returned to
+     * @return the block to execute at the program counter: the return link or a successor of the previous block
+     * if one of them starts there, or else the block there, linked to the previous block from now on
+     */
+    Block next(Block previous, Object returnLink, int pc) {
+        int address = pc & mask;
+        if (returnLink instanceof Block) {
+            Block predicted = (Block) returnLink;
+            if (predicted.start == address && predicted.epoch == epoch) return predicted;
+        }
+        // the links of a block decoded before the last flush are stale too
+        if (previous == null || previous.epoch != epoch) return get(address);
+        Block linked = previous.successor(address);
+        if (linked != null) return linked;
+        Block block = get(address);
+        previous.link(block);
+        return block;
+    }
+
+    /**
+     * @return the block a subroutine called at the end of a block returns to
+     */
+    Block returnBlock(Block caller) {
+        Block block = caller.returnBlock;
+        if (block == null || block.epoch != epoch) {
+            block = get(caller.start + 2 * caller.length);
+            caller.returnBlock = block;
+        }
+        return block;
+    }
+
+    private Block decode(int start) {
+        Instruction[] blockHandlers = new Instruction[MAX_LENGTH];
+        char[] instructions = new char[MAX_LENGTH];
+        Opcode.OpcodeType[] types = new Opcode.OpcodeType[MAX_LENGTH];
+        int length = 0;
+        int address = start;
+        while (length < MAX_LENGTH && address + 1 <= mask) {
+            if (length > 0 && idleLoops.kindAt(address) != IdleLoopDetector.NONE) break;
+            char instruction = memory.readInstruction(address);
+            Opcode.OpcodeType type = table != null && !written[address] && !written[address + 1]
+                    ? table.typeAt(address)
+                    : CPU.decode(instruction).getType();
+            if (type == Opcode.OpcodeType.UNSUPPORTED) break;
+            blockHandlers[length] = handlers[type.ordinal()];
+            instructions[length] = instruction;
+            types[length] = type;
+            decoded[address] = epoch;
+            decoded[address + 1] = epoch;
+            length++;
+            address += 2;
+            if (ENDS_BLOCK[type.ordinal()] && !(SKIPS[type.ordinal()] && jumpFollows(address))) break;
+        }
+        types = Arrays.copyOf(types, length);
+        instructions = Arrays.copyOf(instructions, length);
+        blockHandlers = Arrays.copyOf(blockHandlers, length);
+
+        Instruction[] entries = new Instruction[length];
+        char[] entryInstructions = new char[length];
+        int count = 0;
+        for (int i = 0; i < length; count++) {
+            Instruction fused = fuse(types, instructions, i);
+            if (fused != null) {
+                entries[count] = fused;
+                i += fusedLength(types, instructions, i);
+            } else {
+                entries[count] = blockHandlers[i];
+                entryInstructions[count] = instructions[i];
+                i++;
+            }
+        }
+        return new Block(start, blockHandlers, instructions, types, length, Arrays.copyOf(entries, count),
+                Arrays.copyOf(entryInstructions, count), epoch);
+    }
+
+    static boolean skips(Opcode.OpcodeType type) {
+        return SKIPS[type.ordinal()];
+    }
+
+    /**
+     * @return true if the instruction at the address is a JP the skip before it can be fused with: it has to be
+     * executed by the block, so it can't start an idle loop, and it can't jump to where skipping it goes
+     */
+    private boolean jumpFollows(int address) {
+        if (address + 1 > mask || idleLoops.kindAt(address) != IdleLoopDetector.NONE) return false;
+        char instruction = memory.readInstruction(address);
+        return (instruction & 0xF000) == 0x1000 && (instruction & 0x0FFF) != ((address + 2) & mask);
+    }
+
+    /**
+     * @return the superinstruction for the instructions starting at index i, null if they don't make one
+     */
+    private Instruction fuse(Opcode.OpcodeType[] types, char[] instructions, int i) {
+        int length = fusedLength(types, instructions, i);
+        if (length == 0) return null;
+        if (types[i] == Opcode.OpcodeType.LD_I_ADDR) return cpu.drawAt(instructions[i], instructions[i + 1]);
+        if (length == 2) return cpu.branch(types[i], instructions[i], instructions[i + 1]);
+        boolean equal = types[i + 1] == Opcode.OpcodeType.SE_VX_BYTE;
+        if (types[i] == Opcode.OpcodeType.ADD_VX_BYTE)
+            return cpu.countedBranch(instructions[i], equal, instructions[i + 1], instructions[i + 2]);
+        return cpu.timerBranch(instructions[i], equal, instructions[i + 1], instructions[i + 2]);
+    }
+
+    /**
+     * @return how many instructions starting at index i make a superinstruction, 0 if they don't
+     */
+    private static int fusedLength(Opcode.OpcodeType[] types, char[] instructions, int i) {
+        int left = types.length - i;
+        Opcode.OpcodeType type = types[i];
+        if (left >= 2 && type == Opcode.OpcodeType.LD_I_ADDR && types[i + 1] == Opcode.OpcodeType.DRW_VX_VY_NIBBLE)
+            return 2;
+        // a JP following a skip is always the last instruction of its block
+        if (left == 2 && SKIPS[type.ordinal()]) return 2;
+        if (left == 3 && (type == Opcode.OpcodeType.ADD_VX_BYTE || type == Opcode.OpcodeType.LD_VX_DT)
+                && (types[i + 1] == Opcode.OpcodeType.SE_VX_BYTE || types[i + 1] == Opcode.OpcodeType.SNE_VX_BYTE)
+                && types[i + 2] == Opcode.OpcodeType.JP_ADDR
+                && (instructions[i] & 0x0F00) == (instructions[i + 1] & 0x0F00))
+            return 3;
+        return 0;
+    }
+
+    private void written(int address, int length) {
+        if (written != null) {
+            for (int a = address; a < address + length; a++) written[a & mask] = true;
+        }
+        // the byte before the first one written could be the first half of an instruction
+        for (int a = address - 1; a < address + length; a++) {
+            if (decoded[a & mask] == epoch) {
+                epoch++;
+                return;
+            }
+        }
+    }
+}
@@ -1,16 +1,29 @@
 package main.cpu;
 
-import main.display.Coordinate;
 import main.display.DisplayFrame;
+import main.display.DisplayModel;
+import main.display.SpriteEngine;
+import main.keyboard.Keyboard;
+import main.memory.MachineSlab;
 import main.memory.Memory;
+import main.trace.Tracer;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Class with the responsibility of modifying the state of the application.
  * This is accomplished through methods that fetch, decode and execute opcodes.
  */
 public class CPU {
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final byte RUNNING = 0;
+    private static final byte HALTED = 1;
+    private static final byte BROKEN = 2;
+    private static final byte FAULTED = 3;
+    private static final int[] UNIT_COSTS = TimingModel.fixed(1).getCosts();
+
     private final Stack stack;
     private final char[] registers;
 
@@ -18,19 +31,138 @@ public class CPU {
     private char delayTimer;
     private char soundTimer;
     private char programCounter;
+    // RUNNING, HALTED by EXIT, BROKEN by a debugger in the middle of a frame, or FAULTED by a stack overflow
+    private byte state;
+    private StackFaultException stackFault;
+    private long instructionCount;
+    private long cycleCount;
+    // cycles of the current frame not spent yet. Negative when the last instruction of the previous frame overran it
+    private long cyclesLeft;
+    private TimingModel timing;
+
+    // SUPER-CHIP RPL user flags, saved and restored by FX75 / FX85
+    private final char[] flags;
+    // XO-CHIP audio state, kept so the sound implementation can use it
+    private final char[] audioPattern;
+    private char pitch;
 
     private final Memory memory;
-    private final DisplayFrame display;
+    private final DisplayModel display;
+    private final Keyboard keyboard;
+
+    private final Quirks quirks;
+    private final SpriteEngine sprites;
+    // handler of every opcode type, indexed by ordinal. Quirks are resolved once, when the table is built
+    private final Instruction[] handlers;
+    // table instructions are executed with: the handlers, or a debugger's wrapped copy of them
+    private Instruction[] installed;
+    private final IdleLoopDetector idleLoops;
+    private final Random random;
+    private Tracer tracer;
+    // decoded blocks, made the first time blocks run
+    private BlockCache blockCache;
+    private boolean blocksEnabled = true;
+    // scratch buffers of the instructions moving blocks of memory, so that they don't allocate
+    private final byte[] spriteBuffer;
+    private final char[] bcdBuffer;
 
     public CPU (Stack stack, Memory memory, DisplayFrame display) {
+        this(stack, memory, display.getModel(), display.getKeyboard());
+    }
+
+    public CPU (Stack stack, Memory memory, DisplayModel display, Keyboard keyboard) {
+        this(stack, memory, display, keyboard, Quirks.LEGACY);
+    }
+
+    /**
+     * Creates a CPU that doesn't depend on Swing. The display is only drawn on from the thread running the CPU,
+     * and frames reach the renderer (if any) through the model's FrameBuffer
+     * @param quirks behaviour of the CHIP-8 variant the ROM was written for
+     */
+    public CPU (Stack stack, Memory memory, DisplayModel display, Keyboard keyboard, Quirks quirks) {
         this.stack = stack;
         this.memory = memory;
         this.display = display;
+        this.keyboard = keyboard;
         registers = new char[16];
         iRegister = 0;
         delayTimer = 0;
         soundTimer = 0;
         programCounter = 0x200;
+        state = RUNNING;
+        flags = new char[16];
+        audioPattern = new char[16];
+        pitch = 64;
+        this.quirks = quirks;
+        sprites = SpriteEngine.of(quirks.clipSpritesHorizontally(), quirks.clipSpritesVertically(),
+                quirks.dropSpritesBelowScreen());
+        handlers = compileHandlers(quirks);
+        installed = handlers;
+        idleLoops = new IdleLoopDetector(memory);
+        timing = TimingModel.FIXED;
+        random = new Random();
+        spriteBuffer = new byte[16 * 2 * DisplayModel.PLANES];
+        bcdBuffer = new char[3];
+    }
+
+    /**
+     * Builds the handler table for a quirks profile. This is the only place where quirks are looked at:
+     * variants get their own handler, so executing an instruction never checks the profile
+     */
+    private Instruction[] compileHandlers(Quirks quirks) {
+        Instruction[] table = new Instruction[Opcode.OpcodeType.values().length];
+        table[Opcode.OpcodeType.CLS.ordinal()] = i -> display.clear();
+        table[Opcode.OpcodeType.RET.ordinal()] = i -> returnAddress();
+        table[Opcode.OpcodeType.JP_ADDR.ordinal()] = this::jumpAddress;
+        table[Opcode.OpcodeType.CALL_ADDR.ordinal()] = this::callAddress;
+        table[Opcode.OpcodeType.SE_VX_BYTE.ordinal()] = this::skipIfEqualVxByte;
+        table[Opcode.OpcodeType.SNE_VX_BYTE.ordinal()] = this::skipIfNotEqualVxByte;
+        table[Opcode.OpcodeType.SE_VX_VY.ordinal()] = this::skipIfEqualVxVy;
+        table[Opcode.OpcodeType.LD_VX_BYTE.ordinal()] = this::ldVxByte;
+        table[Opcode.OpcodeType.ADD_VX_BYTE.ordinal()] = this::addVxByte;
+        table[Opcode.OpcodeType.LD_VX_VY.ordinal()] = this::ldVxVy;
+        table[Opcode.OpcodeType.OR_VX_VY.ordinal()] = quirks.logicResetsVf() ? this::orVxVyResetVf : this::orVxVy;
+        table[Opcode.OpcodeType.AND_VX_VY.ordinal()] = quirks.logicResetsVf() ? this::andVxVyResetVf : this::andVxVy;
+        table[Opcode.OpcodeType.XOR_VX_VY.ordinal()] = quirks.logicResetsVf() ? this::xorVxVyResetVf : this::xorVxVy;
+        table[Opcode.OpcodeType.ADD_VX_VY.ordinal()] = this::addVxVy;
+        table[Opcode.OpcodeType.SUB_VX_VY.ordinal()] = this::subVxVy;
+        table[Opcode.OpcodeType.SHR_VX_VY.ordinal()] = quirks.shiftUsesVy() ? this::shrVyVx : this::shrVxVy;
+        table[Opcode.OpcodeType.SUBN_VX_VY.ordinal()] = this::subnVxVy;
+        table[Opcode.OpcodeType.SHL_VX_VY.ordinal()] = quirks.shiftUsesVy() ? this::shlVyVx : this::shlVxVy;
+        table[Opcode.OpcodeType.SNE_VX_VY.ordinal()] = this::sneVxVy;
+        table[Opcode.OpcodeType.LD_I_ADDR.ordinal()] = this::ldIAddr;
+        table[Opcode.OpcodeType.JP_V0_ADDR.ordinal()] = quirks.jumpUsesVx() ? this::jpVxAddr : this::jpV0Addr;
+        table[Opcode.OpcodeType.RND_VX_BYTE.ordinal()] = this::rndVxByte;
+        table[Opcode.OpcodeType.DRW_VX_VY_NIBBLE.ordinal()] = this::drawVxVyNibble;
+        table[Opcode.OpcodeType.SKP_VX.ordinal()] = this::skpVx;
+        table[Opcode.OpcodeType.SKNP_VX.ordinal()] = this::sknpVx;
+        table[Opcode.OpcodeType.LD_VX_DT.ordinal()] = this::ldVxDt;
+        table[Opcode.OpcodeType.LD_VX_K.ordinal()] = this::ldVxK;
+        table[Opcode.OpcodeType.LD_DT_VX.ordinal()] = this::ldDtVx;
+        table[Opcode.OpcodeType.LD_ST_VX.ordinal()] = this::ldStVx;
+        table[Opcode.OpcodeType.ADD_I_VX.ordinal()] = this::addIVx;
+        table[Opcode.OpcodeType.LD_F_VX.ordinal()] = this::ldFVx;
+        table[Opcode.OpcodeType.LD_B_VX.ordinal()] = this::ldBVx;
+        table[Opcode.OpcodeType.LD_I_VX.ordinal()] = quirks.loadStoreIncrementsI() ? this::ldIVxIncrement : this::ldIVx;
+        table[Opcode.OpcodeType.LD_VX_I.ordinal()] = quirks.loadStoreIncrementsI() ? this::ldVxIIncrement : this::ldVxI;
+        table[Opcode.OpcodeType.SCD_NIBBLE.ordinal()] = i -> display.scrollDown(i & 0x000F);
+        table[Opcode.OpcodeType.SCU_NIBBLE.ordinal()] = i -> display.scrollUp(i & 0x000F);
+        table[Opcode.OpcodeType.SCR.ordinal()] = i -> display.scrollRight(4);
+        table[Opcode.OpcodeType.SCL.ordinal()] = i -> display.scrollLeft(4);
+        table[Opcode.OpcodeType.EXIT.ordinal()] = i -> state = HALTED;
+        table[Opcode.OpcodeType.LOW.ordinal()] = i -> display.setHighResolution(false);
+        table[Opcode.OpcodeType.HIGH.ordinal()] = i -> display.setHighResolution(true);
+        table[Opcode.OpcodeType.LD_HF_VX.ordinal()] = this::ldHfVx;
+        table[Opcode.OpcodeType.LD_R_VX.ordinal()] = this::ldRVx;
+        table[Opcode.OpcodeType.LD_VX_R.ordinal()] = this::ldVxR;
+        table[Opcode.OpcodeType.SAVE_VX_VY.ordinal()] = this::saveVxVy;
+        table[Opcode.OpcodeType.LOAD_VX_VY.ordinal()] = this::loadVxVy;
+        table[Opcode.OpcodeType.LD_I_LONG.ordinal()] = i -> ldILong();
+        table[Opcode.OpcodeType.PLANE_N.ordinal()] = i -> display.setSelectedPlanes((i & 0x0F00) >>> 8);
+        table[Opcode.OpcodeType.AUDIO.ordinal()] = i -> audio();
+        table[Opcode.OpcodeType.PITCH_VX.ordinal()] = this::pitchVx;
+        table[Opcode.OpcodeType.UNSUPPORTED.ordinal()] = i -> {};
+        return table;
     }
 
     /**
@@ -39,16 +171,42 @@ public class CPU {
      * @return instruction classified by type, to be used by CPU.executeOpcode(Opcode)
      */
     public Opcode decodeInstruction(char instruction) {
+        return decode(instruction);
+    }
+
+    /**
+     * Same as decodeInstruction(), which doesn't depend on the state of any CPU
+     */
+    static Opcode decode(char instruction) {
         if ((instruction == 0x00E0))
             return new Opcode(Opcode.OpcodeType.CLS, instruction);
         if ((instruction == 0x00EE))
             return new Opcode(Opcode.OpcodeType.RET, instruction);
+        if ((instruction & 0xFFF0) == 0x00C0)
+            return new Opcode(Opcode.OpcodeType.SCD_NIBBLE, instruction);
+        if ((instruction & 0xFFF0) == 0x00D0)
+            return new Opcode(Opcode.OpcodeType.SCU_NIBBLE, instruction);
+        switch(instruction) {
+            case 0x00FB: return new Opcode(Opcode.OpcodeType.SCR, instruction);
+            case 0x00FC: return new Opcode(Opcode.OpcodeType.SCL, instruction);
+            case 0x00FD: return new Opcode(Opcode.OpcodeType.EXIT, instruction);
+            case 0x00FE: return new Opcode(Opcode.OpcodeType.LOW, instruction);
+            case 0x00FF: return new Opcode(Opcode.OpcodeType.HIGH, instruction);
+            case 0xF000: return new Opcode(Opcode.OpcodeType.LD_I_LONG, instruction);
+            case 0xF002: return new Opcode(Opcode.OpcodeType.AUDIO, instruction);
+        }
         switch(instruction & 0xF000) {
             case 0x1000: return new Opcode(Opcode.OpcodeType.JP_ADDR, instruction);
             case 0x2000: return new Opcode(Opcode.OpcodeType.CALL_ADDR, instruction);
             case 0x3000: return new Opcode(Opcode.OpcodeType.SE_VX_BYTE, instruction);
             case 0x4000: return new Opcode(Opcode.OpcodeType.SNE_VX_BYTE, instruction);
-            case 0x5000: return new Opcode(Opcode.OpcodeType.SE_VX_VY, instruction);
+            case 0x5000:
+                switch(instruction & 0x000F) {
+                    case 0x0000: return new Opcode(Opcode.OpcodeType.SE_VX_VY, instruction);
+                    case 0x0002: return new Opcode(Opcode.OpcodeType.SAVE_VX_VY, instruction);
+                    case 0x0003: return new Opcode(Opcode.OpcodeType.LOAD_VX_VY, instruction);
+                    default: return new Opcode(Opcode.OpcodeType.UNSUPPORTED, instruction);
+                }
             case 0x6000: return new Opcode(Opcode.OpcodeType.LD_VX_BYTE, instruction);
             case 0x7000: return new Opcode(Opcode.OpcodeType.ADD_VX_BYTE, instruction);
             case 0x8000:
@@ -77,6 +235,7 @@ public class CPU {
                 }
             case 0xF000:
                 switch(instruction & 0x00FF) {
+                    case 0x0001: return new Opcode(Opcode.OpcodeType.PLANE_N, instruction);
                     case 0x0007: return new Opcode(Opcode.OpcodeType.LD_VX_DT, instruction);
                     case 0x000A: return new Opcode(Opcode.OpcodeType.LD_VX_K, instruction);
                     case 0x0015: return new Opcode(Opcode.OpcodeType.LD_DT_VX, instruction);
@@ -86,6 +245,10 @@ public class CPU {
                     case 0X0033: return new Opcode(Opcode.OpcodeType.LD_B_VX, instruction);
                     case 0X0055: return new Opcode(Opcode.OpcodeType.LD_I_VX, instruction);
                     case 0X0065: return new Opcode(Opcode.OpcodeType.LD_VX_I, instruction);
+                    case 0X0030: return new Opcode(Opcode.OpcodeType.LD_HF_VX, instruction);
+                    case 0X003A: return new Opcode(Opcode.OpcodeType.PITCH_VX, instruction);
+                    case 0X0075: return new Opcode(Opcode.OpcodeType.LD_R_VX, instruction);
+                    case 0X0085: return new Opcode(Opcode.OpcodeType.LD_VX_R, instruction);
                     default: return new Opcode(Opcode.OpcodeType.UNSUPPORTED, instruction);
                 }
             default: return new Opcode(Opcode.OpcodeType.UNSUPPORTED, instruction);
@@ -97,87 +260,317 @@ public class CPU {
      * @param opcode represents a decoded instruction
      */
     public void executeOpcode(Opcode opcode) {
-        switch(opcode.getType()) {
-            case CLS: display.clear(); break;
-            case RET: returnAddress(); break;
-            case JP_ADDR: jumpAddress(opcode.getInstruction()); break;
-            case CALL_ADDR: callAddress(opcode.getInstruction()); break;
-            case SE_VX_BYTE: skipIfEqualVxByte(opcode.getInstruction()); break;
-            case SNE_VX_BYTE: skipIfNotEqualVxByte(opcode.getInstruction()); break;
-            case SE_VX_VY: skipIfEqualVxVy(opcode.getInstruction()); break;
-            case LD_VX_BYTE: ldVxByte(opcode.getInstruction()); break;
-            case ADD_VX_BYTE: addVxByte(opcode.getInstruction()); break;
-            case LD_VX_VY: ldVxVy(opcode.getInstruction()); break;
-            case OR_VX_VY: orVxVy(opcode.getInstruction()); break;
-            case AND_VX_VY: andVxVy(opcode.getInstruction()); break;
-            case XOR_VX_VY: xorVxVy(opcode.getInstruction()); break;
-            case ADD_VX_VY: addVxVy(opcode.getInstruction()); break;
-            case SUB_VX_VY: subVxVy(opcode.getInstruction()); break;
-            case SHR_VX_VY: shrVxVy(opcode.getInstruction()); break;
-            case SUBN_VX_VY: subnVxVy(opcode.getInstruction()); break;
-            case SHL_VX_VY: shlVxVy(opcode.getInstruction()); break;
-            case SNE_VX_VY: sneVxVy(opcode.getInstruction()); break;
-            case LD_I_ADDR: ldIAddr(opcode.getInstruction()); break;
-            case JP_V0_ADDR: jpV0Addr(opcode.getInstruction()); break;
-            case RND_VX_BYTE: rndVxByte(opcode.getInstruction()); break;
-            case DRW_VX_VY_NIBBLE: drawVxVyNibble(opcode.getInstruction()); break;
-            case SKP_VX: skpVx(opcode.getInstruction()); break;
-            case SKNP_VX: sknpVx(opcode.getInstruction()); break;
-            case LD_VX_DT: ldVxDt(opcode.getInstruction()); break;
-            case LD_VX_K: ldVxK(opcode.getInstruction()); break;
-            case LD_DT_VX: ldDtVx(opcode.getInstruction()); break;
-            case LD_ST_VX: ldStVx(opcode.getInstruction()); break;
-            case ADD_I_VX: addIVx(opcode.getInstruction()); break;
-            case LD_F_VX: ldFVx(opcode.getInstruction()); break;
-            case LD_B_VX: ldBVx(opcode.getInstruction()); break;
-            case LD_I_VX: ldIVx(opcode.getInstruction()); break;
-            case LD_VX_I: ldVxI(opcode.getInstruction()); break;
-            default: break;
+        installed[opcode.getType().ordinal()].execute(opcode.getInstruction());
+    }
+
+    /**
+     * Fetches, decodes and executes a single instruction
+     * @return false if the instruction is not supported or faults the stack, in which case it is not executed and the
+     * program counter doesn't move. Once the stack faulted, it keeps returning false
+     */
+    public boolean step() {
+        if (state == FAULTED) return false;
+        Opcode.OpcodeType type = executeNext();
+        if (type == Opcode.OpcodeType.UNSUPPORTED) return false;
+        cycleCount += timing.cost(type);
+        return true;
+    }
+
+    private Opcode.OpcodeType executeNext() {
+        Opcode opcode = decodeInstruction(memory.readInstruction(programCounter));
+        if (opcode.getType() == Opcode.OpcodeType.UNSUPPORTED) return Opcode.OpcodeType.UNSUPPORTED;
+        char pc = programCounter;
+        programCounter += 2;
+        executeOpcode(opcode);
+        if (state == FAULTED) {
+            programCounter = pc;
+            return Opcode.OpcodeType.UNSUPPORTED;
         }
+        instructionCount++;
+        if (tracer != null) tracer.record(pc, opcode.getInstruction(), registers, iRegister);
+        return opcode.getType();
     }
 
-    public void run() {
-        //0. check if it's time to execute instruction
-        long lastExecutionTime = System.currentTimeMillis();
-        long lastTimerUpdate = lastExecutionTime;
-        boolean skipTimer = false;
-
-        while(true) {
-            if (skipTimer || System.currentTimeMillis() - lastExecutionTime >= 2) {
-                lastExecutionTime = System.currentTimeMillis();
-                //1. fetch instruction
-                char instruction = memory.readInstruction(programCounter);
-                programCounter += 2;
-                //2. decode instruction
-                Opcode opcode = decodeInstruction(instruction);
-                if (opcode.getType() == Opcode.OpcodeType.UNSUPPORTED) {
-                    System.out.println("OPCODE NOT SUPPORTED: " + (int)opcode.getInstruction());
-                    break;
+    /**
+     * Decrements the timers and hands the display to the renderer. Called at 60Hz.
+     * The CPU makes no sound itself: Pipeline.runCpu reads getSoundTimer() every frame and publishes it to the
+     * AudioBuffer the Synthesizer plays from
+     */
+    public void tickTimers() {
+        if (soundTimer > 0) soundTimer--;
+        if (delayTimer > 0) delayTimer--;
+        display.publish();
+    }
+
+    /**
+     * Runs a 60Hz frame as fast as possible: the timing model's budget of cycles, then a timer tick.
+     * An instruction overrunning the budget is paid back by the next frame, so on average every frame runs exactly
+     * the cycles of the model.
+     * Instructions spent spinning in an idle loop are not executed but accounted for, leaving the machine in exactly
+     * the state executing them would have, so running headless costs next to nothing while a ROM waits.
+     * @return false if an unsupported instruction or a stack fault stopped the frame
+     */
+    public boolean runFrame() {
+        cyclesLeft += timing.getCyclesPerFrame();
+        return resumeFrame();
+    }
+
+    /**
+     * Runs what is left of the current frame: all of it after runFrame() added its budget, or the rest of a frame
+     * a break stopped in the middle. The timers only tick once the frame is over
+     * @return false if an unsupported instruction or a stack fault stopped the frame
+     */
+    boolean resumeFrame() {
+        if (state == BROKEN) state = RUNNING;
+        boolean supported = runCycles(timing.getCosts(), timing.drawWaitsForVblank());
+        if (state == BROKEN) return supported;
+        return finishFrame(supported);
+    }
+
+    /**
+     * Same as runFrame(), counting instructions instead of cycles
+     */
+    public boolean runFrame(int instructionsPerFrame) {
+        cyclesLeft = instructionsPerFrame;
+        boolean supported = runCycles(UNIT_COSTS, false);
+        cyclesLeft = 0;
+        return finishFrame(supported);
+    }
+
+    private boolean finishFrame(boolean supported) {
+        if (!supported) return false;
+        // the rest of a frame spent waiting for the vertical blank, or halted, is not carried over
+        if (cyclesLeft > 0) {
+            cycleCount += cyclesLeft;
+            cyclesLeft = 0;
+        }
+        tickTimers();
+        return true;
+    }
+
+    /**
+     * Executes instructions until cyclesLeft runs out
+     * @return false if an unsupported instruction was met, or the stack faulted
+     */
+    private boolean runCycles(int[] costs, boolean drawWaitsForVblank) {
+        // breaks need to see every instruction
+        if (blocksEnabled && installed == handlers) {
+            boolean supported = runBlocks(costs, drawWaitsForVblank);
+            if (tracer != null) tracer.recordState(registers, iRegister);
+            return supported;
+        }
+        while (cyclesLeft > 0 && state == RUNNING) {
+            skipIdleLoop(costs);
+            if (cyclesLeft <= 0) break;
+            if (!executeCounted(costs, drawWaitsForVblank)) return false;
+        }
+        return state != FAULTED;
+    }
+
+    /**
+     * Same as runCycles(), a block of instructions at a time. Blocks go straight to the next one through their links,
+     * or through the stack's return links for RET, only looking blocks up the first time execution goes somewhere
+     */
+    private boolean runBlocks(int[] costs, boolean drawWaitsForVblank) {
+        if (blockCache == null) blockCache = new BlockCache(this, memory, handlers, idleLoops, null);
+        Block block = null;
+        Object returnLink = null;
+        while (cyclesLeft > 0 && state == RUNNING) {
+            skipIdleLoop(costs);
+            if (cyclesLeft <= 0) break;
+            Block next = blockCache.next(block, returnLink, programCounter);
+            returnLink = null;
+            block = next;
+            if (block.length == 0) {
+                // nothing decodes here, the interpreter deals with it
+                if (tracer != null) tracer.recordState(registers, iRegister);
+                if (!executeCounted(costs, drawWaitsForVblank)) return false;
+                block = null;
+                continue;
+            }
+            block.price(costs);
+            Object link = block.returns ? stack.getLink() : null;
+            char entry = programCounter;
+            // the tracer records a block in a single entry, up to a length
+            if (cyclesLeft > block.costBeforeLast && (tracer == null || block.length <= Tracer.MAX_BLOCK_LENGTH)) {
+                Instruction[] entries = block.entries;
+                char[] entryInstructions = block.entryInstructions;
+                for (int i = 0; i < entries.length; i++) {
+                    programCounter += 2;
+                    entries[i].execute(entryInstructions[i]);
                 }
-                //3. execute instruction
-                executeOpcode(opcode);
-                if (System.currentTimeMillis() - lastExecutionTime > 4) {
-                    skipTimer = true;
-                    System.out.println("Skipping timer on next execution");
+                if (state == FAULTED) {
+                    // like executeNext(), the CALL or RET at the end faulted: it isn't executed nor counted
+                    programCounter -= 2;
+                    instructionCount += block.length - 1;
+                    cycleCount += block.costBeforeLast;
+                    cyclesLeft -= block.costBeforeLast;
+                    if (tracer != null && block.length > 1) traceBlock(block, entry, block.length - 1);
+                    return false;
                 }
-                else skipTimer = false;
-            }
-            //4. update timers
-            if (System.currentTimeMillis() - lastTimerUpdate >= 16.6) {
-                lastTimerUpdate = System.currentTimeMillis();
-                if (soundTimer > 0) {
-                    //TODO make sound
-                    soundTimer--;
+                int executed = block.length;
+                if (block.branches && programCounter == (char) (entry + 2 * block.length)) {
+                    // the skip was taken, so the JP at the end wasn't executed
+                    executed--;
+                    instructionCount += block.length - 1;
+                    cycleCount += block.costBeforeLast;
+                    cyclesLeft -= block.costBeforeLast;
+                } else {
+                    instructionCount += block.length;
+                    cycleCount += block.cost;
+                    cyclesLeft -= block.cost;
                 }
-                if (delayTimer > 0) delayTimer--;
+                if (tracer != null) traceBlock(block, entry, executed);
+            } else {
+                // the frame ends within the block: the budget is checked before every instruction,
+                // executed one at a time without superinstructions
+                if (tracer != null) tracer.recordState(registers, iRegister);
+                Instruction[] blockHandlers = block.handlers;
+                char[] instructions = block.instructions;
+                Opcode.OpcodeType[] types = block.types;
+                for (int i = 0; i < block.length; i++) {
+                    if (cyclesLeft <= 0) return true;
+                    // a skip jumped over the JP ending the block
+                    if (programCounter != (char) (entry + 2 * i)) break;
+                    programCounter += 2;
+                    blockHandlers[i].execute(instructions[i]);
+                    if (state == FAULTED) {
+                        programCounter -= 2;
+                        return false;
+                    }
+                    instructionCount++;
+                    if (tracer != null) tracer.record(entry + 2 * i, instructions[i], registers, iRegister);
+                    int cost = costs[types[i].ordinal()];
+                    cycleCount += cost;
+                    cyclesLeft -= cost;
+                }
+            }
+            if (block.draws && drawWaitsForVblank && cyclesLeft > 0) {
+                cycleCount += cyclesLeft;
+                cyclesLeft = 0;
             }
+            if (block.calls) stack.setLink(blockCache.returnBlock(block));
+            returnLink = link;
         }
+        return state != FAULTED;
+    }
 
+    /**
+     * Records a run of the block, defining its instructions first if the tracer doesn't have them
+     * @param executed instructions executed from the start of the block
+     */
+    private void traceBlock(Block block, char entry, int executed) {
+        if (block.tracedIn != tracer.getBlockId()) {
+            tracer.defineBlock(entry, block.instructions, block.length);
+            block.tracedIn = tracer.getBlockId();
+        }
+        tracer.recordBlock(entry, executed, registers, iRegister);
+    }
 
+    /**
+     * Skips the idle loop starting at the program counter, if there's one, in as far as the frame allows
+     */
+    private void skipIdleLoop(int[] costs) {
+        switch (idleLoops.kindAt(programCounter)) {
+            case IdleLoopDetector.DELAY_WAIT:
+                // every iteration is LD Vx, DT / SE Vx, 0 / JP back, and DT can't change before the end of the frame
+                if (delayTimer > 0) {
+                    int iterationCost = costs[Opcode.OpcodeType.LD_VX_DT.ordinal()]
+                            + costs[Opcode.OpcodeType.SE_VX_BYTE.ordinal()]
+                            + costs[Opcode.OpcodeType.JP_ADDR.ordinal()];
+                    long iterations = cyclesLeft / iterationCost;
+                    if (iterations > 0) {
+                        registers[(memory.readInstruction(programCounter) & 0x0F00) >>> 8] = delayTimer;
+                        skipIdleInstructions(iterations * 3, iterations * iterationCost);
+                    }
+                }
+                break;
+            case IdleLoopDetector.KEY_WAIT:
+                if (keyboard.getCurrentKeyPressed() == 0xFFFF)
+                    skipRestOfFrame(costs[Opcode.OpcodeType.LD_VX_K.ordinal()]);
+                break;
+            case IdleLoopDetector.HALT:
+                skipRestOfFrame(costs[Opcode.OpcodeType.JP_ADDR.ordinal()]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Executes the next instruction and charges its cycles
+     * @return false if it isn't supported or faulted the stack
+     */
+    private boolean executeCounted(int[] costs, boolean drawWaitsForVblank) {
+        Opcode.OpcodeType type = executeNext();
+        if (type == Opcode.OpcodeType.UNSUPPORTED) return false;
+        int cost = costs[type.ordinal()];
+        cycleCount += cost;
+        cyclesLeft -= cost;
+        if (drawWaitsForVblank && type == Opcode.OpcodeType.DRW_VX_VY_NIBBLE && cyclesLeft > 0) {
+            cycleCount += cyclesLeft;
+            cyclesLeft = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Accounts for an instruction repeating itself until the end of the frame, overrunning it like executing it would
+     */
+    private void skipRestOfFrame(int cost) {
+        long repetitions = (cyclesLeft + cost - 1) / cost;
+        skipIdleInstructions(repetitions, repetitions * cost);
+    }
+
+    private void skipIdleInstructions(long instructions, long cycles) {
+        instructionCount += instructions;
+        cycleCount += cycles;
+        cyclesLeft -= cycles;
+        idleLoops.recordSkipped(instructions);
+        if (tracer != null) tracer.recordSkipped(instructions, registers, iRegister);
+    }
+
+    /**
+     * Prints why execution stopped, i.e. the unsupported instruction or the stack fault, and dumps the execution
+     * trace if there's one
+     */
+    public void reportFailure() {
+        if (stackFault != null)
+            System.out.println(stackFault.getMessage().toUpperCase() + " AT: " + (int) programCounter);
+        else System.out.println("OPCODE NOT SUPPORTED: " + (int) memory.readInstruction(programCounter));
+        if (tracer != null) tracer.failed();
+    }
+
+    /**
+     * Runs the CPU in real time: a frame at a time, sleeping until the next 60Hz tick once a frame is done
+     */
+    public void run() {
+        long nextFrame = System.nanoTime();
+        while(state != HALTED) {
+            if (!runFrame()) {
+                reportFailure();
+                break;
+            }
+            nextFrame += FRAME_NANOS;
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            // too slow to keep up: carry on from now instead of running frames back to back to catch up
+            else nextFrame = System.nanoTime();
+        }
+    }
+
+    /**
+     * Skips the next instruction, which takes 4 bytes instead of 2 when it's the XO-CHIP long load F000 NNNN
+     */
+    private void skipNextInstruction() {
+        if (memory.readInstruction(programCounter) == 0xF000) programCounter += 4;
+        else programCounter += 2;
     }
 
     private void returnAddress() {
-        programCounter = stack.getAddress();
+        int address = stack.pop();
+        if (address < 0) stackFault(false);
+        else programCounter = (char) address;
     }
 
     private void jumpAddress(char instruction) {
@@ -188,22 +581,116 @@ public class CPU {
 
     private void callAddress(char instruction) {
         char addr = (char) (instruction & 0x0FFF);
-        stack.setAddress(programCounter);
-        programCounter = addr;
+        if (!stack.push(programCounter)) stackFault(true);
+        else programCounter = addr;
+    }
+
+    /**
+     * Stops on the CALL or RET the stack couldn't execute, like on an unsupported instruction: it isn't executed,
+     * and the program counter goes back to it
+     */
+    private void stackFault(boolean overflow) {
+        stackFault = new StackFaultException(overflow);
+        state = FAULTED;
+    }
+
+    /**
+     * Superinstruction for LD I, addr followed by DRW: the instructions are captured, the argument is ignored.
+     * Superinstructions execute a sequence exactly as its instructions would one after the other, program counter
+     * included, but in a single handler
+     */
+    Instruction drawAt(char load, char draw) {
+        char addr = (char) (load & 0x0FFF);
+        return i -> {
+            iRegister = addr;
+            programCounter += 2;
+            drawVxVyNibble(draw);
+        };
+    }
+
+    /**
+     * Superinstruction for a skip followed by JP, i.e. a conditional branch
+     * @return null if the instruction isn't one of the skips
+     */
+    Instruction branch(Opcode.OpcodeType skip, char test, char jump) {
+        int x = (test & 0x0F00) >>> 8;
+        int y = (test & 0x00F0) >>> 4;
+        char b = (char) (test & 0x00FF);
+        char target = (char) (jump & 0x0FFF);
+        switch (skip) {
+            case SE_VX_BYTE:
+                return i -> branch(registers[x] == b, target);
+            case SNE_VX_BYTE:
+                return i -> branch(registers[x] != b, target);
+            case SE_VX_VY:
+                return i -> branch(registers[x] == registers[y], target);
+            case SNE_VX_VY:
+                return i -> branch(registers[x] != registers[y], target);
+            case SKP_VX:
+                return i -> {
+                    char keyPressed = keyboard.getCurrentKeyPressed();
+                    branch(keyPressed != 0xFFFF && keyPressed == registers[x], target);
+                };
+            case SKNP_VX:
+                return i -> {
+                    char keyPressed = keyboard.getCurrentKeyPressed();
+                    branch(keyPressed == 0xFFFF || keyPressed != registers[x], target);
+                };
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Superinstruction for ADD Vx, byte, then SE or SNE Vx, byte and JP: a counted loop
+     */
+    Instruction countedBranch(char add, boolean equal, char test, char jump) {
+        int x = (add & 0x0F00) >>> 8;
+        char step = (char) (add & 0x00FF);
+        char b = (char) (test & 0x00FF);
+        char target = (char) (jump & 0x0FFF);
+        return i -> {
+            char vx = (char) ((registers[x] + step) & 0x00FF);
+            registers[x] = vx;
+            programCounter += 2;
+            branch((vx == b) == equal, target);
+        };
+    }
+
+    /**
+     * Superinstruction for LD Vx, DT, then SE or SNE Vx, byte and JP: waiting for the delay timer
+     */
+    Instruction timerBranch(char load, boolean equal, char test, char jump) {
+        int x = (load & 0x0F00) >>> 8;
+        char b = (char) (test & 0x00FF);
+        char target = (char) (jump & 0x0FFF);
+        return i -> {
+            registers[x] = delayTimer;
+            programCounter += 2;
+            branch((delayTimer == b) == equal, target);
+        };
+    }
+
+    /**
+     * Ends a fused skip and JP, with the program counter on the skip's following instruction, the JP
+     */
+    private void branch(boolean skips, char target) {
+        if (skips) programCounter += 2;
+        else programCounter = target;
     }
 
     private void skipIfEqualVxByte(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char b = (char) (instruction & 0x00FF);
         char vx = registers[x];
-        if (vx == b) programCounter += 2;
+        if (vx == b) skipNextInstruction();
     }
 
     private void skipIfNotEqualVxByte(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char b = (char) (instruction & 0x00FF);
         char vx = registers[x];
-        if (vx != b) programCounter += 2;
+        if (vx != b) skipNextInstruction();
     }
 
     private void skipIfEqualVxVy(char instruction) {
@@ -211,7 +698,7 @@ public class CPU {
         char y = (char) ((instruction & 0x00F0) >>> 4);
         char vx = registers[x];
         char vy = registers[y];
-        if (vx == vy) programCounter += 2;
+        if (vx == vy) skipNextInstruction();
     }
 
     private void ldVxByte(char instruction) {
@@ -255,6 +742,21 @@ public class CPU {
         registers[x] = vx;
     }
 
+    private void orVxVyResetVf(char instruction) {
+        orVxVy(instruction);
+        registers[0x0F] = 0x00;
+    }
+
+    private void andVxVyResetVf(char instruction) {
+        andVxVy(instruction);
+        registers[0x0F] = 0x00;
+    }
+
+    private void xorVxVyResetVf(char instruction) {
+        xorVxVy(instruction);
+        registers[0x0F] = 0x00;
+    }
+
     private void addVxVy(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char y = (char) ((instruction & 0x00F0) >>> 4);
@@ -287,6 +789,14 @@ public class CPU {
         registers[x] = vx;
     }
 
+    private void shrVyVx(char instruction) {
+        char x = (char) ((instruction & 0x0F00) >>> 8);
+        char y = (char) ((instruction & 0x00F0) >>> 4);
+        char vy = registers[y];
+        registers[x] = (char) (vy >>> 1);
+        registers[0x0F] = (char) (vy & 0b1);
+    }
+
     private void subnVxVy(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char y = (char) ((instruction & 0x00F0) >>> 4);
@@ -307,10 +817,18 @@ public class CPU {
         registers[x] = vx;
     }
 
+    private void shlVyVx(char instruction) {
+        char x = (char) ((instruction & 0x0F00) >>> 8);
+        char y = (char) ((instruction & 0x00F0) >>> 4);
+        char vy = registers[y];
+        registers[x] = (char) ((vy << 1) & 0x00FF);
+        registers[0x0F] = (char) ((vy & 0b1000_0000) >>> 7);
+    }
+
     private void sneVxVy(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char y = (char) ((instruction & 0x00F0) >>> 4);
-        if (registers[x] != registers[y]) programCounter += 2;
+        if (registers[x] != registers[y]) skipNextInstruction();
     }
 
     private void ldIAddr(char instruction) {
@@ -325,10 +843,16 @@ public class CPU {
         programCounter = result;
     }
 
+    private void jpVxAddr(char instruction) {
+        char x = (char) ((instruction & 0x0F00) >>> 8);
+        char addr = (char) (instruction & 0x0FFF);
+        programCounter = (char) (addr + registers[x]);
+    }
+
     private void rndVxByte(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char b = (char) (instruction & 0x00FF);
-        char rnd = (char) new Random().nextInt(256);
+        char rnd = (char) random.nextInt(256);
         char res = (char) ((rnd & b) & 0x00FF);
         registers[x] = res;
     }
@@ -337,30 +861,32 @@ public class CPU {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char y = (char) ((instruction & 0x00F0) >>> 4);
         char nibble = (char) (instruction & 0x000F);
-        char vx = registers[x];
-        char vy = registers[y];
-        Coordinate coord = new Coordinate(vx, vy);
-        char[] sprite = new char[nibble];
-        for (int i = 0; i < nibble; i++) {
-            sprite[i] = memory.readByte(i + iRegister);
-        }
-        boolean collision = display.drawSprite(coord, sprite);
+        // DXY0 draws a 16x16 sprite, two bytes per row
+        boolean collision = nibble == 0
+                ? drawFromMemory(registers[x], registers[y], 16, 2)
+                : drawFromMemory(registers[x], registers[y], nibble, 1);
         if (collision) registers[0xf] = 0x1;
         else registers[0xf] = 0x0;
     }
 
+    private boolean drawFromMemory(int x, int y, int rows, int bytesPerRow) {
+        int length = rows * bytesPerRow * Integer.bitCount(display.getSelectedPlanes());
+        memory.readBlock(iRegister, spriteBuffer, 0, length);
+        return sprites.draw(display, spriteBuffer, 0, x, y, rows, bytesPerRow);
+    }
+
     private void skpVx(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char vx = registers[x];
-        char keyPressed = display.getKeyPressed();
-        if (keyPressed != 0xFFFF && keyPressed == vx) programCounter += 2;
+        char keyPressed = keyboard.getCurrentKeyPressed();
+        if (keyPressed != 0xFFFF && keyPressed == vx) skipNextInstruction();
     }
 
     private void sknpVx(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char vx = registers[x];
-        char keyPressed = display.getKeyPressed();
-        if (keyPressed == 0XFFFF || keyPressed != vx) programCounter += 2;
+        char keyPressed = keyboard.getCurrentKeyPressed();
+        if (keyPressed == 0XFFFF || keyPressed != vx) skipNextInstruction();
     }
 
     private void ldVxDt(char instruction) {
@@ -370,21 +896,10 @@ public class CPU {
 
     private void ldVxK(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
-        boolean keySet = false;
-        while (!keySet) {
-            char key = display.getKeyPressed();
-            if (key != 0xFFFF) {
-                registers[x] = key;
-                keySet = true;
-            }
-            else {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    System.out.println("Exception occurred in LD_VX_DT");
-                }
-            }
-        }
+        char key = keyboard.getCurrentKeyPressed();
+        if (key != 0xFFFF) registers[x] = key;
+        // no key yet: execute this instruction again, without blocking the thread the CPU runs on
+        else programCounter -= 2;
     }
 
     private void ldDtVx(char instruction) {
@@ -400,7 +915,7 @@ public class CPU {
     private void addIVx(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char vx = registers[x];
-        char res = (char) ((iRegister + vx) & 0x0FFF);
+        char res = (char) ((iRegister + vx) & (memory.size() - 1));
         iRegister = res;
     }
 
@@ -413,27 +928,183 @@ public class CPU {
     private void ldBVx(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         char vx = registers[x];
-        memory.writeByte(iRegister, (char)(vx/100));
-        vx = (char)(vx % 100);
-        memory.writeByte(iRegister + 1, (char)(vx/10));
-        vx = (char)(vx % 10);
-        memory.writeByte(iRegister + 2, vx);
+        bcdBuffer[0] = (char) (vx / 100);
+        bcdBuffer[1] = (char) (vx / 10 % 10);
+        bcdBuffer[2] = (char) (vx % 10);
+        memory.writeBlock(iRegister, bcdBuffer, 0, 3);
     }
 
     private void ldIVx(char instruction) {
+        char x = (char) ((instruction & 0x0F00) >>> 8);
+        memory.writeBlock(iRegister, registers, 0, x + 1);
+    }
+
+    private void ldVxI(char instruction) {
+        char x = (char) ((instruction & 0x0F00) >>> 8);
+        memory.readBlock(iRegister, registers, 0, x + 1);
+    }
+
+    private void ldIVxIncrement(char instruction) {
+        ldIVx(instruction);
+        iRegister += ((instruction & 0x0F00) >>> 8) + 1;
+    }
+
+    private void ldVxIIncrement(char instruction) {
+        ldVxI(instruction);
+        iRegister += ((instruction & 0x0F00) >>> 8) + 1;
+    }
+
+    private void ldHfVx(char instruction) {
+        char x = (char) ((instruction & 0x0F00) >>> 8);
+        char vx = registers[x];
+        iRegister = (char) (Memory.BIG_FONT_ADDRESS + (vx & 0x0F) * 10);
+    }
+
+    private void ldRVx(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         for (int i = 0; i <= x; i++) {
-            memory.writeByte(i + iRegister, registers[i]);
+            flags[i] = registers[i];
         }
     }
 
-    private void ldVxI(char instruction) {
+    private void ldVxR(char instruction) {
         char x = (char) ((instruction & 0x0F00) >>> 8);
         for (int i = 0; i <= x; i++) {
-            registers[i] = memory.readByte(i + iRegister);
+            registers[i] = flags[i];
         }
     }
 
+    private void saveVxVy(char instruction) {
+        char x = (char) ((instruction & 0x0F00) >>> 8);
+        char y = (char) ((instruction & 0x00F0) >>> 4);
+        if (x <= y) {
+            memory.writeBlock(iRegister, registers, x, y - x + 1);
+            return;
+        }
+        // registers stored in reverse order
+        for (int i = 0; i <= x - y; i++) {
+            memory.writeByte(iRegister + i, registers[x - i]);
+        }
+    }
+
+    private void loadVxVy(char instruction) {
+        char x = (char) ((instruction & 0x0F00) >>> 8);
+        char y = (char) ((instruction & 0x00F0) >>> 4);
+        if (x <= y) {
+            memory.readBlock(iRegister, registers, x, y - x + 1);
+            return;
+        }
+        for (int i = 0; i <= x - y; i++) {
+            registers[x - i] = memory.readByte(iRegister + i);
+        }
+    }
+
+    private void ldILong() {
+        iRegister = memory.readInstruction(programCounter);
+        programCounter += 2;
+    }
+
+    private void audio() {
+        memory.readBlock(iRegister, audioPattern, 0, audioPattern.length);
+    }
+
+    private void pitchVx(char instruction) {
+        char x = (char) ((instruction & 0x0F00) >>> 8);
+        pitch = registers[x];
+    }
+
+    /**
+     * Writes the registers, timers, stack and display to a slot of a MachineSlab, with its layout. Memory isn't
+     * written: a CPU running on a slab already uses the memory of its slot.
+     * The keyboard and the random generator aren't part of the state
+     */
+    public void saveState(ByteBuffer slot) {
+        for (int i = 0; i < 16; i++) {
+            slot.put(MachineSlab.REGISTERS + i, (byte) registers[i]);
+            slot.put(MachineSlab.FLAGS + i, (byte) flags[i]);
+            slot.put(MachineSlab.AUDIO_PATTERN + i, (byte) audioPattern[i]);
+        }
+        slot.putChar(MachineSlab.I_REGISTER, iRegister);
+        slot.putChar(MachineSlab.PROGRAM_COUNTER, programCounter);
+        slot.put(MachineSlab.DELAY_TIMER, (byte) delayTimer);
+        slot.put(MachineSlab.SOUND_TIMER, (byte) soundTimer);
+        slot.put(MachineSlab.PITCH, (byte) pitch);
+        slot.put(MachineSlab.HALTED, (byte) (state == HALTED ? 1 : 0));
+        slot.putLong(MachineSlab.INSTRUCTION_COUNT, instructionCount);
+        slot.putLong(MachineSlab.CYCLE_COUNT, cycleCount);
+        slot.putLong(MachineSlab.CYCLES_LEFT, cyclesLeft);
+        stack.saveState(slot, MachineSlab.STACK);
+        display.saveState(slot, MachineSlab.DISPLAY);
+    }
+
+    /**
+     * Replaces the registers, timers, stack and display with the ones written by saveState
+     * @throws IllegalArgumentException if the saved stack is deeper than the stack of this CPU and it can't grow, in
+     * which case nothing is loaded
+     */
+    public void loadState(ByteBuffer slot) {
+        stack.loadState(slot, MachineSlab.STACK);
+        for (int i = 0; i < 16; i++) {
+            registers[i] = (char) (slot.get(MachineSlab.REGISTERS + i) & 0xFF);
+            flags[i] = (char) (slot.get(MachineSlab.FLAGS + i) & 0xFF);
+            audioPattern[i] = (char) (slot.get(MachineSlab.AUDIO_PATTERN + i) & 0xFF);
+        }
+        iRegister = slot.getChar(MachineSlab.I_REGISTER);
+        programCounter = slot.getChar(MachineSlab.PROGRAM_COUNTER);
+        delayTimer = (char) (slot.get(MachineSlab.DELAY_TIMER) & 0xFF);
+        soundTimer = (char) (slot.get(MachineSlab.SOUND_TIMER) & 0xFF);
+        pitch = (char) (slot.get(MachineSlab.PITCH) & 0xFF);
+        state = slot.get(MachineSlab.HALTED) != 0 ? HALTED : RUNNING;
+        stackFault = null;
+        instructionCount = slot.getLong(MachineSlab.INSTRUCTION_COUNT);
+        cycleCount = slot.getLong(MachineSlab.CYCLE_COUNT);
+        cyclesLeft = slot.getLong(MachineSlab.CYCLES_LEFT);
+        display.loadState(slot, MachineSlab.DISPLAY);
+        if (tracer != null) tracer.start(instructionCount, programCounter, iRegister, registers);
+    }
+
+    /**
+     * Stops the frame being run once the current instruction is done, leaving the rest of it to resumeFrame()
+     */
+    void requestBreak() {
+        if (state == RUNNING) state = BROKEN;
+    }
+
+    boolean isBroken() {
+        return state == BROKEN;
+    }
+
+    /**
+     * @return the stack fault execution stopped on, null if it didn't
+     */
+    public StackFaultException getStackFault() {
+        return stackFault;
+    }
+
+    /**
+     * @return the handlers compiled for the quirks profile, indexed by opcode type ordinal
+     */
+    Instruction[] getHandlers() {
+        return handlers.clone();
+    }
+
+    /**
+     * Executes instructions with another table, or with the compiled handlers again when given null.
+     * Idle loops are only skipped with the compiled handlers, since skipping them would bypass the other table
+     */
+    void installHandlers(Instruction[] table) {
+        installed = table == null ? handlers : table;
+        idleLoops.setEnabled(table == null);
+    }
+
+    Memory getMemory() {
+        return memory;
+    }
+
+    Stack getStack() {
+        return stack;
+    }
+
     //GETTERS AND SETTERS
 
     public char getProgramCounter() {
@@ -466,4 +1137,106 @@ public class CPU {
     public void setSoundTimer(char c) { soundTimer = c;}
 
     public void setIRegister(char c) {iRegister = c;}
+
+    public Quirks getQuirks() {
+        return quirks;
+    }
+
+    /**
+     * @return entries the stack has room for, more than it started with if it grew
+     */
+    public int getStackDepth() {
+        return stack.getDepth();
+    }
+
+    public Stack.OverflowPolicy getStackPolicy() {
+        return stack.getPolicy();
+    }
+
+    /**
+     * @return number of instructions executed since the CPU was created, including skipped idle ones
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * @return emulated cycles elapsed, counted by the timing model frames were run with
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Makes RND produce the same numbers on every run, for tests and reproducible headless runs
+     */
+    public void setRandomSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    public TimingModel getTimingModel() {
+        return timing;
+    }
+
+    /**
+     * Changes how many cycles instructions take and how many of them run each frame
+     */
+    public void setTimingModel(TimingModel timing) {
+        this.timing = timing;
+    }
+
+    /**
+     * Builds blocks from a table decoded beforehand instead of decoding instructions, as long as the code they're
+     * made of wasn't written since, and builds the ones starting at the given addresses right away, so that the
+     * first frames don't decode anything
+     * @param table decoded from memory as it is now, e.g. from the same ROM image
+     * @param blockStarts addresses where blocks start, e.g. from analysing the ROM
+     */
+    public void warmUp(DecodeTable table, int[] blockStarts) {
+        if (table.size() != memory.size())
+            throw new IllegalArgumentException("Decode table of " + table.size() + " bytes for " + memory.size() + " bytes of memory");
+        if (blockCache != null) blockCache.detach();
+        blockCache = new BlockCache(this, memory, handlers, idleLoops, table);
+        for (int start : blockStarts) blockCache.get(start);
+    }
+
+    /**
+     * Switches between running frames a block of decoded instructions at a time, the default, and an instruction
+     * at a time. Both leave the machine in exactly the same state
+     */
+    public void setBlocksEnabled(boolean blocksEnabled) {
+        this.blocksEnabled = blocksEnabled;
+    }
+
+    /**
+     * Records every instruction executed from now on with the tracer, or stops recording when given null.
+     * Frames run as blocks are recorded a block at a time
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+        if (tracer != null) tracer.start(instructionCount, programCounter, iRegister, registers);
+    }
+
+    /**
+     * @return number of instructions that were part of idle loops, and were skipped instead of executed
+     */
+    public long getSkippedIdleInstructions() {
+        return idleLoops.getSkippedInstructions();
+    }
+
+    public boolean isHalted() {
+        return state == HALTED;
+    }
+
+    public char[] getFlags() {
+        return flags;
+    }
+
+    public char[] getAudioPattern() {
+        return audioPattern;
+    }
+
+    public char getPitch() {
+        return pitch;
+    }
 }
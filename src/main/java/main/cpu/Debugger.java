@@ -0,0 +1,263 @@
+package main.cpu;
+
+import main.memory.Memory;
+import main.memory.WriteWatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Breakpoints, memory watchpoints, conditions on the state of the CPU, single-step and step over CALL.
+ * Nothing is checked while nothing is set: breakpoints, conditions and steps install a copy of the CPU's handler table
+ * whose entries check them once their instruction is executed, and the compiled table is put back when the last
+ * one goes away. Watchpoints are memory write watchers.
+ * The debugger drives the CPU a frame at a time. A stop leaves the frame half run, with the timers not ticked yet,
+ * and the next call carries on with it
+ */
+public class Debugger {
+    // longest a step over runs, waiting for the call to return: a minute of emulated time
+    private static final int STEP_OVER_FRAMES = 3600;
+
+    public enum Stop {
+        // the frame ran to its end
+        FRAME_END,
+        // the program counter reached a breakpoint
+        BREAKPOINT,
+        // an instruction wrote to a watched address
+        WATCHPOINT,
+        // a condition became true after an instruction
+        CONDITION,
+        // the single step or step over is done
+        STEP,
+        // EXIT was executed
+        HALTED,
+        // the instruction at the program counter is not supported
+        UNSUPPORTED,
+        // the CALL or RET at the program counter overflowed or underflowed the stack
+        STACK_FAULT
+    }
+
+    private final CPU cpu;
+    private final Memory memory;
+    private final int mask;
+    private final Instruction[] checked;
+    private final WriteWatcher watcher;
+    private final boolean[] breakpoints;
+    private int breakpointCount;
+    private final boolean[] watched;
+    private int watchedCount;
+    private final List<Predicate<CPU>> conditions;
+    private boolean checking;
+    private boolean stepping;
+    // writes only count while the CPU runs, not when memory is loaded or edited from outside
+    private boolean running;
+    private Stop stop;
+    // where the last stop left the program counter, so that carrying on from a breakpoint doesn't stop there again
+    private int stoppedAt = -1;
+    private Predicate<CPU> metCondition;
+    private int writeAddress;
+
+    public Debugger(CPU cpu) {
+        this.cpu = cpu;
+        this.memory = cpu.getMemory();
+        this.mask = memory.size() - 1;
+        this.breakpoints = new boolean[memory.size()];
+        this.watched = new boolean[memory.size()];
+        this.conditions = new ArrayList<>();
+        this.writeAddress = -1;
+        Instruction[] handlers = cpu.getHandlers();
+        checked = new Instruction[handlers.length];
+        for (int i = 0; i < handlers.length; i++) {
+            Instruction handler = handlers[i];
+            if (handler == null) continue;
+            checked[i] = instruction -> {
+                handler.execute(instruction);
+                afterInstruction();
+            };
+        }
+        watcher = this::written;
+        memory.addWriteWatcher(watcher);
+    }
+
+    /**
+     * Removes everything the debugger set on the CPU, which then runs exactly as if it was never attached
+     */
+    public void detach() {
+        memory.removeWriteWatcher(watcher);
+        cpu.installHandlers(null);
+        checking = false;
+    }
+
+    /**
+     * Stops execution when the program counter reaches the address, before the instruction there is executed,
+     * including the address execution starts from. Execution carries on from a breakpoint it stopped at
+     */
+    public void addBreakpoint(int address) {
+        if (!breakpoints[address & mask]) breakpointCount++;
+        breakpoints[address & mask] = true;
+        updateHandlers();
+    }
+
+    public void removeBreakpoint(int address) {
+        if (breakpoints[address & mask]) breakpointCount--;
+        breakpoints[address & mask] = false;
+        updateHandlers();
+    }
+
+    /**
+     * Stops execution after any instruction writing to one of the length addresses starting at address
+     */
+    public void addWatchpoint(int address, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!watched[(address + i) & mask]) watchedCount++;
+            watched[(address + i) & mask] = true;
+        }
+    }
+
+    public void removeWatchpoint(int address, int length) {
+        for (int i = 0; i < length; i++) {
+            if (watched[(address + i) & mask]) watchedCount--;
+            watched[(address + i) & mask] = false;
+        }
+    }
+
+    /**
+     * Stops execution after any instruction leaving the CPU in a state the condition accepts,
+     * e.g. {@code cpu -> cpu.getRegisters()[3] == 5}
+     */
+    public void addCondition(Predicate<CPU> condition) {
+        conditions.add(condition);
+        updateHandlers();
+    }
+
+    public void removeCondition(Predicate<CPU> condition) {
+        conditions.remove(condition);
+        updateHandlers();
+    }
+
+    /**
+     * Runs the current frame until its end, or until something stops it
+     */
+    public Stop runFrame() {
+        int pc = cpu.getProgramCounter() & mask;
+        // instructions check the address they go to, the one execution starts from is checked here.
+        // A step executes the instruction whatever the address
+        if (breakpoints[pc] && pc != stoppedAt && !stepping) {
+            stoppedAt = pc;
+            return Stop.BREAKPOINT;
+        }
+        stop = null;
+        metCondition = null;
+        writeAddress = -1;
+        running = true;
+        boolean supported;
+        try {
+            supported = cpu.isBroken() ? cpu.resumeFrame() : cpu.runFrame();
+        } finally {
+            running = false;
+        }
+        stoppedAt = stop != null ? cpu.getProgramCounter() & mask : -1;
+        if (!supported) return cpu.getStackFault() != null ? Stop.STACK_FAULT : Stop.UNSUPPORTED;
+        if (stop != null) return stop;
+        return cpu.isHalted() ? Stop.HALTED : Stop.FRAME_END;
+    }
+
+    /**
+     * Runs up to the given number of frames, stopping early if something stops one of them
+     */
+    public Stop run(int frames) {
+        for (int i = 0; i < frames; i++) {
+            Stop reason = runFrame();
+            if (reason != Stop.FRAME_END) return reason;
+        }
+        return Stop.FRAME_END;
+    }
+
+    /**
+     * Executes a single instruction. A frame ending first is finished, timers included
+     * @return STEP, or why the instruction couldn't be executed
+     */
+    public Stop step() {
+        stepping = true;
+        updateHandlers();
+        try {
+            Stop reason;
+            do {
+                reason = runFrame();
+            } while (reason == Stop.FRAME_END);
+            return reason;
+        } finally {
+            stepping = false;
+            updateHandlers();
+        }
+    }
+
+    /**
+     * Executes a CALL and the whole subroutine, stopping once it returned, or a single instruction if it isn't a CALL
+     * @return STEP once the subroutine returned, what else stopped it before, or FRAME_END if it didn't return
+     * within a minute of emulated time
+     */
+    public Stop stepOver() {
+        int pc = cpu.getProgramCounter();
+        if (cpu.decodeInstruction(memory.readInstruction(pc)).getType() != Opcode.OpcodeType.CALL_ADDR) return step();
+        int returnAddress = pc + 2;
+        int depth = cpu.getStack().getPointer();
+        Predicate<CPU> returned = c -> c.getProgramCounter() == returnAddress && c.getStack().getPointer() == depth;
+        addCondition(returned);
+        try {
+            Stop reason = run(STEP_OVER_FRAMES);
+            return reason == Stop.CONDITION && metCondition == returned ? Stop.STEP : reason;
+        } finally {
+            removeCondition(returned);
+        }
+    }
+
+    /**
+     * @return the watched address written by the instruction that stopped execution, -1 if none did
+     */
+    public int getWriteAddress() {
+        return writeAddress;
+    }
+
+    private void updateHandlers() {
+        boolean needed = stepping || breakpointCount > 0 || !conditions.isEmpty();
+        if (needed == checking) return;
+        checking = needed;
+        cpu.installHandlers(needed ? checked : null);
+    }
+
+    private void afterInstruction() {
+        if (stepping) {
+            stop(Stop.STEP);
+            return;
+        }
+        if (breakpoints[cpu.getProgramCounter() & mask]) {
+            stop(Stop.BREAKPOINT);
+            return;
+        }
+        for (Predicate<CPU> condition : conditions) {
+            if (condition.test(cpu)) {
+                metCondition = condition;
+                stop(Stop.CONDITION);
+                return;
+            }
+        }
+    }
+
+    private void written(int address, int length) {
+        if (!running || watchedCount == 0) return;
+        for (int i = 0; i < length; i++) {
+            if (watched[(address + i) & mask]) {
+                writeAddress = (address + i) & mask;
+                stop(Stop.WATCHPOINT);
+                return;
+            }
+        }
+    }
+
+    private void stop(Stop reason) {
+        if (stop == null) stop = reason;
+        cpu.requestBreak();
+    }
+}
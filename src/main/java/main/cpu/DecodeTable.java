@@ -0,0 +1,40 @@
+package main.cpu;
+
+import main.memory.Memory;
+
+/**
+ * The type of the instruction at every address of a memory image, decoded once and shared, read-only, by every
+ * machine starting from that image: a CPU given the table builds its blocks without decoding anything
+ */
+public final class DecodeTable {
+    private static final Opcode.OpcodeType[] TYPES = Opcode.OpcodeType.values();
+
+    private final byte[] types;
+    private final int mask;
+
+    private DecodeTable(byte[] types) {
+        this.types = types;
+        this.mask = types.length - 1;
+    }
+
+    /**
+     * Decodes the instruction starting at every address of the memory, odd ones included
+     */
+    public static DecodeTable of(Memory memory) {
+        byte[] types = new byte[memory.size()];
+        for (int address = 0; address < types.length; address++)
+            types[address] = (byte) CPU.decode(memory.readInstruction(address)).getType().ordinal();
+        return new DecodeTable(types);
+    }
+
+    Opcode.OpcodeType typeAt(int address) {
+        return TYPES[types[address & mask]];
+    }
+
+    /**
+     * @return bytes of the memory the table was decoded from
+     */
+    public int size() {
+        return types.length;
+    }
+}
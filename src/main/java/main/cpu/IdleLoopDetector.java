@@ -0,0 +1,98 @@
+package main.cpu;
+
+import main.memory.Memory;
+
+import java.util.Arrays;
+
+/**
+ * Recognises loops that do nothing but wait, so a frame spent in them can be skipped instead of executed:
+ * <ul>
+ *     <li>delay waits: {@code LD Vx, DT; SE Vx, 0; JP back}, spinning until the delay timer reaches 0</li>
+ *     <li>key waits: {@code LD Vx, K} with no key pressed</li>
+ *     <li>halts: {@code JP} to itself</li>
+ * </ul>
+ * Patterns are matched on the instructions in memory and the outcome is remembered per address, so looking up
+ * an address is a single array read. Writes to memory forget the outcome of every pattern they could overlap,
+ * since a ROM could overwrite its own code.
+ */
+class IdleLoopDetector {
+    static final byte UNKNOWN = 0;
+    static final byte NONE = 1;
+    static final byte DELAY_WAIT = 2;
+    static final byte KEY_WAIT = 3;
+    static final byte HALT = 4;
+    // longest pattern, the delay wait
+    private static final int PATTERN_BYTES = 6;
+
+    private final Memory memory;
+    private final byte[] kinds;
+    private long skippedInstructions;
+    private boolean enabled = true;
+
+    IdleLoopDetector(Memory memory) {
+        this.memory = memory;
+        this.kinds = new byte[memory.size()];
+        memory.addWriteWatcher(this::forget);
+    }
+
+    private void forget(int address, int length) {
+        int mask = kinds.length - 1;
+        for (int a = address - PATTERN_BYTES + 1; a < address + length; a++) {
+            kinds[a & mask] = UNKNOWN;
+        }
+    }
+
+    /**
+     * Stops (or resumes) recognising idle loops, e.g. while every instruction has to really be executed
+     */
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        Arrays.fill(kinds, UNKNOWN);
+    }
+
+    /**
+     * @return kind of idle loop starting at the address, NONE if there is none. A program counter that ran past the
+     * end of memory reads wrapped instructions, but a JP there never goes back to its own address
+     */
+    byte kindAt(int pc) {
+        if (pc >= kinds.length) return NONE;
+        byte kind = kinds[pc];
+        if (kind != UNKNOWN) return kind;
+        kind = match(pc);
+        kinds[pc] = kind;
+        return kind;
+    }
+
+    private byte match(int pc) {
+        if (!enabled) return NONE;
+        if (pc + 1 >= memory.size()) return NONE;
+        char first = memory.readInstruction(pc);
+        if (jumpsTo(first, pc)) return HALT;
+        if ((first & 0xF0FF) == 0xF00A) return KEY_WAIT;
+        if ((first & 0xF0FF) == 0xF007 && pc + 5 < memory.size()) {
+            int x = first & 0x0F00;
+            if (memory.readInstruction(pc + 2) == (0x3000 | x) && jumpsTo(memory.readInstruction(pc + 4), pc))
+                return DELAY_WAIT;
+        }
+        return NONE;
+    }
+
+    /**
+     * @return true if the instruction is JP to the address. JP only reaches the first 4K, so from 0x1000 up in
+     * XO-CHIP memory 1NNN jumps elsewhere, never to its own address
+     */
+    private static boolean jumpsTo(char instruction, int address) {
+        return address <= 0xFFF && (instruction & 0xF000) == 0x1000 && (instruction & 0x0FFF) == address;
+    }
+
+    void recordSkipped(long instructions) {
+        skippedInstructions += instructions;
+    }
+
+    /**
+     * @return number of instructions that were not executed because they were part of an idle loop
+     */
+    long getSkippedInstructions() {
+        return skippedInstructions;
+    }
+}
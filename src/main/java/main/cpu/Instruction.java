@@ -0,0 +1,10 @@
+package main.cpu;
+
+/**
+ * Executes a decoded instruction. The CPU keeps one of these per opcode type, chosen once from the quirks
+ * profile, so executing an instruction never has to check which variant of CHIP-8 is being emulated.
+ */
+@FunctionalInterface
+public interface Instruction {
+    void execute(char instruction);
+}
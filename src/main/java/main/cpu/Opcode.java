@@ -17,6 +17,10 @@ public class Opcode {
         LD_VX_VY, OR_VX_VY, AND_VX_VY, XOR_VX_VY, ADD_VX_VY, SUB_VX_VY, SHR_VX_VY, SUBN_VX_VY,
         SHL_VX_VY, SNE_VX_VY, LD_I_ADDR, JP_V0_ADDR, RND_VX_BYTE, DRW_VX_VY_NIBBLE, SKP_VX,
         SKNP_VX, LD_VX_DT, LD_VX_K, LD_DT_VX, LD_ST_VX, ADD_I_VX, LD_F_VX, LD_B_VX, LD_I_VX, LD_VX_I,
+        // SUPER-CHIP
+        SCD_NIBBLE, SCR, SCL, EXIT, LOW, HIGH, LD_HF_VX, LD_R_VX, LD_VX_R,
+        // XO-CHIP
+        SCU_NIBBLE, SAVE_VX_VY, LOAD_VX_VY, LD_I_LONG, PLANE_N, AUDIO, PITCH_VX,
         UNSUPPORTED
     }
 
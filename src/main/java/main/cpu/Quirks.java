@@ -0,0 +1,113 @@
+package main.cpu;
+
+import main.memory.Memory;
+
+/**
+ * Behaviours that differ between CHIP-8 implementations. A profile is chosen per ROM and is
+ * used by the CPU to pick its instruction handlers before anything runs.
+ */
+public class Quirks {
+    /**
+     * The behaviour this emulator always had: shifts ignore Vy, I is left untouched by FX55/FX65, sprites wrap around
+     * the right edge but are cut at the bottom one, and aren't drawn at all when Vy is below the screen.
+     * The one difference is VF after DXYN, which now reports a collision on any row, where it only kept the last one
+     */
+    public static final Quirks LEGACY = new Quirks("legacy", false, false, false, false, true, true, false,
+            Memory.CHIP8_SIZE);
+    /**
+     * The original COSMAC VIP interpreter
+     */
+    public static final Quirks CHIP8 = new Quirks("chip8", true, true, false, true, true, false, true,
+            Memory.CHIP8_SIZE);
+    public static final Quirks SUPER_CHIP = new Quirks("schip", false, false, true, true, true, false, false,
+            Memory.CHIP8_SIZE);
+    public static final Quirks XO_CHIP = new Quirks("xochip", true, true, false, false, false, false, false,
+            Memory.XO_CHIP_SIZE);
+
+    private final String name;
+    private final boolean shiftUsesVy;
+    private final boolean loadStoreIncrementsI;
+    private final boolean jumpUsesVx;
+    private final boolean clipSpritesHorizontally;
+    private final boolean clipSpritesVertically;
+    private final boolean dropSpritesBelowScreen;
+    private final boolean logicResetsVf;
+    private final int memorySize;
+
+    /**
+     * @param shiftUsesVy 8XY6 / 8XYE shift Vy into Vx, instead of shifting Vx in place
+     * @param loadStoreIncrementsI FX55 / FX65 leave I pointing past the last register
+     * @param jumpUsesVx BNNN jumps to NNN + VX, where X is the highest nibble of NNN, instead of NNN + V0
+     * @param clipSpritesHorizontally sprites are cut at the right edge of the screen instead of wrapping around
+     * @param clipSpritesVertically sprites are cut at the bottom edge of the screen instead of wrapping around
+     * @param dropSpritesBelowScreen a sprite whose Vy is below the screen isn't drawn, instead of starting from Vy
+     *                               wrapped around the screen
+     * @param logicResetsVf 8XY1, 8XY2 and 8XY3 set VF to 0
+     * @param memorySize bytes of memory the ROM expects
+     */
+    public Quirks(String name, boolean shiftUsesVy, boolean loadStoreIncrementsI, boolean jumpUsesVx,
+                  boolean clipSpritesHorizontally, boolean clipSpritesVertically, boolean dropSpritesBelowScreen,
+                  boolean logicResetsVf, int memorySize) {
+        this.name = name;
+        this.shiftUsesVy = shiftUsesVy;
+        this.loadStoreIncrementsI = loadStoreIncrementsI;
+        this.jumpUsesVx = jumpUsesVx;
+        this.clipSpritesHorizontally = clipSpritesHorizontally;
+        this.clipSpritesVertically = clipSpritesVertically;
+        this.dropSpritesBelowScreen = dropSpritesBelowScreen;
+        this.logicResetsVf = logicResetsVf;
+        this.memorySize = memorySize;
+    }
+
+    /**
+     * @param name name of one of the predefined profiles, case insensitive
+     * @return the profile, or null if no profile has that name
+     */
+    public static Quirks forName(String name) {
+        for (Quirks quirks : new Quirks[]{LEGACY, CHIP8, SUPER_CHIP, XO_CHIP}) {
+            if (quirks.name.equalsIgnoreCase(name)) return quirks;
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean shiftUsesVy() {
+        return shiftUsesVy;
+    }
+
+    public boolean loadStoreIncrementsI() {
+        return loadStoreIncrementsI;
+    }
+
+    public boolean jumpUsesVx() {
+        return jumpUsesVx;
+    }
+
+    public boolean clipSpritesHorizontally() {
+        return clipSpritesHorizontally;
+    }
+
+    public boolean clipSpritesVertically() {
+        return clipSpritesVertically;
+    }
+
+    public boolean dropSpritesBelowScreen() {
+        return dropSpritesBelowScreen;
+    }
+
+    public boolean logicResetsVf() {
+        return logicResetsVf;
+    }
+
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,86 @@
+package main.cpu;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps ROMs to the quirks profile they need, using the SHA-1 of the ROM content.
+ * Entries are read from lines in the form {@code <sha1> <profile> [# comment]}
+ */
+public class QuirksDatabase {
+    private static final String DEFAULT_RESOURCE = "/quirks.txt";
+
+    private final Map<String, Quirks> profiles;
+
+    public QuirksDatabase() {
+        this.profiles = new HashMap<>();
+    }
+
+    /**
+     * @return database with the entries shipped in the quirks.txt resource
+     */
+    public static QuirksDatabase loadDefault() throws IOException {
+        QuirksDatabase database = new QuirksDatabase();
+        try (InputStream in = QuirksDatabase.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in != null) database.load(in);
+        }
+        return database;
+    }
+
+    public void load(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            String[] parts = line.split("\\s+");
+            Quirks quirks = parts.length == 2 ? Quirks.forName(parts[1]) : null;
+            if (quirks == null)
+                throw new IOException("Invalid quirks database entry: " + line);
+            profiles.put(parts[0].toLowerCase(), quirks);
+        }
+    }
+
+    public void put(byte[] rom, Quirks quirks) {
+        profiles.put(hash(rom), quirks);
+    }
+
+    /**
+     * @return profile registered for the ROM, or defaultQuirks if the ROM is unknown
+     */
+    public Quirks lookup(byte[] rom, Quirks defaultQuirks) {
+        return profiles.getOrDefault(hash(rom), defaultQuirks);
+    }
+
+    /**
+     * Same as lookup(byte[], Quirks), for a ROM already hashed with hash()
+     */
+    public Quirks lookup(String romHash, Quirks defaultQuirks) {
+        return profiles.getOrDefault(romHash, defaultQuirks);
+    }
+
+    /**
+     * @return hex encoded SHA-1 of the ROM
+     */
+    public static String hash(byte[] rom) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(rom);
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(String.format("%02x", b & 0xFF));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
@@ -1,25 +1,187 @@
 package main.cpu;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public class Stack {
+    public static final int DEFAULT_DEPTH = 16;
+    // deepest a stack can be, growing or not, so that a machine slot holds every entry
+    public static final int MAX_DEPTH = 256;
+    // bytes saveState writes for a stack at MAX_DEPTH: the pointer and every entry
+    public static final int SAVED_SIZE = 2 + 2 * MAX_DEPTH;
+
+    /**
+     * What happens to a CALL with the stack full
+     */
+    public enum OverflowPolicy {
+        // the CALL isn't executed and the CPU stops on it, as well as on a RET with the stack empty
+        FAULT,
+        // the pointer wraps around, overwriting the oldest entry, and a RET with the stack empty wraps to the top
+        WRAP,
+        // the stack doubles its depth, for ROMs recursing deeper than the original hardware allowed, up to MAX_DEPTH
+        // where a CALL faults as with FAULT. A RET with the stack empty faults
+        GROW
+    }
+
     /**
      * The stack contains a collection of 16bit values, representing addresses in memory
      * Since there is no unsigned numeric type in java except for char, which is 16bit,
      * I'm using char values to represent 16bit unsigned integers.
      */
-    private char[] array = new char[16];
+    private char[] array;
+    // what an engine linked to the return address of every entry, see setLink()
+    private Object[] links;
     private int pointer = -1;
+    private final OverflowPolicy policy;
+    private StackListener listener;
 
-    public void setAddress(char address) {
+    public Stack() {
+        this(DEFAULT_DEPTH, OverflowPolicy.FAULT);
+    }
+
+    /**
+     * @param depth entries the stack holds, or starts with for the GROW policy
+     */
+    public Stack(int depth, OverflowPolicy policy) {
+        if (depth < 1) throw new IllegalArgumentException("The stack must hold one entry at least");
+        if (depth > MAX_DEPTH) throw new IllegalArgumentException("The stack can't hold more than " + MAX_DEPTH + " entries");
+        this.array = new char[depth];
+        this.links = new Object[depth];
+        this.policy = policy;
+    }
+
+    /**
+     * Pushes a return address, applying the overflow policy when the stack is full
+     * @return false if the stack is full under the FAULT policy, or at MAX_DEPTH under the GROW policy, in which
+     * case nothing was pushed
+     */
+    public boolean push(char address) {
+        if (pointer == array.length - 1) {
+            switch (policy) {
+                case FAULT:
+                    if (listener != null) listener.faulted(true);
+                    return false;
+                case WRAP:
+                    pointer = -1;
+                    break;
+                case GROW:
+                    if (array.length == MAX_DEPTH) {
+                        if (listener != null) listener.faulted(true);
+                        return false;
+                    }
+                    grow(Math.min(array.length * 2, MAX_DEPTH));
+                    break;
+            }
+        }
         pointer++;
         array[pointer] = address;
+        links[pointer] = null;
+        if (listener != null) listener.called(address, pointer + 1);
+        return true;
     }
 
-    public char getAddress() {
+    /**
+     * Pops the return address on top of the stack
+     * @return the address, or -1 if the stack is empty and the policy isn't WRAP
+     */
+    public int pop() {
+        if (pointer < 0) {
+            if (policy != OverflowPolicy.WRAP) {
+                if (listener != null) listener.faulted(false);
+                return -1;
+            }
+            pointer = array.length - 1;
+        }
         char address = array[pointer];
         pointer--;
+        if (listener != null) listener.returned(address, pointer + 1);
         return address;
     }
 
+    private void grow(int depth) {
+        array = Arrays.copyOf(array, depth);
+        links = Arrays.copyOf(links, depth);
+    }
+
+    /**
+     * Same as push(), throwing instead of returning false
+     * @throws StackFaultException if the stack is full under the FAULT policy, or at MAX_DEPTH under the GROW policy
+     */
+    public void setAddress(char address) {
+        if (!push(address)) throw new StackFaultException(true);
+    }
+
+    /**
+     * Same as pop(), throwing instead of returning -1
+     * @throws StackFaultException if the stack is empty and the policy isn't WRAP
+     */
+    public char getAddress() {
+        int address = pop();
+        if (address < 0) throw new StackFaultException(false);
+        return (char) address;
+    }
+
+    /**
+     * Links an object to the entry on top of the stack, forgotten when the entry is overwritten.
+     * This is a return address prediction cache: an engine translating code into blocks links the block
+     * at the return address when executing a CALL, and a RET takes it back with getLink() instead of looking it up
+     */
+    public void setLink(Object link) {
+        if (pointer >= 0) links[pointer] = link;
+    }
+
+    /**
+     * @return the object linked to the entry on top of the stack, null if there's none or the stack is empty
+     */
+    public Object getLink() {
+        return pointer >= 0 ? links[pointer] : null;
+    }
+
+    /**
+     * Sets the hooks called on every push and pop, null for none
+     */
+    public void setListener(StackListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Copies the whole content of the stack, including the entries above the pointer, as far as the destination goes
+     */
+    public void copyTo(char[] destination) {
+        System.arraycopy(array, 0, destination, 0, Math.min(array.length, destination.length));
+    }
+
+    /**
+     * Writes the pointer, as a short, followed by the entries at the index of the buffer, SAVED_SIZE bytes at most
+     */
+    public void saveState(ByteBuffer buffer, int index) {
+        buffer.putShort(index, (short) pointer);
+        for (int i = 0; i < array.length; i++) {
+            buffer.putChar(index + 2 + 2 * i, array[i]);
+        }
+    }
+
+    /**
+     * Reads the state written by saveState. A stack with the GROW policy grows to hold every saved entry
+     * @throws IllegalArgumentException if the saved stack is deeper than this one and this one can't grow, in which
+     * case nothing is loaded
+     */
+    public void loadState(ByteBuffer buffer, int index) {
+        int saved = buffer.getShort(index);
+        if (saved >= array.length) {
+            if (policy != OverflowPolicy.GROW)
+                throw new IllegalArgumentException("A stack of " + array.length + " entries can't load " + (saved + 1));
+            int depth = array.length;
+            while (depth <= saved) depth = Math.min(depth * 2, MAX_DEPTH);
+            grow(depth);
+        }
+        pointer = saved;
+        for (int i = 0; i < array.length; i++) {
+            array[i] = buffer.getChar(index + 2 + 2 * i);
+        }
+        Arrays.fill(links, null);
+    }
+
     public int getPointer() {
         return pointer;
     }
@@ -27,4 +189,12 @@ public class Stack {
     public void setPointer(int pointer) {
         this.pointer = pointer;
     }
+
+    public int getDepth() {
+        return array.length;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
 }
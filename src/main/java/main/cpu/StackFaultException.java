@@ -0,0 +1,21 @@
+package main.cpu;
+
+/**
+ * A CALL with the stack full, or a RET with the stack empty, under the FAULT overflow policy.
+ * It's a fault of the ROM rather than of the emulator, so it carries no stack trace
+ */
+public class StackFaultException extends RuntimeException {
+    private final boolean overflow;
+
+    public StackFaultException(boolean overflow) {
+        super(overflow ? "Stack overflow" : "Stack underflow", null, false, false);
+        this.overflow = overflow;
+    }
+
+    /**
+     * @return true for an overflow, false for an underflow
+     */
+    public boolean isOverflow() {
+        return overflow;
+    }
+}
@@ -0,0 +1,24 @@
+package main.cpu;
+
+/**
+ * Hooks called by a Stack on every CALL and RET, e.g. for a profiler to attribute time to subroutines
+ */
+public interface StackListener {
+    /**
+     * @param returnAddress address pushed, the one the subroutine will return to
+     * @param depth entries on the stack, the new one included
+     */
+    void called(char returnAddress, int depth);
+
+    /**
+     * @param returnAddress address popped, the one execution returns to
+     * @param depth entries left on the stack
+     */
+    void returned(char returnAddress, int depth);
+
+    /**
+     * Called when a push or a pop faults, instead of called() or returned()
+     */
+    default void faulted(boolean overflow) {
+    }
+}
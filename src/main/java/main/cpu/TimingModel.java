@@ -0,0 +1,140 @@
+package main.cpu;
+
+import main.cpu.Opcode.OpcodeType;
+
+import java.util.Arrays;
+
+/**
+ * How long instructions take, in emulated cycles, and how many cycles fit in a 60Hz frame.
+ * The CPU spends a frame's budget of cycles and then ticks the timers, so the speed of a ROM only depends on the
+ * model and never on the host.
+ */
+public class TimingModel {
+    /**
+     * The pace this emulator always had: every instruction costs the same, about one every 2ms
+     */
+    public static final TimingModel FIXED = fixed(8);
+    /**
+     * Approximate timings of the COSMAC VIP interpreter, in machine cycles of the 1.76MHz CDP1802 (8 clocks each).
+     * DRW waits for the vertical blank, so at most one sprite is drawn per frame
+     */
+    public static final TimingModel COSMAC_VIP = vip();
+
+    private final String name;
+    private final int cyclesPerFrame;
+    private final boolean drawWaitsForVblank;
+    private final int[] costs;
+
+    /**
+     * @param cyclesPerFrame cycles run between two timer ticks
+     * @param drawWaitsForVblank DRW ends the frame, like the VIP which waited for the display interrupt before drawing
+     * @param costs cycles taken by each instruction, indexed by OpcodeType.ordinal()
+     */
+    public TimingModel(String name, int cyclesPerFrame, boolean drawWaitsForVblank, int[] costs) {
+        if (costs.length != OpcodeType.values().length)
+            throw new IllegalArgumentException("Expected a cost for each of the " + OpcodeType.values().length + " opcode types");
+        for (int cost : costs) {
+            if (cost <= 0) throw new IllegalArgumentException("Instruction costs must be positive");
+        }
+        this.name = name;
+        this.cyclesPerFrame = cyclesPerFrame;
+        this.drawWaitsForVblank = drawWaitsForVblank;
+        this.costs = costs.clone();
+    }
+
+    /**
+     * @return a model where every instruction takes a single cycle
+     */
+    public static TimingModel fixed(int instructionsPerFrame) {
+        int[] costs = new int[OpcodeType.values().length];
+        Arrays.fill(costs, 1);
+        return new TimingModel("fixed", instructionsPerFrame, false, costs);
+    }
+
+    private static TimingModel vip() {
+        int[] costs = new int[OpcodeType.values().length];
+        // the VIP has no SUPER-CHIP or XO-CHIP instructions, those cost as much as an average one
+        Arrays.fill(costs, 20);
+        costs[OpcodeType.CLS.ordinal()] = 680;
+        costs[OpcodeType.RET.ordinal()] = 10;
+        costs[OpcodeType.JP_ADDR.ordinal()] = 12;
+        costs[OpcodeType.CALL_ADDR.ordinal()] = 26;
+        costs[OpcodeType.SE_VX_BYTE.ordinal()] = 10;
+        costs[OpcodeType.SNE_VX_BYTE.ordinal()] = 10;
+        costs[OpcodeType.SE_VX_VY.ordinal()] = 14;
+        costs[OpcodeType.SNE_VX_VY.ordinal()] = 14;
+        costs[OpcodeType.LD_VX_BYTE.ordinal()] = 6;
+        costs[OpcodeType.ADD_VX_BYTE.ordinal()] = 10;
+        costs[OpcodeType.LD_VX_VY.ordinal()] = 12;
+        for (OpcodeType type : new OpcodeType[]{OpcodeType.OR_VX_VY, OpcodeType.AND_VX_VY, OpcodeType.XOR_VX_VY,
+                OpcodeType.ADD_VX_VY, OpcodeType.SUB_VX_VY, OpcodeType.SHR_VX_VY, OpcodeType.SUBN_VX_VY,
+                OpcodeType.SHL_VX_VY}) {
+            costs[type.ordinal()] = 44;
+        }
+        costs[OpcodeType.LD_I_ADDR.ordinal()] = 12;
+        costs[OpcodeType.JP_V0_ADDR.ordinal()] = 22;
+        costs[OpcodeType.RND_VX_BYTE.ordinal()] = 36;
+        costs[OpcodeType.DRW_VX_VY_NIBBLE.ordinal()] = 170;
+        costs[OpcodeType.SKP_VX.ordinal()] = 14;
+        costs[OpcodeType.SKNP_VX.ordinal()] = 14;
+        costs[OpcodeType.LD_VX_DT.ordinal()] = 10;
+        costs[OpcodeType.LD_VX_K.ordinal()] = 18;
+        costs[OpcodeType.LD_DT_VX.ordinal()] = 10;
+        costs[OpcodeType.LD_ST_VX.ordinal()] = 10;
+        costs[OpcodeType.ADD_I_VX.ordinal()] = 16;
+        costs[OpcodeType.LD_F_VX.ordinal()] = 20;
+        costs[OpcodeType.LD_B_VX.ordinal()] = 80;
+        costs[OpcodeType.LD_I_VX.ordinal()] = 64;
+        costs[OpcodeType.LD_VX_I.ordinal()] = 64;
+        // 1 760 000 Hz / 8 clocks per machine cycle / 60Hz
+        return new TimingModel("vip", 3668, true, costs);
+    }
+
+    /**
+     * @return a copy of this model where instructions of the given type take a different number of cycles
+     */
+    public TimingModel withCost(OpcodeType type, int cycles) {
+        int[] changed = costs.clone();
+        changed[type.ordinal()] = cycles;
+        return new TimingModel(name, cyclesPerFrame, drawWaitsForVblank, changed);
+    }
+
+    /**
+     * @param name name of one of the predefined models, case insensitive
+     * @return the model, or null if no model has that name
+     */
+    public static TimingModel forName(String name) {
+        for (TimingModel model : new TimingModel[]{FIXED, COSMAC_VIP}) {
+            if (model.name.equalsIgnoreCase(name)) return model;
+        }
+        return null;
+    }
+
+    public int cost(OpcodeType type) {
+        return costs[type.ordinal()];
+    }
+
+    /**
+     * @return the costs indexed by OpcodeType.ordinal(), for the CPU's inner loop. Must not be modified
+     */
+    int[] getCosts() {
+        return costs;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCyclesPerFrame() {
+        return cyclesPerFrame;
+    }
+
+    public boolean drawWaitsForVblank() {
+        return drawWaitsForVblank;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,90 @@
+package main.diff;
+
+import main.cpu.CPU;
+import main.cpu.Quirks;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+
+/**
+ * The interpreter, as an Engine
+ */
+public class CpuEngine implements Engine {
+    private final Quirks quirks;
+    private final boolean frames;
+    private final boolean blocks;
+    private CPU cpu;
+    private Stack stack;
+    private Memory memory;
+    private DisplayModel display;
+    private Keyboard keyboard;
+
+    /**
+     * @param frames true to run frames with CPU.runFrame, which skips idle loops, false to step every instruction
+     */
+    public CpuEngine(Quirks quirks, boolean frames) {
+        this(quirks, frames, false);
+    }
+
+    /**
+     * @param blocks true for frames to run decoded blocks of instructions, false to run them one at a time
+     */
+    public CpuEngine(Quirks quirks, boolean frames, boolean blocks) {
+        this.quirks = quirks;
+        this.frames = frames;
+        this.blocks = blocks;
+    }
+
+    @Override
+    public void reset(byte[] rom, long seed) {
+        stack = new Stack();
+        memory = new Memory(quirks.getMemorySize());
+        memory.loadGame(rom);
+        display = new DisplayModel();
+        keyboard = new Keyboard();
+        cpu = new CPU(stack, memory, display, keyboard, quirks);
+        cpu.setRandomSeed(seed);
+        cpu.setBlocksEnabled(blocks);
+    }
+
+    @Override
+    public boolean step() {
+        return checkFault(cpu.step());
+    }
+
+    @Override
+    public void tickTimers() {
+        cpu.tickTimers();
+    }
+
+    @Override
+    public boolean runFrame(int instructionsPerFrame) {
+        if (frames) return checkFault(cpu.runFrame(instructionsPerFrame));
+        return Engine.super.runFrame(instructionsPerFrame);
+    }
+
+    /**
+     * Engines only return false for unsupported instructions: stack faults are thrown
+     */
+    private boolean checkFault(boolean supported) {
+        if (!supported && cpu.getStackFault() != null) throw cpu.getStackFault();
+        return supported;
+    }
+
+    @Override
+    public void setKey(char key) {
+        if (key == 0xFFFF) keyboard.release(keyboard.getCurrentKeyPressed());
+        else keyboard.press(key);
+    }
+
+    @Override
+    public boolean isHalted() {
+        return cpu.isHalted();
+    }
+
+    @Override
+    public void capture(MachineState state) {
+        state.capture(cpu, stack, memory, display);
+    }
+}
@@ -0,0 +1,48 @@
+package main.diff;
+
+/**
+ * Outcome of running one ROM on two engines
+ */
+public class DiffResult {
+    private final String name;
+    private final long frames;
+    private final String ending;
+    private final Divergence divergence;
+
+    /**
+     * @param ending why the run stopped
+     * @param divergence null if the engines always agreed
+     */
+    public DiffResult(String name, long frames, String ending, Divergence divergence) {
+        this.name = name;
+        this.frames = frames;
+        this.ending = ending;
+        this.divergence = divergence;
+    }
+
+    public boolean passed() {
+        return divergence == null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public String getEnding() {
+        return ending;
+    }
+
+    public Divergence getDivergence() {
+        return divergence;
+    }
+
+    @Override
+    public String toString() {
+        if (passed()) return name + ": same state for " + frames + " frames, " + ending;
+        return name + ": " + divergence;
+    }
+}
@@ -0,0 +1,61 @@
+package main.diff;
+
+import main.cpu.Quirks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compares an engine against the interpreter on every ROM of a directory, from the command line:
+ * the directory, then optionally the candidate engine, the number of frames, and the quirks profile
+ */
+public class DifferentialRunner {
+    private static final int INSTRUCTIONS_PER_FRAME = 10;
+
+    /**
+     * @return every engine that can be compared, by name. The first one is the reference
+     */
+    static Map<String, Supplier<Engine>> engines(Quirks quirks) {
+        Map<String, Supplier<Engine>> engines = new LinkedHashMap<>();
+        engines.put("interpreter", () -> new CpuEngine(quirks, false));
+        engines.put("frames", () -> new CpuEngine(quirks, true));
+        engines.put("blocks", () -> new CpuEngine(quirks, true, true));
+        return engines;
+    }
+
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: DifferentialRunner <rom directory> [candidate] [frames] [quirks]");
+            return;
+        }
+        String candidateName = args.length > 1 ? args[1] : "frames";
+        long frames = args.length > 2 ? Long.parseLong(args[2]) : 3600;
+        Quirks quirks = args.length > 3 ? Quirks.forName(args[3]) : Quirks.LEGACY;
+        if (quirks == null) {
+            System.out.println("No quirks profile with name " + args[3] + " exists");
+            return;
+        }
+        Map<String, Supplier<Engine>> engines = engines(quirks);
+        Supplier<Engine> candidate = engines.get(candidateName);
+        if (candidate == null) {
+            System.out.println("Unknown engine " + candidateName + ", available: " + engines.keySet());
+            return;
+        }
+
+        // engines that don't stop after every instruction can only be compared frame by frame
+        boolean perInstruction = candidateName.equals("interpreter");
+        DifferentialTester tester = new DifferentialTester(engines.get("interpreter"), candidate,
+                INSTRUCTIONS_PER_FRAME, frames, perInstruction);
+        List<DiffResult> results = tester.runLibrary(Path.of(args[0]), 0);
+        int failed = 0;
+        for (DiffResult result : results) {
+            System.out.println(result);
+            if (!result.passed()) failed++;
+        }
+        System.out.println(results.size() + " ROMs compared, " + failed + " diverged");
+    }
+}
@@ -0,0 +1,153 @@
+package main.diff;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs a reference engine and a candidate engine in lockstep on the same ROM and the same inputs, comparing their
+ * whole state after every instruction, or after every frame for engines that don't execute one instruction at a time,
+ * and stops at the first difference.
+ * The key held down changes randomly at the start of frames, from a seed that also seeds RND, so every run can be replayed
+ */
+public class DifferentialTester {
+    private final Supplier<Engine> reference;
+    private final Supplier<Engine> candidate;
+    private final int instructionsPerFrame;
+    private final long maxFrames;
+    private final boolean perInstruction;
+
+    /**
+     * @param perInstruction true to compare after every instruction, false after every frame
+     */
+    public DifferentialTester(Supplier<Engine> reference, Supplier<Engine> candidate, int instructionsPerFrame,
+                              long maxFrames, boolean perInstruction) {
+        this.reference = reference;
+        this.candidate = candidate;
+        this.instructionsPerFrame = instructionsPerFrame;
+        this.maxFrames = maxFrames;
+        this.perInstruction = perInstruction;
+    }
+
+    /**
+     * Compares both engines on every file of a directory, in parallel
+     */
+    public List<DiffResult> runLibrary(Path directory, long seed) throws IOException {
+        List<Path> roms;
+        try (Stream<Path> files = Files.list(directory)) {
+            roms = files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        return roms.parallelStream()
+                .map(rom -> {
+                    try {
+                        return run(rom.getFileName().toString(), Files.readAllBytes(rom), seed);
+                    } catch (IOException e) {
+                        return new DiffResult(rom.getFileName().toString(), 0, "unreadable: " + e.getMessage(), null);
+                    }
+                })
+                .sorted(Comparator.comparing(DiffResult::getName))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Compares both engines on every ROM, in parallel
+     */
+    public List<DiffResult> runCorpus(Map<String, byte[]> roms, long seed) {
+        return roms.entrySet().parallelStream()
+                .map(rom -> run(rom.getKey(), rom.getValue(), seed))
+                .sorted(Comparator.comparing(DiffResult::getName))
+                .collect(Collectors.toList());
+    }
+
+    public DiffResult run(String name, byte[] rom, long seed) {
+        Engine expected = reference.get();
+        Engine actual = candidate.get();
+        expected.reset(rom, seed);
+        actual.reset(rom, seed);
+        MachineState expectedState = new MachineState();
+        MachineState actualState = new MachineState();
+        SplittableRandom input = new SplittableRandom(seed);
+        long instructions = 0;
+
+        for (long frame = 0; frame < maxFrames; frame++) {
+            char key = input.nextInt(4) == 0 ? (char) input.nextInt(16) : 0xFFFF;
+            expected.setKey(key);
+            actual.setKey(key);
+            Outcome expectedOutcome;
+            Outcome actualOutcome;
+            if (perInstruction) {
+                for (int i = 0; i < instructionsPerFrame && !expected.isHalted(); i++) {
+                    expectedOutcome = Outcome.of(expected::step);
+                    actualOutcome = Outcome.of(actual::step);
+                    instructions++;
+                    Divergence divergence = compare(expected, actual, expectedState, actualState, frame, instructions,
+                            expectedOutcome, actualOutcome);
+                    if (divergence != null) return new DiffResult(name, frame, "diverged", divergence);
+                    if (expectedOutcome.ended()) return new DiffResult(name, frame, expectedOutcome.description, null);
+                }
+                expectedOutcome = Outcome.of(() -> {
+                    expected.tickTimers();
+                    return true;
+                });
+                actualOutcome = Outcome.of(() -> {
+                    actual.tickTimers();
+                    return true;
+                });
+            } else {
+                expectedOutcome = Outcome.of(() -> expected.runFrame(instructionsPerFrame));
+                actualOutcome = Outcome.of(() -> actual.runFrame(instructionsPerFrame));
+            }
+            Divergence divergence = compare(expected, actual, expectedState, actualState, frame, 0,
+                    expectedOutcome, actualOutcome);
+            if (divergence != null) return new DiffResult(name, frame, "diverged", divergence);
+            if (expectedOutcome.ended()) return new DiffResult(name, frame + 1, expectedOutcome.description, null);
+            if (expected.isHalted()) return new DiffResult(name, frame + 1, "halted", null);
+        }
+        return new DiffResult(name, maxFrames, "frame limit reached", null);
+    }
+
+    private Divergence compare(Engine expected, Engine actual, MachineState expectedState, MachineState actualState,
+                               long frame, long instruction, Outcome expectedOutcome, Outcome actualOutcome) {
+        List<String> differences = new ArrayList<>();
+        if (!expectedOutcome.description.equals(actualOutcome.description))
+            differences.add("reference " + expectedOutcome.description + ", candidate " + actualOutcome.description);
+        expected.capture(expectedState);
+        actual.capture(actualState);
+        differences.addAll(expectedState.differences(actualState));
+        if (differences.isEmpty()) return null;
+        return new Divergence(frame, instruction, differences, expectedState.dump(), actualState.dump());
+    }
+
+    /**
+     * How a call to an engine went
+     */
+    private static class Outcome {
+        private static final String RUNNING = "running";
+
+        final String description;
+
+        private Outcome(String description) {
+            this.description = description;
+        }
+
+        static Outcome of(Supplier<Boolean> call) {
+            try {
+                return new Outcome(call.get() ? RUNNING : "met an unsupported instruction");
+            } catch (RuntimeException e) {
+                return new Outcome("threw " + e.getClass().getSimpleName());
+            }
+        }
+
+        boolean ended() {
+            return !description.equals(RUNNING);
+        }
+    }
+}
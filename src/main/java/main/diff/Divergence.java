@@ -0,0 +1,46 @@
+package main.diff;
+
+import java.util.List;
+
+/**
+ * First point where two engines disagreed, with the state of both
+ */
+public class Divergence {
+    private final long frame;
+    private final long instruction;
+    private final List<String> differences;
+    private final String referenceDump;
+    private final String candidateDump;
+
+    /**
+     * @param instruction instructions executed before the comparison, 0 when comparing whole frames
+     */
+    public Divergence(long frame, long instruction, List<String> differences, String referenceDump, String candidateDump) {
+        this.frame = frame;
+        this.instruction = instruction;
+        this.differences = differences;
+        this.referenceDump = referenceDump;
+        this.candidateDump = candidateDump;
+    }
+
+    public long getFrame() {
+        return frame;
+    }
+
+    public long getInstruction() {
+        return instruction;
+    }
+
+    public List<String> getDifferences() {
+        return differences;
+    }
+
+    @Override
+    public String toString() {
+        String separator = System.lineSeparator();
+        return "diverged in frame " + frame + (instruction > 0 ? ", after instruction " + instruction : "") + separator
+                + "  " + String.join(separator + "  ", differences) + separator
+                + "reference:" + separator + referenceDump
+                + "candidate:" + separator + candidateDump;
+    }
+}
@@ -0,0 +1,50 @@
+package main.diff;
+
+/**
+ * An implementation of the CHIP-8 machine that can be compared against another one.
+ * Everything that can change how a ROM runs (the ROM itself, the RND seed and the key pressed) is given by the caller,
+ * so two engines given the same inputs must end up in the same state
+ */
+public interface Engine {
+    /**
+     * Starts over with a new ROM
+     * @param seed seed of RND
+     */
+    void reset(byte[] rom, long seed);
+
+    /**
+     * Executes a single instruction
+     * @return false if the instruction is not supported
+     */
+    boolean step();
+
+    /**
+     * Decrements the timers, as happens 60 times per second
+     */
+    void tickTimers();
+
+    /**
+     * Runs a whole frame: instructions until the budget is spent or the machine halts, then a timer tick.
+     * Engines that work on larger units than instructions override this
+     * @return false if an unsupported instruction was met
+     */
+    default boolean runFrame(int instructionsPerFrame) {
+        for (int i = 0; i < instructionsPerFrame && !isHalted(); i++) {
+            if (!step()) return false;
+        }
+        tickTimers();
+        return true;
+    }
+
+    /**
+     * @param key hex value of the key held down, 0xFFFF for none
+     */
+    void setKey(char key);
+
+    boolean isHalted();
+
+    /**
+     * Copies the state of the machine, without allocating
+     */
+    void capture(MachineState state);
+}
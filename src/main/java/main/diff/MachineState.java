@@ -0,0 +1,125 @@
+package main.diff;
+
+import main.cpu.CPU;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.memory.Memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Everything observable about a machine at one point in time. Instances are reused from one capture to the next
+ */
+public class MachineState {
+    private static final int MAX_DISPLAY_WORDS = (DisplayModel.HIRES_WIDTH >>> 6) * DisplayModel.HIRES_HEIGHT
+            * DisplayModel.PLANES;
+
+    private final char[] registers = new char[16];
+    private final char[] flags = new char[16];
+    private final char[] stack = new char[16];
+    private final long[] display = new long[MAX_DISPLAY_WORDS];
+    private char[] memory = new char[0];
+    private char iRegister;
+    private char programCounter;
+    private char delayTimer;
+    private char soundTimer;
+    private int stackPointer;
+    private boolean halted;
+    private int width;
+    private int height;
+    private int displayWords;
+
+    void capture(CPU cpu, Stack cpuStack, Memory cpuMemory, DisplayModel model) {
+        System.arraycopy(cpu.getRegisters(), 0, registers, 0, registers.length);
+        System.arraycopy(cpu.getFlags(), 0, flags, 0, flags.length);
+        cpuStack.copyTo(stack);
+        if (memory.length != cpuMemory.size()) memory = new char[cpuMemory.size()];
+        cpuMemory.readBlock(0, memory, 0, memory.length);
+        iRegister = cpu.getIRegister();
+        programCounter = cpu.getProgramCounter();
+        delayTimer = cpu.getDelayTimer();
+        soundTimer = cpu.getSoundTimer();
+        stackPointer = cpuStack.getPointer();
+        halted = cpu.isHalted();
+        width = model.getWidth();
+        height = model.getHeight();
+        displayWords = model.getWordsPerRow() * height * DisplayModel.PLANES;
+        model.copyPlanes(display);
+    }
+
+    /**
+     * @return a description of every difference with the other state, empty if they are identical
+     */
+    public List<String> differences(MachineState other) {
+        List<String> differences = new ArrayList<>();
+        if (programCounter != other.programCounter)
+            differences.add(String.format("PC %03X != %03X", (int) programCounter, (int) other.programCounter));
+        if (iRegister != other.iRegister)
+            differences.add(String.format("I %03X != %03X", (int) iRegister, (int) other.iRegister));
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] != other.registers[i])
+                differences.add(String.format("V%X %02X != %02X", i, (int) registers[i], (int) other.registers[i]));
+        }
+        if (delayTimer != other.delayTimer)
+            differences.add("DT " + (int) delayTimer + " != " + (int) other.delayTimer);
+        if (soundTimer != other.soundTimer)
+            differences.add("ST " + (int) soundTimer + " != " + (int) other.soundTimer);
+        if (stackPointer != other.stackPointer)
+            differences.add("SP " + stackPointer + " != " + other.stackPointer);
+        for (int i = 0; i <= Math.min(stackPointer, stack.length - 1); i++) {
+            if (stack[i] != other.stack[i])
+                differences.add(String.format("stack[%d] %03X != %03X", i, (int) stack[i], (int) other.stack[i]));
+        }
+        if (!Arrays.equals(flags, other.flags)) differences.add("RPL flags differ");
+        if (halted != other.halted) differences.add("halted " + halted + " != " + other.halted);
+        int memoryDifferences = 0;
+        for (int i = 0; i < Math.min(memory.length, other.memory.length); i++) {
+            if (memory[i] == other.memory[i]) continue;
+            if (memoryDifferences++ < 8)
+                differences.add(String.format("memory[%03X] %02X != %02X", i, (int) memory[i], (int) other.memory[i]));
+        }
+        if (memoryDifferences > 8) differences.add((memoryDifferences - 8) + " more memory differences");
+        if (width != other.width || height != other.height)
+            differences.add("resolution " + width + "x" + height + " != " + other.width + "x" + other.height);
+        else if (!Arrays.equals(display, 0, displayWords, other.display, 0, other.displayWords))
+            differences.add("display differs");
+        return differences;
+    }
+
+    /**
+     * @return the registers, the stack and the screen, in a readable form
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        dump.append(String.format("PC=%03X I=%03X DT=%d ST=%d SP=%d%s%n", (int) programCounter, (int) iRegister,
+                (int) delayTimer, (int) soundTimer, stackPointer, halted ? " halted" : ""));
+        for (int i = 0; i < registers.length; i++)
+            dump.append(String.format("V%X=%02X%s", i, (int) registers[i], i == 7 || i == 15 ? System.lineSeparator() : " "));
+        dump.append("stack:");
+        for (int i = 0; i <= Math.min(stackPointer, stack.length - 1); i++)
+            dump.append(String.format(" %03X", (int) stack[i]));
+        dump.append(System.lineSeparator());
+        int wordsPerRow = width >>> 6;
+        int planeLength = wordsPerRow * height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int index = y * wordsPerRow + (x >>> 6);
+                int shift = 63 - (x & 63);
+                int pixel = (int) ((display[index] >>> shift) & 1L) | (int) ((display[planeLength + index] >>> shift) & 1L) << 1;
+                dump.append(" #+@".charAt(pixel));
+            }
+            dump.append(System.lineSeparator());
+        }
+        return dump.toString();
+    }
+
+    public char getProgramCounter() {
+        return programCounter;
+    }
+
+    public char[] getRegisters() {
+        return registers;
+    }
+}
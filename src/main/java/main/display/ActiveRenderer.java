@@ -0,0 +1,74 @@
+package main.display;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+
+/**
+ * Canvas that renders frames itself, using page flipping through a BufferStrategy, instead of waiting for Swing to
+ * paint it. It has no clock of its own: the render stage of a Pipeline calls renderLatest() on every tick of the
+ * timer the CPU publishes frames on. It keeps track of present latency and of frames that were published but never
+ * shown.
+ */
+public class ActiveRenderer extends Canvas {
+    private static final int BUFFERS = 3;
+
+    private final FrameBuffer frames;
+    private final FramePainter painter;
+    private final RenderStats stats;
+    private BufferStrategy strategy;
+    private long lastSequence;
+
+    public ActiveRenderer(FrameBuffer frames, int multiplier) {
+        this.frames = frames;
+        this.painter = new FramePainter(multiplier);
+        this.stats = new RenderStats();
+        this.setIgnoreRepaint(true);
+        this.setBackground(FramePainter.BACKGROUND_COLOUR);
+    }
+
+    /**
+     * Sets up page flipping, for the render stage to call renderLatest(). The canvas must already be displayable,
+     * i.e. added to a visible window
+     */
+    public void attach() {
+        createBufferStrategy(BUFFERS);
+        strategy = getBufferStrategy();
+    }
+
+    /**
+     * Presents the latest complete frame, if one was published since the last one presented.
+     * Must only be called from a single thread, once attach() was called
+     * @return true if a frame was presented
+     */
+    public boolean renderLatest() {
+        if (!frames.hasNewFrame()) return false;
+        Frame frame = frames.acquire();
+        present(strategy, frame);
+        long skipped = lastSequence == 0 ? 0 : frame.getSequence() - lastSequence - 1;
+        stats.recordPresent(System.nanoTime() - frame.getPublishTime(), skipped);
+        lastSequence = frame.getSequence();
+        return true;
+    }
+
+    private void present(BufferStrategy strategy, Frame frame) {
+        do {
+            do {
+                Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    g.setColor(FramePainter.BACKGROUND_COLOUR);
+                    g.fillRect(0, 0, getWidth(), getHeight());
+                    painter.paint(g, frame, 0, 0);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+            // flushes the pipeline so the flip is not delayed by the windowing system
+            Toolkit.getDefaultToolkit().sync();
+        } while (strategy.contentsLost());
+    }
+
+    public RenderStats getStats() {
+        return stats;
+    }
+}
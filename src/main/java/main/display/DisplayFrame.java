@@ -1,76 +1,128 @@
 package main.display;
 
 import main.keyboard.Keyboard;
+import main.pipeline.Pipeline;
 
 import javax.swing.*;
 import java.awt.*;
 
 public class DisplayFrame extends JFrame {
     private final DisplayModel model;
-    private int multiplier;
-    private int size;
+    private final FrameBuffer frames;
+    private final Keyboard keyboard;
+    private final FramePainter painter;
+    private final RenderMode mode;
+    private Timer refreshTimer;
+    private ActiveRenderer activeRenderer;
 
-    private static final Color PRIMARY_COLOUR = new Color(175, 129, 220);
-    private static final Color SECONDARY_COLOUR = new Color(41, 50, 95);
+    private static final int REFRESH_INTERVAL_MS = 16;
 
     public DisplayFrame(int multiplier) {
-        model = new DisplayModel();
-        this.multiplier = multiplier;
-
+        this(new DisplayModel(), new Keyboard(), multiplier, RenderMode.PASSIVE);
+    }
 
-        this.size = multiplier - multiplier/15;
+    public DisplayFrame(DisplayModel model, Keyboard keyboard, int multiplier, RenderMode mode) {
+        this(model, keyboard, multiplier, mode, null);
+    }
 
-        this.setBackground(new Color(45, 26, 64));
+    /**
+     * @param pipeline pipeline whose render stage drives active rendering, only needed for it.
+     *                 Passive rendering always paints on the EDT, as Swing requires
+     * @throws IllegalArgumentException if active rendering is asked for without a pipeline
+     */
+    public DisplayFrame(DisplayModel model, Keyboard keyboard, int multiplier, RenderMode mode, Pipeline pipeline) {
+        if (mode == RenderMode.ACTIVE && pipeline == null)
+            throw new IllegalArgumentException("Active rendering is driven by the render stage of a pipeline");
+        this.model = model;
+        this.frames = model.getFrameBuffer();
+        this.keyboard = keyboard;
+        this.painter = new FramePainter(multiplier);
+        this.mode = mode;
+
+        this.setBackground(FramePainter.BACKGROUND_COLOUR);
         this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         this.setLocationRelativeTo(null);
         this.setVisible(true);
         this.setResizable(false);
         this.setName("Chip8 - Emulator by Federico Favaro");
         this.setTitle("Chip8 - Emulator by Federico Favaro");
-        this.addKeyListener(new Keyboard());
-
-        int width = 64 * multiplier + this.getInsets().left + this.getInsets().right;
-        int height = 32 * multiplier + this.getInsets().top + this.getInsets().bottom;
-        this.setSize(width, height);
+        this.addKeyListener(keyboard);
+
+        if (mode == RenderMode.ACTIVE) {
+            this.setIgnoreRepaint(true);
+            activeRenderer = new ActiveRenderer(frames, multiplier);
+            activeRenderer.setPreferredSize(new Dimension(64 * multiplier, 32 * multiplier));
+            activeRenderer.addKeyListener(keyboard);
+            this.add(activeRenderer);
+            this.pack();
+            activeRenderer.requestFocus();
+            activeRenderer.attach();
+            pipeline.setRenderer(activeRenderer::renderLatest);
+        }
+        else {
+            int width = 64 * multiplier + this.getInsets().left + this.getInsets().right;
+            int height = 32 * multiplier + this.getInsets().top + this.getInsets().bottom;
+            this.setSize(width, height);
+
+            // Repaints are driven from the EDT at most once per tick, and only when the CPU published a new frame,
+            // instead of queueing a repaint for every sprite drawn
+            refreshTimer = new Timer(REFRESH_INTERVAL_MS, e -> {
+                if (frames.hasNewFrame()) repaint();
+            });
+            refreshTimer.start();
+        }
     }
 
     @Override
     public void paint(Graphics graphics) {
-        Graphics2D graphics2D = (Graphics2D) graphics;
-        for (int x = 0; x < 64; x++)
-            for (int y = 0; y < 32; y++) {
-                Coordinate coord = new Coordinate(x, y);
-                if (model.getBit(coord) == 1) drawAt(coord, graphics2D);
-                else drawBackroundAt(coord, graphics2D);
-            }
+        if (mode == RenderMode.ACTIVE) {
+            super.paint(graphics);
+            return;
+        }
+        painter.paint((Graphics2D) graphics, frames.acquire(), this.getInsets().left, this.getInsets().top);
     }
 
     public void drawAt(Coordinate coord, Graphics g) {
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setPaint(PRIMARY_COLOUR);
-        g2d.fillRect(coord.getX()*multiplier+this.getInsets().left, coord.getY()*multiplier+this.getInsets().top, size, size);
+        painter.paintPixel((Graphics2D) g, FramePainter.PRIMARY_COLOUR, coord.getX(), coord.getY(),
+                this.getInsets().left, this.getInsets().top);
     }
 
     public void drawBackroundAt(Coordinate coord, Graphics g) {
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setPaint(SECONDARY_COLOUR);
-        g2d.fillRect(coord.getX()*multiplier+this.getInsets().left, coord.getY()*multiplier+this.getInsets().top, size, size);
+        painter.paintPixel((Graphics2D) g, FramePainter.SECONDARY_COLOUR, coord.getX(), coord.getY(),
+                this.getInsets().left, this.getInsets().top);
     }
 
+    /**
+     * Draws on the model and publishes the result straight away.
+     * Only meant for drawing outside of the CPU, since the CPU publishes once per tick on its own
+     */
     public boolean drawSprite(Coordinate coord, char[] sprite) {
         boolean collision = model.drawSprite(coord, sprite);
-        repaint();
+        model.publish();
         return collision;
     }
 
     public void clear() {
         model.clear();
+        model.publish();
     }
 
     public char getKeyPressed() {
-        Keyboard keyboard = (Keyboard) getKeyListeners()[0];
         return keyboard.getCurrentKeyPressed();
     }
 
+    public DisplayModel getModel() {
+        return model;
+    }
+
+    public Keyboard getKeyboard() {
+        return keyboard;
+    }
 
+    /**
+     * @return statistics of the active renderer, or null when rendering through Swing
+     */
+    public RenderStats getRenderStats() {
+        return activeRenderer == null ? null : activeRenderer.getStats();
+    }
 }
@@ -1,68 +1,312 @@
 package main.display;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Frame buffer of the emulator. Pixels are packed one bit each into 64-bit words, most significant bit first,
+ * so a row of the original 64x32 display is a single long and a SUPER-CHIP 128x64 row is two.
+ * XO-CHIP bitplanes are stored as separate arrays with the same layout; drawing, clearing and scrolling
+ * only affect the planes currently selected.
+ */
 public class DisplayModel {
-    private int[] display;
+    public static final int LORES_WIDTH = 64;
+    public static final int LORES_HEIGHT = 32;
+    public static final int HIRES_WIDTH = 128;
+    public static final int HIRES_HEIGHT = 64;
+    public static final int PLANES = 2;
+
+    private int width;
+    private int height;
+    private int wordsPerRow;
+    private long[][] planes;
+    private int selectedPlanes;
+    private final FrameBuffer frameBuffer;
+    private final PlaneOps ops;
+    private boolean dirty;
+    // scratch buffer of the sprites drawn from chars, so that drawing them doesn't allocate
+    private byte[] spriteBuffer;
 
     public DisplayModel() {
-        this.display = new int[2048];
+        resize(LORES_WIDTH, LORES_HEIGHT);
+        this.selectedPlanes = 0b01;
+        this.frameBuffer = new FrameBuffer(width, height);
+        this.ops = PlaneOps.create();
+        this.spriteBuffer = new byte[16 * 2 * PLANES];
+        // the blank screen is published on the first tick, so a renderer always starts with a frame
+        this.dirty = true;
+    }
+
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = width >>> 6;
+        this.planes = new long[PLANES][wordsPerRow * height];
+        this.dirty = true;
     }
 
     public Coordinate indexToCoords(int index) {
-        if (index >= 2048 || index < 0)
+        if (index >= width * height || index < 0)
             throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for DisplayModel");
-        int y = index / 64;
-        int x = index % 64;
+        int y = index / width;
+        int x = index % width;
         return new Coordinate(x, y);
     }
 
     public int coordsToIndex(Coordinate coordinate) {
-        int x = coordinate.getX() % 64;
+        int x = coordinate.getX() % width;
         if (x < 0)
             throw new IndexOutOfBoundsException("Coordinate X is not valid");
         int y = coordinate.getY();
-        if (y > 31 || y < 0)
+        if (y >= height || y < 0)
             throw new IndexOutOfBoundsException("Coordinate Y is not valid");
-        return (y * 64) + x;
+        return (y * width) + x;
     }
 
+    /**
+     * Draws an 8 pixel wide sprite on every selected plane, wrapping around the edges of the screen
+     * @param coordinate top left corner of the sprite
+     * @param sprite one byte per row. When more than one plane is selected, the rows for the second plane follow the first ones
+     * @return true if a lit pixel was turned off
+     */
     public boolean drawSprite(Coordinate coordinate, char[] sprite) {
-        boolean collision = false;
-        for (int i = 0; i < sprite.length; i++) {
-            int y = coordinate.getY() + i;
-            if (y >= 32 || y < 0) break;
-            collision = drawByte(new Coordinate(coordinate.getX(), y), sprite[i]);
-        }
-        return collision;
-    }
-
-    private boolean drawByte(Coordinate coordinate, char b) {
-        b = (char) (b & 0x00FF);
-        char lsbMask = 0x0001;
-
-        boolean collision = false;
-        for (int i = 0; i < 8; i++) {
-            Coordinate tempCoord = new Coordinate(coordinate.getX(), coordinate.getY());
-            tempCoord.setX(coordinate.getX() + i);
-            int index = coordsToIndex(tempCoord);
-            char currentB = (char) ((b >>> (7-i)) & lsbMask);
-            int displayB = display[index];
-            if (displayB == 1 && currentB == 1) collision = true;
-            display[index] = currentB ^ displayB;
-        }
-        return collision;
+        return drawSprite(coordinate.getX(), coordinate.getY(), sprite, 1, false);
+    }
+
+    /**
+     * Draws a sprite on every selected plane. The starting coordinate always wraps around the screen
+     * @param bytesPerRow 1 for regular 8 pixel wide sprites, 2 for the 16x16 SUPER-CHIP sprites
+     * @param clip true to cut the sprite at the edges of the screen, false to wrap it around
+     * @return true if a lit pixel was turned off
+     */
+    public boolean drawSprite(int x, int y, char[] sprite, int bytesPerRow, boolean clip) {
+        SpriteEngine engine = clip ? SpriteEngine.CLIP : SpriteEngine.WRAP;
+        return engine.draw(this, sprite, x, y, bytesPerRow);
     }
 
+    /**
+     * @return value of the pixel on the first plane
+     */
     public int getBit(int index) {
-        return display[index];
+        long word = planes[0][(index / width) * wordsPerRow + ((index % width) >>> 6)];
+        return (int) ((word >>> (63 - (index & 63))) & 1L);
     }
 
     public int getBit(Coordinate coord) {
-        return display[coordsToIndex(coord)];
+        return getBit(coordsToIndex(coord));
+    }
+
+    /**
+     * @return value of the pixel on every plane, the first plane being the least significant bit
+     */
+    public int getPixel(int x, int y) {
+        int index = y * wordsPerRow + (x >>> 6);
+        int shift = 63 - (x & 63);
+        int pixel = 0;
+        for (int p = 0; p < PLANES; p++) {
+            pixel |= (int) ((planes[p][index] >>> shift) & 1L) << p;
+        }
+        return pixel;
     }
 
     public void clear() {
-        for (int i = 0; i < display.length; i++)
-            display[i] = 0;
+        for (int p = 0; p < PLANES; p++) {
+            if ((selectedPlanes & (1 << p)) == 0) continue;
+            ops.clear(planes[p], 0, planes[p].length);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Moves the selected planes down by n rows, filling the top with blank rows (00CN)
+     */
+    public void scrollDown(int n) {
+        n = Math.min(n, height);
+        int shift = n * wordsPerRow;
+        for (int p = 0; p < PLANES; p++) {
+            if ((selectedPlanes & (1 << p)) == 0) continue;
+            long[] plane = planes[p];
+            System.arraycopy(plane, 0, plane, shift, plane.length - shift);
+            ops.clear(plane, 0, shift);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Moves the selected planes up by n rows, filling the bottom with blank rows (XO-CHIP 00DN)
+     */
+    public void scrollUp(int n) {
+        n = Math.min(n, height);
+        int shift = n * wordsPerRow;
+        for (int p = 0; p < PLANES; p++) {
+            if ((selectedPlanes & (1 << p)) == 0) continue;
+            long[] plane = planes[p];
+            System.arraycopy(plane, shift, plane, 0, plane.length - shift);
+            ops.clear(plane, plane.length - shift, plane.length);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Moves the selected planes right by n pixels, where n is less than 64 (00FB scrolls by 4)
+     */
+    public void scrollRight(int n) {
+        for (int p = 0; p < PLANES; p++) {
+            if ((selectedPlanes & (1 << p)) == 0) continue;
+            ops.shiftRight(planes[p], planes[p].length, wordsPerRow, n);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Moves the selected planes left by n pixels, where n is less than 64 (00FC scrolls by 4)
+     */
+    public void scrollLeft(int n) {
+        for (int p = 0; p < PLANES; p++) {
+            if ((selectedPlanes & (1 << p)) == 0) continue;
+            ops.shiftLeft(planes[p], planes[p].length, wordsPerRow, n);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Switches between the 64x32 and the 128x64 SUPER-CHIP resolution (00FE / 00FF). The display is cleared
+     */
+    public void setHighResolution(boolean highResolution) {
+        if (highResolution) resize(HIRES_WIDTH, HIRES_HEIGHT);
+        else resize(LORES_WIDTH, LORES_HEIGHT);
+    }
+
+    public boolean isHighResolution() {
+        return width == HIRES_WIDTH;
+    }
+
+    /**
+     * Selects the planes affected by drawing, clearing and scrolling (XO-CHIP FN01)
+     * @param mask one bit per plane, the first plane being the least significant bit
+     */
+    public void setSelectedPlanes(int mask) {
+        selectedPlanes = mask & ((1 << PLANES) - 1);
+    }
+
+    public int getSelectedPlanes() {
+        return selectedPlanes;
+    }
+
+    /**
+     * Hands a snapshot of the display to the renderer, if anything changed since the last publish.
+     * Meant to be called by the CPU thread once per 60Hz tick, so the renderer only ever sees complete frames
+     */
+    public void publish() {
+        if (!dirty) return;
+        frameBuffer.publish(this);
+        dirty = false;
+    }
+
+    /**
+     * Copies every plane into an array, plane after plane, with the same layout as a Frame
+     * @param words array of at least getWordsPerRow() * getHeight() * PLANES words
+     */
+    public void copyPlanes(long[] words) {
+        int planeLength = wordsPerRow * height;
+        for (int p = 0; p < PLANES; p++) {
+            System.arraycopy(planes[p], 0, words, p * planeLength, planeLength);
+        }
+    }
+
+    /**
+     * Compares the display with the previous frame, then makes it the previous frame for the next call
+     * @param previous the previous frame, with the layout of copyPlanes()
+     * @param changes filled with the pixels that differ, with the same layout
+     * @return number of pixels that differ, on any plane
+     */
+    public int diff(long[] previous, long[] changes) {
+        int planeLength = wordsPerRow * height;
+        int count = 0;
+        for (int p = 0; p < PLANES; p++) {
+            count += ops.diff(planes[p], previous, changes, p * planeLength, planeLength);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of lit pixels of the plane
+     */
+    public int countLitPixels(int plane) {
+        return ops.popcount(planes[plane], planes[plane].length);
+    }
+
+    /**
+     * Paints the display into an RGB raster, every pixel a square of multiplier x multiplier, without gaps
+     * @param palette colour of every pixel value, the first plane being the least significant bit
+     * @param raster getWidth() * multiplier ints per row, getHeight() * multiplier rows
+     */
+    public void paint(int[] raster, int multiplier, int[] palette) {
+        if (multiplier < 1 || raster.length < width * multiplier * height * multiplier)
+            throw new IllegalArgumentException("A " + width * multiplier + "x" + height * multiplier + " raster is needed");
+        if (palette.length < 1 << PLANES) throw new IllegalArgumentException("A palette has " + (1 << PLANES) + " colours");
+        ops.upscale(planes[0], planes[1], width, height, palette, multiplier, raster);
+    }
+
+    /**
+     * Writes the resolution and the selected planes, then the words of every plane, at the index of the buffer.
+     * Takes at most 8 + 8 * HIRES_WIDTH / 64 * HIRES_HEIGHT * PLANES bytes
+     */
+    public void saveState(ByteBuffer buffer, int index) {
+        buffer.put(index, (byte) (isHighResolution() ? 1 : 0));
+        buffer.put(index + 1, (byte) selectedPlanes);
+        int word = index + 8;
+        for (long[] plane : planes) {
+            for (long bits : plane) {
+                buffer.putLong(word, bits);
+                word += 8;
+            }
+        }
+    }
+
+    public void loadState(ByteBuffer buffer, int index) {
+        boolean highResolution = buffer.get(index) != 0;
+        if (highResolution != isHighResolution()) setHighResolution(highResolution);
+        selectedPlanes = buffer.get(index + 1);
+        int word = index + 8;
+        for (long[] plane : planes) {
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = buffer.getLong(word);
+                word += 8;
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+     * @return a buffer of the display holding at least length bytes, reused from one call to the next
+     */
+    byte[] spriteBuffer(int length) {
+        if (spriteBuffer.length < length) spriteBuffer = new byte[length];
+        return spriteBuffer;
+    }
+
+    long[] getPlane(int plane) {
+        return planes[plane];
+    }
+
+    void markDirty() {
+        dirty = true;
+    }
+
+    public FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
     }
 
-}
\ No newline at end of file
+}
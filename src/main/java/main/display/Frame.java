@@ -0,0 +1,92 @@
+package main.display;
+
+/**
+ * A snapshot of the display, packed one bit per pixel into 64-bit words (most significant bit first), plane after plane.
+ * Frames are filled by the CPU thread and handed over to the renderer through a FrameBuffer:
+ * once a frame has been published it is never written to until the renderer gives it back,
+ * so for the renderer it behaves as an immutable, complete picture of the screen.
+ */
+public class Frame {
+    private int width;
+    private int height;
+    private int wordsPerRow;
+    private long[] words;
+    private volatile long sequence;
+    private long publishTime;
+
+    public Frame(int width, int height) {
+        resize(width, height);
+        this.sequence = 0;
+    }
+
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height * DisplayModel.PLANES];
+    }
+
+    /**
+     * Packs the current content of the model into this frame. Only ever called by the writer side of a FrameBuffer
+     * @param model display to copy
+     * @param sequence number of the frame, strictly increasing with every publish
+     */
+    void copyFrom(DisplayModel model, long sequence) {
+        if (model.getWidth() != width || model.getHeight() != height)
+            resize(model.getWidth(), model.getHeight());
+        int planeLength = wordsPerRow * height;
+        for (int p = 0; p < DisplayModel.PLANES; p++) {
+            System.arraycopy(model.getPlane(p), 0, words, p * planeLength, planeLength);
+        }
+        this.publishTime = System.nanoTime();
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return value of the pixel on every plane, the first plane being the least significant bit
+     */
+    public int getPixel(int x, int y) {
+        int index = y * wordsPerRow + (x >>> 6);
+        int shift = 63 - (x & 63);
+        int planeLength = wordsPerRow * height;
+        int pixel = 0;
+        for (int p = 0; p < DisplayModel.PLANES; p++) {
+            pixel |= (int) ((words[p * planeLength + index] >>> shift) & 1L) << p;
+        }
+        return pixel;
+    }
+
+    long[] getWords() {
+        return words;
+    }
+
+    public long getWord(int index) {
+        return words[index];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /**
+     * @return number of the publish that produced this frame, 0 if it was never published
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return System.nanoTime() at which this frame was published
+     */
+    public long getPublishTime() {
+        return publishTime;
+    }
+}
@@ -0,0 +1,50 @@
+package main.display;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free triple buffer used to hand frames from the CPU thread (single writer) to the renderer (single reader).
+ * The writer always owns a back frame, the reader always owns a front frame, and the most recently
+ * completed frame sits in the middle slot. Both sides only ever swap their own frame with the middle one,
+ * so neither can observe a frame while the other is writing it, and the writer never waits for the renderer.
+ */
+public class FrameBuffer {
+    private final AtomicReference<Frame> ready;
+    private Frame back;
+    private Frame front;
+    private long sequence;
+
+    public FrameBuffer(int width, int height) {
+        ready = new AtomicReference<>(new Frame(width, height));
+        back = new Frame(width, height);
+        front = new Frame(width, height);
+        sequence = 0;
+    }
+
+    /**
+     * Copies the model into the back frame and makes it the latest complete frame.
+     * Must only be called from the thread that draws on the model.
+     * @param model display to publish
+     */
+    public void publish(DisplayModel model) {
+        back.copyFrom(model, ++sequence);
+        back = ready.getAndSet(back);
+    }
+
+    /**
+     * Must only be called from the rendering thread.
+     * @return the latest complete frame. It stays valid until the next call to acquire()
+     */
+    public Frame acquire() {
+        if (hasNewFrame()) front = ready.getAndSet(front);
+        return front;
+    }
+
+    /**
+     * Must only be called from the rendering thread.
+     * @return true if a frame newer than the last acquired one has been published
+     */
+    public boolean hasNewFrame() {
+        return ready.get().getSequence() > front.getSequence();
+    }
+}
@@ -0,0 +1,106 @@
+package main.display;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rebuilds the display from the records written by a FrameEncoder. Decoding never allocates
+ */
+public class FrameDecoder {
+    private static final int MAX_WORDS = (DisplayModel.HIRES_WIDTH >>> 6) * DisplayModel.HIRES_HEIGHT * DisplayModel.PLANES;
+
+    private final long[] words;
+    private int width;
+    private int height;
+    private int wordsPerRow;
+    private boolean synced;
+
+    public FrameDecoder() {
+        this.words = new long[MAX_WORDS];
+    }
+
+    /**
+     * Reads one record and applies it
+     * @return true if it was a keyframe
+     * @throws IllegalArgumentException if the record is malformed, or is a delta and no keyframe was decoded before it
+     */
+    public boolean decode(ByteBuffer in) {
+        byte type = in.get();
+        int recordWidth = in.getShort();
+        int recordHeight = in.getShort();
+        if (recordWidth != DisplayModel.LORES_WIDTH && recordWidth != DisplayModel.HIRES_WIDTH
+                || recordHeight != DisplayModel.LORES_HEIGHT && recordHeight != DisplayModel.HIRES_HEIGHT)
+            throw new IllegalArgumentException("Unsupported resolution " + recordWidth + "x" + recordHeight);
+        int planeLength = (recordWidth >>> 6) * recordHeight;
+
+        if (type == FrameEncoder.KEYFRAME) {
+            width = recordWidth;
+            height = recordHeight;
+            wordsPerRow = width >>> 6;
+            for (int i = 0; i < planeLength * DisplayModel.PLANES; i++)
+                words[i] = in.getLong();
+            synced = true;
+            return true;
+        }
+        if (type != FrameEncoder.DELTA)
+            throw new IllegalArgumentException("Unknown frame record type " + type);
+        if (!synced || recordWidth != width || recordHeight != height)
+            throw new IllegalArgumentException("Delta record without a matching keyframe");
+
+        // the masks of every plane come before the rows, read them all first without allocating
+        int masksStart = in.position();
+        in.position(masksStart + DisplayModel.PLANES * Long.BYTES);
+        for (int p = 0; p < DisplayModel.PLANES; p++) {
+            long rows = in.getLong(masksStart + p * Long.BYTES);
+            while (rows != 0) {
+                int row = Long.numberOfTrailingZeros(rows);
+                rows &= rows - 1;
+                xorRow(p * planeLength + row * wordsPerRow, in);
+            }
+        }
+        return false;
+    }
+
+    private void xorRow(int index, ByteBuffer in) {
+        int bytes = wordsPerRow * 8;
+        int mask = wordsPerRow == 1 ? in.get() & 0xFF : in.getShort() & 0xFFFF;
+        for (int b = 0; b < bytes; b++) {
+            if ((mask & (1 << (bytes - 1 - b))) == 0) continue;
+            long value = in.get() & 0xFFL;
+            words[index + (b >>> 3)] ^= value << (56 - 8 * (b & 7));
+        }
+    }
+
+    /**
+     * Copies the decoded display into a model, switching its resolution if needed
+     */
+    public void copyTo(DisplayModel model) {
+        if (model.getWidth() != width) model.setHighResolution(width == DisplayModel.HIRES_WIDTH);
+        int planeLength = wordsPerRow * height;
+        for (int p = 0; p < DisplayModel.PLANES; p++) {
+            System.arraycopy(words, p * planeLength, model.getPlane(p), 0, planeLength);
+        }
+        model.markDirty();
+    }
+
+    /**
+     * @return value of the pixel on every plane, the first plane being the least significant bit
+     */
+    public int getPixel(int x, int y) {
+        int index = y * wordsPerRow + (x >>> 6);
+        int shift = 63 - (x & 63);
+        int planeLength = wordsPerRow * height;
+        int pixel = 0;
+        for (int p = 0; p < DisplayModel.PLANES; p++) {
+            pixel |= (int) ((words[p * planeLength + index] >>> shift) & 1L) << p;
+        }
+        return pixel;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
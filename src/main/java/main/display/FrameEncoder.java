@@ -0,0 +1,147 @@
+package main.display;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes successive frames of a display as compact records, for streaming them over the network or recording them.
+ * <p>
+ * A record starts with its type (byte), then the width and height of the display (short each). A keyframe follows with
+ * every word of every plane, plane after plane. A delta follows with one long per plane, where bit r is set if row r
+ * changed since the previous record, then for every changed row of every plane, a mask telling which bytes of the row
+ * changed (one bit per byte, most significant byte first: 1 byte for 64 pixel rows, 2 for 128 pixel rows) and the
+ * XOR of those bytes with the previous frame. A DRW of an 8 pixel wide sprite thus costs about 3 bytes per row.
+ * <p>
+ * The first record, records after a change of resolution, and one record out of keyframeInterval are keyframes.
+ * Encoding never allocates: all state lives in arrays sized for the largest display.
+ */
+public class FrameEncoder {
+    public static final byte KEYFRAME = 1;
+    public static final byte DELTA = 2;
+    public static final int HEADER_SIZE = 5;
+    private static final int MAX_ROW_BYTES = DisplayModel.HIRES_WIDTH >>> 3;
+    private static final int MAX_WORDS = (DisplayModel.HIRES_WIDTH >>> 6) * DisplayModel.HIRES_HEIGHT * DisplayModel.PLANES;
+    /**
+     * Largest possible record, a delta where every byte of every row changed
+     */
+    public static final int MAX_RECORD_SIZE = HEADER_SIZE + DisplayModel.PLANES * Long.BYTES
+            + DisplayModel.PLANES * DisplayModel.HIRES_HEIGHT * (MAX_ROW_BYTES / 8 + MAX_ROW_BYTES);
+
+    private final int keyframeInterval;
+    private long[] current;
+    private long[] previous;
+    private int width;
+    private int height;
+    private int sinceKeyframe;
+    private boolean keyframeRequested;
+
+    /**
+     * @param keyframeInterval number of records between two keyframes, 0 to only send keyframes when required
+     */
+    public FrameEncoder(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+        this.current = new long[MAX_WORDS];
+        this.previous = new long[MAX_WORDS];
+        this.keyframeRequested = true;
+    }
+
+    /**
+     * Makes the next record a keyframe, e.g. when a new client joins a stream
+     */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Encodes the current content of the model
+     * @param out buffer with at least MAX_RECORD_SIZE bytes remaining
+     * @return true if a keyframe was written
+     */
+    public boolean encode(DisplayModel model, ByteBuffer out) {
+        int planeLength = model.getWordsPerRow() * model.getHeight();
+        for (int p = 0; p < DisplayModel.PLANES; p++) {
+            System.arraycopy(model.getPlane(p), 0, current, p * planeLength, planeLength);
+        }
+        return encode(model.getWidth(), model.getHeight(), out);
+    }
+
+    /**
+     * Encodes a frame published through a FrameBuffer
+     * @param out buffer with at least MAX_RECORD_SIZE bytes remaining
+     * @return true if a keyframe was written
+     */
+    public boolean encode(Frame frame, ByteBuffer out) {
+        int length = frame.getWordsPerRow() * frame.getHeight() * DisplayModel.PLANES;
+        System.arraycopy(frame.getWords(), 0, current, 0, length);
+        return encode(frame.getWidth(), frame.getHeight(), out);
+    }
+
+    private boolean encode(int width, int height, ByteBuffer out) {
+        boolean keyframe = keyframeRequested || width != this.width || height != this.height
+                || (keyframeInterval > 0 && sinceKeyframe >= keyframeInterval);
+        this.width = width;
+        this.height = height;
+        int wordsPerRow = width >>> 6;
+        int planeLength = wordsPerRow * height;
+
+        out.put(keyframe ? KEYFRAME : DELTA);
+        out.putShort((short) width);
+        out.putShort((short) height);
+        if (keyframe) {
+            for (int i = 0; i < planeLength * DisplayModel.PLANES; i++)
+                out.putLong(current[i]);
+            keyframeRequested = false;
+            sinceKeyframe = 0;
+        } else {
+            for (int p = 0; p < DisplayModel.PLANES; p++)
+                out.putLong(changedRows(p * planeLength, wordsPerRow, height));
+            for (int p = 0; p < DisplayModel.PLANES; p++) {
+                for (int row = 0; row < height; row++) {
+                    int index = p * planeLength + row * wordsPerRow;
+                    if (!rowChanged(index, wordsPerRow)) continue;
+                    putRow(index, wordsPerRow, out);
+                }
+            }
+            sinceKeyframe++;
+        }
+
+        long[] swap = previous;
+        previous = current;
+        current = swap;
+        return keyframe;
+    }
+
+    private long changedRows(int planeStart, int wordsPerRow, int height) {
+        long rows = 0;
+        for (int row = 0; row < height; row++) {
+            if (rowChanged(planeStart + row * wordsPerRow, wordsPerRow)) rows |= 1L << row;
+        }
+        return rows;
+    }
+
+    private boolean rowChanged(int index, int wordsPerRow) {
+        for (int w = index; w < index + wordsPerRow; w++) {
+            if (current[w] != previous[w]) return true;
+        }
+        return false;
+    }
+
+    private void putRow(int index, int wordsPerRow, ByteBuffer out) {
+        int mask = 0;
+        for (int w = 0; w < wordsPerRow; w++) {
+            long diff = current[index + w] ^ previous[index + w];
+            for (int b = 0; b < 8; b++) {
+                mask <<= 1;
+                if (((diff >>> (56 - 8 * b)) & 0xFF) != 0) mask |= 1;
+            }
+        }
+        if (wordsPerRow == 1) out.put((byte) mask);
+        else out.putShort((short) mask);
+        for (int w = 0; w < wordsPerRow; w++) {
+            long diff = current[index + w] ^ previous[index + w];
+            for (int b = 0; b < 8; b++) {
+                byte value = (byte) (diff >>> (56 - 8 * b));
+                if (value != 0) out.put(value);
+            }
+        }
+    }
+}
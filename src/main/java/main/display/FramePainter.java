@@ -0,0 +1,42 @@
+package main.display;
+
+import java.awt.*;
+
+/**
+ * Draws frames onto a Graphics context. Shared by the passive (Swing) and the active (BufferStrategy) renderers
+ */
+class FramePainter {
+    static final Color PRIMARY_COLOUR = new Color(175, 129, 220);
+    static final Color SECONDARY_COLOUR = new Color(41, 50, 95);
+    static final Color BACKGROUND_COLOUR = new Color(45, 26, 64);
+    // indexed by the value of a pixel across the XO-CHIP planes
+    private static final Color[] PLANE_COLOURS = {
+            SECONDARY_COLOUR, PRIMARY_COLOUR, new Color(92, 180, 200), new Color(240, 220, 240)
+    };
+
+    private final int multiplier;
+    private final int size;
+
+    /**
+     * @param multiplier size on screen of a pixel of the 64x32 display. Higher resolutions are scaled down to the same window size
+     */
+    FramePainter(int multiplier) {
+        this.multiplier = multiplier;
+        this.size = multiplier - multiplier/15;
+    }
+
+    void paint(Graphics2D g, Frame frame, int left, int top) {
+        int cell = multiplier * DisplayModel.LORES_WIDTH / frame.getWidth();
+        int cellSize = Math.max(1, cell - cell/15);
+        for (int x = 0; x < frame.getWidth(); x++)
+            for (int y = 0; y < frame.getHeight(); y++) {
+                g.setPaint(PLANE_COLOURS[frame.getPixel(x, y)]);
+                g.fillRect(x*cell + left, y*cell + top, cellSize, cellSize);
+            }
+    }
+
+    void paintPixel(Graphics2D g, Color colour, int x, int y, int left, int top) {
+        g.setPaint(colour);
+        g.fillRect(x*multiplier + left, y*multiplier + top, size, size);
+    }
+}
@@ -0,0 +1,127 @@
+package main.display;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Bulk operations on the packed words of display planes: clearing, scrolling by pixels, diffing, counting lit pixels
+ * and scaling up to an RGB raster. This is the scalar version. When the JVM runs with
+ * --add-modules jdk.incubator.vector, create() returns VectorPlaneOps instead, which does the same with the Vector
+ * API; it's never loaded otherwise, as its classes wouldn't link
+ */
+class PlaneOps {
+    static final PlaneOps SCALAR = new PlaneOps();
+    private static final Constructor<? extends PlaneOps> VECTOR = vectorOps();
+
+    PlaneOps() {
+    }
+
+    private static Constructor<? extends PlaneOps> vectorOps() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            return Class.forName("main.display.VectorPlaneOps").asSubclass(PlaneOps.class).getDeclaredConstructor();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return operations for one display: vector ones keep scratch space, so they aren't shared between threads
+     */
+    static PlaneOps create() {
+        if (VECTOR == null) return SCALAR;
+        try {
+            return VECTOR.newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * @return true if create() returns operations using the Vector API
+     */
+    static boolean isVectorAvailable() {
+        return VECTOR != null;
+    }
+
+    void clear(long[] plane, int from, int to) {
+        for (int i = from; i < to; i++) plane[i] = 0;
+    }
+
+    /**
+     * Moves every row of the plane right by n pixels, where n is less than 64
+     */
+    void shiftRight(long[] plane, int length, int wordsPerRow, int n) {
+        for (int row = 0; row < length; row += wordsPerRow) {
+            long carry = 0;
+            for (int w = row; w < row + wordsPerRow; w++) {
+                long word = plane[w];
+                plane[w] = (word >>> n) | carry;
+                carry = word << (64 - n);
+            }
+        }
+    }
+
+    /**
+     * Moves every row of the plane left by n pixels, where n is less than 64
+     */
+    void shiftLeft(long[] plane, int length, int wordsPerRow, int n) {
+        for (int row = length - wordsPerRow; row >= 0; row -= wordsPerRow) {
+            long carry = 0;
+            for (int w = row + wordsPerRow - 1; w >= row; w--) {
+                long word = plane[w];
+                plane[w] = (word << n) | carry;
+                carry = word >>> (64 - n);
+            }
+        }
+    }
+
+    /**
+     * Writes which pixels differ between current and previous into changes, then copies current into previous
+     * @param offset where the plane starts in previous and changes
+     * @return number of pixels that differ
+     */
+    int diff(long[] current, long[] previous, long[] changes, int offset, int length) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            long changed = current[i] ^ previous[offset + i];
+            changes[offset + i] = changed;
+            previous[offset + i] = current[i];
+            count += Long.bitCount(changed);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of lit pixels
+     */
+    int popcount(long[] plane, int length) {
+        int count = 0;
+        for (int i = 0; i < length; i++) count += Long.bitCount(plane[i]);
+        return count;
+    }
+
+    /**
+     * Paints both planes into the raster, every pixel becoming a square of multiplier x multiplier
+     * @param palette colour of every pixel value, the first plane being the least significant bit
+     * @param raster width * multiplier ints per row
+     */
+    void upscale(long[] first, long[] second, int width, int height, int[] palette, int multiplier, int[] raster) {
+        int wordsPerRow = width >>> 6;
+        int rasterWidth = width * multiplier;
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * multiplier * rasterWidth;
+            int at = rowStart;
+            for (int w = y * wordsPerRow; w < (y + 1) * wordsPerRow; w++) {
+                long low = first[w];
+                long high = second[w];
+                for (int shift = 63; shift >= 0; shift--) {
+                    int colour = palette[(int) ((low >>> shift) & 1) | (int) ((high >>> shift) & 1) << 1];
+                    for (int i = 0; i < multiplier; i++) raster[at++] = colour;
+                }
+            }
+            for (int r = 1; r < multiplier; r++) {
+                System.arraycopy(raster, rowStart, raster, rowStart + r * rasterWidth, rasterWidth);
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package main.display;
+
+/**
+ * How DisplayFrame gets frames on screen.
+ * PASSIVE repaints through Swing on the EDT, ACTIVE renders from its own thread with page flipping.
+ */
+public enum RenderMode {
+    PASSIVE, ACTIVE
+}
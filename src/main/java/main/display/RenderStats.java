@@ -0,0 +1,52 @@
+package main.display;
+
+/**
+ * Counters kept by the active renderer. Written by the render thread only, readable from any thread
+ */
+public class RenderStats {
+    private volatile long presentedFrames;
+    private volatile long droppedFrames;
+    private volatile long lastPresentLatency;
+    private volatile long maxPresentLatency;
+    private volatile long totalPresentLatency;
+
+    /**
+     * Records a frame that has just been shown on screen
+     * @param latency nanoseconds between the CPU publishing the frame and the frame being presented
+     * @param skipped number of frames published since the previous presented one that never reached the screen
+     */
+    void recordPresent(long latency, long skipped) {
+        presentedFrames++;
+        droppedFrames += skipped;
+        lastPresentLatency = latency;
+        totalPresentLatency += latency;
+        if (latency > maxPresentLatency) maxPresentLatency = latency;
+    }
+
+    public long getPresentedFrames() {
+        return presentedFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getLastPresentLatency() {
+        return lastPresentLatency;
+    }
+
+    public long getMaxPresentLatency() {
+        return maxPresentLatency;
+    }
+
+    public long getAveragePresentLatency() {
+        long presented = presentedFrames;
+        return presented == 0 ? 0 : totalPresentLatency / presented;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("presented=%d dropped=%d latency(avg/max)=%.2f/%.2f ms",
+                presentedFrames, droppedFrames, getAveragePresentLatency() / 1e6, maxPresentLatency / 1e6);
+    }
+}
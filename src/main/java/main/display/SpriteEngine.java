@@ -0,0 +1,190 @@
+package main.display;
+
+/**
+ * Draws sprites (DXYN) into the packed planes of a DisplayModel, a whole row at a time.
+ * A row of sprite is rotated into place inside a 64-bit word, and the tables computed once per resolution tell,
+ * for every starting x, which word(s) it lands in and which bits go to each of them. The part spilling past the right
+ * edge is either kept (wrapping) or masked off (clipping) by those tables, and so are the rows past the bottom edge,
+ * so every mode runs the very same code, and no pixel is ever addressed on its own.
+ */
+public class SpriteEngine {
+    public static final SpriteEngine WRAP = new SpriteEngine(false, false, false);
+    public static final SpriteEngine CLIP = new SpriteEngine(true, true, false);
+    /**
+     * How DXYN always drew here: wrapping around the right edge, cut at the bottom one, and nothing from below it
+     */
+    public static final SpriteEngine LEGACY = new SpriteEngine(false, true, true);
+
+    private final boolean dropBelowScreen;
+    private final Layout lores;
+    private final Layout hires;
+
+    private SpriteEngine(boolean clipHorizontally, boolean clipVertically, boolean dropBelowScreen) {
+        this.dropBelowScreen = dropBelowScreen;
+        this.lores = new Layout(DisplayModel.LORES_WIDTH, DisplayModel.LORES_HEIGHT, clipHorizontally, clipVertically);
+        this.hires = new Layout(DisplayModel.HIRES_WIDTH, DisplayModel.HIRES_HEIGHT, clipHorizontally, clipVertically);
+    }
+
+    /**
+     * @param clipHorizontally cut sprites at the right edge instead of wrapping them around
+     * @param clipVertically cut sprites at the bottom edge instead of wrapping them around
+     * @param dropBelowScreen draw nothing when the starting row is below the screen, instead of wrapping it around
+     * @return the engine drawing that way, shared with every other caller asking for the same
+     */
+    public static SpriteEngine of(boolean clipHorizontally, boolean clipVertically, boolean dropBelowScreen) {
+        for (SpriteEngine engine : new SpriteEngine[]{WRAP, CLIP, LEGACY}) {
+            if (engine.lores.clipHorizontally == clipHorizontally && engine.lores.clipVertically == clipVertically
+                    && engine.dropBelowScreen == dropBelowScreen) return engine;
+        }
+        return new SpriteEngine(clipHorizontally, clipVertically, dropBelowScreen);
+    }
+
+    /**
+     * Precomputed placement of sprite rows for one resolution
+     */
+    private static class Layout {
+        final int widthMask;
+        final int heightMask;
+        final int wordsPerRow;
+        final int[] firstWord;
+        final int[] secondWord;
+        final long[] firstMask;
+        final long[] secondMask;
+        final int[] rowLimit;
+        final boolean clipHorizontally;
+        final boolean clipVertically;
+
+        Layout(int width, int height, boolean clipHorizontally, boolean clipVertically) {
+            this.clipHorizontally = clipHorizontally;
+            this.clipVertically = clipVertically;
+            widthMask = width - 1;
+            heightMask = height - 1;
+            wordsPerRow = width >>> 6;
+            firstWord = new int[width];
+            secondWord = new int[width];
+            firstMask = new long[width];
+            secondMask = new long[width];
+            for (int x = 0; x < width; x++) {
+                int word = x >>> 6;
+                int next = (word + 1) % wordsPerRow;
+                boolean spillsOver = next <= word;
+                long inFirstWord = -1L >>> (x & 63);
+                firstWord[x] = word;
+                secondWord[x] = next;
+                if (spillsOver && clipHorizontally) {
+                    firstMask[x] = inFirstWord;
+                    secondMask[x] = 0;
+                } else if (next == word) {
+                    // wrapping within a single word: the rotation already put the spilled bits in place
+                    firstMask[x] = -1L;
+                    secondMask[x] = 0;
+                } else {
+                    firstMask[x] = inFirstWord;
+                    secondMask[x] = ~inFirstWord;
+                }
+            }
+            rowLimit = new int[height];
+            for (int y = 0; y < height; y++) {
+                rowLimit[y] = clipVertically ? height - y : Integer.MAX_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Draws a sprite on every selected plane of the display
+     * @param sprite bytes of the sprite, starting at offset. The rows for the second plane, if selected, follow the first ones
+     * @param x starting column, wrapped around the screen
+     * @param y starting row, wrapped around the screen
+     * @param rows number of rows of the sprite
+     * @param bytesPerRow 1 for regular 8 pixel wide sprites, 2 for the 16x16 SUPER-CHIP sprites
+     * @return true if any lit pixel was turned off
+     */
+    public boolean draw(DisplayModel display, byte[] sprite, int offset, int x, int y, int rows, int bytesPerRow) {
+        Layout layout = display.isHighResolution() ? hires : lores;
+        if (dropBelowScreen && (y < 0 || y > layout.heightMask)) return false;
+        x &= layout.widthMask;
+        y &= layout.heightMask;
+        int visibleRows = Math.min(rows, layout.rowLimit[y]);
+        int selectedPlanes = display.getSelectedPlanes();
+        int rowShift = (64 - (bytesPerRow << 3) + 64 - (x & 63)) & 63;
+
+        long collision = 0;
+        for (int p = 0; p < DisplayModel.PLANES; p++) {
+            if ((selectedPlanes & (1 << p)) == 0) continue;
+            long[] plane = display.getPlane(p);
+            if (layout.secondMask[x] == 0)
+                collision |= drawSingleWordRows(plane, layout, sprite, offset, x, y, visibleRows, bytesPerRow, rowShift);
+            else
+                collision |= drawSplitRows(plane, layout, sprite, offset, x, y, visibleRows, bytesPerRow, rowShift);
+            offset += rows * bytesPerRow;
+        }
+        display.markDirty();
+        return collision != 0;
+    }
+
+    private static long readRow(byte[] sprite, int index, int bytesPerRow) {
+        if (bytesPerRow == 1) return sprite[index] & 0xFFL;
+        return ((sprite[index] & 0xFFL) << 8) | (sprite[index + 1] & 0xFFL);
+    }
+
+    /**
+     * XORs rows that land in a single word of the plane
+     * @param rowShift left rotation that moves the sprite bits to their column in the word
+     * @return the pixels that were turned off, 0 if there was no collision
+     */
+    private static long drawSingleWordRows(long[] plane, Layout layout, byte[] sprite, int offset, int x, int y,
+                                           int rows, int bytesPerRow, int rowShift) {
+        long collision = 0;
+        int word = layout.firstWord[x];
+        long mask = layout.firstMask[x];
+        int heightMask = layout.heightMask;
+        int wordsPerRow = layout.wordsPerRow;
+        for (int i = 0; i < rows; i++) {
+            long bits = Long.rotateLeft(readRow(sprite, offset + i * bytesPerRow, bytesPerRow), rowShift) & mask;
+            int index = ((y + i) & heightMask) * wordsPerRow + word;
+            long current = plane[index];
+            collision |= current & bits;
+            plane[index] = current ^ bits;
+        }
+        return collision;
+    }
+
+    /**
+     * XORs rows that straddle two different words of the plane
+     * @return the pixels that were turned off, 0 if there was no collision
+     */
+    private static long drawSplitRows(long[] plane, Layout layout, byte[] sprite, int offset, int x, int y,
+                                      int rows, int bytesPerRow, int rowShift) {
+        long collision = 0;
+        int first = layout.firstWord[x];
+        int second = layout.secondWord[x];
+        long firstMask = layout.firstMask[x];
+        long secondMask = layout.secondMask[x];
+        int heightMask = layout.heightMask;
+        int wordsPerRow = layout.wordsPerRow;
+        for (int i = 0; i < rows; i++) {
+            long bits = Long.rotateLeft(readRow(sprite, offset + i * bytesPerRow, bytesPerRow), rowShift);
+            int rowStart = ((y + i) & heightMask) * wordsPerRow;
+            long left = bits & firstMask;
+            long right = bits & secondMask;
+            long firstWord = plane[rowStart + first];
+            long secondWord = plane[rowStart + second];
+            collision |= (firstWord & left) | (secondWord & right);
+            plane[rowStart + first] = firstWord ^ left;
+            plane[rowStart + second] = secondWord ^ right;
+        }
+        return collision;
+    }
+
+    /**
+     * Same as the byte[] variant, for sprites given as chars, one byte each, copied to the display's sprite buffer
+     * first
+     * @param sprite bytesPerRow bytes per row, the rows of the second plane (if selected) following the first ones
+     */
+    public boolean draw(DisplayModel display, char[] sprite, int x, int y, int bytesPerRow) {
+        int rows = sprite.length / (bytesPerRow * Math.max(1, Integer.bitCount(display.getSelectedPlanes())));
+        byte[] bytes = display.spriteBuffer(sprite.length);
+        for (int i = 0; i < sprite.length; i++) bytes[i] = (byte) sprite[i];
+        return draw(display, bytes, 0, x, y, rows, bytesPerRow);
+    }
+}
@@ -0,0 +1,187 @@
+package main.display;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * PlaneOps with the Vector API, a whole register of words or pixels at a time. Only loaded by PlaneOps.create() when
+ * the jdk.incubator.vector module is there. Words left over past the last full vector, shapes the vectors don't
+ * divide and counting lit pixels go through the scalar version
+ */
+final class VectorPlaneOps extends PlaneOps {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    // lanes of high resolution rows carrying bits over from their left and right neighbour
+    private final LongVector rowStarts;
+    private final LongVector rowEnds;
+    // how far right each lane's pixel is from the last one of a group of INTS.length() pixels
+    private final IntVector pixelShifts;
+    // colours of the pixels of a row, and the pixel every pixel of a scaled up row comes from
+    private final int[] colours;
+    private int[] sources;
+    private int sourcesWidth;
+    private int sourcesMultiplier;
+
+    VectorPlaneOps() {
+        this.rowStarts = carrying(2, true);
+        this.rowEnds = carrying(2, false);
+        this.pixelShifts = IntVector.broadcast(INTS, INTS.length() - 1).sub(IntVector.zero(INTS).addIndex(1));
+        this.colours = new int[DisplayModel.HIRES_WIDTH];
+        this.sources = new int[0];
+    }
+
+    @Override
+    void clear(long[] plane, int from, int to) {
+        LongVector zero = LongVector.zero(LONGS);
+        int i = from;
+        for (int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) zero.intoArray(plane, i);
+        super.clear(plane, i, to);
+    }
+
+    /**
+     * @return all ones in the lanes holding a word that doesn't start a row (first is true), or doesn't end it
+     */
+    private static LongVector carrying(int wordsPerRow, boolean first) {
+        long[] lanes = new long[LONGS.length()];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            if (lane % wordsPerRow != (first ? 0 : wordsPerRow - 1)) lanes[lane] = -1;
+        }
+        return LongVector.fromArray(LONGS, lanes, 0);
+    }
+
+    @Override
+    void shiftRight(long[] plane, int length, int wordsPerRow, int n) {
+        int lanes = LONGS.length();
+        if (wordsPerRow > 2 || lanes % wordsPerRow != 0 || length < 2 * lanes) {
+            super.shiftRight(plane, length, wordsPerRow, n);
+            return;
+        }
+        LongVector carried = wordsPerRow == 1 ? LongVector.zero(LONGS) : rowStarts;
+        int bound = LONGS.loopBound(length);
+        // last word first, so that a word's left neighbour is only written once it was read. The first vector's
+        // neighbour would be out of the plane, so it's done one word at a time too
+        for (int w = length - 1; w >= bound; w--) shiftWordRight(plane, w, wordsPerRow, n);
+        for (int i = bound - lanes; i > 0; i -= lanes) {
+            LongVector words = LongVector.fromArray(LONGS, plane, i);
+            LongVector left = LongVector.fromArray(LONGS, plane, i - 1).and(carried);
+            words.lanewise(VectorOperators.LSHR, n).or(left.lanewise(VectorOperators.LSHL, 64 - n)).intoArray(plane, i);
+        }
+        for (int w = lanes - 1; w >= 0; w--) shiftWordRight(plane, w, wordsPerRow, n);
+    }
+
+    private static void shiftWordRight(long[] plane, int w, int wordsPerRow, int n) {
+        plane[w] = (plane[w] >>> n) | (w % wordsPerRow == 0 ? 0 : plane[w - 1] << (64 - n));
+    }
+
+    @Override
+    void shiftLeft(long[] plane, int length, int wordsPerRow, int n) {
+        int lanes = LONGS.length();
+        if (wordsPerRow > 2 || lanes % wordsPerRow != 0 || length < 2 * lanes) {
+            super.shiftLeft(plane, length, wordsPerRow, n);
+            return;
+        }
+        LongVector carried = wordsPerRow == 1 ? LongVector.zero(LONGS) : rowEnds;
+        // the last full vector's neighbour could be out of the plane, so it's done one word at a time
+        int bound = LONGS.loopBound(length - 1);
+        // first word first, so that a word's right neighbour is only written once it was read
+        for (int i = 0; i < bound; i += lanes) {
+            LongVector words = LongVector.fromArray(LONGS, plane, i);
+            LongVector right = LongVector.fromArray(LONGS, plane, i + 1).and(carried);
+            words.lanewise(VectorOperators.LSHL, n).or(right.lanewise(VectorOperators.LSHR, 64 - n)).intoArray(plane, i);
+        }
+        for (int w = bound; w < length; w++) {
+            plane[w] = (plane[w] << n) | ((w + 1) % wordsPerRow == 0 ? 0 : plane[w + 1] >>> (64 - n));
+        }
+    }
+
+    @Override
+    int diff(long[] current, long[] previous, long[] changes, int offset, int length) {
+        LongVector counts = LongVector.zero(LONGS);
+        int i = 0;
+        for (int bound = LONGS.loopBound(length); i < bound; i += LONGS.length()) {
+            LongVector words = LongVector.fromArray(LONGS, current, i);
+            LongVector changed = words.lanewise(VectorOperators.XOR, LongVector.fromArray(LONGS, previous, offset + i));
+            changed.intoArray(changes, offset + i);
+            words.intoArray(previous, offset + i);
+            counts = counts.add(bitCounts(changed));
+        }
+        int count = (int) counts.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            long changed = current[i] ^ previous[offset + i];
+            changes[offset + i] = changed;
+            previous[offset + i] = current[i];
+            count += Long.bitCount(changed);
+        }
+        return count;
+    }
+
+    /**
+     * @return lit bits of every lane, summed by halves, then nibbles, then bytes: the incubator module of JDK 17 has no
+     * BIT_COUNT operator. Counting a plane alone is left to the scalar Long.bitCount(), a single instruction that
+     * this doesn't beat; diff() uses it as the words are in a register already
+     */
+    private static LongVector bitCounts(LongVector words) {
+        LongVector pairs = words.sub(words.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+        LongVector nibbles = pairs.and(0x3333333333333333L)
+                .add(pairs.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+        LongVector bytes = nibbles.add(nibbles.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+        return bytes.mul(0x0101010101010101L).lanewise(VectorOperators.LSHR, 56);
+    }
+
+    @Override
+    void upscale(long[] first, long[] second, int width, int height, int[] palette, int multiplier, int[] raster) {
+        int lanes = INTS.length();
+        if (lanes > 32 || 64 % lanes != 0) {
+            super.upscale(first, second, width, height, palette, multiplier, raster);
+            return;
+        }
+        int wordsPerRow = width >>> 6;
+        int rasterWidth = width * multiplier;
+        if (multiplier > 1) mapSources(width, multiplier);
+        int bound = INTS.loopBound(rasterWidth);
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * multiplier * rasterWidth;
+            // a row at its size goes straight to the raster, others are scaled up from its colours
+            int[] row = multiplier == 1 ? raster : colours;
+            int at = multiplier == 1 ? rowStart : 0;
+            for (int w = y * wordsPerRow; w < (y + 1) * wordsPerRow; w++) {
+                for (int shift = 64 - lanes; shift >= 0; shift -= lanes, at += lanes) {
+                    IntVector low = bits(first[w], shift);
+                    IntVector high = bits(second[w], shift);
+                    IntVector value = low.or(high.lanewise(VectorOperators.LSHL, 1));
+                    IntVector.broadcast(INTS, palette[0])
+                            .blend(palette[1], value.eq(1))
+                            .blend(palette[2], value.eq(2))
+                            .blend(palette[3], value.eq(3))
+                            .intoArray(row, at);
+                }
+            }
+            if (multiplier == 1) continue;
+            int x = 0;
+            for (; x < bound; x += lanes) IntVector.fromArray(INTS, colours, 0, sources, x).intoArray(raster, rowStart + x);
+            for (; x < rasterWidth; x++) raster[rowStart + x] = colours[sources[x]];
+            for (int r = 1; r < multiplier; r++) {
+                System.arraycopy(raster, rowStart, raster, rowStart + r * rasterWidth, rasterWidth);
+            }
+        }
+    }
+
+    /**
+     * @return one lane per pixel of the group of INTS.length() pixels of the word, shift bits from its right, 1 if lit
+     */
+    private IntVector bits(long word, int shift) {
+        int group = (int) (word >>> shift);
+        return IntVector.broadcast(INTS, group).lanewise(VectorOperators.LSHR, pixelShifts).and(1);
+    }
+
+    private void mapSources(int width, int multiplier) {
+        if (width == sourcesWidth && multiplier == sourcesMultiplier) return;
+        sources = new int[width * multiplier];
+        for (int x = 0; x < sources.length; x++) sources[x] = x / multiplier;
+        sourcesWidth = width;
+        sourcesMultiplier = multiplier;
+    }
+}
@@ -0,0 +1,190 @@
+package main.env;
+
+import main.display.DisplayModel;
+import main.memory.Memory;
+import main.rom.CachedRom;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Many machines running the same ROM, stepped together for reinforcement learning. A step presses one key per
+ * environment for a number of frames, on all cores of a fork-join pool, then writes every observation into the
+ * buffer given to setObservations() and every reward and end of episode into the caller's arrays: stepping doesn't
+ * allocate anything.
+ * An observation is the display as packed bits, 128x64 whatever the resolution, a low resolution pixel taking 2x2 of
+ * them: a long per 64 pixels, row after row, most significant bit on the left. XO-CHIP ROMs get both planes, one
+ * after the other, others only the first one.
+ * An environment whose episode ended, because the program exited or stopped on an instruction it can't execute,
+ * starts the next one in the same step: its observation is the first one of the new episode
+ */
+public class BatchEnvironment {
+    // environments stepped one after the other by a task, so that splitting doesn't cost more than running
+    private static final int ENVIRONMENTS_PER_TASK = 8;
+
+    private final ForkJoinPool pool;
+    private final int framesPerStep;
+    private final int planes;
+    private final int observationWords;
+    private final Environment[] environments;
+    // the tasks are reused from one step to the next
+    private final Chunk[] chunks;
+    private final RecursiveAction all;
+
+    // what the step being run reads and writes
+    private boolean resetting;
+    private long resetSeed;
+    private char[] actions;
+    private float[] rewards;
+    private boolean[] done;
+    private long[] observations;
+    private ByteBuffer observationBuffer;
+
+    /**
+     * @param framesPerStep frames a step runs, every one of them with the action's key held down
+     * @param score where the ROM keeps its score, rewards being how much it grew
+     */
+    public BatchEnvironment(CachedRom rom, int environments, int framesPerStep, Score score, ForkJoinPool pool) {
+        if (environments < 1) throw new IllegalArgumentException("No environment");
+        if (framesPerStep < 1) throw new IllegalArgumentException("A step runs one frame at least");
+        this.pool = pool;
+        this.framesPerStep = framesPerStep;
+        this.planes = rom.getQuirks().getMemorySize() == Memory.XO_CHIP_SIZE ? DisplayModel.PLANES : 1;
+        this.observationWords = DisplayModel.HIRES_WIDTH / 64 * DisplayModel.HIRES_HEIGHT * planes;
+        ByteBuffer start = Environment.startState(rom);
+        this.environments = new Environment[environments];
+        for (int e = 0; e < environments; e++) this.environments[e] = new Environment(rom, score, start);
+        this.chunks = new Chunk[(environments + ENVIRONMENTS_PER_TASK - 1) / ENVIRONMENTS_PER_TASK];
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = new Chunk(c * ENVIRONMENTS_PER_TASK, Math.min(environments, (c + 1) * ENVIRONMENTS_PER_TASK));
+        }
+        this.all = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                for (Chunk chunk : chunks) chunk.reinitialize();
+                invokeAll(chunks);
+            }
+        };
+    }
+
+    public int size() {
+        return environments.length;
+    }
+
+    /**
+     * @return longs of the observation of one environment
+     */
+    public int getObservationWords() {
+        return observationWords;
+    }
+
+    /**
+     * Makes steps write environment e's observation at index e * getObservationWords() of the array
+     */
+    public void setObservations(long[] observations) {
+        if (observations.length < size() * observationWords)
+            throw new IllegalArgumentException("Observations need " + size() * observationWords + " longs");
+        this.observations = observations;
+        this.observationBuffer = null;
+    }
+
+    /**
+     * Makes steps write environment e's observation at e * getObservationWords() longs from the buffer's position,
+     * in its byte order, e.g. a direct buffer shared with native code
+     */
+    public void setObservations(ByteBuffer observations) {
+        if (observations.remaining() < size() * observationWords * Long.BYTES)
+            throw new IllegalArgumentException("Observations need " + size() * observationWords * Long.BYTES
+                    + " bytes");
+        this.observationBuffer = observations;
+        this.observations = null;
+    }
+
+    /**
+     * Starts a new episode in every environment, environment e with seed + e, and writes their first observation.
+     * Episodes started after one ended are seeded from the seed of the one before
+     */
+    public void reset(long seed) {
+        resetting = true;
+        resetSeed = seed;
+        run();
+    }
+
+    /**
+     * Runs a step in every environment
+     * @param actions key pressed by each environment during the step, 0xFFFF for none
+     * @param rewards filled with how much the score of each environment grew during the step
+     * @param done filled with true for the environments whose episode ended during the step
+     */
+    public void step(char[] actions, float[] rewards, boolean[] done) {
+        if (actions.length < size() || rewards.length < size() || done.length < size())
+            throw new IllegalArgumentException("Steps take one action, reward and end per environment");
+        resetting = false;
+        this.actions = actions;
+        this.rewards = rewards;
+        this.done = done;
+        try {
+            run();
+        } finally {
+            this.actions = null;
+            this.rewards = null;
+            this.done = null;
+        }
+    }
+
+    private void run() {
+        if (observations == null && observationBuffer == null)
+            throw new IllegalStateException("No buffer to write observations to");
+        all.reinitialize();
+        pool.invoke(all);
+    }
+
+    /**
+     * @return the seed of the episode after the one that started with the seed
+     */
+    private static long nextSeed(long seed) {
+        // the finalizer of SplitMix64
+        long z = seed + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private class Chunk extends RecursiveAction {
+        private final int first;
+        private final int end;
+        private final long[] observation;
+
+        Chunk(int first, int end) {
+            this.first = first;
+            this.end = end;
+            this.observation = new long[observationWords];
+        }
+
+        @Override
+        protected void compute() {
+            for (int e = first; e < end; e++) {
+                Environment environment = environments[e];
+                if (resetting) {
+                    environment.reset(resetSeed + e);
+                } else {
+                    rewards[e] = environment.step(actions[e], framesPerStep);
+                    done[e] = environment.isDone();
+                    if (done[e]) environment.reset(nextSeed(environment.getSeed()));
+                }
+                environment.observe(observation, planes);
+                write(e);
+            }
+        }
+
+        private void write(int e) {
+            if (observations != null) {
+                System.arraycopy(observation, 0, observations, e * observationWords, observationWords);
+                return;
+            }
+            int at = observationBuffer.position() + e * observationWords * Long.BYTES;
+            for (int i = 0; i < observationWords; i++) observationBuffer.putLong(at + i * Long.BYTES, observation[i]);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package main.env;
+
+import main.cpu.CPU;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.DirtyPages;
+import main.memory.MachineSlab;
+import main.memory.Memory;
+import main.rom.CachedRom;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One machine of a batch. It remembers which pages of memory episodes wrote, so starting the next episode only puts
+ * those back, and its blocks survive from one episode to the next unless code was written
+ */
+final class Environment {
+    private final CachedRom rom;
+    private final Score score;
+    private final Memory memory;
+    private final Keyboard keyboard;
+    private final DisplayModel display;
+    private final CPU cpu;
+    // registers, timers, stack and display as the ROM starts, shared by the whole batch
+    private final ByteBuffer start;
+    private final DirtyPages pages;
+    private final long[] words;
+    // stopped on an instruction it couldn't execute
+    private boolean failed;
+    private long seed;
+    private int lastScore;
+
+    Environment(CachedRom rom, Score score, ByteBuffer start) {
+        this.rom = rom;
+        this.score = score;
+        this.memory = rom.newMemory();
+        this.keyboard = new Keyboard();
+        this.display = new DisplayModel();
+        this.cpu = rom.newCpu(memory, new Stack(), display, keyboard);
+        this.start = start;
+        this.pages = new DirtyPages(memory);
+        this.words = new long[DisplayModel.HIRES_WIDTH / 64 * DisplayModel.HIRES_HEIGHT * DisplayModel.PLANES];
+    }
+
+    /**
+     * @return the state of a CPU that didn't run yet, for every environment of the batch to start from
+     */
+    static ByteBuffer startState(CachedRom rom) {
+        ByteBuffer state = ByteBuffer.allocate(MachineSlab.MEMORY);
+        rom.newCpu(new Stack(), new DisplayModel(), new Keyboard()).saveState(state);
+        return state;
+    }
+
+    /**
+     * Starts a new episode, as if the ROM was just loaded
+     */
+    void reset(long seed) {
+        pages.restore(p -> rom.restore(memory, p * DirtyPages.PAGE_SIZE, DirtyPages.PAGE_SIZE));
+        cpu.loadState(start);
+        cpu.setRandomSeed(seed);
+        keyboard.release(keyboard.getCurrentKeyPressed());
+        failed = false;
+        this.seed = seed;
+        lastScore = score.read(cpu, memory);
+    }
+
+    /**
+     * Runs frames with the key held down, stopping early if the program exits or can't go on
+     * @param key 0xFFFF for none
+     * @return the reward, i.e. how much the score grew
+     */
+    int step(char key, int frames) {
+        if (key == 0xFFFF) keyboard.release(keyboard.getCurrentKeyPressed());
+        else keyboard.press(key);
+        for (int frame = 0; frame < frames && !isDone(); frame++) {
+            failed = !cpu.runFrame();
+        }
+        int current = score.read(cpu, memory);
+        int reward = current - lastScore;
+        lastScore = current;
+        return reward;
+    }
+
+    /**
+     * @return true once the program exited, or stopped on an instruction it can't execute
+     */
+    boolean isDone() {
+        return failed || cpu.isHalted();
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Writes the display at high resolution, a low resolution pixel taking 2x2 of them, one plane after the other
+     * @param planes 1 for the first plane only
+     */
+    void observe(long[] observation, int planes) {
+        display.copyPlanes(words);
+        int planeLength = DisplayModel.HIRES_WIDTH / 64 * DisplayModel.HIRES_HEIGHT;
+        if (display.isHighResolution()) {
+            System.arraycopy(words, 0, observation, 0, planes * planeLength);
+            return;
+        }
+        int loresLength = DisplayModel.LORES_HEIGHT;
+        for (int p = 0; p < planes; p++) {
+            for (int y = 0; y < DisplayModel.LORES_HEIGHT; y++) {
+                long row = words[p * loresLength + y];
+                long left = doubled((int) (row >>> 32));
+                long right = doubled((int) row);
+                int at = p * planeLength + 4 * y;
+                observation[at] = left;
+                observation[at + 1] = right;
+                observation[at + 2] = left;
+                observation[at + 3] = right;
+            }
+        }
+    }
+
+    /**
+     * @return the 32 bits with every one of them repeated twice
+     */
+    static long doubled(int bits) {
+        long spread = bits & 0xFFFFFFFFL;
+        spread = (spread | spread << 16) & 0x0000FFFF0000FFFFL;
+        spread = (spread | spread << 8) & 0x00FF00FF00FF00FFL;
+        spread = (spread | spread << 4) & 0x0F0F0F0F0F0F0F0FL;
+        spread = (spread | spread << 2) & 0x3333333333333333L;
+        spread = (spread | spread << 1) & 0x5555555555555555L;
+        return spread | spread << 1;
+    }
+}
@@ -0,0 +1,39 @@
+package main.env;
+
+import main.cpu.CPU;
+import main.memory.Memory;
+
+/**
+ * Where a ROM keeps its score. The reward of a step is how much the score grew during it
+ */
+@FunctionalInterface
+public interface Score {
+    int read(CPU cpu, Memory memory);
+
+    /**
+     * @return the value of register Vx
+     */
+    static Score register(int x) {
+        if (x < 0 || x > 15) throw new IllegalArgumentException("No register V" + x);
+        return (cpu, memory) -> cpu.getRegisters()[x];
+    }
+
+    /**
+     * @return the byte at the address
+     */
+    static Score memory(int address) {
+        return (cpu, memory) -> memory.readByte(address);
+    }
+
+    /**
+     * @return the decimal number held one digit per byte from the address, most significant first, as LD B, Vx
+     * writes them
+     */
+    static Score bcd(int address, int digits) {
+        return (cpu, memory) -> {
+            int score = 0;
+            for (int d = 0; d < digits; d++) score = score * 10 + memory.readByte(address + d);
+            return score;
+        };
+    }
+}
@@ -0,0 +1,41 @@
+package main.fuzz;
+
+import main.cpu.Opcode;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Pairs of opcode types executed one after the other, shared by all fuzzing threads.
+ * An input reaching a pair nobody reached before is kept to be mutated further
+ */
+public class Coverage {
+    private static final int TYPES = Opcode.OpcodeType.values().length;
+
+    private final AtomicLongArray bits;
+
+    public Coverage() {
+        bits = new AtomicLongArray((TYPES * TYPES + 63) >>> 6);
+    }
+
+    /**
+     * @return true if the pair was never seen before
+     */
+    public boolean add(int previousType, int type) {
+        int pair = previousType * TYPES + type;
+        int word = pair >>> 6;
+        long bit = 1L << (pair & 63);
+        // reading first keeps the common case, an already covered pair, free of contention
+        if ((bits.get(word) & bit) != 0) return false;
+        return (bits.getAndUpdate(word, w -> w | bit) & bit) == 0;
+    }
+
+    /**
+     * @return number of pairs covered
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < bits.length(); i++)
+            size += Long.bitCount(bits.get(i));
+        return size;
+    }
+}
@@ -0,0 +1,72 @@
+package main.fuzz;
+
+import main.cpu.Opcode;
+
+/**
+ * An input that made the CPU throw, fault its stack, or end in another state running frames than stepping
+ */
+public class Crash {
+    private final byte[] rom;
+    private final long inputSeed;
+    private final RuntimeException exception;
+    private final Opcode.OpcodeType instruction;
+    private final long instructionCount;
+    private final int programCounter;
+
+    /**
+     * @param inputSeed seed of the key presses and of RND, needed to reproduce the crash
+     * @param instruction type of the instruction that threw, null if fetching it did or for a DivergenceException
+     * @param instructionCount instructions executed before the one that threw, or before the frame that diverged
+     * @param programCounter address of the instruction that threw, unused for a DivergenceException
+     */
+    public Crash(byte[] rom, long inputSeed, RuntimeException exception, Opcode.OpcodeType instruction,
+                 long instructionCount, int programCounter) {
+        this.rom = rom;
+        this.inputSeed = inputSeed;
+        this.exception = exception;
+        this.instruction = instruction;
+        this.instructionCount = instructionCount;
+        this.programCounter = programCounter;
+    }
+
+    /**
+     * @return the exception type and the instruction that threw it. Two crashes with the same signature are the same bug.
+     * The stack trace is left out on purpose: the JIT drops it from exceptions thrown often enough
+     */
+    public String getSignature() {
+        String site = exception instanceof DivergenceException ? ((DivergenceException) exception).getEngine()
+                : instruction == null ? "fetching" : "executing " + instruction;
+        return exception.getClass().getSimpleName() + " " + site;
+    }
+
+    public Opcode.OpcodeType getInstruction() {
+        return instruction;
+    }
+
+    public byte[] getRom() {
+        return rom;
+    }
+
+    public long getInputSeed() {
+        return inputSeed;
+    }
+
+    public RuntimeException getException() {
+        return exception;
+    }
+
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    public int getProgramCounter() {
+        return programCounter;
+    }
+
+    @Override
+    public String toString() {
+        String at = exception instanceof DivergenceException ? "" : " at 0x" + Integer.toHexString(programCounter);
+        return getSignature() + " (" + exception.getMessage() + ")" + at + " after " + instructionCount
+                + " instructions, " + rom.length + " byte ROM, input seed " + inputSeed;
+    }
+}
@@ -0,0 +1,29 @@
+package main.fuzz;
+
+import main.diff.Divergence;
+
+/**
+ * Stands for the crash of an input that ran without throwing, but ended in another state when its frames were run
+ * with CPU.runFrame than when its instructions were stepped through one at a time
+ */
+public class DivergenceException extends RuntimeException {
+    private final String engine;
+    private final Divergence divergence;
+
+    /**
+     * @param engine how the frames that diverged were run
+     */
+    public DivergenceException(String engine, Divergence divergence) {
+        super("frame " + divergence.getFrame() + ": " + String.join(", ", divergence.getDifferences()));
+        this.engine = engine;
+        this.divergence = divergence;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public Divergence getDivergence() {
+        return divergence;
+    }
+}
@@ -0,0 +1,78 @@
+package main.fuzz;
+
+import main.cpu.Opcode;
+
+import java.util.List;
+
+/**
+ * Outcome of a fuzzing session
+ */
+public class FuzzReport {
+    private final int executions;
+    private final long instructions;
+    private final long elapsedNanos;
+    private final long[] histogram;
+    private final int coverage;
+    private final int corpusSize;
+    private final List<Crash> crashes;
+
+    /**
+     * @param histogram instructions executed per opcode type, indexed by ordinal
+     * @param coverage pairs of consecutive opcode types reached
+     * @param crashes one minimized input per distinct crash
+     */
+    public FuzzReport(int executions, long instructions, long elapsedNanos, long[] histogram, int coverage,
+                      int corpusSize, List<Crash> crashes) {
+        this.executions = executions;
+        this.instructions = instructions;
+        this.elapsedNanos = elapsedNanos;
+        this.histogram = histogram;
+        this.coverage = coverage;
+        this.corpusSize = corpusSize;
+        this.crashes = crashes;
+    }
+
+    public int getExecutions() {
+        return executions;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public double getInstructionsPerSecond() {
+        return elapsedNanos == 0 ? 0 : instructions * 1e9 / elapsedNanos;
+    }
+
+    public long getExecuted(Opcode.OpcodeType type) {
+        return histogram[type.ordinal()];
+    }
+
+    public int getCoverage() {
+        return coverage;
+    }
+
+    public int getCorpusSize() {
+        return corpusSize;
+    }
+
+    public List<Crash> getCrashes() {
+        return crashes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d ROMs, %d instructions, %.1f million instructions/s%n",
+                executions, instructions, getInstructionsPerSecond() / 1e6));
+        report.append(String.format("%d opcode pairs covered, %d inputs kept%n", coverage, corpusSize));
+        for (Opcode.OpcodeType type : Opcode.OpcodeType.values()) {
+            if (histogram[type.ordinal()] > 0)
+                report.append(String.format("  %-16s %d%n", type, histogram[type.ordinal()]));
+        }
+        report.append(crashes.size()).append(" distinct crashes").append(System.lineSeparator());
+        for (Crash crash : crashes)
+            report.append("  ").append(crash).append(System.lineSeparator());
+        return report.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package main.fuzz;
+
+import main.cpu.Quirks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Fuzzes the CPU from the command line: the number of ROMs to run, then optionally the seed, a directory where the
+ * minimized crashing ROMs are written, and a directory of ROMs to start mutating from
+ */
+public class FuzzRunner {
+    private static final long MAX_INSTRUCTIONS = 100_000;
+    private static final int INSTRUCTIONS_PER_FRAME = 10;
+    private static final int MAX_ROM_INSTRUCTIONS = 256;
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: FuzzRunner <executions> [seed] [crash directory] [seed ROM directory]");
+            return;
+        }
+        int executions = Integer.parseInt(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        Fuzzer fuzzer = new Fuzzer(Quirks.LEGACY, MAX_INSTRUCTIONS, INSTRUCTIONS_PER_FRAME, MAX_ROM_INSTRUCTIONS);
+        if (args.length > 3) {
+            try (Stream<Path> roms = Files.list(Path.of(args[3]))) {
+                for (Path rom : (Iterable<Path>) roms.filter(Files::isRegularFile)::iterator)
+                    fuzzer.addSeed(Files.readAllBytes(rom));
+            }
+        }
+
+        System.out.println("Fuzzing with seed " + seed);
+        FuzzReport report = fuzzer.fuzz(seed, executions, Runtime.getRuntime().availableProcessors());
+        System.out.print(report);
+        if (args.length > 2) {
+            Path directory = Files.createDirectories(Path.of(args[2]));
+            int n = 0;
+            for (Crash crash : report.getCrashes()) {
+                Path file = directory.resolve("crash-" + (n++) + "-" + crash.getInputSeed() + ".ch8");
+                Files.write(file, crash.getRom());
+            }
+        }
+    }
+}
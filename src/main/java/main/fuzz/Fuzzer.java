@@ -0,0 +1,243 @@
+package main.fuzz;
+
+import main.cpu.CPU;
+import main.cpu.Opcode;
+import main.cpu.Quirks;
+import main.cpu.Stack;
+import main.diff.CpuEngine;
+import main.diff.DiffResult;
+import main.diff.DifferentialTester;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs random and mutated ROMs on headless CPUs, on as many threads as asked, looking for inputs that make the
+ * interpreter throw or fault (stack overflows and underflows, bad display coordinates...).
+ * Every run is bounded by a number of instructions and fully determined by the ROM and an input seed, which drives
+ * both the key presses and RND, so every crash found can be replayed and minimized.
+ * Inputs reaching a pair of consecutive opcode types never executed before are kept and mutated further.
+ * An input that runs without crashing is run again a frame at a time with CPU.runFrame, with blocks and without, and
+ * crashes with a DivergenceException if a frame doesn't end in the state stepping through it does.
+ */
+public class Fuzzer {
+    // LD V0, V0: the instruction that does nothing, used to blank out instructions while minimizing
+    private static final char NO_OPERATION = 0x8000;
+    private static final int START = Opcode.OpcodeType.UNSUPPORTED.ordinal();
+
+    private final Quirks quirks;
+    private final long maxInstructions;
+    private final int instructionsPerFrame;
+    private final RomGenerator generator;
+    private final Coverage coverage;
+    private final List<byte[]> corpus;
+    private final DifferentialTester interpretedFrames;
+    private final DifferentialTester blockFrames;
+
+    /**
+     * @param maxInstructions instructions after which a run that didn't crash is stopped
+     * @param instructionsPerFrame instructions between two timer ticks, and two changes of the key pressed
+     * @param maxRomInstructions size of the largest ROM generated
+     */
+    public Fuzzer(Quirks quirks, long maxInstructions, int instructionsPerFrame, int maxRomInstructions) {
+        this.quirks = quirks;
+        this.maxInstructions = maxInstructions;
+        this.instructionsPerFrame = instructionsPerFrame;
+        this.generator = new RomGenerator(maxRomInstructions);
+        this.coverage = new Coverage();
+        this.corpus = new CopyOnWriteArrayList<>();
+        long maxFrames = Math.max(1, maxInstructions / instructionsPerFrame);
+        this.interpretedFrames = new DifferentialTester(() -> new CpuEngine(quirks, false),
+                () -> new CpuEngine(quirks, true, false), instructionsPerFrame, maxFrames, false);
+        this.blockFrames = new DifferentialTester(() -> new CpuEngine(quirks, false),
+                () -> new CpuEngine(quirks, true, true), instructionsPerFrame, maxFrames, false);
+    }
+
+    /**
+     * Adds an input to start mutating from, e.g. a real game
+     */
+    public void addSeed(byte[] rom) {
+        // mutations and minimization work on whole instructions
+        byte[] even = new byte[(rom.length + 1) & ~1];
+        System.arraycopy(rom, 0, even, 0, rom.length);
+        corpus.add(even);
+    }
+
+    /**
+     * Fuzzes until the given number of ROMs were run, then minimizes one input per distinct crash
+     * @param seed seed of everything generated, two fuzzing sessions with the same seed and a single thread run the same inputs
+     */
+    public FuzzReport fuzz(long seed, int executions, int threads) throws InterruptedException {
+        SplittableRandom master = new SplittableRandom(seed);
+        Map<String, Crash> crashes = new ConcurrentHashMap<>();
+        AtomicInteger remaining = new AtomicInteger(executions);
+        List<Worker> workers = new ArrayList<>();
+        List<Future<?>> running = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            for (int t = 0; t < threads; t++) {
+                Worker worker = new Worker(master.split());
+                workers.add(worker);
+                running.add(pool.submit(() -> worker.fuzz(remaining, crashes)));
+            }
+            for (Future<?> future : running)
+                future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Fuzzing thread failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long instructions = 0;
+        long[] histogram = new long[Opcode.OpcodeType.values().length];
+        for (Worker worker : workers) {
+            instructions += worker.instructions;
+            for (int i = 0; i < histogram.length; i++)
+                histogram[i] += worker.histogram[i];
+        }
+        List<Crash> minimized = crashes.values().parallelStream()
+                .map(this::minimize)
+                .sorted(Comparator.comparing(Crash::getSignature))
+                .collect(Collectors.toList());
+        return new FuzzReport(executions, instructions, elapsed, histogram, coverage.size(), corpus.size(), minimized);
+    }
+
+    /**
+     * Runs a single input
+     * @return the crash, or null if the run ended without an exception
+     */
+    public Crash execute(byte[] rom, long inputSeed) {
+        return new Worker(new SplittableRandom(inputSeed)).run(rom, inputSeed);
+    }
+
+    /**
+     * Shrinks the ROM of a crash while it keeps crashing the same way: first cutting it to the shortest prefix that
+     * still crashes, then replacing every instruction that isn't needed by one that does nothing, until neither helps
+     * @return the crash of the smallest input found
+     */
+    public Crash minimize(Crash crash) {
+        Worker worker = new Worker(new SplittableRandom(crash.getInputSeed()));
+        String signature = crash.getSignature();
+        long inputSeed = crash.getInputSeed();
+        Crash smallest = crash;
+        boolean shrunk = true;
+        while (shrunk) {
+            shrunk = false;
+            byte[] rom = smallest.getRom();
+            for (int length = 2; length < rom.length; length += 2) {
+                byte[] prefix = new byte[length];
+                System.arraycopy(rom, 0, prefix, 0, length);
+                Crash candidate = worker.run(prefix, inputSeed);
+                if (candidate != null && candidate.getSignature().equals(signature)) {
+                    smallest = candidate;
+                    shrunk = true;
+                    break;
+                }
+            }
+            rom = smallest.getRom();
+            for (int at = 0; at < rom.length; at += 2) {
+                if (((rom[at] & 0xFF) << 8 | (rom[at + 1] & 0xFF)) == NO_OPERATION) continue;
+                byte[] blanked = rom.clone();
+                RomGenerator.put(blanked, at, NO_OPERATION);
+                Crash candidate = worker.run(blanked, inputSeed);
+                if (candidate != null && candidate.getSignature().equals(signature)) {
+                    smallest = candidate;
+                    rom = blanked;
+                    shrunk = true;
+                }
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * State of one fuzzing thread
+     */
+    private class Worker {
+        final SplittableRandom random;
+        final long[] histogram;
+        long instructions;
+        boolean newCoverage;
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+            this.histogram = new long[Opcode.OpcodeType.values().length];
+        }
+
+        void fuzz(AtomicInteger remaining, Map<String, Crash> crashes) {
+            while (remaining.getAndDecrement() > 0) {
+                byte[] rom = !corpus.isEmpty() && random.nextBoolean()
+                        ? generator.mutate(corpus.get(random.nextInt(corpus.size())), random)
+                        : generator.random(random);
+                Crash crash = run(rom, random.nextLong());
+                if (crash != null) crashes.putIfAbsent(crash.getSignature(), crash);
+                else if (newCoverage) corpus.add(rom);
+            }
+        }
+
+        Crash run(byte[] rom, long inputSeed) {
+            Memory memory = new Memory(quirks.getMemorySize());
+            memory.loadGame(rom);
+            Keyboard keyboard = new Keyboard();
+            CPU cpu = new CPU(new Stack(), memory, new DisplayModel(), keyboard, quirks);
+            cpu.setRandomSeed(inputSeed);
+            SplittableRandom input = new SplittableRandom(inputSeed);
+            newCoverage = false;
+            int previous = START;
+            long executed = 0;
+            int pc = cpu.getProgramCounter();
+            Opcode.OpcodeType type = null;
+            try {
+                while (executed < maxInstructions && !cpu.isHalted()) {
+                    if (executed % instructionsPerFrame == 0) {
+                        cpu.tickTimers();
+                        if (input.nextInt(4) == 0) keyboard.press((char) input.nextInt(16));
+                        else keyboard.release(keyboard.getCurrentKeyPressed());
+                    }
+                    pc = cpu.getProgramCounter();
+                    // stays null if fetching the instruction throws
+                    type = null;
+                    type = cpu.decodeInstruction(memory.readInstruction(pc)).getType();
+                    if (type == Opcode.OpcodeType.UNSUPPORTED) break;
+                    int ordinal = type.ordinal();
+                    histogram[ordinal]++;
+                    if (coverage.add(previous, ordinal)) newCoverage = true;
+                    previous = ordinal;
+                    if (!cpu.step()) return new Crash(rom, inputSeed, cpu.getStackFault(), type, executed, pc);
+                    executed++;
+                }
+            } catch (RuntimeException e) {
+                return new Crash(rom, inputSeed, e, type, executed, pc);
+            } finally {
+                instructions += executed;
+            }
+            Crash diverged = compareFrames(interpretedFrames, "running frames without blocks", rom, inputSeed);
+            return diverged != null ? diverged
+                    : compareFrames(blockFrames, "running frames with blocks", rom, inputSeed);
+        }
+
+        private Crash compareFrames(DifferentialTester tester, String engine, byte[] rom, long inputSeed) {
+            DiffResult result = tester.run(engine, rom, inputSeed);
+            if (result.passed()) return null;
+            long frame = result.getDivergence().getFrame();
+            return new Crash(rom, inputSeed, new DivergenceException(engine, result.getDivergence()), null,
+                    frame * instructionsPerFrame, 0);
+        }
+    }
+}
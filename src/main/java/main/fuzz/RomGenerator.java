@@ -0,0 +1,105 @@
+package main.fuzz;
+
+import java.util.SplittableRandom;
+
+/**
+ * Produces ROMs to fuzz with: random instruction streams, mostly made of valid instructions so that runs get past the
+ * first few of them, and mutations of interesting inputs
+ */
+public class RomGenerator {
+    private static final char[] F_OPERATIONS = {0x07, 0x0A, 0x15, 0x18, 0x1E, 0x29, 0x30, 0x33, 0x55, 0x65, 0x75, 0x85};
+    private static final char[] ZERO_OPERATIONS = {0x00E0, 0x00EE, 0x00FB, 0x00FC, 0x00FD, 0x00FE, 0x00FF};
+
+    private final int maxInstructions;
+
+    /**
+     * @param maxInstructions largest ROM generated, in instructions
+     */
+    public RomGenerator(int maxInstructions) {
+        this.maxInstructions = maxInstructions;
+    }
+
+    public byte[] random(SplittableRandom random) {
+        byte[] rom = new byte[2 * (1 + random.nextInt(maxInstructions))];
+        for (int i = 0; i < rom.length; i += 2)
+            put(rom, i, instruction(random));
+        return rom;
+    }
+
+    /**
+     * @return a copy of the ROM with a few instructions replaced, inserted, removed or with flipped bits
+     */
+    public byte[] mutate(byte[] rom, SplittableRandom random) {
+        byte[] mutated = rom.clone();
+        int mutations = 1 + random.nextInt(4);
+        for (int m = 0; m < mutations; m++) {
+            int instructions = mutated.length / 2;
+            int at = 2 * random.nextInt(instructions);
+            switch (random.nextInt(4)) {
+                case 0:
+                    put(mutated, at, instruction(random));
+                    break;
+                case 1:
+                    mutated[at + random.nextInt(2)] ^= (byte) (1 << random.nextInt(8));
+                    break;
+                case 2:
+                    if (instructions < maxInstructions) {
+                        byte[] longer = new byte[mutated.length + 2];
+                        System.arraycopy(mutated, 0, longer, 0, at);
+                        System.arraycopy(mutated, at, longer, at + 2, mutated.length - at);
+                        put(longer, at, instruction(random));
+                        mutated = longer;
+                    }
+                    break;
+                default:
+                    if (instructions > 1) {
+                        byte[] shorter = new byte[mutated.length - 2];
+                        System.arraycopy(mutated, 0, shorter, 0, at);
+                        System.arraycopy(mutated, at + 2, shorter, at, shorter.length - at);
+                        mutated = shorter;
+                    }
+                    break;
+            }
+        }
+        return mutated;
+    }
+
+    private static char instruction(SplittableRandom random) {
+        char operands = (char) random.nextInt(0x1000);
+        char x = (char) (operands & 0x0F00);
+        char xy = (char) (operands & 0x0FF0);
+        int kind = random.nextInt(16);
+        switch (kind) {
+            case 0x0:
+                if (random.nextInt(4) == 0) return (char) (0x00C0 | (operands & 0xF));
+                return ZERO_OPERATIONS[random.nextInt(ZERO_OPERATIONS.length)];
+            case 0x5:
+                return (char) (0x5000 | xy | random.nextInt(4));
+            case 0x8: {
+                int n = random.nextInt(9);
+                return (char) (0x8000 | xy | (n == 8 ? 0xE : n));
+            }
+            case 0x9:
+                return (char) (0x9000 | xy);
+            case 0xE:
+                return (char) (0xE000 | x | (random.nextBoolean() ? 0x9E : 0xA1));
+            case 0xF:
+                return (char) (0xF000 | x | F_OPERATIONS[random.nextInt(F_OPERATIONS.length)]);
+            case 0x1:
+            case 0x2:
+            case 0xA:
+            case 0xB:
+                // a quarter of the addresses in the last page, for runs to get past the end of memory: BNNN there
+                // jumps beyond 0xFFF, and FX55 with I there stores instructions a JP then runs into
+                if (random.nextInt(4) == 0) operands = (char) (0xF00 | operands & 0xFF);
+                return (char) ((kind << 12) | operands);
+            default:
+                return (char) ((kind << 12) | operands);
+        }
+    }
+
+    static void put(byte[] rom, int at, char instruction) {
+        rom[at] = (byte) (instruction >>> 8);
+        rom[at + 1] = (byte) instruction;
+    }
+}
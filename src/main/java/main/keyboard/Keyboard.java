@@ -4,7 +4,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 
 public class Keyboard implements KeyListener {
-    private char currentKeyPressed = 0xFFFF;
+    private volatile char currentKeyPressed = 0xFFFF;
 
     @Override
     public void keyTyped(KeyEvent e) {
@@ -44,6 +44,22 @@ public class Keyboard implements KeyListener {
         }
     }
 
+    /**
+     * Presses a key without going through AWT, e.g. for input coming from the network
+     * @param key hex value of the key, 0x0 - 0xF
+     */
+    public void press(char key) {
+        currentKeyPressed = key;
+    }
+
+    /**
+     * Releases a key pressed with press(), if it's still the one held down
+     */
+    public void release(char key) {
+        if (currentKeyPressed == key)
+            currentKeyPressed = 0xFFFF;
+    }
+
     public char getCurrentKeyPressed() {
         return currentKeyPressed;
     }
@@ -0,0 +1,67 @@
+package main.memory;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * The pages of a memory written since they were last put back, for a machine starting over from some state to only
+ * copy those. Writes made by restore() itself don't count
+ */
+public final class DirtyPages {
+    public static final int PAGE_SIZE = 256;
+
+    private final boolean[] dirty;
+    private boolean restoring;
+
+    /**
+     * Watches writes to the memory from now on, every page starting clean
+     */
+    public DirtyPages(Memory memory) {
+        this.dirty = new boolean[memory.size() / PAGE_SIZE];
+        memory.addWriteWatcher(this::written);
+    }
+
+    public int getPageCount() {
+        return dirty.length;
+    }
+
+    public boolean isDirty(int page) {
+        return dirty[page];
+    }
+
+    /**
+     * Marks the page as holding what it should again, e.g. once it was copied somewhere that now expects it
+     */
+    public void clean(int page) {
+        dirty[page] = false;
+    }
+
+    /**
+     * Puts every dirty page back, then marks it clean
+     * @param writer writes the page of the given index back to memory
+     */
+    public void restore(IntConsumer writer) {
+        restore(page -> false, writer);
+    }
+
+    /**
+     * Puts every dirty page back, as well as those that are stale even though they weren't written, then marks them
+     * clean
+     * @param stale true for a page to put back even if it's clean
+     * @param writer writes the page of the given index back to memory
+     */
+    public void restore(IntPredicate stale, IntConsumer writer) {
+        restoring = true;
+        for (int p = 0; p < dirty.length; p++) {
+            if (!dirty[p] && !stale.test(p)) continue;
+            writer.accept(p);
+            dirty[p] = false;
+        }
+        restoring = false;
+    }
+
+    private void written(int address, int length) {
+        if (restoring || length == 0) return;
+        for (int p = address / PAGE_SIZE; p <= (address + length - 1) / PAGE_SIZE; p++) dirty[p] = true;
+    }
+}
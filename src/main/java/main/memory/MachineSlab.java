@@ -0,0 +1,119 @@
+package main.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Off-heap storage for the state of many machines: a single direct buffer, divided into one slot per machine, so
+ * that hundreds of thousands of machines don't leave as many arrays for the garbage collector to go through.
+ * Every slot has the layout given by the constants below. The memory of a machine is used in place, through the
+ * Memory returned by memory(machine); registers, stack and display are kept on the heap while the machine runs and
+ * written to their place in the slot by CPU.saveState. A snapshot of a machine is then a single copy of its slot
+ */
+public class MachineSlab {
+    public static final int REGISTERS = 0;
+    public static final int FLAGS = 16;
+    public static final int AUDIO_PATTERN = 32;
+    public static final int I_REGISTER = 48;
+    public static final int PROGRAM_COUNTER = 50;
+    public static final int DELAY_TIMER = 52;
+    public static final int SOUND_TIMER = 53;
+    public static final int PITCH = 54;
+    public static final int HALTED = 55;
+    public static final int INSTRUCTION_COUNT = 56;
+    public static final int CYCLE_COUNT = 64;
+    public static final int CYCLES_LEFT = 72;
+    // pointer, then up to Stack.MAX_DEPTH entries
+    public static final int STACK = 80;
+    // resolution and selected planes, then the words of every plane at the highest resolution
+    public static final int DISPLAY = 600;
+    public static final int MEMORY = 2656;
+
+    private final ByteBuffer slab;
+    private final int capacity;
+    private final int memorySize;
+    private final int slotSize;
+    private final Memory[] memories;
+
+    /**
+     * @param capacity number of machines
+     * @param memorySize memory of every machine, CHIP8_SIZE or XO_CHIP_SIZE
+     * @throws IllegalArgumentException if the slab wouldn't fit in a single buffer. Many machines with a large memory
+     * need more than one slab
+     */
+    public MachineSlab(int capacity, int memorySize) {
+        if (capacity <= 0) throw new IllegalArgumentException("A slab needs at least one machine");
+        this.capacity = capacity;
+        this.memorySize = memorySize;
+        this.slotSize = MEMORY + memorySize;
+        long bytes = (long) capacity * slotSize;
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(capacity + " machines of " + slotSize + " bytes don't fit in one slab");
+        this.slab = ByteBuffer.allocateDirect((int) bytes);
+        this.memories = new Memory[capacity];
+    }
+
+    /**
+     * @return view of the slot of the machine, index 0 being the start of the slot
+     */
+    public ByteBuffer slot(int machine) {
+        return slab.slice(offset(machine), slotSize);
+    }
+
+    /**
+     * @return memory of the machine, always the same instance for a machine. It's created, with the fonts loaded,
+     * the first time it's asked for
+     */
+    public Memory memory(int machine) {
+        Memory memory = memories[machine];
+        if (memory == null) {
+            memory = new Memory(slab.slice(offset(machine) + MEMORY, memorySize));
+            memories[machine] = memory;
+        }
+        return memory;
+    }
+
+    /**
+     * Copies the whole slot of a machine over another one. The state saved in the destination slot can then be
+     * loaded with CPU.loadState
+     */
+    public void copy(int from, int to) {
+        slab.put(offset(to), slab, offset(from), slotSize);
+        replaced(to);
+    }
+
+    /**
+     * Copies the slot of the machine to the buffer, at its position
+     */
+    public void snapshot(int machine, ByteBuffer destination) {
+        destination.put(slab.slice(offset(machine), slotSize));
+    }
+
+    /**
+     * Replaces the slot of the machine with a snapshot read from the buffer, at its position
+     */
+    public void restore(int machine, ByteBuffer source) {
+        slab.put(offset(machine), source, source.position(), slotSize);
+        source.position(source.position() + slotSize);
+        replaced(machine);
+    }
+
+    private void replaced(int machine) {
+        if (memories[machine] != null) memories[machine].replaced();
+    }
+
+    private int offset(int machine) {
+        return machine * slotSize;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+}
@@ -3,25 +3,75 @@ package main.memory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
+/**
+ * The addressable memory of the machine, one byte per address. Addresses wrap around the end of memory, as they did
+ * on the original machines, so no address given by a ROM can make an access fail.
+ * Writes can be watched, for anything caching what it derived from the content of memory (e.g. decoded code).
+ * The bytes live in a heap buffer by default, or in a slice of a MachineSlab when machines are kept off-heap
+ */
 public class Memory {
-    char[] memoryArray;
+    public static final int CHIP8_SIZE = 4096;
+    public static final int XO_CHIP_SIZE = 65536;
+    public static final int FONT_ADDRESS = 0x000;
+    public static final int BIG_FONT_ADDRESS = 0x050;
+    public static final int ROM_ADDRESS = 0x200;
+
+    // reads two bytes as a big-endian instruction in a single access
+    private static final VarHandle INSTRUCTIONS = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final WriteWatcher[] NO_WATCHERS = new WriteWatcher[0];
+
+    private final ByteBuffer bytes;
+    private final int mask;
+    private WriteWatcher[] watchers;
 
     public Memory() {
-        this.memoryArray = new char[4096];
+        this(CHIP8_SIZE);
+    }
+
+    /**
+     * @param size bytes of addressable memory, CHIP8_SIZE for CHIP-8 and SUPER-CHIP, XO_CHIP_SIZE for XO-CHIP.
+     *             Must be a power of 2
+     */
+    public Memory(int size) {
+        this(ByteBuffer.allocate(checkSize(size)));
+    }
+
+    /**
+     * Uses the buffer, from index 0 to its capacity, as memory. The fonts are written at the start of it
+     * @param bytes buffer whose capacity is a power of 2
+     */
+    public Memory(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.mask = checkSize(bytes.capacity()) - 1;
+        this.watchers = NO_WATCHERS;
         initSprites();
     }
 
+    private static int checkSize(int size) {
+        if (Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("Memory size must be a power of 2, was " + size);
+        return size;
+    }
+
     public void loadGame(String gamePath) throws IOException {
         byte[] arr;
         File game = new File(gamePath);
         try (FileInputStream inputStream = new FileInputStream(game)) {
             arr = inputStream.readAllBytes();
         }
-        for (int i = 0; i < arr.length; i++) {
-            memoryArray[i + 0x200] = (char) (arr[i] & 0xFF);
-        }
+        loadGame(arr);
+    }
+
+    public void loadGame(byte[] rom) {
+        if (rom.length > size() - ROM_ADDRESS)
+            throw new IllegalArgumentException("A ROM of " + rom.length + " bytes doesn't fit in " + size() + " bytes of memory");
+        writeBlock(ROM_ADDRESS, rom, 0, rom.length);
     }
 
     private void initSprites() {
@@ -43,24 +93,131 @@ public class Memory {
                 0xf0, 0x80, 0xf0, 0x80, 0xf0,
                 0xf0, 0x80, 0xf0, 0x80, 0x80
         };
-        for (int i = 0; i < sprites.length; i++) {
-            memoryArray[i] = sprites[i];
+        writeBlock(FONT_ADDRESS, sprites, 0, sprites.length);
+        // 8x10 digits used by SUPER-CHIP (0-9) and XO-CHIP (0-F) through FX30
+        char[] bigSprites = {
+                0x3c, 0x7e, 0xe7, 0xc3, 0xc3, 0xc3, 0xc3, 0xe7, 0x7e, 0x3c,
+                0x18, 0x38, 0x58, 0x18, 0x18, 0x18, 0x18, 0x18, 0x18, 0x3c,
+                0x3e, 0x7f, 0xc3, 0x06, 0x0c, 0x18, 0x30, 0x60, 0xff, 0xff,
+                0x3c, 0x7e, 0xc3, 0x03, 0x0e, 0x0e, 0x03, 0xc3, 0x7e, 0x3c,
+                0x06, 0x0e, 0x1e, 0x36, 0x66, 0xc6, 0xff, 0xff, 0x06, 0x06,
+                0xff, 0xff, 0xc0, 0xc0, 0xfc, 0xfe, 0x03, 0xc3, 0x7e, 0x3c,
+                0x3e, 0x7c, 0xe0, 0xc0, 0xfc, 0xfe, 0xc3, 0xc3, 0x7e, 0x3c,
+                0xff, 0xff, 0x03, 0x06, 0x0c, 0x18, 0x30, 0x60, 0x60, 0x60,
+                0x3c, 0x7e, 0xc3, 0xc3, 0x7e, 0x7e, 0xc3, 0xc3, 0x7e, 0x3c,
+                0x3c, 0x7e, 0xc3, 0xc3, 0x7f, 0x3f, 0x03, 0x03, 0x3e, 0x7c,
+                0x7e, 0xff, 0xc3, 0xc3, 0xc3, 0xff, 0xff, 0xc3, 0xc3, 0xc3,
+                0xfc, 0xfe, 0xc3, 0xc3, 0xfe, 0xfe, 0xc3, 0xc3, 0xfe, 0xfc,
+                0x3c, 0x7e, 0xc3, 0xc0, 0xc0, 0xc0, 0xc0, 0xc3, 0x7e, 0x3c,
+                0xfc, 0xfe, 0xc3, 0xc3, 0xc3, 0xc3, 0xc3, 0xc3, 0xfe, 0xfc,
+                0xff, 0xff, 0xc0, 0xc0, 0xff, 0xff, 0xc0, 0xc0, 0xff, 0xff,
+                0xff, 0xff, 0xc0, 0xc0, 0xff, 0xff, 0xc0, 0xc0, 0xc0, 0xc0
+        };
+        writeBlock(BIG_FONT_ADDRESS, bigSprites, 0, bigSprites.length);
+    }
+
+    public char readByte(int address) {
+        return (char) (bytes.get(address & mask) & 0xFF);
+    }
+
+    /**
+     * @return the two bytes at the address, the first one being the most significant
+     */
+    public char readInstruction(int address) {
+        address &= mask;
+        if (address != mask) return (char) (short) INSTRUCTIONS.get(bytes, address);
+        // the second byte wraps around to address 0
+        return (char) (((bytes.get(mask) & 0xFF) << 8) | (bytes.get(0) & 0xFF));
+    }
+
+    /**
+     * Stores the lowest 8 bits of the value
+     */
+    public void writeByte(int address, char value) {
+        address &= mask;
+        bytes.put(address, (byte) value);
+        if (watchers.length != 0) notifyWatchers(address, 1);
+    }
+
+    /**
+     * Copies length bytes starting at the address, wrapping around the end of memory
+     */
+    public void readBlock(int address, byte[] destination, int offset, int length) {
+        address &= mask;
+        int first = Math.min(length, mask + 1 - address);
+        bytes.get(address, destination, offset, first);
+        if (first < length) bytes.get(0, destination, offset + first, length - first);
+    }
+
+    /**
+     * Same as reading into bytes, for registers and other 8 bit values kept in chars
+     */
+    public void readBlock(int address, char[] destination, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            destination[offset + i] = (char) (bytes.get((address + i) & mask) & 0xFF);
+        }
+    }
+
+    /**
+     * Stores length bytes starting at the address, wrapping around the end of memory
+     */
+    public void writeBlock(int address, byte[] source, int offset, int length) {
+        address &= mask;
+        int first = Math.min(length, mask + 1 - address);
+        bytes.put(address, source, offset, first);
+        if (first < length) bytes.put(0, source, offset + first, length - first);
+        if (watchers.length != 0) notifyBlock(address, first, length);
+    }
+
+    /**
+     * Same as writing bytes, storing the lowest 8 bits of every value
+     */
+    public void writeBlock(int address, char[] source, int offset, int length) {
+        address &= mask;
+        for (int i = 0; i < length; i++) {
+            bytes.put((address + i) & mask, (byte) source[offset + i]);
         }
+        if (watchers.length != 0) notifyBlock(address, Math.min(length, mask + 1 - address), length);
+    }
+
+    private void notifyBlock(int address, int first, int length) {
+        notifyWatchers(address, first);
+        if (first < length) notifyWatchers(0, length - first);
     }
 
-    public char readByte(int index) {
-        return memoryArray[index];
+    private void notifyWatchers(int address, int length) {
+        for (WriteWatcher watcher : watchers) {
+            watcher.written(address, length);
+        }
     }
 
-    public char readInstruction(int index) {
-        char p1 = memoryArray[index];
-        char p2 = memoryArray[index+1];
-        return (char) ( (p1 << 8) | p2);
+    /**
+     * Calls the watcher after every write, from the thread writing
+     */
+    public void addWriteWatcher(WriteWatcher watcher) {
+        WriteWatcher[] added = new WriteWatcher[watchers.length + 1];
+        System.arraycopy(watchers, 0, added, 0, watchers.length);
+        added[watchers.length] = watcher;
+        watchers = added;
     }
 
-    public void writeByte(int index, char b) {
-        memoryArray[index] = b;
+    public void removeWriteWatcher(WriteWatcher watcher) {
+        int kept = 0;
+        WriteWatcher[] remaining = new WriteWatcher[watchers.length];
+        for (WriteWatcher w : watchers) {
+            if (w != watcher) remaining[kept++] = w;
+        }
+        watchers = kept == 0 ? NO_WATCHERS : Arrays.copyOf(remaining, kept);
     }
 
+    /**
+     * Tells the watchers that the whole memory changed, after it was copied into without going through this class
+     */
+    void replaced() {
+        if (watchers.length != 0) notifyWatchers(0, size());
+    }
 
+    public int size() {
+        return mask + 1;
+    }
 }
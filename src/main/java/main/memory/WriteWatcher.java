@@ -0,0 +1,13 @@
+package main.memory;
+
+/**
+ * Told about every write to a Memory
+ */
+@FunctionalInterface
+public interface WriteWatcher {
+    /**
+     * @param address first address written
+     * @param length number of bytes written, never crossing the end of memory (a wrapping write is reported twice)
+     */
+    void written(int address, int length);
+}
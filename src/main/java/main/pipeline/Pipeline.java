@@ -0,0 +1,224 @@
+package main.pipeline;
+
+import main.audio.AudioBuffer;
+import main.audio.AudioFrame;
+import main.audio.Synthesizer;
+import main.cpu.CPU;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs an emulated machine on four threads with a single role each: the CPU, a 60Hz timer, rendering and audio.
+ * The timer is the only clock: it bumps the tick count and wakes the other stages up, which then do a tick's worth
+ * of work. Stages only talk through single-writer structures that never block: the tick count, the FrameBuffer of
+ * the display and the AudioBuffer, so the CPU never waits for rendering or audio, and a slow stage skips ticks
+ * instead of holding the others back. Keys come in from the AWT thread through the Keyboard, which the CPU reads.
+ * Threads are created by a factory per stage, which can be replaced before start(), e.g. to pin a stage to a core
+ * through an affinity library or to give it a priority; every stage keeps StageStats
+ */
+public class Pipeline {
+    static final long FRAME_NANOS = 1_000_000_000L / 60;
+    // frames the CPU may fall behind the timer before it drops them instead of running them back to back
+    private static final int MAX_LAG = 3;
+    // ticks of audio the line buffers
+    private static final int AUDIO_BUFFERED_FRAMES = 4;
+
+    private final CPU cpu;
+    private final AudioBuffer audio;
+    private final Map<Stage, ThreadFactory> factories;
+    private final Map<Stage, StageStats> stats;
+    private final Map<Stage, Thread> threads;
+    private volatile long ticks;
+    private volatile boolean running;
+    private volatile Runnable renderer;
+    private SourceDataLine line;
+
+    public Pipeline(CPU cpu) {
+        this.cpu = cpu;
+        this.audio = new AudioBuffer();
+        this.factories = new EnumMap<>(Stage.class);
+        this.stats = new EnumMap<>(Stage.class);
+        this.threads = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            factories.put(stage, runnable -> {
+                Thread thread = new Thread(runnable, stage.getThreadName());
+                // the CPU keeps the program alive until the ROM exits, the others only serve it
+                thread.setDaemon(stage != Stage.CPU);
+                return thread;
+            });
+            stats.put(stage, new StageStats());
+        }
+    }
+
+    /**
+     * Replaces the factory creating the thread of a stage. Must be called before start()
+     */
+    public void setThreadFactory(Stage stage, ThreadFactory factory) {
+        factories.put(stage, factory);
+    }
+
+    /**
+     * Sets what the render stage runs on every tick, typically ActiveRenderer::renderLatest.
+     * Nothing is rendered until it's set, which can happen after start()
+     */
+    public void setRenderer(Runnable renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Sets the line audio samples are written to. Must be called before start(): without one, samples are
+     * still made but not played
+     */
+    public void setAudioLine(SourceDataLine line) {
+        this.line = line;
+    }
+
+    /**
+     * Opens a line for the audio stage in the format the Synthesizer makes
+     * @return the line, or null if there's no audio device
+     */
+    public static SourceDataLine openAudioLine() {
+        AudioFormat format = new AudioFormat(Synthesizer.SAMPLE_RATE, 8, 1, true, false);
+        try {
+            SourceDataLine line = AudioSystem.getSourceDataLine(format);
+            line.open(format, Synthesizer.SAMPLES_PER_FRAME * AUDIO_BUFFERED_FRAMES);
+            line.start();
+            return line;
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public void start() {
+        running = true;
+        threads.put(Stage.CPU, factories.get(Stage.CPU).newThread(this::runCpu));
+        threads.put(Stage.RENDER, factories.get(Stage.RENDER).newThread(this::runRender));
+        threads.put(Stage.AUDIO, factories.get(Stage.AUDIO).newThread(this::runAudio));
+        // started last, so that the other stages are there to be woken up
+        threads.put(Stage.TIMER, factories.get(Stage.TIMER).newThread(this::runTimer));
+        for (Stage stage : new Stage[]{Stage.CPU, Stage.RENDER, Stage.AUDIO, Stage.TIMER}) {
+            threads.get(stage).start();
+        }
+    }
+
+    /**
+     * Stops all stages and waits for their threads to be done
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads.values()) LockSupport.unpark(thread);
+        for (Thread thread : threads.values()) thread.join();
+        if (line != null) line.close();
+    }
+
+    public StageStats getStats(Stage stage) {
+        return stats.get(stage);
+    }
+
+    /**
+     * @return the stats of every stage, a line each, named after its thread
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            report.append(stage.getThreadName()).append(": ").append(stats.get(stage)).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return ticks of the timer since start()
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    private void runTimer() {
+        StageStats timerStats = stats.get(Stage.TIMER);
+        long nextTick = System.nanoTime();
+        while (running) {
+            nextTick += FRAME_NANOS;
+            long now;
+            while ((now = System.nanoTime()) < nextTick && running)
+                LockSupport.parkNanos(nextTick - now);
+            timerStats.record(now - nextTick, 0);
+            // a whole period late: carry on from now instead of ticking back to back to catch up
+            if (now - nextTick > FRAME_NANOS) nextTick = now;
+            ticks++;
+            LockSupport.unpark(threads.get(Stage.CPU));
+            LockSupport.unpark(threads.get(Stage.RENDER));
+            LockSupport.unpark(threads.get(Stage.AUDIO));
+        }
+    }
+
+    private void runCpu() {
+        StageStats cpuStats = stats.get(Stage.CPU);
+        long frames = 0;
+        while (running) {
+            long target = ticks;
+            if (frames >= target) {
+                LockSupport.park(this);
+                continue;
+            }
+            long skipped = 0;
+            if (target - frames > MAX_LAG) {
+                skipped = target - frames - 1;
+                frames = target - 1;
+            }
+            long start = System.nanoTime();
+            if (!cpu.runFrame()) {
+                cpu.reportFailure();
+                return;
+            }
+            audio.publish(cpu.getSoundTimer() > 0, cpu.getAudioPattern(), cpu.getPitch());
+            frames++;
+            cpuStats.record(System.nanoTime() - start, skipped);
+            if (cpu.isHalted()) return;
+        }
+    }
+
+    private void runRender() {
+        StageStats renderStats = stats.get(Stage.RENDER);
+        long seen = 0;
+        while (running) {
+            long target = ticks;
+            Runnable current = renderer;
+            if (target == seen || current == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            long start = System.nanoTime();
+            current.run();
+            renderStats.record(System.nanoTime() - start, seen == 0 ? 0 : target - seen - 1);
+            seen = target;
+        }
+    }
+
+    private void runAudio() {
+        StageStats audioStats = stats.get(Stage.AUDIO);
+        Synthesizer synthesizer = new Synthesizer();
+        byte[] samples = new byte[Synthesizer.SAMPLES_PER_FRAME];
+        long seen = 0;
+        while (running) {
+            long target = ticks;
+            if (target == seen) {
+                LockSupport.park(this);
+                continue;
+            }
+            long start = System.nanoTime();
+            AudioFrame frame = audio.acquire();
+            synthesizer.synthesize(frame, samples, 0, samples.length);
+            // the line buffers a few ticks, this only waits when the device is behind
+            if (line != null) line.write(samples, 0, samples.length);
+            audioStats.record(System.nanoTime() - start, seen == 0 ? 0 : target - seen - 1);
+            seen = target;
+        }
+    }
+}
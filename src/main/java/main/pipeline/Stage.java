@@ -0,0 +1,25 @@
+package main.pipeline;
+
+/**
+ * Threads of a Pipeline, each with a single role
+ */
+public enum Stage {
+    // runs a frame of instructions per tick, and publishes the display and audio frames
+    CPU("chip8-cpu"),
+    // ticks 60 times per second, waking up the other stages
+    TIMER("chip8-timer"),
+    // presents the latest display frame on every tick
+    RENDER("chip8-render"),
+    // plays the latest audio frame, a tick worth of samples at a time
+    AUDIO("chip8-audio");
+
+    private final String threadName;
+
+    Stage(String threadName) {
+        this.threadName = threadName;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+}
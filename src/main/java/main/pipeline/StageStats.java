@@ -0,0 +1,50 @@
+package main.pipeline;
+
+/**
+ * Counters of a pipeline stage. Written by the stage's thread only, readable from any thread.
+ * For the timer, the time of a run is how late it woke up for the tick
+ */
+public class StageStats {
+    private volatile long runs;
+    private volatile long skippedTicks;
+    private volatile long totalNanos;
+    private volatile long maxNanos;
+
+    /**
+     * @param nanos time the run took
+     * @param skipped ticks that went by since the previous run without the stage running for them
+     */
+    void record(long nanos, long skipped) {
+        runs++;
+        skippedTicks += skipped;
+        totalNanos += nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getAverageNanos() {
+        long done = runs;
+        return done == 0 ? 0 : totalNanos / done;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("runs=%d skipped=%d time(avg/max)=%.3f/%.3f ms",
+                runs, skippedTicks, getAverageNanos() / 1e6, maxNanos / 1e6);
+    }
+}
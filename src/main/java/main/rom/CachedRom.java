@@ -0,0 +1,118 @@
+package main.rom;
+
+import main.analysis.AnalysisResult;
+import main.analysis.RomAnalyzer;
+import main.cpu.CPU;
+import main.cpu.DecodeTable;
+import main.cpu.Quirks;
+import main.cpu.QuirksDatabase;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ROM prepared once for any number of machines to start from: the memory image with the ROM loaded, the decoded
+ * instruction at every address of it, and the analysis of the ROM. Read-only, so sessions on any thread share it.
+ * A machine made by newCpu() starts with its blocks already built where the analysis found code
+ */
+public class CachedRom {
+    private final String hash;
+    private final Quirks quirks;
+    private final byte[] image;
+    private final DecodeTable table;
+    private final AnalysisResult analysis;
+    private final int[] blockStarts;
+    private final int romSize;
+
+    private CachedRom(String hash, Quirks quirks, byte[] image, DecodeTable table, AnalysisResult analysis, int romSize) {
+        this.hash = hash;
+        this.quirks = quirks;
+        this.image = image;
+        this.table = table;
+        this.analysis = analysis;
+        this.blockStarts = analysis.getGraph().getBlockStarts();
+        this.romSize = romSize;
+    }
+
+    /**
+     * Loads, decodes and analyses the ROM
+     */
+    public static CachedRom prepare(byte[] rom, Quirks quirks) {
+        return prepare(rom, QuirksDatabase.hash(rom), quirks);
+    }
+
+    static CachedRom prepare(byte[] rom, String hash, Quirks quirks) {
+        Memory memory = new Memory(quirks.getMemorySize());
+        memory.loadGame(rom);
+        byte[] image = new byte[memory.size()];
+        memory.readBlock(0, image, 0, image.length);
+        AnalysisResult analysis = new RomAnalyzer().analyze(rom);
+        return new CachedRom(hash, quirks, image, DecodeTable.of(memory), analysis, rom.length);
+    }
+
+    /**
+     * @return a new memory holding the ROM, as Memory.loadGame() would have left it
+     */
+    public Memory newMemory() {
+        return new Memory(ByteBuffer.wrap(image.clone()));
+    }
+
+    /**
+     * Puts bytes of memory back as Memory.loadGame() left them, e.g. the pages a machine wrote before it starts over
+     * @param memory of the size the ROM was prepared for
+     */
+    public void restore(Memory memory, int address, int length) {
+        memory.writeBlock(address, image, address, length);
+    }
+
+    /**
+     * @return a CPU running the ROM on new memory, with a warm block cache
+     */
+    public CPU newCpu(Stack stack, DisplayModel display, Keyboard keyboard) {
+        return newCpu(newMemory(), stack, display, keyboard);
+    }
+
+    /**
+     * @param memory memory made by newMemory()
+     * @return a CPU running the ROM on the memory, with a warm block cache
+     */
+    public CPU newCpu(Memory memory, Stack stack, DisplayModel display, Keyboard keyboard) {
+        CPU cpu = new CPU(stack, memory, display, keyboard, quirks);
+        cpu.warmUp(table, blockStarts);
+        return cpu;
+    }
+
+    /**
+     * @return SHA-1 of the ROM, as QuirksDatabase.hash() gives it
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public Quirks getQuirks() {
+        return quirks;
+    }
+
+    public DecodeTable getDecodeTable() {
+        return table;
+    }
+
+    public AnalysisResult getAnalysis() {
+        return analysis;
+    }
+
+    public int getRomSize() {
+        return romSize;
+    }
+
+    /**
+     * @return approximate bytes kept in memory for the ROM: the image, the decode table and the analysis, i.e. its
+     * blocks and a bit per address for code and sprite data
+     */
+    public long getFootprint() {
+        return image.length + table.size() + 64L * blockStarts.length + image.length / 4;
+    }
+}
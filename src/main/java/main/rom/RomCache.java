@@ -0,0 +1,207 @@
+package main.rom;
+
+import main.cpu.Quirks;
+import main.cpu.QuirksDatabase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * ROMs prepared for sessions to start from, keyed by the SHA-1 of their content and the quirks profile they run with.
+ * The least recently used ones are dropped once there are more than maxRoms of them, or once together they take
+ * more than maxBytes. Preparing a ROM happens outside the lock, so a miss doesn't hold back sessions starting with
+ * other ROMs; two sessions missing the same ROM at once both prepare it, and one of them is kept.
+ * Files loaded by path are only read and hashed again once their size or modification time changed, and are
+ * forgotten along with their ROM when it's dropped
+ */
+public class RomCache {
+    private final int maxRoms;
+    private final long maxBytes;
+    private final QuirksDatabase database;
+    private final Quirks defaultQuirks;
+    // access order, least recently used first
+    private final LinkedHashMap<String, CachedRom> roms;
+    // files whose ROM is cached
+    private final Map<Path, LoadedFile> files;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param database profiles of known ROMs, the others running with defaultQuirks
+     */
+    public RomCache(int maxRoms, long maxBytes, QuirksDatabase database, Quirks defaultQuirks) {
+        if (maxRoms < 1 || maxBytes < 1)
+            throw new IllegalArgumentException("A ROM cache must hold at least one ROM and one byte");
+        this.maxRoms = maxRoms;
+        this.maxBytes = maxBytes;
+        this.database = database;
+        this.defaultQuirks = defaultQuirks;
+        this.roms = new LinkedHashMap<>(16, 0.75f, true);
+        this.files = new HashMap<>();
+    }
+
+    /**
+     * @return the ROM prepared with the profile the database has for it
+     */
+    public CachedRom get(byte[] rom) {
+        String hash = QuirksDatabase.hash(rom);
+        return get(rom, hash, database.lookup(hash, defaultQuirks));
+    }
+
+    /**
+     * @return the ROM prepared with the given profile
+     */
+    public CachedRom get(byte[] rom, Quirks quirks) {
+        return get(rom, QuirksDatabase.hash(rom), quirks);
+    }
+
+    private CachedRom get(byte[] rom, String hash, Quirks quirks) {
+        String key = key(hash, quirks);
+        CachedRom cached = lookup(key);
+        if (cached != null) return cached;
+        synchronized (this) {
+            misses++;
+        }
+        CachedRom prepared = CachedRom.prepare(rom, hash, quirks);
+        synchronized (this) {
+            CachedRom raced = roms.putIfAbsent(key, prepared);
+            if (raced != null) return raced;
+            bytes += prepared.getFootprint();
+            evict();
+        }
+        return prepared;
+    }
+
+    private static String key(String hash, Quirks quirks) {
+        return hash + ' ' + quirks.getName();
+    }
+
+    /**
+     * @return the cached ROM, counting a hit, or null
+     */
+    private synchronized CachedRom lookup(String key) {
+        CachedRom cached = roms.get(key);
+        if (cached != null) hits++;
+        return cached;
+    }
+
+    /**
+     * @return the ROM file prepared with the profile the database has for it. The file is only read if it changed
+     * since it was last loaded, or if it was evicted since
+     */
+    public CachedRom load(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        CachedRom cached = lookup(path, attributes);
+        if (cached != null) return cached;
+        CachedRom rom = get(Files.readAllBytes(path));
+        remember(path, new LoadedFile(attributes.size(), attributes.lastModifiedTime(),
+                key(rom.getHash(), rom.getQuirks())));
+        return rom;
+    }
+
+    /**
+     * @return the cached ROM the file held when it was loaded, counting a hit, or null if the file changed since
+     */
+    private synchronized CachedRom lookup(Path path, BasicFileAttributes attributes) {
+        LoadedFile loaded = files.get(path);
+        if (loaded == null || loaded.size != attributes.size()) return null;
+        if (!loaded.modified.equals(attributes.lastModifiedTime())) return null;
+        return lookup(loaded.key);
+    }
+
+    /**
+     * Remembers what the file holds, unless its ROM was already dropped by another thread
+     */
+    private synchronized void remember(Path path, LoadedFile loaded) {
+        if (roms.containsKey(loaded.key)) files.put(path, loaded);
+        else files.remove(path);
+    }
+
+    /**
+     * Prepares every file in the directory in parallel, on all available cores, so that sessions for them start warm
+     * @return ROMs prepared, or found in the cache
+     */
+    public int preload(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        files.parallelStream().forEach(path -> {
+            try {
+                load(path);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + path, e);
+            }
+        });
+        return files.size();
+    }
+
+    /**
+     * Drops the least recently used ROMs until the limits are met, but never the one just added, which comes last
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, CachedRom>> eldest = roms.entrySet().iterator();
+        while ((roms.size() > maxRoms || bytes > maxBytes) && roms.size() > 1) {
+            Map.Entry<String, CachedRom> entry = eldest.next();
+            bytes -= entry.getValue().getFootprint();
+            eldest.remove();
+            evictions++;
+            String key = entry.getKey();
+            files.values().removeIf(loaded -> loaded.key.equals(key));
+        }
+    }
+
+    private static class LoadedFile {
+        final long size;
+        final FileTime modified;
+        final String key;
+
+        LoadedFile(long size, FileTime modified, String key) {
+            this.size = size;
+            this.modified = modified;
+            this.key = key;
+        }
+    }
+
+    public synchronized int size() {
+        return roms.size();
+    }
+
+    /**
+     * @return files remembered by load()
+     */
+    synchronized int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * @return approximate bytes taken by the cached ROMs
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
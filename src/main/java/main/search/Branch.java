@@ -0,0 +1,55 @@
+package main.search;
+
+/**
+ * Where a branch ended up after running its inputs
+ */
+public class Branch {
+    private final long frameHash;
+    private final int score;
+    private final boolean stopped;
+    private final long instructions;
+    private final Snapshot snapshot;
+
+    Branch(long frameHash, int score, boolean stopped, long instructions, Snapshot snapshot) {
+        this.frameHash = frameHash;
+        this.score = score;
+        this.stopped = stopped;
+        this.instructions = instructions;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return hash of the resolution and of every plane of the display, equal for branches showing the same screen
+     */
+    public long getFrameHash() {
+        return frameHash;
+    }
+
+    /**
+     * @return value of the score register at the end of the branch
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return true if the ROM halted, or stopped on an unsupported instruction or a stack fault, before the last frame
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return instructions executed by the branch
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return state at the end of the branch, to fork further from, or null if snapshots weren't kept
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,98 @@
+package main.search;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Explores inputs from one state: forks branches from a snapshot, each pressing its own keys, and runs them in
+ * parallel on a fork-join pool. Workers keep their machines from one fork to the next, and only copy the memory
+ * pages that differ between what a machine holds and the snapshot a branch starts from
+ */
+public class Brancher {
+    // branches run one after the other by a task, so that splitting doesn't cost more than running
+    private static final int BRANCHES_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+    private final int scoreRegister;
+    private final Queue<Machine> machines;
+    private boolean keepSnapshots;
+
+    /**
+     * @param scoreRegister V register every branch returns as its score
+     */
+    public Brancher(ForkJoinPool pool, int scoreRegister) {
+        if (scoreRegister < 0 || scoreRegister > 15)
+            throw new IllegalArgumentException("No register V" + scoreRegister);
+        this.pool = pool;
+        this.scoreRegister = scoreRegister;
+        this.machines = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Makes branches keep a snapshot of the state they ended in, to fork further from: a tree search
+     */
+    public void setKeepSnapshots(boolean keepSnapshots) {
+        this.keepSnapshots = keepSnapshots;
+    }
+
+    /**
+     * Runs one branch per input sequence for the given number of frames, every one of them starting from the snapshot
+     * @param inputs key pressed during every frame of a branch, 0xFFFF for none, then no key once there are no more
+     * @param seed seed of the random generator of every branch, so that branches only differ by their inputs
+     * @return the branches, in the order of their inputs
+     */
+    public Branch[] fork(Snapshot from, char[][] inputs, int frames, long seed) {
+        Branch[] branches = new Branch[inputs.length];
+        pool.invoke(new ForkTask(from, inputs, frames, seed, branches, 0, inputs.length));
+        return branches;
+    }
+
+    private Machine borrow(Snapshot from) {
+        Machine machine = machines.poll();
+        // machines of other profiles or stacks are left for forks needing them
+        if (machine != null && !machine.runs(from)) {
+            machines.add(machine);
+            machine = null;
+        }
+        return machine != null ? machine : new Machine(from);
+    }
+
+    private class ForkTask extends RecursiveAction {
+        private final Snapshot from;
+        private final char[][] inputs;
+        private final int frames;
+        private final long seed;
+        private final Branch[] branches;
+        private final int first;
+        private final int end;
+
+        ForkTask(Snapshot from, char[][] inputs, int frames, long seed, Branch[] branches, int first, int end) {
+            this.from = from;
+            this.inputs = inputs;
+            this.frames = frames;
+            this.seed = seed;
+            this.branches = branches;
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first > BRANCHES_PER_TASK) {
+                int middle = (first + end) >>> 1;
+                invokeAll(new ForkTask(from, inputs, frames, seed, branches, first, middle),
+                        new ForkTask(from, inputs, frames, seed, branches, middle, end));
+                return;
+            }
+            Machine machine = borrow(from);
+            try {
+                for (int b = first; b < end; b++)
+                    branches[b] = machine.run(from, inputs[b], frames, seed, scoreRegister, keepSnapshots);
+            } finally {
+                machines.add(machine);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package main.search;
+
+import main.cpu.CPU;
+import main.cpu.Quirks;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.DirtyPages;
+import main.memory.Memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A machine a worker runs branch after branch on. It remembers which snapshot page every page of its memory holds
+ * and which ones branches wrote, so starting the next branch only copies the pages that differ, and its blocks
+ * survive from one branch to the next unless code was written
+ */
+final class Machine {
+    final Quirks quirks;
+    private final Memory memory;
+    private final Keyboard keyboard;
+    private final DisplayModel display;
+    private final CPU cpu;
+    // snapshot page each page of memory holds, unless dirty
+    private final byte[][] loaded;
+    private final DirtyPages dirty;
+    private final long[] words;
+
+    Machine(Snapshot from) {
+        this.quirks = from.quirks;
+        this.memory = new Memory(quirks.getMemorySize());
+        this.keyboard = new Keyboard();
+        this.display = new DisplayModel();
+        this.cpu = new CPU(new Stack(from.stackDepth, from.stackPolicy), memory, display, keyboard, quirks);
+        this.dirty = new DirtyPages(memory);
+        this.loaded = new byte[dirty.getPageCount()][];
+        this.words = new long[DisplayModel.HIRES_WIDTH / 64 * DisplayModel.HIRES_HEIGHT * DisplayModel.PLANES];
+    }
+
+    /**
+     * @return true if the machine can run branches from the snapshot: same profile, and a stack that loads every
+     * entry and overflows the same way
+     */
+    boolean runs(Snapshot from) {
+        if (quirks != from.quirks || cpu.getStackPolicy() != from.stackPolicy) return false;
+        // a growing stack grows to the depth of the state it loads
+        return from.stackPolicy == Stack.OverflowPolicy.GROW || cpu.getStackDepth() == from.stackDepth;
+    }
+
+    /**
+     * Runs a branch from the snapshot, pressing keys[f] during frame f, and no key once there are no more
+     * @param keepSnapshot true to take a snapshot of the end of the branch
+     */
+    Branch run(Snapshot from, char[] keys, int frames, long seed, int scoreRegister, boolean keepSnapshot) {
+        restore(from);
+        cpu.setRandomSeed(seed);
+        long start = cpu.getInstructionCount();
+        boolean stopped = false;
+        for (int frame = 0; frame < frames && !stopped; frame++) {
+            char key = frame < keys.length ? keys[frame] : 0xFFFF;
+            if (key == 0xFFFF) keyboard.release(keyboard.getCurrentKeyPressed());
+            else keyboard.press(key);
+            stopped = !cpu.runFrame() || cpu.isHalted();
+        }
+        keyboard.release(keyboard.getCurrentKeyPressed());
+        return new Branch(frameHash(), cpu.getRegisters()[scoreRegister], stopped, cpu.getInstructionCount() - start,
+                keepSnapshot ? snapshot(from) : null);
+    }
+
+    private void restore(Snapshot from) {
+        dirty.restore(p -> loaded[p] != from.pages[p], p -> {
+            memory.writeBlock(p * Snapshot.PAGE_SIZE, from.pages[p], 0, Snapshot.PAGE_SIZE);
+            loaded[p] = from.pages[p];
+        });
+        cpu.setTimingModel(from.timing);
+        cpu.loadState(from.state);
+    }
+
+    /**
+     * @return the state the branch ended in, sharing every page it didn't write with the snapshot it started from
+     */
+    private Snapshot snapshot(Snapshot from) {
+        ByteBuffer state = ByteBuffer.allocate(from.state.capacity());
+        cpu.saveState(state);
+        byte[][] pages = from.pages.clone();
+        for (int p = 0; p < pages.length; p++) {
+            if (!dirty.isDirty(p)) continue;
+            pages[p] = new byte[Snapshot.PAGE_SIZE];
+            memory.readBlock(p * Snapshot.PAGE_SIZE, pages[p], 0, Snapshot.PAGE_SIZE);
+            // memory now holds the new snapshot's page
+            loaded[p] = pages[p];
+            dirty.clean(p);
+        }
+        return new Snapshot(from.quirks, from.timing, cpu.getStackDepth(), from.stackPolicy, state, pages);
+    }
+
+    private long frameHash() {
+        display.copyPlanes(words);
+        int length = display.getWordsPerRow() * display.getHeight() * DisplayModel.PLANES;
+        // FNV-1a over the words
+        long hash = 0xcbf29ce484222325L ^ (display.isHighResolution() ? 1 : 0);
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ words[i]) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,75 @@
+package main.search;
+
+import main.cpu.CPU;
+import main.cpu.Quirks;
+import main.cpu.Stack;
+import main.cpu.TimingModel;
+import main.memory.DirtyPages;
+import main.memory.MachineSlab;
+import main.memory.Memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The whole state of a machine at one point, to fork branches from. Memory is kept in pages: a snapshot taken at the
+ * end of a branch shares every page the branch didn't write with the snapshot it was forked from, so a search tree
+ * only holds the pages each branch changed. Snapshots are never modified, and are shared freely between threads
+ */
+public final class Snapshot {
+    // the pages a Machine tracks the writes to
+    static final int PAGE_SIZE = DirtyPages.PAGE_SIZE;
+
+    final Quirks quirks;
+    final TimingModel timing;
+    // the stack a machine needs to load the state: a shallower one would drop entries
+    final int stackDepth;
+    final Stack.OverflowPolicy stackPolicy;
+    // registers, timers, stack and display, with the layout of a MachineSlab slot
+    final ByteBuffer state;
+    final byte[][] pages;
+
+    Snapshot(Quirks quirks, TimingModel timing, int stackDepth, Stack.OverflowPolicy stackPolicy, ByteBuffer state,
+             byte[][] pages) {
+        this.quirks = quirks;
+        this.timing = timing;
+        this.stackDepth = stackDepth;
+        this.stackPolicy = stackPolicy;
+        this.state = state;
+        this.pages = pages;
+    }
+
+    /**
+     * @param memory memory the CPU runs on
+     */
+    public static Snapshot of(CPU cpu, Memory memory) {
+        ByteBuffer state = ByteBuffer.allocate(MachineSlab.MEMORY);
+        cpu.saveState(state);
+        byte[][] pages = new byte[memory.size() / PAGE_SIZE][];
+        for (int p = 0; p < pages.length; p++) {
+            pages[p] = new byte[PAGE_SIZE];
+            memory.readBlock(p * PAGE_SIZE, pages[p], 0, PAGE_SIZE);
+        }
+        return new Snapshot(cpu.getQuirks(), cpu.getTimingModel(), cpu.getStackDepth(), cpu.getStackPolicy(), state,
+                pages);
+    }
+
+    /**
+     * @return true if both snapshots hold the very same page of memory at the address, not just the same bytes
+     */
+    public boolean sharesPage(Snapshot other, int address) {
+        int page = (address & (pages.length * PAGE_SIZE - 1)) / PAGE_SIZE;
+        return pages.length == other.pages.length && pages[page] == other.pages[page];
+    }
+
+    public Quirks getQuirks() {
+        return quirks;
+    }
+
+    public TimingModel getTimingModel() {
+        return timing;
+    }
+
+    public int getMemorySize() {
+        return pages.length * PAGE_SIZE;
+    }
+}
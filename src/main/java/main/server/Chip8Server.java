@@ -0,0 +1,34 @@
+package main.server;
+
+import main.cpu.Quirks;
+import main.cpu.TimingModel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs an EmulatorServer from the command line: a ROM path, then optionally the port (8008 by default)
+ * and the quirks profile and timing model of the sessions
+ */
+public class Chip8Server {
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("No game path was specified");
+            return;
+        }
+        byte[] rom = Files.readAllBytes(Path.of(args[0]));
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8008;
+        Quirks quirks = args.length > 2 ? Quirks.forName(args[2]) : Quirks.LEGACY;
+        TimingModel timing = args.length > 3 ? TimingModel.forName(args[3]) : TimingModel.FIXED;
+        if (quirks == null || timing == null) {
+            System.out.println("Unknown quirks profile or timing model");
+            return;
+        }
+
+        EmulatorServer server = new EmulatorServer(rom, quirks, timing, Runtime.getRuntime().availableProcessors());
+        server.start(new InetSocketAddress(port));
+        System.out.println("Serving " + args[0] + " on port " + server.getPort());
+    }
+}
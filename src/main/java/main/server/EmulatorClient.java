@@ -0,0 +1,114 @@
+package main.server;
+
+import main.display.FrameDecoder;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking client of EmulatorServer, keeping a copy of the remote screen up to date with the frames it reads
+ */
+public class EmulatorClient implements Closeable {
+    private final SocketChannel channel;
+    private final ByteBuffer header;
+    private final ByteBuffer payload;
+    private final ByteBuffer keyMessage;
+
+    private final FrameDecoder decoder;
+    private int sequence;
+    private int lastMessageSize;
+    private boolean lastKeyframe;
+
+    public EmulatorClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        header = ByteBuffer.allocate(Protocol.MESSAGE_HEADER_SIZE);
+        payload = ByteBuffer.allocate(Protocol.MAX_MESSAGE_SIZE);
+        keyMessage = ByteBuffer.allocate(Protocol.CLIENT_MESSAGE_SIZE);
+        decoder = new FrameDecoder();
+    }
+
+    public void pressKey(int key) throws IOException {
+        sendKey(Protocol.KEY_DOWN, key);
+    }
+
+    public void releaseKey(int key) throws IOException {
+        sendKey(Protocol.KEY_UP, key);
+    }
+
+    private void sendKey(byte type, int key) throws IOException {
+        keyMessage.clear();
+        keyMessage.put(type).put((byte) key).flip();
+        while (keyMessage.hasRemaining()) channel.write(keyMessage);
+    }
+
+    /**
+     * Blocks until the next frame arrives and applies it to the copy of the screen
+     */
+    public void readFrame() throws IOException {
+        header.clear();
+        readFully(header);
+        byte type = header.get();
+        int length = header.getInt();
+        if (type != Protocol.FRAME || length > payload.capacity())
+            throw new IOException("Unexpected message " + type + " of " + length + " bytes");
+        payload.clear().limit(length);
+        readFully(payload);
+
+        sequence = payload.getInt();
+        try {
+            lastKeyframe = decoder.decode(payload);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed frame: " + e.getMessage(), e);
+        }
+        lastMessageSize = Protocol.MESSAGE_HEADER_SIZE + length;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException("Server closed the connection");
+        }
+        buffer.flip();
+    }
+
+    /**
+     * @return value of the pixel on every plane, the first plane being the least significant bit
+     */
+    public int getPixel(int x, int y) {
+        return decoder.getPixel(x, y);
+    }
+
+    public int getWidth() {
+        return decoder.getWidth();
+    }
+
+    public int getHeight() {
+        return decoder.getHeight();
+    }
+
+    /**
+     * @return sequence of the last frame read
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return size in bytes of the last frame message read
+     */
+    public int getLastMessageSize() {
+        return lastMessageSize;
+    }
+
+    public boolean isLastKeyframe() {
+        return lastKeyframe;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
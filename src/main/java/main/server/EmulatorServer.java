@@ -0,0 +1,225 @@
+package main.server;
+
+import main.cpu.Quirks;
+import main.cpu.TimingModel;
+import main.rom.CachedRom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts one Session per connected client, all running the same ROM.
+ * <p>
+ * The CPUs are scheduled tasks, ticked at 60Hz by a small pool of worker threads, so thousands of sessions don't need
+ * thousands of threads. A single I/O thread owns every socket: it accepts connections, applies key messages, and once
+ * per 60Hz tick sends every client a single message with what changed on its screen. A client that can't keep up
+ * simply gets fewer frames, each one relative to the last frame it actually received, so nothing queues up.
+ */
+public class EmulatorServer implements Closeable {
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+
+    // prepared once, so sessions start without loading, decoding or analysing it
+    private final CachedRom rom;
+    private final TimingModel timing;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Integer, Connection> connections;
+    private final AtomicInteger nextId;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread ioThread;
+    private volatile boolean open;
+
+    private static class Connection {
+        final SocketChannel channel;
+        final Session session;
+        final ScheduledFuture<?> ticking;
+        final ByteBuffer in;
+        // pending output, between position and limit
+        final ByteBuffer out;
+
+        Connection(SocketChannel channel, Session session, ScheduledFuture<?> ticking) {
+            this.channel = channel;
+            this.session = session;
+            this.ticking = ticking;
+            this.in = ByteBuffer.allocate(64);
+            this.out = ByteBuffer.allocateDirect(Protocol.MAX_MESSAGE_SIZE);
+            out.limit(0);
+        }
+    }
+
+    /**
+     * @param workerThreads threads running the CPUs of all sessions
+     */
+    public EmulatorServer(byte[] rom, Quirks quirks, TimingModel timing, int workerThreads) {
+        this.rom = CachedRom.prepare(rom, quirks);
+        this.timing = timing;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(workerThreads, task -> {
+            Thread thread = new Thread(task, "chip8-session-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.connections = new ConcurrentHashMap<>();
+        this.nextId = new AtomicInteger();
+    }
+
+    /**
+     * Starts listening. Use port 0 to pick any free port, and getPort() to know which one
+     */
+    public void start(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        open = true;
+        ioThread = new Thread(this::serve, "chip8-server-io");
+        ioThread.start();
+    }
+
+    private void serve() {
+        long nextTick = System.nanoTime();
+        try {
+            while (open) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) selector.select(Math.max(1, wait / 1_000_000));
+                else selector.selectNow();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else handle(key);
+                }
+
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    sendFrames();
+                    nextTick += FRAME_NANOS;
+                    // too slow to keep up: skip the missed ticks
+                    if (nextTick - now < 0) nextTick = now + FRAME_NANOS;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Emulator server stopped: " + e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Session session = new Session(nextId.incrementAndGet(), rom, timing);
+        ScheduledFuture<?> ticking = scheduler.scheduleAtFixedRate(session::tick, 0, FRAME_NANOS, TimeUnit.NANOSECONDS);
+        Connection connection = new Connection(channel, session, ticking);
+        connections.put(session.getId(), connection);
+        channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void handle(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) read(connection);
+            if (key.isValid() && key.isWritable()) write(key, connection);
+        } catch (IOException e) {
+            close(key, connection);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        if (connection.channel.read(in) < 0) {
+            close(connection.channel.keyFor(selector), connection);
+            return;
+        }
+        in.flip();
+        while (in.remaining() >= Protocol.CLIENT_MESSAGE_SIZE) {
+            connection.session.handleKey(in.get(), in.get());
+        }
+        in.compact();
+    }
+
+    private void write(SelectionKey key, Connection connection) throws IOException {
+        connection.channel.write(connection.out);
+        if (connection.out.hasRemaining()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        else key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Sends every client whose previous frame went out completely the changes since that frame
+     */
+    private void sendFrames() {
+        for (Connection connection : connections.values()) {
+            ByteBuffer out = connection.out;
+            if (out.hasRemaining()) continue;
+            out.clear();
+            boolean written = connection.session.writeFrame(out);
+            out.flip();
+            if (!written) continue;
+            SelectionKey key = connection.channel.keyFor(selector);
+            try {
+                write(key, connection);
+            } catch (IOException e) {
+                close(key, connection);
+            }
+        }
+    }
+
+    private void close(SelectionKey key, Connection connection) {
+        connection.ticking.cancel(false);
+        connection.session.stop();
+        connections.remove(connection.session.getId());
+        if (key != null) key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+            // the connection is gone either way
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        if (selector != null) selector.wakeup();
+        if (ioThread != null) {
+            try {
+                ioThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Connection connection : connections.values()) {
+            close(connection.channel.keyFor(selector), connection);
+        }
+        scheduler.shutdownNow();
+        if (serverChannel != null) serverChannel.close();
+        if (selector != null) selector.close();
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    public int getSessionCount() {
+        return connections.size();
+    }
+}
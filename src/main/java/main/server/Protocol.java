@@ -0,0 +1,29 @@
+package main.server;
+
+import main.display.FrameEncoder;
+
+/**
+ * Binary protocol spoken between EmulatorServer and its clients over TCP. Everything is big-endian.
+ * <p>
+ * Client to server, 2 bytes per message: the message type, then the hex key (0x0 - 0xF).
+ * <p>
+ * Server to client: the message type, the length of the payload as an int, then the payload.
+ * A frame payload is the frame sequence (int) followed by a record of FrameEncoder, relative to the previous frame sent.
+ * The first frame of a connection is a keyframe.
+ */
+public final class Protocol {
+    public static final byte KEY_DOWN = 1;
+    public static final byte KEY_UP = 2;
+    public static final int CLIENT_MESSAGE_SIZE = 2;
+
+    public static final byte FRAME = 1;
+    public static final int MESSAGE_HEADER_SIZE = 5;
+    public static final int MAX_MESSAGE_SIZE = MESSAGE_HEADER_SIZE + Integer.BYTES + FrameEncoder.MAX_RECORD_SIZE;
+    /**
+     * Records between two keyframes, so a client recovers from a bad frame within 5 seconds
+     */
+    public static final int KEYFRAME_INTERVAL = 300;
+
+    private Protocol() {
+    }
+}
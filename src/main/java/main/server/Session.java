@@ -0,0 +1,98 @@
+package main.server;
+
+import main.cpu.CPU;
+import main.cpu.Quirks;
+import main.cpu.Stack;
+import main.cpu.TimingModel;
+import main.display.DisplayModel;
+import main.display.Frame;
+import main.display.FrameBuffer;
+import main.display.FrameEncoder;
+import main.keyboard.Keyboard;
+import main.rom.CachedRom;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One emulated machine of the server. Its CPU is ticked at 60Hz by the server's scheduler, on whichever worker thread
+ * is free, and publishes frames through the display's FrameBuffer. The I/O thread is the only reader of those frames,
+ * and encodes the latest one relative to the last frame sent to the client
+ */
+public class Session {
+    private final int id;
+    private final CPU cpu;
+    private final DisplayModel display;
+    private final Keyboard keyboard;
+    private volatile boolean running;
+
+    // only used by the I/O thread
+    private final FrameEncoder encoder;
+
+    public Session(int id, byte[] rom, Quirks quirks, TimingModel timing) {
+        this(id, CachedRom.prepare(rom, quirks), timing);
+    }
+
+    /**
+     * Starts from a prepared ROM, without loading, decoding or analysing anything
+     */
+    public Session(int id, CachedRom rom, TimingModel timing) {
+        this.id = id;
+        this.display = new DisplayModel();
+        this.keyboard = new Keyboard();
+        this.cpu = rom.newCpu(new Stack(), display, keyboard);
+        cpu.setTimingModel(timing);
+        this.running = true;
+        this.encoder = new FrameEncoder(Protocol.KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Runs one frame of the CPU. Called by the scheduler 60 times per second
+     */
+    void tick() {
+        if (!running) return;
+        if (!cpu.runFrame() || cpu.isHalted()) running = false;
+    }
+
+    /**
+     * Writes a frame message with the changes since the last one written. Must only be called from the I/O thread
+     * @param out buffer with at least Protocol.MAX_MESSAGE_SIZE bytes remaining
+     * @return false if no new frame was published since the last call, in which case nothing is written
+     */
+    boolean writeFrame(ByteBuffer out) {
+        FrameBuffer frames = display.getFrameBuffer();
+        if (!frames.hasNewFrame()) return false;
+        Frame frame = frames.acquire();
+        int start = out.position();
+        out.put(Protocol.FRAME);
+        out.putInt(0);
+        out.putInt((int) frame.getSequence());
+        encoder.encode(frame, out);
+        out.putInt(start + 1, out.position() - start - Protocol.MESSAGE_HEADER_SIZE);
+        return true;
+    }
+
+    /**
+     * Applies a key message received from the client
+     */
+    void handleKey(byte type, byte key) {
+        if (key < 0 || key > 0xF) return;
+        if (type == Protocol.KEY_DOWN) keyboard.press((char) key);
+        else if (type == Protocol.KEY_UP) keyboard.release((char) key);
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public CPU getCpu() {
+        return cpu;
+    }
+}
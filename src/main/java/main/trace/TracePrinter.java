@@ -0,0 +1,56 @@
+package main.trace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Prints the last records of a trace dump, one instruction per line: instruction count, address, instruction,
+ * then what it changed, on the last line of a block. Arguments: the dump, then optionally how many records to print
+ * (100 by default)
+ */
+public class TracePrinter {
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: TracePrinter <trace dump> [instructions]");
+            return;
+        }
+        Path path = Path.of(args[0]);
+        long last = args.length > 1 ? Long.parseLong(args[1]) : 100;
+
+        long records = 0;
+        TraceReader counter = TraceReader.open(path);
+        while (counter.next()) records++;
+
+        TraceReader reader = TraceReader.open(path);
+        StringBuilder line = new StringBuilder();
+        for (long r = 0; reader.next(); r++) {
+            if (r < records - last) continue;
+            line.setLength(0);
+            if (reader.isBlock()) {
+                // every instruction of the block on its own line, what the block changed on the last one
+                long count = reader.getInstructionCount() - reader.getBlockLength();
+                for (int i = 0; i < reader.getBlockLength(); i++) {
+                    if (i > 0) line.append(System.lineSeparator());
+                    line.append(String.format("%10d %04X: %04X", count + i + 1, reader.getProgramCounter() + 2 * i,
+                            (int) reader.getBlockInstruction(i)));
+                }
+            } else if (reader.isState()) {
+                line.append(String.format("%10d state", reader.getInstructionCount()));
+            } else if (reader.isSkipped()) {
+                line.append(String.format("%10d skipped %d idle loop instructions", reader.getInstructionCount(),
+                        reader.getSkippedCount()));
+            } else {
+                line.append(String.format("%10d %04X: %04X", reader.getInstructionCount(), reader.getProgramCounter(),
+                        (int) reader.getInstruction()));
+            }
+            int changed = reader.getChangedRegisters();
+            while (changed != 0) {
+                int register = Integer.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+                line.append(String.format(" V%X=%02X", register, (int) reader.getRegister(register)));
+            }
+            if (reader.isIChanged()) line.append(String.format(" I=%04X", (int) reader.getIRegister()));
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package main.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Walks through the records of a dump written by a Tracer, oldest first, rebuilding the state after every one of them
+ */
+public class TraceReader {
+    private final ByteBuffer dump;
+    private final int blocks;
+    private int block;
+    private final char[] registers;
+    private char iRegister;
+    private int programCounter;
+    private int nextPc;
+    private char instruction;
+    private long instructionCount;
+    private long skipped;
+    private final char[] blockInstructions;
+    private int blockLength;
+    private boolean state;
+    private int changedRegisters;
+    private boolean iChanged;
+
+    /**
+     * @throws IllegalArgumentException if the buffer doesn't start with a trace dump header
+     */
+    public TraceReader(ByteBuffer dump) {
+        this.dump = dump;
+        if (dump.remaining() < 2 * Integer.BYTES || dump.getInt() != Tracer.MAGIC)
+            throw new IllegalArgumentException("Not an execution trace");
+        this.blocks = dump.getInt();
+        this.registers = new char[16];
+        this.blockInstructions = new char[Tracer.MAX_BLOCK_LENGTH];
+        this.block = -1;
+    }
+
+    public static TraceReader open(Path path) throws IOException {
+        return new TraceReader(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /**
+     * Moves to the next record
+     * @return false once there are no more
+     */
+    public boolean next() {
+        int header = block < 0 ? Tracer.END : dump.get() & 0xFF;
+        while (header == Tracer.END) {
+            if (block + 1 >= blocks) return false;
+            startBlock(block + 1);
+            header = dump.get() & 0xFF;
+        }
+        changedRegisters = 0;
+        iChanged = false;
+        blockLength = 0;
+        state = false;
+        if ((header & Tracer.INSTRUCTION) != 0) {
+            programCounter = nextPc;
+            if ((header & Tracer.JUMP) != 0) programCounter += (int) unzigzag(readVarint());
+            instruction = dump.getChar();
+            nextPc = programCounter + 2;
+            skipped = 0;
+            instructionCount++;
+        } else if ((header & Tracer.BLOCK) != 0) {
+            programCounter = nextPc;
+            if ((header & Tracer.JUMP) != 0) programCounter += (int) unzigzag(readVarint());
+            blockLength = (int) readVarint();
+            for (int i = 0; i < blockLength; i++) blockInstructions[i] = dump.getChar();
+            instruction = blockInstructions[blockLength - 1];
+            nextPc = programCounter + 2 * blockLength;
+            skipped = 0;
+            instructionCount += blockLength;
+        } else if ((header & Tracer.STATE) != 0) {
+            state = true;
+            skipped = 0;
+        } else {
+            skipped = readVarint();
+            instructionCount += skipped;
+        }
+        if ((header & Tracer.I_CHANGED) != 0) {
+            iRegister = (char) (iRegister + unzigzag(readVarint()));
+            iChanged = true;
+        }
+        if ((header & Tracer.REGISTERS_CHANGED) != 0) {
+            int mask = dump.getChar();
+            changedRegisters = mask;
+            while (mask != 0) {
+                int r = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                registers[r] = (char) (dump.get() & 0xFF);
+            }
+        }
+        return true;
+    }
+
+    private void startBlock(int index) {
+        block = index;
+        instructionCount = dump.getLong();
+        nextPc = dump.getChar();
+        iRegister = dump.getChar();
+        for (int r = 0; r < 16; r++) registers[r] = (char) (dump.get() & 0xFF);
+    }
+
+    private long readVarint() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = dump.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return true if the record is a run of idle loop instructions that were skipped, not a single instruction
+     */
+    public boolean isSkipped() {
+        return skipped != 0;
+    }
+
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * @return true if the record is a block of instructions executed in a row, from the program counter on. I is known
+     * after the last one, but the V registers are those of the previous record until a state record follows
+     */
+    public boolean isBlock() {
+        return blockLength != 0;
+    }
+
+    /**
+     * @return true if the record only gives the V registers and I, after block records left them out
+     */
+    public boolean isState() {
+        return state;
+    }
+
+    /**
+     * @return instructions of the block record, 0 for other records
+     */
+    public int getBlockLength() {
+        return blockLength;
+    }
+
+    /**
+     * @return instruction of the block record, the one at getProgramCounter() + 2 * index
+     */
+    public char getBlockInstruction(int index) {
+        return blockInstructions[index];
+    }
+
+    /**
+     * @return instructions executed, as counted by the CPU, once the record's instruction(s) were executed
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    public int getProgramCounter() {
+        return programCounter;
+    }
+
+    /**
+     * @return the instruction of the record, the last one for a block
+     */
+    public char getInstruction() {
+        return instruction;
+    }
+
+    public char getRegister(int register) {
+        return registers[register];
+    }
+
+    public char getIRegister() {
+        return iRegister;
+    }
+
+    /**
+     * @return one bit per V register the record changed, V0 being the least significant one
+     */
+    public int getChangedRegisters() {
+        return changedRegisters;
+    }
+
+    public boolean isIChanged() {
+        return iChanged;
+    }
+}
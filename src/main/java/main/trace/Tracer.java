@@ -0,0 +1,413 @@
+package main.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every instruction a CPU executes into a preallocated off-heap ring, keeping the last ones once it's full.
+ * Instructions executed one at a time by the interpreter each store one long with their address, the instruction, I,
+ * Vx and VF. A block of code run by the CPU's block engine stores a single long as well, with its address, I and the
+ * number of instructions executed: its instructions are stored once per ring block, the first time it runs there, and
+ * the registers when the CPU leaves the block engine, at the end of a frame for instance.
+ * The ring is made of blocks of those entries, each starting with the whole state, and the oldest block is dropped
+ * when the ring is full.
+ * Encoding is left to dump(), which writes a header byte, the instruction(s) and only what changed for every record,
+ * i.e. the program counter when it didn't just move on, I as a varint delta, and the V registers whose value changed.
+ * Dumps are read back by TraceReader. TracerBenchmark measures what recording costs
+ */
+public class Tracer {
+    static final int MAGIC = 0x43385452;
+    static final int BLOCK_SIZE = 64 * 1024;
+    // instruction count, PC, I and the 16 registers
+    static final int SYNC_SIZE = Long.BYTES + 2 + 2 + 16;
+
+    static final int END = 0x00;
+    static final int INSTRUCTION = 0x80;
+    static final int SKIPPED = 0x40;
+    static final int BLOCK = 0x20;
+    static final int STATE = 0x10;
+    static final int JUMP = 0x01;
+    static final int I_CHANGED = 0x02;
+    static final int REGISTERS_CHANGED = 0x04;
+    /**
+     * Longest block recorded as a single entry: the CPU records the instructions of longer ones one at a time
+     */
+    public static final int MAX_BLOCK_LENGTH = 64;
+    // header, PC delta, instruction count and instructions, I delta, register mask and values
+    private static final int MAX_RECORD_SIZE = 1 + 10 + 2 + 2 * MAX_BLOCK_LENGTH + 3 + 2 + 16;
+
+    private static final int BLOCK_LONGS = BLOCK_SIZE / Long.BYTES;
+    // instruction count, I and the used length, then the registers
+    private static final int BLOCK_HEADER = 4;
+    // entries that aren't an instruction have instruction 0000, which isn't supported, and one of these kinds in their
+    // 2 lowest bits, the length of a block in the next 14
+    private static final int SKIPPED_ENTRY = 0;
+    private static final int BLOCK_ENTRY = 1;
+    private static final int DEFINITION_ENTRY = 2;
+    private static final int STATE_ENTRY = 3;
+    // largest entry: a block defined and recorded, i.e. its instructions packed four to a long and the record
+    private static final int MAX_ENTRY = 2 + MAX_BLOCK_LENGTH / 4;
+    private static final AtomicLong BLOCK_IDS = new AtomicLong();
+
+    private final LongBuffer ring;
+    private final int blocks;
+    private final long[] block;
+    private int position;
+    private long blocksWritten;
+    private long blockId;
+    private Path failureDump;
+
+    /**
+     * @param capacity bytes of the ring, rounded down to whole 64KB blocks (two at least). An instruction takes 8 bytes,
+     *                 24 for those loading a range of registers, and so does a run of a code block
+     */
+    public Tracer(int capacity) {
+        this.blocks = Math.max(2, capacity / BLOCK_SIZE);
+        this.ring = ByteBuffer.allocateDirect(blocks * BLOCK_SIZE).order(ByteOrder.nativeOrder()).asLongBuffer();
+        this.block = new long[BLOCK_LONGS];
+        begin(0, (char) 0, new char[16]);
+    }
+
+    /**
+     * Starts a new block from the state the CPU is in. Called by the CPU when the tracer is attached, or when its
+     * state is replaced
+     */
+    public void start(long instructionCount, int pc, char iRegister, char[] registers) {
+        if (position > BLOCK_HEADER) finishBlock();
+        begin(instructionCount, iRegister, registers);
+    }
+
+    /**
+     * Records an instruction once it was executed
+     * @param pc address the instruction was read from
+     * @param registers V registers after the instruction
+     */
+    public void record(int pc, char instruction, char[] registers, char iRegister) {
+        int x = (instruction >>> 8) & 0xF;
+        block[position++] = (long) pc << 48 | (long) instruction << 32 | (long) iRegister << 16
+                | (registers[x] & 0xFF) << 8 | (registers[15] & 0xFF);
+        if (loadsRange(instruction)) {
+            block[position++] = pack(registers, 0);
+            block[position++] = pack(registers, 8);
+        }
+        if (position > BLOCK_LONGS - MAX_ENTRY) nextBlock(registers, iRegister);
+    }
+
+    /**
+     * @return identifies the ring block being filled among those of every tracer: a code block needs to be defined
+     * again once it changed
+     */
+    public long getBlockId() {
+        return blockId;
+    }
+
+    /**
+     * Stores the instructions of a code block for the records of the current ring block. Must be followed by
+     * recordBlock(), and not be called again before the ring block changes, see getBlockId()
+     * @param pc address of the first instruction
+     * @param length instructions of the block, MAX_BLOCK_LENGTH at most
+     */
+    public void defineBlock(int pc, char[] instructions, int length) {
+        block[position++] = (long) pc << 48 | length << 2 | DEFINITION_ENTRY;
+        for (int i = 0; i < length; i += 4) {
+            long packed = 0;
+            for (int n = Math.min(i + 3, length - 1); n >= i; n--) packed = packed << 16 | instructions[n];
+            block[position++] = packed;
+        }
+    }
+
+    /**
+     * Records a code block defined in the current ring block, once it was executed
+     * @param pc address of the first instruction
+     * @param length instructions executed, from the first one
+     * @param registers V registers after the last instruction, only stored if the ring block changes
+     */
+    public void recordBlock(int pc, int length, char[] registers, char iRegister) {
+        block[position++] = (long) pc << 48 | (long) iRegister << 16 | length << 2 | BLOCK_ENTRY;
+        if (position > BLOCK_LONGS - MAX_ENTRY) nextBlock(registers, iRegister);
+    }
+
+    /**
+     * Records the V registers and I, which block records leave out. Called by the CPU when it leaves the block engine
+     */
+    public void recordState(char[] registers, char iRegister) {
+        block[position++] = (long) iRegister << 16 | STATE_ENTRY;
+        block[position++] = pack(registers, 0);
+        block[position++] = pack(registers, 8);
+        if (position > BLOCK_LONGS - MAX_ENTRY) nextBlock(registers, iRegister);
+    }
+
+    /**
+     * Records instructions of an idle loop that were skipped instead of executed
+     */
+    public void recordSkipped(long instructions, char[] registers, char iRegister) {
+        block[position++] = (long) iRegister << 16 | SKIPPED_ENTRY;
+        block[position++] = instructions;
+        block[position++] = pack(registers, 0);
+        block[position++] = pack(registers, 8);
+        if (position > BLOCK_LONGS - MAX_ENTRY) nextBlock(registers, iRegister);
+    }
+
+    /**
+     * @return true for FX65, FX85 and 5XY3, which can change any register, not just Vx and VF
+     */
+    private static boolean loadsRange(char instruction) {
+        return (instruction & 0xF0FF) == 0xF065 || (instruction & 0xF0FF) == 0xF085 || (instruction & 0xF00F) == 0x5003;
+    }
+
+    private static long pack(char[] registers, int from) {
+        long packed = 0;
+        for (int r = from; r < from + 8; r++) {
+            packed = packed << 8 | (registers[r] & 0xFF);
+        }
+        return packed;
+    }
+
+    private static void unpack(long packed, char[] registers, int from) {
+        for (int r = from + 7; r >= from; r--) {
+            registers[r] = (char) (packed & 0xFF);
+            packed >>>= 8;
+        }
+    }
+
+    private void begin(long instructionCount, char iRegister, char[] registers) {
+        block[0] = instructionCount;
+        block[1] = (long) iRegister << 32;
+        block[2] = pack(registers, 0);
+        block[3] = pack(registers, 8);
+        position = BLOCK_HEADER;
+        blockId = BLOCK_IDS.incrementAndGet();
+    }
+
+    private void nextBlock(char[] registers, char iRegister) {
+        long instructionCount = getInstructionCount();
+        finishBlock();
+        begin(instructionCount, iRegister, registers);
+    }
+
+    private void finishBlock() {
+        block[1] |= position;
+        ring.put((int) (blocksWritten % blocks) * BLOCK_LONGS, block, 0, BLOCK_LONGS);
+        blocksWritten++;
+    }
+
+    /**
+     * @return instructions recorded since the tracer was started, skipped ones included
+     */
+    public long getInstructionCount() {
+        long count = block[0];
+        for (int i = BLOCK_HEADER; i < position; i++) {
+            char instruction = (char) (block[i] >>> 32);
+            if (instruction != 0) {
+                count++;
+                if (loadsRange(instruction)) i += 2;
+                continue;
+            }
+            int length = (int) (block[i] & 0xFFFF) >>> 2;
+            switch ((int) block[i] & 3) {
+                case SKIPPED_ENTRY:
+                    count += block[i + 1];
+                    i += 3;
+                    break;
+                case BLOCK_ENTRY:
+                    count += length;
+                    break;
+                case DEFINITION_ENTRY:
+                    i += (length + 3) / 4;
+                    break;
+                case STATE_ENTRY:
+                    i += 2;
+                    break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes what the ring holds, oldest block first, ending with the one being filled
+     */
+    public void dump(Path path) throws IOException {
+        int complete = (int) Math.min(blocksWritten, blocks);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Encoder encoder = new Encoder(channel);
+            encoder.out.putInt(MAGIC).putInt(complete + 1);
+            long[] stored = new long[BLOCK_LONGS];
+            for (long b = blocksWritten - complete; b < blocksWritten; b++) {
+                ring.get((int) (b % blocks) * BLOCK_LONGS, stored, 0, BLOCK_LONGS);
+                encoder.encode(stored, (int) stored[1]);
+            }
+            encoder.encode(block, position);
+            encoder.flush();
+        }
+    }
+
+    /**
+     * Sets where failed() dumps the trace, null not to
+     */
+    public void setFailureDump(Path failureDump) {
+        this.failureDump = failureDump;
+    }
+
+    /**
+     * Called when execution stops on an unsupported instruction: dumps the trace, if a file was set for it
+     */
+    public void failed() {
+        if (failureDump == null) return;
+        try {
+            dump(failureDump);
+            System.out.println("Execution trace written to " + failureDump);
+        } catch (IOException e) {
+            System.out.println("Could not write the execution trace: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Turns the entries of blocks into records, keeping what the previous records left to only write changes
+     */
+    private static class Encoder {
+        private final FileChannel channel;
+        private final ByteBuffer out;
+        private final char[] registers;
+        private final char[] current;
+        // instructions of the code blocks defined in the ring block, by address
+        private final Map<Integer, char[]> definitions;
+        private char iRegister;
+        private int nextPc;
+
+        Encoder(FileChannel channel) {
+            this.channel = channel;
+            this.out = ByteBuffer.allocate(BLOCK_SIZE);
+            this.registers = new char[16];
+            this.current = new char[16];
+            this.definitions = new HashMap<>();
+        }
+
+        void encode(long[] entries, int used) throws IOException {
+            iRegister = (char) (entries[1] >>> 32);
+            unpack(entries[2], registers, 0);
+            unpack(entries[3], registers, 8);
+            // the first instruction doesn't need a jump
+            nextPc = used > BLOCK_HEADER ? (int) (entries[BLOCK_HEADER] >>> 48) : 0;
+            out.putLong(entries[0]).putChar((char) nextPc).putChar(iRegister);
+            for (char register : registers) out.put((byte) register);
+            definitions.clear();
+
+            for (int i = BLOCK_HEADER; i < used; i++) {
+                if (out.remaining() <= MAX_RECORD_SIZE) flush();
+                long entry = entries[i];
+                char instruction = (char) (entry >>> 32);
+                char currentI = (char) (entry >>> 16);
+                int kind = (int) entry & 3;
+                int length = (int) (entry & 0xFFFF) >>> 2;
+                if (instruction == 0 && kind == DEFINITION_ENTRY) {
+                    char[] instructions = new char[length];
+                    for (int n = 0; n < length; n++) {
+                        instructions[n] = (char) (entries[i + 1 + n / 4] >>> (16 * (n % 4)));
+                    }
+                    definitions.put((int) (entry >>> 48), instructions);
+                    i += (length + 3) / 4;
+                    continue;
+                }
+                int headerAt = out.position();
+                out.put((byte) 0);
+                int header;
+                int mask = 0;
+                if (instruction == 0 && kind == BLOCK_ENTRY) {
+                    header = BLOCK;
+                    int pc = (int) (entry >>> 48);
+                    if (pc != nextPc) {
+                        header |= JUMP;
+                        writeVarint(zigzag(pc - nextPc));
+                    }
+                    writeVarint(length);
+                    char[] instructions = definitions.get(pc);
+                    for (int n = 0; n < length; n++) out.putChar(instructions[n]);
+                    nextPc = pc + 2 * length;
+                } else if (instruction == 0 && kind == STATE_ENTRY) {
+                    header = STATE;
+                    mask = unpackAll(entries[++i], entries[++i]);
+                } else if (instruction == 0) {
+                    header = SKIPPED;
+                    writeVarint(entries[++i]);
+                    mask = unpackAll(entries[++i], entries[++i]);
+                } else {
+                    header = INSTRUCTION;
+                    int pc = (int) (entry >>> 48);
+                    if (pc != nextPc) {
+                        header |= JUMP;
+                        writeVarint(zigzag(pc - nextPc));
+                    }
+                    out.putChar(instruction);
+                    nextPc = pc + 2;
+                    if (loadsRange(instruction)) {
+                        mask = unpackAll(entries[++i], entries[++i]);
+                    } else {
+                        int x = (instruction >>> 8) & 0xF;
+                        current[x] = (char) ((entry >>> 8) & 0xFF);
+                        current[15] = (char) (entry & 0xFF);
+                        if (current[x] != registers[x]) mask |= 1 << x;
+                        if (current[15] != registers[15]) mask |= 1 << 15;
+                    }
+                }
+                if (currentI != iRegister) {
+                    header |= I_CHANGED;
+                    writeVarint(zigzag(currentI - iRegister));
+                    iRegister = currentI;
+                }
+                if (mask != 0) {
+                    header |= REGISTERS_CHANGED;
+                    out.putChar((char) mask);
+                    while (mask != 0) {
+                        int r = Integer.numberOfTrailingZeros(mask);
+                        mask &= mask - 1;
+                        out.put((byte) current[r]);
+                        registers[r] = current[r];
+                    }
+                }
+                out.put(headerAt, (byte) header);
+            }
+            if (out.remaining() < 1 + SYNC_SIZE) flush();
+            out.put((byte) END);
+        }
+
+        /**
+         * @return the registers whose value changed
+         */
+        private int unpackAll(long low, long high) {
+            unpack(low, current, 0);
+            unpack(high, current, 8);
+            int mask = 0;
+            for (int r = 0; r < 16; r++) {
+                if (current[r] != registers[r]) mask |= 1 << r;
+            }
+            return mask;
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.put((byte) value);
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) channel.write(out);
+            out.clear();
+        }
+    }
+}
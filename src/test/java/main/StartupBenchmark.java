@@ -0,0 +1,48 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Time from launching a JVM to the end of a one frame headless run, with and without the class data sharing archive
+ * built by the fast-start profile. Run by hand after mvn package -Pfast-start: it's not part of the test suite
+ */
+class StartupBenchmark {
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path jar = Path.of("target", "chip8.jar");
+        Path archive = Path.of("target", "chip8.jsa");
+        Path rom = Path.of("src", "test", "resources", "roms", "startup.ch8");
+        if (!Files.exists(jar)) {
+            System.out.println("Run mvn package first");
+            return;
+        }
+        System.out.printf("without archive: %d ms%n", median(jar, rom, null));
+        if (Files.exists(archive)) System.out.printf("with archive: %d ms%n", median(jar, rom, archive));
+        else System.out.println("No archive: run mvn package -Pfast-start to compare");
+    }
+
+    private static long median(Path jar, Path rom, Path archive) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        if (archive != null) command.add("-XX:SharedArchiveFile=" + archive);
+        command.addAll(List.of("-cp", jar.toString(), "main.Chip8Headless", rom.toString(), "1", "legacy"));
+
+        long[] millis = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            if (process.waitFor() != 0) throw new IllegalStateException("Headless run failed");
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(millis);
+        return millis[RUNS / 2];
+    }
+}
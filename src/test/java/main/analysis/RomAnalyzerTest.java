@@ -0,0 +1,122 @@
+package main.analysis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RomAnalyzerTest {
+    /*
+     * 200: CLS
+     * 202: CALL 210
+     * 204: SE V0, 00
+     * 206: JP 200
+     * 208: JP 208
+     * 20A: (unreachable)
+     * 20C: sprite F0 90
+     * 20E: (unreachable)
+     * 210: LD I, 20C
+     * 212: DRW V0, V1, 2
+     * 214: LD I, 204
+     * 216: LD [I], V0
+     * 218: RET
+     */
+    private static final byte[] ROM = {
+            0x00, (byte) 0xE0, 0x22, 0x10, 0x30, 0x00, 0x12, 0x00,
+            0x12, 0x08, 0x00, 0x00, (byte) 0xF0, (byte) 0x90, 0x00, 0x00,
+            (byte) 0xA2, 0x0C, (byte) 0xD0, 0x12, (byte) 0xA2, 0x04, (byte) 0xF0, 0x55,
+            0x00, (byte) 0xEE
+    };
+
+    private AnalysisResult result;
+
+    @BeforeEach
+    public void before() {
+        result = new RomAnalyzer().analyze(ROM);
+    }
+
+    @Test
+    public void blockBoundariesTest() {
+        assertArrayEquals(new int[]{0x200, 0x204, 0x206, 0x208, 0x210}, result.getGraph().getBlockStarts());
+    }
+
+    @Test
+    public void successorsTest() {
+        ControlFlowGraph graph = result.getGraph();
+        assertEquals(List.of(0x210, 0x204), graph.getBlock(0x200).getSuccessors());
+        assertEquals(List.of(0x206, 0x208), graph.getBlock(0x204).getSuccessors());
+        assertEquals(List.of(0x200), graph.getBlock(0x206).getSuccessors());
+        assertEquals(List.of(0x208), graph.getBlock(0x208).getSuccessors());
+        assertEquals(List.of(), graph.getBlock(0x210).getSuccessors());
+        assertEquals(5, graph.getBlock(0x210).getInstructionCount());
+    }
+
+    @Test
+    public void codeAndDataTest() {
+        assertTrue(result.isCode(0x200));
+        assertTrue(result.isCode(0x209));
+        assertFalse(result.isCode(0x20A));
+        assertFalse(result.isCode(0x20C));
+        assertTrue(result.isSpriteData(0x20C));
+        assertTrue(result.isSpriteData(0x20D));
+        assertFalse(result.isSpriteData(0x20E));
+        assertSame(result.getGraph().getBlock(0x210), result.getGraph().getBlockContaining(0x216));
+        assertNull(result.getGraph().getBlockContaining(0x20C));
+    }
+
+    @Test
+    public void selfModifyingWriteTest() {
+        assertTrue(result.isSelfModifying());
+        SelfModifyingWrite write = result.getSelfModifyingWrites().get(0);
+        assertEquals(0x216, write.getAddress());
+        assertEquals(0x204, write.getStart());
+    }
+
+    @Test
+    public void invalidInstructionTest() {
+        byte[] rom = {0x12, 0x04, 0x00, 0x00, 0x50, 0x01};
+        AnalysisResult invalid = new RomAnalyzer().analyze(rom);
+        assertEquals(1, invalid.getInvalidInstructions().size());
+        assertTrue(invalid.getInvalidInstructions().contains(0x204));
+    }
+
+    @Nested
+    public class AnalysisCacheTest {
+        @TempDir
+        Path directory;
+
+        @Test
+        public void cachedByHashTest() {
+            AnalysisCache cache = new AnalysisCache();
+            AnalysisResult first = cache.analyze(ROM);
+            assertSame(first, cache.analyze(ROM.clone()));
+            assertSame(first, cache.get(first.getRomHash()));
+            assertEquals(1, cache.size());
+        }
+
+        @Test
+        public void libraryIndexTest() throws IOException {
+            Path romDirectory = Files.createDirectory(directory.resolve("roms"));
+            Files.write(romDirectory.resolve("a.ch8"), ROM);
+            Files.write(romDirectory.resolve("b.ch8"), new byte[]{0x12, 0x00});
+
+            AnalysisCache cache = new AnalysisCache();
+            Map<Path, AnalysisResult> results = cache.analyzeLibrary(romDirectory);
+            assertEquals(2, results.size());
+
+            Path index = directory.resolve("index.txt");
+            cache.writeIndex(index);
+            Map<String, int[]> blockStarts = AnalysisCache.readIndex(index);
+            assertArrayEquals(result.getGraph().getBlockStarts(), blockStarts.get(result.getRomHash()));
+            assertEquals(2, blockStarts.size());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package main.audio;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SynthesizerTest {
+    private AudioBuffer buffer;
+    private Synthesizer synthesizer;
+    private byte[] samples;
+    private char[] pattern;
+
+    @BeforeEach
+    public void before() {
+        buffer = new AudioBuffer();
+        synthesizer = new Synthesizer();
+        samples = new byte[Synthesizer.SAMPLES_PER_FRAME];
+        pattern = new char[AudioFrame.PATTERN_LENGTH];
+    }
+
+    @Test
+    public void silentWhenNotPlayingTest() {
+        buffer.publish(false, pattern, (char) 64);
+        synthesizer.synthesize(buffer.acquire(), samples, 0, samples.length);
+
+        for (byte sample : samples) assertEquals(0, sample);
+    }
+
+    @Test
+    public void squareWaveWithoutPatternTest() {
+        buffer.publish(true, pattern, (char) 64);
+        synthesizer.synthesize(buffer.acquire(), samples, 0, samples.length);
+
+        // 4000 bits per second, 4 on and 4 off: 500Hz, i.e. 96 samples per period
+        for (int i = 0; i < 48; i++) assertTrue(samples[i] > 0);
+        for (int i = 48; i < 96; i++) assertTrue(samples[i] < 0);
+        assertTrue(samples[96] > 0);
+    }
+
+    @Test
+    public void patternTest() {
+        pattern[0] = 0x80;
+        buffer.publish(true, pattern, (char) 64);
+        synthesizer.synthesize(buffer.acquire(), samples, 0, samples.length);
+
+        // a bit lasts 12 samples at the default pitch
+        for (int i = 0; i < 12; i++) assertTrue(samples[i] > 0);
+        for (int i = 12; i < samples.length; i++) assertTrue(samples[i] < 0);
+    }
+
+    @Test
+    public void higherPitchPlaysFasterTest() {
+        pattern[0] = 0x80;
+        // 48 more doubles the rate
+        buffer.publish(true, pattern, (char) 112);
+        synthesizer.synthesize(buffer.acquire(), samples, 0, samples.length);
+
+        for (int i = 0; i < 6; i++) assertTrue(samples[i] > 0);
+        assertTrue(samples[6] < 0);
+    }
+
+    @Test
+    public void acquireReturnsLatestFrameTest() {
+        buffer.publish(true, pattern, (char) 10);
+        buffer.publish(false, pattern, (char) 20);
+
+        AudioFrame frame = buffer.acquire();
+        assertFalse(frame.isPlaying());
+        assertEquals(20, frame.getPitch());
+        assertSame(frame, buffer.acquire());
+    }
+}
@@ -1,7 +1,7 @@
 package main.cpu;
 
-import main.display.DisplayFrame;
 import main.display.DisplayModel;
+import main.keyboard.Keyboard;
 import main.memory.Memory;
 import org.junit.jupiter.api.*;
 
@@ -11,13 +11,12 @@ class CPUTest {
     private CPU cpu;
     private Stack stack;
     private Memory memory;
-    private DisplayFrame displayFrame = new DisplayFrame(15);
 
     @BeforeEach
     public void before() {
         stack = new Stack();
         memory = new Memory();
-        cpu = new CPU(stack, memory, displayFrame);
+        cpu = new CPU(stack, memory, new DisplayModel(), new Keyboard());
     }
 
     @AfterEach
@@ -104,6 +103,19 @@ class CPUTest {
             assertEquals(0x200, stack.getAddress());
             assertEquals(0x0000, cpu.getProgramCounter());
         }
+
+        @Test
+        public void stackOverflowTest() {
+            // CALL 200, forever
+            memory.loadGame(new byte[]{0x22, 0x00});
+
+            assertFalse(cpu.runFrame(100));
+            assertTrue(cpu.getStackFault().isOverflow());
+            assertEquals(0x200, cpu.getProgramCounter());
+            assertEquals(16, cpu.getInstructionCount());
+            assertFalse(cpu.runFrame());
+            assertFalse(cpu.step());
+        }
     }
 
     @Nested
@@ -131,6 +143,25 @@ class CPUTest {
             assertEquals(0x0A3E, cpu.getProgramCounter());
         }
 
+        @Test
+        public void stackUnderflowTest() {
+            memory.loadGame(new byte[]{0x00, (byte) 0xEE});
+
+            assertFalse(cpu.step());
+            assertFalse(cpu.getStackFault().isOverflow());
+            assertEquals(0x200, cpu.getProgramCounter());
+            assertEquals(0, cpu.getInstructionCount());
+        }
+
+        @Test
+        public void wrappingStackTest() {
+            stack = new Stack(Stack.DEFAULT_DEPTH, Stack.OverflowPolicy.WRAP);
+            cpu = new CPU(stack, memory, new DisplayModel(), new Keyboard());
+            memory.loadGame(new byte[]{0x22, 0x00});
+
+            assertTrue(cpu.runFrame(100));
+            assertNull(cpu.getStackFault());
+        }
     }
 
     @Nested
@@ -934,4 +965,518 @@ class CPUTest {
         }
     }
 
-}
\ No newline at end of file
+
+    @Nested
+    public class SuperChipTest {
+        @Test
+        public void superChipDecodingTest() {
+            assertEquals(Opcode.OpcodeType.SCD_NIBBLE, cpu.decodeInstruction((char) 0x00C4).getType());
+            assertEquals(Opcode.OpcodeType.SCR, cpu.decodeInstruction((char) 0x00FB).getType());
+            assertEquals(Opcode.OpcodeType.SCL, cpu.decodeInstruction((char) 0x00FC).getType());
+            assertEquals(Opcode.OpcodeType.EXIT, cpu.decodeInstruction((char) 0x00FD).getType());
+            assertEquals(Opcode.OpcodeType.LOW, cpu.decodeInstruction((char) 0x00FE).getType());
+            assertEquals(Opcode.OpcodeType.HIGH, cpu.decodeInstruction((char) 0x00FF).getType());
+            assertEquals(Opcode.OpcodeType.LD_HF_VX, cpu.decodeInstruction((char) 0xF330).getType());
+            assertEquals(Opcode.OpcodeType.LD_R_VX, cpu.decodeInstruction((char) 0xF375).getType());
+            assertEquals(Opcode.OpcodeType.LD_VX_R, cpu.decodeInstruction((char) 0xF385).getType());
+        }
+
+        @Test
+        public void ldHfVxExecutionTest() {
+            cpu.getRegisters()[3] = 0x7;
+            cpu.executeOpcode(cpu.decodeInstruction((char) 0xF330));
+            assertEquals(Memory.BIG_FONT_ADDRESS + 70, cpu.getIRegister());
+        }
+
+        @Test
+        public void rplFlagsExecutionTest() {
+            cpu.getRegisters()[0] = 0x12;
+            cpu.getRegisters()[1] = 0x34;
+            cpu.executeOpcode(cpu.decodeInstruction((char) 0xF175));
+            cpu.getRegisters()[0] = 0;
+            cpu.getRegisters()[1] = 0;
+            cpu.executeOpcode(cpu.decodeInstruction((char) 0xF185));
+
+            assertEquals(0x12, cpu.getRegisters()[0]);
+            assertEquals(0x34, cpu.getRegisters()[1]);
+        }
+
+        @Test
+        public void exitExecutionTest() {
+            cpu.executeOpcode(cpu.decodeInstruction((char) 0x00FD));
+            assertTrue(cpu.isHalted());
+        }
+    }
+
+    @Nested
+    public class XoChipTest {
+        @Test
+        public void xoChipDecodingTest() {
+            assertEquals(Opcode.OpcodeType.SCU_NIBBLE, cpu.decodeInstruction((char) 0x00D4).getType());
+            assertEquals(Opcode.OpcodeType.SAVE_VX_VY, cpu.decodeInstruction((char) 0x5122).getType());
+            assertEquals(Opcode.OpcodeType.LOAD_VX_VY, cpu.decodeInstruction((char) 0x5123).getType());
+            assertEquals(Opcode.OpcodeType.LD_I_LONG, cpu.decodeInstruction((char) 0xF000).getType());
+            assertEquals(Opcode.OpcodeType.PLANE_N, cpu.decodeInstruction((char) 0xF201).getType());
+            assertEquals(Opcode.OpcodeType.AUDIO, cpu.decodeInstruction((char) 0xF002).getType());
+            assertEquals(Opcode.OpcodeType.PITCH_VX, cpu.decodeInstruction((char) 0xF43A).getType());
+        }
+
+        @Test
+        public void ldILongExecutionTest() {
+            memory.writeByte(0x200, (char) 0xAB);
+            memory.writeByte(0x201, (char) 0xCD);
+            cpu.executeOpcode(cpu.decodeInstruction((char) 0xF000));
+
+            assertEquals(0xABCD, cpu.getIRegister());
+            assertEquals(0x202, cpu.getProgramCounter());
+        }
+
+        @Test
+        public void skipOverLongLoadTest() {
+            memory.writeByte(0x200, (char) 0xF0);
+            memory.writeByte(0x201, (char) 0x00);
+            cpu.executeOpcode(cpu.decodeInstruction((char) 0x3000));
+
+            assertEquals(0x204, cpu.getProgramCounter());
+        }
+
+        @Test
+        public void saveLoadRangeExecutionTest() {
+            cpu.getRegisters()[2] = 0x11;
+            cpu.getRegisters()[3] = 0x22;
+            cpu.getRegisters()[4] = 0x33;
+            cpu.setIRegister((char) 500);
+            cpu.executeOpcode(cpu.decodeInstruction((char) 0x5422));
+
+            assertEquals(0x33, memory.readByte(500));
+            assertEquals(0x22, memory.readByte(501));
+            assertEquals(0x11, memory.readByte(502));
+            assertEquals(500, cpu.getIRegister());
+
+            cpu.executeOpcode(cpu.decodeInstruction((char) 0x5A83));
+            assertEquals(0x33, cpu.getRegisters()[0xA]);
+            assertEquals(0x22, cpu.getRegisters()[0x9]);
+            assertEquals(0x11, cpu.getRegisters()[0x8]);
+        }
+
+        @Test
+        public void longAddIVxTest() {
+            Memory xoMemory = new Memory(Memory.XO_CHIP_SIZE);
+            CPU xoCpu = new CPU(new Stack(), xoMemory, new DisplayModel(), new Keyboard());
+            xoCpu.setIRegister((char) 0x0FFF);
+            xoCpu.getRegisters()[0] = 0x01;
+            xoCpu.executeOpcode(xoCpu.decodeInstruction((char) 0xF01E));
+
+            assertEquals(0x1000, xoCpu.getIRegister());
+        }
+    }
+
+
+    @Nested
+    public class QuirksTest {
+        private CPU quirkyCpu(Quirks quirks) {
+            return new CPU(new Stack(), memory, new DisplayModel(), new Keyboard(), quirks);
+        }
+
+        @Test
+        public void shiftUsesVyTest() {
+            CPU vip = quirkyCpu(Quirks.CHIP8);
+            vip.getRegisters()[0xA] = 0x00;
+            vip.getRegisters()[0xB] = 0b1000_0011;
+            vip.executeOpcode(vip.decodeInstruction((char) 0x8AB6));
+            assertEquals(0b0100_0001, vip.getRegisters()[0xA]);
+            assertEquals(1, vip.getRegisters()[0xF]);
+
+            vip.executeOpcode(vip.decodeInstruction((char) 0x8ABE));
+            assertEquals(0b0000_0110, vip.getRegisters()[0xA]);
+            assertEquals(1, vip.getRegisters()[0xF]);
+        }
+
+        @Test
+        public void loadStoreIncrementsITest() {
+            CPU vip = quirkyCpu(Quirks.CHIP8);
+            vip.setIRegister((char) 500);
+            vip.executeOpcode(vip.decodeInstruction((char) 0xF355));
+            assertEquals(504, vip.getIRegister());
+            vip.executeOpcode(vip.decodeInstruction((char) 0xF165));
+            assertEquals(506, vip.getIRegister());
+        }
+
+        @Test
+        public void jumpUsesVxTest() {
+            CPU schip = quirkyCpu(Quirks.SUPER_CHIP);
+            schip.getRegisters()[0] = 0x01;
+            schip.getRegisters()[2] = 0x10;
+            schip.executeOpcode(schip.decodeInstruction((char) 0xB234));
+            assertEquals(0x0244, schip.getProgramCounter());
+        }
+
+        @Test
+        public void logicResetsVfTest() {
+            CPU vip = quirkyCpu(Quirks.CHIP8);
+            vip.getRegisters()[0xF] = 0x01;
+            vip.executeOpcode(vip.decodeInstruction((char) 0x8011));
+            assertEquals(0, vip.getRegisters()[0xF]);
+
+            CPU legacy = quirkyCpu(Quirks.LEGACY);
+            legacy.getRegisters()[0xF] = 0x01;
+            legacy.executeOpcode(legacy.decodeInstruction((char) 0x8011));
+            assertEquals(1, legacy.getRegisters()[0xF]);
+        }
+
+        @Test
+        public void clipSpritesTest() {
+            DisplayModel clipped = new DisplayModel();
+            CPU vip = new CPU(new Stack(), memory, clipped, new Keyboard(), Quirks.CHIP8);
+            DisplayModel legacyDisplay = new DisplayModel();
+            CPU legacy = new CPU(new Stack(), memory, legacyDisplay, new Keyboard(), Quirks.LEGACY);
+            DisplayModel wrapped = new DisplayModel();
+            CPU xoChip = new CPU(new Stack(), new Memory(Memory.XO_CHIP_SIZE), wrapped, new Keyboard(), Quirks.XO_CHIP);
+            for (CPU c : new CPU[]{vip, legacy, xoChip}) {
+                c.getRegisters()[0] = 60;
+                c.getRegisters()[1] = 30;
+                c.setIRegister((char) 0);
+                // the digit 0 is 4 pixels wide and 5 pixels tall
+                c.executeOpcode(c.decodeInstruction((char) 0xD015));
+            }
+
+            assertEquals(1, clipped.getPixel(63, 31));
+            assertEquals(0, clipped.getPixel(60, 0));
+            assertEquals(1, wrapped.getPixel(63, 31));
+            assertEquals(1, wrapped.getPixel(60, 0));
+        }
+
+        @Test
+        public void legacySpritesTest() {
+            DisplayModel display = new DisplayModel();
+            CPU legacy = new CPU(new Stack(), memory, display, new Keyboard(), Quirks.LEGACY);
+            legacy.getRegisters()[0] = 62;
+            legacy.getRegisters()[1] = 30;
+            legacy.setIRegister((char) 0);
+            // the digit 0, f0 90 90 90 f0: wraps around the right edge, cut at the bottom one
+            legacy.executeOpcode(legacy.decodeInstruction((char) 0xD015));
+            assertEquals(1, display.getPixel(62, 30));
+            assertEquals(1, display.getPixel(1, 30));
+            assertEquals(1, display.getPixel(1, 31));
+            assertEquals(0, display.getPixel(62, 0));
+            assertEquals(0, display.getPixel(1, 2));
+
+            // nothing is drawn from below the screen
+            legacy.getRegisters()[1] = 40;
+            legacy.executeOpcode(legacy.decodeInstruction((char) 0xD015));
+            assertEquals(0, legacy.getRegisters()[0xF]);
+            assertEquals(0, display.getPixel(62, 8));
+            assertEquals(0, display.getPixel(1, 8));
+        }
+    }
+
+    @Nested
+    public class IdleLoopTest {
+        private void load(int... program) {
+            byte[] rom = new byte[program.length];
+            for (int i = 0; i < program.length; i++)
+                rom[i] = (byte) program[i];
+            memory.loadGame(rom);
+        }
+
+        /**
+         * Runs frames executing every single instruction, as runFrame would without idle loop detection
+         */
+        private void runFramesStepByStep(CPU reference, int frames, int instructionsPerFrame) {
+            for (int f = 0; f < frames; f++) {
+                for (int i = 0; i < instructionsPerFrame; i++)
+                    assertTrue(reference.step());
+                reference.tickTimers();
+            }
+        }
+
+        private void assertSameState(CPU expected, CPU actual) {
+            assertArrayEquals(expected.getRegisters(), actual.getRegisters());
+            assertEquals(expected.getProgramCounter(), actual.getProgramCounter());
+            assertEquals(expected.getDelayTimer(), actual.getDelayTimer());
+            assertEquals(expected.getIRegister(), actual.getIRegister());
+            assertEquals(expected.getInstructionCount(), actual.getInstructionCount());
+        }
+
+        @Test
+        public void stepTest() {
+            load(0x60, 0x2A, 0x70, 0x01);
+            assertTrue(cpu.step());
+            assertTrue(cpu.step());
+
+            assertEquals(0x2B, cpu.getRegisters()[0]);
+            assertEquals(0x204, cpu.getProgramCounter());
+            assertEquals(2, cpu.getInstructionCount());
+        }
+
+        @Test
+        public void unsupportedStepTest() {
+            load(0xFF, 0xFF);
+
+            assertFalse(cpu.step());
+            assertEquals(0x200, cpu.getProgramCounter());
+            assertFalse(cpu.runFrame(10));
+        }
+
+        @Test
+        public void delayWaitLoopMatchesExecutionTest() {
+            // LD VA, 5; LD DT, VA; loop: LD V0, DT; SE V0, 0; JP loop; ADD VB, 1; end: JP end
+            load(0x6A, 0x05, 0xFA, 0x15, 0xF0, 0x07, 0x30, 0x00, 0x12, 0x04, 0x7B, 0x01, 0x12, 0x0C);
+            Memory referenceMemory = new Memory();
+            referenceMemory.loadGame(new byte[]{0x6A, 0x05, (byte) 0xFA, 0x15, (byte) 0xF0, 0x07, 0x30, 0x00,
+                    0x12, 0x04, 0x7B, 0x01, 0x12, 0x0C});
+            CPU reference = new CPU(new Stack(), referenceMemory, new DisplayModel(), new Keyboard());
+
+            for (int frame = 1; frame <= 8; frame++) {
+                assertTrue(cpu.runFrame(11));
+                runFramesStepByStep(reference, 1, 11);
+                assertSameState(reference, cpu);
+            }
+            assertEquals(1, cpu.getRegisters()[0xB]);
+            assertEquals(0x20C, cpu.getProgramCounter());
+            assertTrue(cpu.getSkippedIdleInstructions() > 0);
+        }
+
+        @Test
+        public void keyWaitSkipsFrameTest() {
+            // LD V3, K
+            load(0xF3, 0x0A);
+            cpu.setDelayTimer((char) 2);
+
+            assertTrue(cpu.runFrame(500));
+            assertEquals(0x200, cpu.getProgramCounter());
+            assertEquals(500, cpu.getInstructionCount());
+            assertEquals(500, cpu.getSkippedIdleInstructions());
+            assertEquals(1, cpu.getDelayTimer());
+        }
+
+        @Test
+        public void keyWaitDoesNotBlockTest() {
+            load(0xF3, 0x0A);
+
+            assertTrue(cpu.step());
+            assertEquals(0x200, cpu.getProgramCounter());
+        }
+
+        @Test
+        public void runPastEndOfMemoryTest() {
+            // LD V0, 7 at the last address: the PC moves on to 0x1000, past the end of the 4K of memory
+            for (boolean blocks : new boolean[]{false, true}) {
+                CPU[] cpus = new CPU[2];
+                for (int c = 0; c < 2; c++) {
+                    Memory small = new Memory();
+                    small.writeByte(0xFFE, (char) 0x60);
+                    small.writeByte(0xFFF, (char) 0x07);
+                    cpus[c] = new CPU(new Stack(), small, new DisplayModel(), new Keyboard());
+                    cpus[c].setProgramCounter((char) 0xFFE);
+                }
+                cpus[1].setBlocksEnabled(blocks);
+                int steps = 0;
+                while (steps < 20 && cpus[0].step()) steps++;
+
+                assertEquals(steps == 20, cpus[1].runFrame(20));
+                assertEquals(cpus[0].getProgramCounter(), cpus[1].getProgramCounter());
+                assertEquals(7, cpus[1].getRegisters()[0]);
+                assertEquals(cpus[0].getInstructionCount(), cpus[1].getInstructionCount());
+            }
+        }
+
+        @Test
+        public void loopPatternsAbove4KAreNotIdleTest() {
+            // at 0x1ABC, 1ABC is JP ABC, not a halt; at 0x1300, LD V0, DT; SE V0, 0; JP 300 leaves for 0x300
+            int[][] programs = {
+                    {0x1ABC, 0x1A, 0xBC, 0xABC, 0x71, 0x01, 0xABE, 0x1A, 0xBC},
+                    {0x1300, 0xF0, 0x07, 0x1302, 0x30, 0x00, 0x1304, 0x13, 0x00, 0x300, 0x72, 0x01, 0x302, 0x13, 0x00}
+            };
+            for (int[] program : programs) {
+                for (boolean blocks : new boolean[]{false, true}) {
+                    CPU[] cpus = new CPU[2];
+                    for (int c = 0; c < 2; c++) {
+                        Memory xoMemory = new Memory(Memory.XO_CHIP_SIZE);
+                        for (int i = 0; i < program.length; i += 3) {
+                            xoMemory.writeByte(program[i], (char) program[i + 1]);
+                            xoMemory.writeByte(program[i] + 1, (char) program[i + 2]);
+                        }
+                        cpus[c] = new CPU(new Stack(), xoMemory, new DisplayModel(), new Keyboard(), Quirks.XO_CHIP);
+                        cpus[c].setProgramCounter((char) program[0]);
+                        cpus[c].setDelayTimer((char) 5);
+                    }
+                    cpus[1].setBlocksEnabled(blocks);
+                    for (int frame = 0; frame < 3; frame++) {
+                        runFramesStepByStep(cpus[0], 1, 20);
+                        assertTrue(cpus[1].runFrame(20));
+                        assertSameState(cpus[0], cpus[1]);
+                    }
+                    assertEquals(0, cpus[1].getSkippedIdleInstructions());
+                    assertTrue(cpus[1].getProgramCounter() < 0x1000);
+                }
+            }
+        }
+
+        @Test
+        public void selfModifiedLoopIsNotSkippedTest() {
+            // loop: LD V0, DT; SE V0, 0; JP loop
+            load(0xF0, 0x07, 0x30, 0x00, 0x12, 0x00);
+            cpu.setDelayTimer((char) 10);
+            assertTrue(cpu.runFrame(9));
+            long skipped = cpu.getSkippedIdleInstructions();
+            assertEquals(9, skipped);
+
+            // ADD V0, 1 replaces LD V0, DT
+            memory.writeByte(0x200, (char) 0x70);
+            memory.writeByte(0x201, (char) 0x01);
+            assertTrue(cpu.runFrame(9));
+            assertEquals(skipped, cpu.getSkippedIdleInstructions());
+        }
+    }
+
+    @Nested
+    public class TimingTest {
+        private void load(int... program) {
+            byte[] rom = new byte[program.length];
+            for (int i = 0; i < program.length; i++)
+                rom[i] = (byte) program[i];
+            memory.loadGame(rom);
+        }
+
+        @Test
+        public void fixedTimingTest() {
+            // loop: ADD V0, 1; JP loop
+            load(0x70, 0x01, 0x12, 0x00);
+            cpu.setTimingModel(TimingModel.fixed(10));
+            assertTrue(cpu.runFrame());
+
+            assertEquals(10, cpu.getInstructionCount());
+            assertEquals(10, cpu.getCycleCount());
+            assertEquals(5, cpu.getRegisters()[0]);
+        }
+
+        @Test
+        public void overrunIsPaidBackTest() {
+            // loop: ADD V0, 1; JP loop
+            load(0x70, 0x01, 0x12, 0x00);
+            TimingModel model = TimingModel.fixed(25)
+                    .withCost(Opcode.OpcodeType.ADD_VX_BYTE, 4)
+                    .withCost(Opcode.OpcodeType.JP_ADDR, 6);
+            cpu.setTimingModel(model);
+            for (int frame = 1; frame <= 7; frame++) {
+                assertTrue(cpu.runFrame());
+                long overrun = cpu.getCycleCount() - frame * 25L;
+                assertTrue(overrun >= 0 && overrun < 6);
+            }
+        }
+
+        @Test
+        public void drawWaitsForVblankTest() {
+            // loop: DRW V0, V0, 5; JP loop
+            load(0xD0, 0x05, 0x12, 0x00);
+            cpu.setTimingModel(TimingModel.COSMAC_VIP);
+            assertTrue(cpu.runFrame());
+            assertEquals(1, cpu.getInstructionCount());
+            assertEquals(TimingModel.COSMAC_VIP.getCyclesPerFrame(), cpu.getCycleCount());
+
+            assertTrue(cpu.runFrame());
+            assertEquals(3, cpu.getInstructionCount());
+        }
+
+        @Test
+        public void delayWaitUsesCyclesTest() {
+            // loop: LD V0, DT; SE V0, 0; JP loop; end: JP end
+            load(0xF0, 0x07, 0x30, 0x00, 0x12, 0x00, 0x12, 0x06);
+            cpu.setTimingModel(TimingModel.COSMAC_VIP);
+            cpu.setDelayTimer((char) 3);
+            for (int frame = 0; frame < 4; frame++)
+                assertTrue(cpu.runFrame());
+
+            assertEquals(0x206, cpu.getProgramCounter());
+            assertEquals(0, cpu.getRegisters()[0]);
+            assertTrue(cpu.getSkippedIdleInstructions() > 0);
+            assertTrue(cpu.getCycleCount() >= 3L * TimingModel.COSMAC_VIP.getCyclesPerFrame());
+        }
+
+        @Test
+        public void invalidCostTest() {
+            assertThrows(IllegalArgumentException.class, () -> TimingModel.FIXED.withCost(Opcode.OpcodeType.CLS, 0));
+            assertThrows(IllegalArgumentException.class, () -> new TimingModel("short", 10, false, new int[3]));
+        }
+
+        @Test
+        public void forNameTest() {
+            assertSame(TimingModel.COSMAC_VIP, TimingModel.forName("VIP"));
+            assertNull(TimingModel.forName("unknown"));
+        }
+    }
+
+    @Nested
+    public class BlockTest {
+        // loop: LD I, 240; DRW VA, VB, 5; ADD VA, 1; SE VA, 40; JP loop
+        // LD VC, 3; LD DT, VC; wait: LD V0, DT; SE V0, 0; JP count; JP keys; count: ADD VD, 1; JP wait
+        // keys: SKNP V1; JP compare; ADD VE, 1; compare: SE V2, V3; JP 22A; ADD V3, 1; JP 200
+        private final int[] program = {
+                0x6A, 0x00, 0xA2, 0x40, 0xDA, 0xB5, 0x7A, 0x01, 0x3A, 0x40, 0x12, 0x02, 0x6C, 0x03, 0xFC, 0x15,
+                0xF0, 0x07, 0x30, 0x00, 0x12, 0x18, 0x12, 0x1E, 0x7D, 0x01, 0x12, 0x10, 0x00, 0x00, 0xE1, 0xA1,
+                0x12, 0x24, 0x7E, 0x01, 0x52, 0x30, 0x12, 0x2A, 0x73, 0x01, 0x12, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0xF0, 0x90, 0x90, 0x90, 0xF0
+        };
+
+        private void load(Memory target) {
+            byte[] rom = new byte[program.length];
+            for (int i = 0; i < program.length; i++)
+                rom[i] = (byte) program[i];
+            target.loadGame(rom);
+        }
+
+        @Test
+        public void superinstructionsTest() {
+            load(memory);
+            BlockCache blocks = new BlockCache(cpu, memory, cpu.getHandlers(), new IdleLoopDetector(memory), null);
+
+            Block draw = blocks.get(0x202);
+            assertEquals(2, draw.length);
+            assertEquals(1, draw.entries.length);
+            Block counted = blocks.get(0x206);
+            assertEquals(3, counted.length);
+            assertEquals(1, counted.entries.length);
+            assertTrue(counted.branches);
+            Block wait = blocks.get(0x210);
+            assertEquals(3, wait.length);
+            assertEquals(1, wait.entries.length);
+            Block keys = blocks.get(0x21E);
+            assertEquals(2, keys.length);
+            assertEquals(1, keys.entries.length);
+        }
+
+        @Test
+        public void sameAsInterpreterTest() {
+            load(memory);
+            Memory otherMemory = new Memory();
+            load(otherMemory);
+            Keyboard keyboard = new Keyboard();
+            CPU interpreter = new CPU(new Stack(), otherMemory, new DisplayModel(), keyboard);
+            interpreter.setBlocksEnabled(false);
+            CPU blocks = new CPU(stack, memory, new DisplayModel(), keyboard);
+            for (TimingModel model : new TimingModel[]{TimingModel.FIXED, TimingModel.COSMAC_VIP}) {
+                interpreter.setTimingModel(model);
+                blocks.setTimingModel(model);
+                for (int frame = 0; frame < 200; frame++) {
+                    if (frame % 7 == 0) keyboard.press((char) 0);
+                    if (frame % 7 == 3) keyboard.release((char) 0);
+                    // odd budgets end frames in the middle of blocks
+                    if (frame % 2 == 0) {
+                        assertTrue(interpreter.runFrame());
+                        assertTrue(blocks.runFrame());
+                    } else {
+                        assertTrue(interpreter.runFrame(37));
+                        assertTrue(blocks.runFrame(37));
+                    }
+
+                    assertEquals(interpreter.getInstructionCount(), blocks.getInstructionCount());
+                    assertEquals(interpreter.getCycleCount(), blocks.getCycleCount());
+                    assertEquals(interpreter.getProgramCounter(), blocks.getProgramCounter());
+                    assertArrayEquals(interpreter.getRegisters(), blocks.getRegisters());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package main.cpu;
+
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DebuggerTest {
+    // LD V0, 0; loop: ADD V0, 1; CALL bcd; JP loop
+    // bcd: LD I, 300; LD B, V0; RET
+    private static final byte[] ROM = {
+            0x60, 0x00, 0x70, 0x01, 0x22, 0x10, 0x12, 0x02, 0, 0, 0, 0, 0, 0, 0, 0,
+            (byte) 0xA3, 0x00, (byte) 0xF0, 0x33, 0x00, (byte) 0xEE
+    };
+
+    private CPU cpu;
+    private Memory memory;
+    private Debugger debugger;
+
+    @BeforeEach
+    public void before() {
+        memory = new Memory();
+        memory.loadGame(ROM);
+        cpu = new CPU(new Stack(), memory, new DisplayModel(), new Keyboard());
+        debugger = new Debugger(cpu);
+    }
+
+    @Test
+    public void breakpointTest() {
+        debugger.addBreakpoint(0x210);
+
+        assertEquals(Debugger.Stop.BREAKPOINT, debugger.runFrame());
+        assertEquals(0x210, cpu.getProgramCounter());
+        assertEquals(1, cpu.getRegisters()[0]);
+        // the rest of the frame runs the subroutine and goes back to the loop
+        assertEquals(Debugger.Stop.FRAME_END, debugger.runFrame());
+        assertEquals(Debugger.Stop.BREAKPOINT, debugger.run(10));
+        assertEquals(0x210, cpu.getProgramCounter());
+        assertEquals(2, cpu.getRegisters()[0]);
+    }
+
+    @Test
+    public void breakpointAtStartTest() {
+        debugger.addBreakpoint(0x200);
+
+        assertEquals(Debugger.Stop.BREAKPOINT, debugger.runFrame());
+        assertEquals(0x200, cpu.getProgramCounter());
+        assertEquals(0, cpu.getInstructionCount());
+        // carrying on from it runs the frame, and the loop never comes back to 0x200
+        assertEquals(Debugger.Stop.FRAME_END, debugger.runFrame());
+        assertEquals(Debugger.Stop.FRAME_END, debugger.run(10));
+    }
+
+    @Test
+    public void breakpointWhereStepStoppedTest() {
+        debugger.addBreakpoint(0x202);
+
+        assertEquals(Debugger.Stop.STEP, debugger.step());
+        assertEquals(0x202, cpu.getProgramCounter());
+        // stepping onto the breakpoint was the stop there: the next one is after a turn of the loop
+        assertEquals(Debugger.Stop.BREAKPOINT, debugger.runFrame());
+        assertEquals(0x202, cpu.getProgramCounter());
+        assertEquals(1, cpu.getRegisters()[0]);
+    }
+
+    @Test
+    public void frameStoppedByBreakpointTicksOnceTest() {
+        cpu.setDelayTimer((char) 10);
+        debugger.addBreakpoint(0x210);
+
+        assertEquals(Debugger.Stop.BREAKPOINT, debugger.runFrame());
+        assertEquals(10, cpu.getDelayTimer());
+        debugger.removeBreakpoint(0x210);
+        assertEquals(Debugger.Stop.FRAME_END, debugger.runFrame());
+        assertEquals(9, cpu.getDelayTimer());
+        assertEquals(cpu.getTimingModel().getCyclesPerFrame(), cpu.getCycleCount());
+    }
+
+    @Test
+    public void removedBreakpointsRestoreIdleLoopsTest() {
+        // JP to itself
+        memory.loadGame(new byte[]{0x12, 0x00});
+        debugger.addBreakpoint(0x300);
+        debugger.runFrame();
+        assertEquals(0, cpu.getSkippedIdleInstructions());
+
+        debugger.removeBreakpoint(0x300);
+        debugger.runFrame();
+
+        assertTrue(cpu.getSkippedIdleInstructions() > 0);
+    }
+
+    @Test
+    public void watchpointTest() {
+        debugger.addWatchpoint(0x302, 1);
+
+        assertEquals(Debugger.Stop.WATCHPOINT, debugger.runFrame());
+        // stopped once LD B, V0 was executed
+        assertEquals(0x214, cpu.getProgramCounter());
+        assertEquals(0x302, debugger.getWriteAddress());
+        assertEquals(1, memory.readByte(0x302));
+    }
+
+    @Test
+    public void writesFromOutsideAreNotWatchedTest() {
+        debugger.addWatchpoint(0x302, 1);
+        memory.writeByte(0x302, (char) 9);
+        // LD B, V0 becomes LD V0, 33: nothing writes to 0x302 anymore
+        memory.writeByte(0x212, (char) 0x60);
+
+        assertEquals(Debugger.Stop.FRAME_END, debugger.run(10));
+    }
+
+    @Test
+    public void conditionTest() {
+        debugger.addCondition(c -> c.getRegisters()[0] == 5);
+
+        assertEquals(Debugger.Stop.CONDITION, debugger.run(10));
+        assertEquals(5, cpu.getRegisters()[0]);
+        assertEquals(0x204, cpu.getProgramCounter());
+    }
+
+    @Test
+    public void stepTest() {
+        assertEquals(Debugger.Stop.STEP, debugger.step());
+        assertEquals(0x202, cpu.getProgramCounter());
+        assertEquals(Debugger.Stop.STEP, debugger.step());
+        assertEquals(0x204, cpu.getProgramCounter());
+        assertEquals(2, cpu.getInstructionCount());
+    }
+
+    @Test
+    public void stepOverTest() {
+        debugger.step();
+        debugger.step();
+
+        assertEquals(Debugger.Stop.STEP, debugger.stepOver());
+        assertEquals(0x206, cpu.getProgramCounter());
+        assertEquals(0x300, cpu.getIRegister());
+        assertEquals(6, cpu.getInstructionCount());
+    }
+
+    @Test
+    public void stepOverStopsAtBreakpointTest() {
+        debugger.step();
+        debugger.step();
+        debugger.addBreakpoint(0x212);
+
+        assertEquals(Debugger.Stop.BREAKPOINT, debugger.stepOver());
+        assertEquals(0x212, cpu.getProgramCounter());
+    }
+
+    @Test
+    public void detachTest() {
+        debugger.addBreakpoint(0x210);
+        debugger.addWatchpoint(0x302, 1);
+        debugger.detach();
+
+        assertTrue(cpu.runFrame());
+        assertTrue(cpu.getInstructionCount() > 5);
+    }
+}
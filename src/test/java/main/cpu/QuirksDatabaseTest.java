@@ -0,0 +1,60 @@
+package main.cpu;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuirksDatabaseTest {
+    private QuirksDatabase database;
+    private final byte[] rom = {0x00, (byte) 0xE0, 0x12, 0x00};
+
+    @BeforeEach
+    public void before() {
+        database = new QuirksDatabase();
+    }
+
+    @Test
+    public void unknownRomTest() {
+        assertSame(Quirks.LEGACY, database.lookup(rom, Quirks.LEGACY));
+    }
+
+    @Test
+    public void loadEntriesTest() throws IOException {
+        String entries = "# comment\n" + QuirksDatabase.hash(rom) + " schip  # test rom\n\n";
+        database.load(new ByteArrayInputStream(entries.getBytes(StandardCharsets.UTF_8)));
+
+        assertSame(Quirks.SUPER_CHIP, database.lookup(rom, Quirks.LEGACY));
+    }
+
+    @Test
+    public void invalidEntryTest() {
+        String entries = QuirksDatabase.hash(rom) + " unknown\n";
+        assertThrows(IOException.class,
+                () -> database.load(new ByteArrayInputStream(entries.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void hashTest() {
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", QuirksDatabase.hash(new byte[0]));
+    }
+
+    @Test
+    public void defaultDatabaseTest() throws IOException {
+        assertSame(Quirks.LEGACY, QuirksDatabase.loadDefault().lookup(rom, Quirks.LEGACY));
+    }
+
+    @Test
+    public void shippedEntryTest() throws IOException {
+        byte[] startup;
+        try (InputStream in = QuirksDatabaseTest.class.getResourceAsStream("/roms/startup.ch8")) {
+            startup = in.readAllBytes();
+        }
+        assertSame(Quirks.LEGACY, QuirksDatabase.loadDefault().lookup(startup, Quirks.XO_CHIP));
+    }
+}
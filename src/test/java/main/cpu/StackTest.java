@@ -3,6 +3,8 @@ package main.cpu;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class StackTest {
@@ -31,7 +33,123 @@ class StackTest {
 
     @Test
     public void getAddressExceptionTest() {
-        assertThrows(ArrayIndexOutOfBoundsException.class, () -> stack.getAddress());
+        assertThrows(StackFaultException.class, () -> stack.getAddress());
+    }
+
+    @Test
+    public void overflowFaultTest() {
+        for (int i = 0; i < Stack.DEFAULT_DEPTH; i++) assertTrue(stack.push((char) i));
+
+        assertFalse(stack.push((char) 0x300));
+        assertEquals(15, stack.getPointer());
+        assertThrows(StackFaultException.class, () -> stack.setAddress((char) 0x300));
+    }
+
+    @Test
+    public void underflowFaultTest() {
+        assertEquals(-1, stack.pop());
+        assertEquals(-1, stack.getPointer());
+    }
+
+    @Test
+    public void wrapTest() {
+        stack = new Stack(2, Stack.OverflowPolicy.WRAP);
+        stack.push((char) 1);
+        stack.push((char) 2);
+        stack.push((char) 3);
+
+        assertEquals(0, stack.getPointer());
+        assertEquals(3, stack.pop());
+        // empty: wraps around to the top
+        assertEquals(2, stack.pop());
+    }
+
+    @Test
+    public void growTest() {
+        stack = new Stack(2, Stack.OverflowPolicy.GROW);
+        for (int i = 0; i < 100; i++) assertTrue(stack.push((char) i));
+
+        assertEquals(128, stack.getDepth());
+        for (int i = 99; i >= 0; i--) assertEquals(i, stack.pop());
+        assertEquals(-1, stack.pop());
+    }
+
+    @Test
+    public void growStopsAtMaxDepthTest() {
+        stack = new Stack(3, Stack.OverflowPolicy.GROW);
+        for (int i = 0; i < Stack.MAX_DEPTH; i++) assertTrue(stack.push((char) i));
+
+        assertEquals(Stack.MAX_DEPTH, stack.getDepth());
+        assertFalse(stack.push((char) 0));
+        assertEquals(Stack.MAX_DEPTH - 1, stack.getPointer());
+        assertThrows(IllegalArgumentException.class, () -> new Stack(Stack.MAX_DEPTH + 1, Stack.OverflowPolicy.FAULT));
+    }
+
+    @Test
+    public void saveGrownStackTest() {
+        stack = new Stack(2, Stack.OverflowPolicy.GROW);
+        for (int i = 0; i < 40; i++) stack.push((char) (0x200 + i));
+        ByteBuffer state = ByteBuffer.allocate(Stack.SAVED_SIZE);
+        stack.saveState(state, 0);
+
+        Stack loaded = new Stack(2, Stack.OverflowPolicy.GROW);
+        loaded.loadState(state, 0);
+        assertEquals(39, loaded.getPointer());
+        for (int i = 39; i >= 0; i--) assertEquals(0x200 + i, loaded.pop());
+
+        // a stack that can't grow refuses it, and keeps its own entries
+        Stack.OverflowPolicy[] fixedPolicies = {Stack.OverflowPolicy.FAULT, Stack.OverflowPolicy.WRAP};
+        for (Stack.OverflowPolicy policy : fixedPolicies) {
+            Stack fixed = new Stack(Stack.DEFAULT_DEPTH, policy);
+            fixed.push((char) 0x300);
+            assertThrows(IllegalArgumentException.class, () -> fixed.loadState(state, 0));
+            assertEquals(0, fixed.getPointer());
+            assertEquals(0x300, fixed.pop());
+        }
+    }
+
+    @Test
+    public void listenerTest() {
+        StringBuilder events = new StringBuilder();
+        stack = new Stack(1, Stack.OverflowPolicy.FAULT);
+        stack.setListener(new StackListener() {
+            @Override
+            public void called(char returnAddress, int depth) {
+                events.append("call ").append((int) returnAddress).append(' ').append(depth).append(',');
+            }
+
+            @Override
+            public void returned(char returnAddress, int depth) {
+                events.append("ret ").append((int) returnAddress).append(' ').append(depth).append(',');
+            }
+
+            @Override
+            public void faulted(boolean overflow) {
+                events.append(overflow ? "overflow," : "underflow,");
+            }
+        });
+        stack.push((char) 5);
+        stack.push((char) 6);
+        stack.pop();
+        stack.pop();
+
+        assertEquals("call 5 1,overflow,ret 5 0,underflow,", events.toString());
+    }
+
+    @Test
+    public void linkTest() {
+        Object block = new Object();
+        stack.push((char) 0x202);
+        stack.setLink(block);
+        stack.push((char) 0x302);
+
+        assertNull(stack.getLink());
+        stack.pop();
+        assertSame(block, stack.getLink());
+        stack.pop();
+        // a new entry in the same place doesn't keep the old link
+        stack.push((char) 0x402);
+        assertNull(stack.getLink());
     }
 
     @Test
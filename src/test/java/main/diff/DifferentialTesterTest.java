@@ -0,0 +1,102 @@
+package main.diff;
+
+import main.cpu.Quirks;
+import main.fuzz.RomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DifferentialTesterTest {
+    // LD VA, 5; LD DT, VA; loop: LD V0, DT; SE V0, 0; JP loop; ADD VB, 1; LD V3, K; JP 200
+    private static final byte[] DELAY_ROM = {0x6A, 0x05, (byte) 0xFA, 0x15, (byte) 0xF0, 0x07, 0x30, 0x00,
+            0x12, 0x04, 0x7B, 0x01, (byte) 0xF3, 0x0A, 0x12, 0x00};
+
+    private static DifferentialTester tester(Quirks reference, Quirks candidate, boolean frames, boolean perInstruction) {
+        return new DifferentialTester(() -> new CpuEngine(reference, false), () -> new CpuEngine(candidate, frames),
+                7, 300, perInstruction);
+    }
+
+    @Test
+    public void sameEngineTest() {
+        DiffResult result = tester(Quirks.LEGACY, Quirks.LEGACY, false, true).run("delay", DELAY_ROM, 1);
+
+        assertTrue(result.passed());
+        assertEquals(300, result.getFrames());
+    }
+
+    @Test
+    public void idleLoopSkippingTest() {
+        DiffResult result = tester(Quirks.LEGACY, Quirks.LEGACY, true, false).run("delay", DELAY_ROM, 1);
+
+        assertTrue(result.passed(), result::toString);
+    }
+
+    @Test
+    public void divergenceTest() {
+        // LD V1, 5; SHR V0, V1; JP 204
+        byte[] rom = {0x61, 0x05, (byte) 0x80, 0x16, 0x12, 0x04};
+        DiffResult result = tester(Quirks.LEGACY, Quirks.CHIP8, false, true).run("shift", rom, 1);
+
+        assertFalse(result.passed());
+        Divergence divergence = result.getDivergence();
+        assertEquals(2, divergence.getInstruction());
+        assertTrue(divergence.getDifferences().contains("V0 00 != 02"));
+        assertTrue(divergence.toString().contains("reference:"));
+    }
+
+    @Test
+    public void endingTest() {
+        // RET with an empty stack
+        DiffResult result = tester(Quirks.LEGACY, Quirks.LEGACY, false, true).run("underflow", new byte[]{0x00, (byte) 0xEE}, 1);
+
+        assertTrue(result.passed());
+        assertEquals("threw StackFaultException", result.getEnding());
+    }
+
+    @Test
+    public void randomCorpusTest() {
+        List<DiffResult> results = tester(Quirks.LEGACY, Quirks.LEGACY, true, false).runCorpus(randomCorpus(37), 5);
+
+        assertEquals(200, results.size());
+        for (DiffResult result : results)
+            assertTrue(result.passed(), result::toString);
+    }
+
+    @Test
+    public void blocksRandomCorpusTest() {
+        DifferentialTester tester = new DifferentialTester(() -> new CpuEngine(Quirks.LEGACY, false),
+                () -> new CpuEngine(Quirks.LEGACY, true, true), 7, 300, false);
+        List<DiffResult> results = tester.runCorpus(randomCorpus(41), 5);
+
+        assertEquals(200, results.size());
+        for (DiffResult result : results)
+            assertTrue(result.passed(), result::toString);
+    }
+
+    @Test
+    public void blocksSelfModifyingTest() {
+        // LD I, 20D; LD V0, [I]; ADD V0, 1; LD I, 20D; LD [I], V0; JP 20C
+        // 20C: LD V1, nn; ADD V2, V1; JP 200, nn going up by one every time
+        byte[] rom = {(byte) 0xA2, 0x0D, (byte) 0xF0, 0x65, 0x70, 0x01, (byte) 0xA2, 0x0D, (byte) 0xF0, 0x55,
+                0x12, 0x0C, 0x61, 0x00, (byte) 0x82, 0x14, 0x12, 0x00};
+        DifferentialTester tester = new DifferentialTester(() -> new CpuEngine(Quirks.LEGACY, false),
+                () -> new CpuEngine(Quirks.LEGACY, true, true), 7, 60, false);
+        DiffResult result = tester.run("patch", rom, 1);
+
+        assertTrue(result.passed(), result::toString);
+    }
+
+    private static Map<String, byte[]> randomCorpus(long seed) {
+        RomGenerator generator = new RomGenerator(64);
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<String, byte[]> corpus = new HashMap<>();
+        for (int i = 0; i < 200; i++)
+            corpus.put("random-" + i, generator.random(random));
+        return corpus;
+    }
+}
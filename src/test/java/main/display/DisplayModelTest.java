@@ -140,6 +140,19 @@ class DisplayModelTest {
             assertArrayEquals(control, myArray);
 
         }
+
+        @Test
+        public void drawSpriteReusesBufferTest() {
+            byte[] buffer = displayModel.spriteBuffer(5);
+            char[] sprite = {0xf0, 0x90, 0x90, 0x90, 0xf0};
+            displayModel.drawSprite(new Coordinate(0, 0), sprite);
+
+            assertTrue(displayModel.drawSprite(new Coordinate(0, 0), sprite));
+            assertEquals(0, displayModel.getBit(0));
+            // 16x16 sprites on both planes still fit
+            assertSame(buffer, displayModel.spriteBuffer(32 * DisplayModel.PLANES));
+            assertTrue(displayModel.spriteBuffer(100).length >= 100);
+        }
     }
 
     @Test
@@ -155,4 +168,200 @@ class DisplayModelTest {
         }
     }
 
-}
\ No newline at end of file
+
+    @Nested
+    public class HighResolutionTest {
+        @Test
+        public void switchResolutionTest() {
+            displayModel.setHighResolution(true);
+            assertEquals(128, displayModel.getWidth());
+            assertEquals(64, displayModel.getHeight());
+            assertTrue(displayModel.isHighResolution());
+
+            displayModel.setHighResolution(false);
+            assertEquals(64, displayModel.getWidth());
+            assertEquals(32, displayModel.getHeight());
+        }
+
+        @Test
+        public void drawAcrossWordsTest() {
+            displayModel.setHighResolution(true);
+            char[] sprite = {0xff};
+            displayModel.drawSprite(new Coordinate(60, 63), sprite);
+
+            for (int x = 0; x < 128; x++) {
+                int expected = x >= 60 && x < 68 ? 1 : 0;
+                assertEquals(expected, displayModel.getPixel(x, 63));
+            }
+        }
+
+        @Test
+        public void drawWrapAroundTest() {
+            displayModel.setHighResolution(true);
+            char[] sprite = {0xff};
+            displayModel.drawSprite(new Coordinate(124, 0), sprite);
+
+            for (int x = 0; x < 128; x++) {
+                int expected = x >= 124 || x < 4 ? 1 : 0;
+                assertEquals(expected, displayModel.getPixel(x, 0));
+            }
+        }
+
+        @Test
+        public void drawLargeSpriteTest() {
+            displayModel.setHighResolution(true);
+            char[] sprite = new char[32];
+            for (int i = 0; i < sprite.length; i++) sprite[i] = 0xff;
+            boolean collision = displayModel.drawSprite(100, 10, sprite, 2, false);
+
+            assertFalse(collision);
+            for (int y = 10; y < 26; y++)
+                for (int x = 100; x < 116; x++)
+                    assertEquals(1, displayModel.getPixel(x, y));
+            assertEquals(0, displayModel.getPixel(116, 10));
+            assertEquals(0, displayModel.getPixel(100, 26));
+        }
+    }
+
+    @Nested
+    public class ScrollTest {
+        @BeforeEach
+        public void before() {
+            displayModel.setHighResolution(true);
+            char[] sprite = {0x81};
+            displayModel.drawSprite(new Coordinate(60, 10), sprite);
+        }
+
+        @Test
+        public void scrollDownTest() {
+            displayModel.scrollDown(4);
+            assertEquals(0, displayModel.getPixel(60, 10));
+            assertEquals(1, displayModel.getPixel(60, 14));
+            assertEquals(1, displayModel.getPixel(67, 14));
+        }
+
+        @Test
+        public void scrollUpTest() {
+            displayModel.scrollUp(10);
+            assertEquals(1, displayModel.getPixel(60, 0));
+            assertEquals(1, displayModel.getPixel(67, 0));
+            assertEquals(0, displayModel.getPixel(60, 10));
+        }
+
+        @Test
+        public void scrollRightTest() {
+            displayModel.scrollRight(4);
+            assertEquals(0, displayModel.getPixel(60, 10));
+            assertEquals(1, displayModel.getPixel(64, 10));
+            assertEquals(1, displayModel.getPixel(71, 10));
+        }
+
+        @Test
+        public void scrollLeftTest() {
+            displayModel.scrollLeft(4);
+            assertEquals(1, displayModel.getPixel(56, 10));
+            assertEquals(1, displayModel.getPixel(63, 10));
+            assertEquals(0, displayModel.getPixel(67, 10));
+        }
+
+        @Test
+        public void scrollOffScreenTest() {
+            displayModel.scrollDown(15);
+            displayModel.scrollDown(15);
+            displayModel.scrollDown(15);
+            displayModel.scrollDown(15);
+            for (int y = 0; y < 64; y++)
+                for (int x = 0; x < 128; x++)
+                    assertEquals(0, displayModel.getPixel(x, y));
+        }
+    }
+
+    @Nested
+    public class PlaneTest {
+        @Test
+        public void drawSecondPlaneTest() {
+            displayModel.setSelectedPlanes(0b10);
+            char[] sprite = {0x80};
+            displayModel.drawSprite(new Coordinate(0, 0), sprite);
+
+            assertEquals(0b10, displayModel.getPixel(0, 0));
+            assertEquals(0, displayModel.getBit(0));
+        }
+
+        @Test
+        public void drawBothPlanesTest() {
+            displayModel.setSelectedPlanes(0b11);
+            char[] sprite = {0x80, 0xc0};
+            displayModel.drawSprite(new Coordinate(0, 0), sprite);
+
+            assertEquals(0b11, displayModel.getPixel(0, 0));
+            assertEquals(0b10, displayModel.getPixel(1, 0));
+        }
+
+        @Test
+        public void clearSelectedPlaneTest() {
+            displayModel.setSelectedPlanes(0b11);
+            char[] sprite = {0x80, 0x80};
+            displayModel.drawSprite(new Coordinate(0, 0), sprite);
+            displayModel.setSelectedPlanes(0b01);
+            displayModel.clear();
+
+            assertEquals(0b10, displayModel.getPixel(0, 0));
+        }
+    }
+
+    @Nested
+    public class BulkTest {
+        private final int[] palette = {0x000000, 0xFF0000, 0x00FF00, 0xFFFFFF};
+
+        @Test
+        public void diffTest() {
+            long[] previous = new long[32 * DisplayModel.PLANES];
+            long[] changes = new long[previous.length];
+            displayModel.drawSprite(new Coordinate(62, 3), new char[]{0xF0});
+            assertEquals(4, displayModel.diff(previous, changes));
+            assertEquals(0xC000000000000003L, changes[3]);
+
+            displayModel.drawSprite(new Coordinate(62, 3), new char[]{0x80});
+            assertEquals(1, displayModel.diff(previous, changes));
+            assertEquals(1L << 63 >>> 62, changes[3]);
+            assertEquals(0, displayModel.diff(previous, changes));
+        }
+
+        @Test
+        public void countLitPixelsTest() {
+            displayModel.drawSprite(new Coordinate(0, 0), new char[]{0xFF, 0x81});
+            displayModel.setSelectedPlanes(0b10);
+            displayModel.drawSprite(new Coordinate(0, 0), new char[]{0x01});
+            assertEquals(10, displayModel.countLitPixels(0));
+            assertEquals(1, displayModel.countLitPixels(1));
+        }
+
+        @Test
+        public void paintTest() {
+            displayModel.drawSprite(new Coordinate(63, 31), new char[]{0xC0});
+            displayModel.setSelectedPlanes(0b10);
+            displayModel.drawSprite(new Coordinate(63, 31), new char[]{0x80});
+            int[] raster = new int[64 * 3 * 32 * 3];
+            displayModel.paint(raster, 3, palette);
+            int rasterWidth = 64 * 3;
+            assertEquals(0xFFFFFF, raster[31 * 3 * rasterWidth + 63 * 3]);
+            assertEquals(0xFFFFFF, raster[(31 * 3 + 2) * rasterWidth + 63 * 3 + 2]);
+            // x 64 wraps around to 0
+            assertEquals(0xFF0000, raster[31 * 3 * rasterWidth]);
+            assertEquals(0x000000, raster[31 * 3 * rasterWidth + 3]);
+            assertEquals(0x000000, raster[0]);
+            assertThrows(IllegalArgumentException.class, () -> displayModel.paint(new int[10], 3, palette));
+        }
+
+        @Test
+        public void paintHighResolutionTest() {
+            displayModel.setHighResolution(true);
+            displayModel.drawSprite(new Coordinate(64, 63), new char[]{0x80});
+            int[] raster = new int[128 * 64];
+            displayModel.paint(raster, 1, palette);
+            for (int i = 0; i < raster.length; i++)
+                assertEquals(i == 63 * 128 + 64 ? 0xFF0000 : 0, raster[i]);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package main.display;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameBufferTest {
+    private DisplayModel displayModel;
+    private FrameBuffer frameBuffer;
+
+    @BeforeEach
+    public void before() {
+        displayModel = new DisplayModel();
+        frameBuffer = displayModel.getFrameBuffer();
+    }
+
+    @Test
+    public void noFrameBeforePublishTest() {
+        assertFalse(frameBuffer.hasNewFrame());
+        assertEquals(0, frameBuffer.acquire().getSequence());
+    }
+
+    @Test
+    public void publishedFrameTest() {
+        char[] sprite = {0xf0, 0x90, 0x90, 0x90, 0xf0};
+        displayModel.drawSprite(new Coordinate(0, 0), sprite);
+        displayModel.publish();
+
+        assertTrue(frameBuffer.hasNewFrame());
+        Frame frame = frameBuffer.acquire();
+        for (int i = 0; i < 2048; i++) {
+            Coordinate coord = displayModel.indexToCoords(i);
+            assertEquals(displayModel.getBit(i), frame.getPixel(coord.getX(), coord.getY()));
+        }
+        assertFalse(frameBuffer.hasNewFrame());
+    }
+
+    @Test
+    public void frameUnchangedByLaterDrawingTest() {
+        char[] sprite = {0xf0};
+        displayModel.drawSprite(new Coordinate(0, 0), sprite);
+        displayModel.publish();
+        Frame frame = frameBuffer.acquire();
+
+        displayModel.clear();
+
+        assertEquals(1, frame.getPixel(0, 0));
+        assertSame(frame, frameBuffer.acquire());
+    }
+
+    @Test
+    public void publishWithoutChangesTest() {
+        displayModel.clear();
+        displayModel.publish();
+        long sequence = frameBuffer.acquire().getSequence();
+
+        displayModel.publish();
+
+        assertFalse(frameBuffer.hasNewFrame());
+        assertEquals(sequence, frameBuffer.acquire().getSequence());
+    }
+
+    @Test
+    public void latestFrameWinsTest() {
+        char[] sprite = {0x80};
+        for (int x = 0; x < 5; x++) {
+            displayModel.drawSprite(new Coordinate(x, 0), sprite);
+            displayModel.publish();
+        }
+
+        Frame frame = frameBuffer.acquire();
+        assertEquals(5, frame.getSequence());
+        for (int x = 0; x < 5; x++) {
+            assertEquals(1, frame.getPixel(x, 0));
+        }
+    }
+
+    @Test
+    public void noTornFramesTest() throws InterruptedException {
+        char[] fullRow = {0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff};
+        int publishes = 20_000;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < publishes; i++) {
+                for (int x = 0; x < 64; x += 8) {
+                    displayModel.drawSprite(new Coordinate(x, 0), fullRow);
+                }
+                displayModel.publish();
+            }
+        });
+        writer.start();
+
+        long lastSequence = 0;
+        while (writer.isAlive() || frameBuffer.hasNewFrame()) {
+            Frame frame = frameBuffer.acquire();
+            assertTrue(frame.getSequence() >= lastSequence);
+            lastSequence = frame.getSequence();
+            // every publish toggles the whole block at once, so a frame must be either all set or all clear
+            int expected = frame.getPixel(0, 0);
+            for (int y = 0; y < 8; y++)
+                for (int x = 0; x < 64; x++)
+                    assertEquals(expected, frame.getPixel(x, y));
+        }
+        writer.join();
+        assertEquals(publishes, lastSequence);
+    }
+}
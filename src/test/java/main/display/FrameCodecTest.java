@@ -0,0 +1,153 @@
+package main.display;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameCodecTest {
+    private DisplayModel displayModel;
+    private FrameEncoder encoder;
+    private FrameDecoder decoder;
+    private ByteBuffer buffer;
+
+    @BeforeEach
+    public void before() {
+        displayModel = new DisplayModel();
+        encoder = new FrameEncoder(10);
+        decoder = new FrameDecoder();
+        buffer = ByteBuffer.allocate(FrameEncoder.MAX_RECORD_SIZE);
+    }
+
+    private int roundTrip() {
+        buffer.clear();
+        encoder.encode(displayModel, buffer);
+        int size = buffer.position();
+        buffer.flip();
+        decoder.decode(buffer);
+        assertFalse(buffer.hasRemaining());
+        return size;
+    }
+
+    private void assertSameDisplay() {
+        assertEquals(displayModel.getWidth(), decoder.getWidth());
+        assertEquals(displayModel.getHeight(), decoder.getHeight());
+        for (int y = 0; y < displayModel.getHeight(); y++) {
+            for (int x = 0; x < displayModel.getWidth(); x++)
+                assertEquals(displayModel.getPixel(x, y), decoder.getPixel(x, y));
+        }
+    }
+
+    private void drawRandomSprite(Random random) {
+        char[] sprite = new char[2 + random.nextInt(14)];
+        for (int i = 0; i < sprite.length; i++)
+            sprite[i] = (char) random.nextInt(256);
+        displayModel.setSelectedPlanes(1 + random.nextInt(3));
+        displayModel.drawSprite(random.nextInt(128), random.nextInt(64), sprite, 1 + random.nextInt(2), false);
+    }
+
+    @Test
+    public void randomFramesRoundTripTest() {
+        Random random = new Random(35);
+        for (int frame = 0; frame < 200; frame++) {
+            if (frame == 80) displayModel.setHighResolution(true);
+            if (frame == 150) displayModel.setHighResolution(false);
+            for (int sprites = random.nextInt(4); sprites > 0; sprites--)
+                drawRandomSprite(random);
+            roundTrip();
+            assertSameDisplay();
+        }
+    }
+
+    @Test
+    public void spriteDeltaIsSmallTest() {
+        roundTrip();
+        displayModel.drawSprite(new Coordinate(14, 10), new char[]{0xF0, 0x90, 0x90, 0x90, 0xF0});
+        int size = roundTrip();
+
+        // header, a row mask per plane, then a byte mask and 2 changed bytes for each of the 5 rows
+        assertEquals(FrameEncoder.HEADER_SIZE + 2 * Long.BYTES + 5 * 3, size);
+        assertSameDisplay();
+    }
+
+    @Test
+    public void keyframeIntervalTest() {
+        buffer.clear();
+        assertTrue(encoder.encode(displayModel, buffer));
+        for (int i = 0; i < 10; i++) {
+            buffer.clear();
+            assertFalse(encoder.encode(displayModel, buffer));
+        }
+        buffer.clear();
+        assertTrue(encoder.encode(displayModel, buffer));
+    }
+
+    @Test
+    public void resolutionChangeIsKeyframeTest() {
+        buffer.clear();
+        encoder.encode(displayModel, buffer);
+        displayModel.setHighResolution(true);
+        buffer.clear();
+        assertTrue(encoder.encode(displayModel, buffer));
+    }
+
+    @Test
+    public void deltaWithoutKeyframeTest() {
+        buffer.clear();
+        encoder.encode(displayModel, buffer);
+        buffer.clear();
+        encoder.encode(displayModel, buffer);
+        buffer.flip();
+
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(buffer));
+    }
+
+    @Test
+    public void copyToModelTest() {
+        displayModel.setHighResolution(true);
+        displayModel.drawSprite(new Coordinate(100, 50), new char[]{0xFF});
+        roundTrip();
+        DisplayModel copy = new DisplayModel();
+        decoder.copyTo(copy);
+
+        assertTrue(copy.isHighResolution());
+        assertEquals(1, copy.getPixel(107, 50));
+        assertEquals(0, copy.getPixel(108, 50));
+    }
+
+    @Test
+    public void recordingTest(@TempDir Path directory) throws IOException {
+        Path recording = directory.resolve("recording.bin");
+        Random random = new Random(7);
+        DisplayModel expected = new DisplayModel();
+        try (FileChannel out = FileChannel.open(recording, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (int frame = 0; frame < 50; frame++) {
+                drawRandomSprite(random);
+                buffer.clear();
+                encoder.encode(displayModel, buffer);
+                buffer.flip();
+                while (buffer.hasRemaining()) out.write(buffer);
+            }
+        }
+
+        try (FileChannel in = FileChannel.open(recording, StandardOpenOption.READ)) {
+            ByteBuffer records = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            int frames = 0;
+            while (records.hasRemaining()) {
+                decoder.decode(records);
+                frames++;
+            }
+            assertEquals(50, frames);
+        }
+        decoder.copyTo(expected);
+        assertSameDisplay();
+    }
+}
@@ -0,0 +1,61 @@
+package main.display;
+
+import java.util.SplittableRandom;
+
+/**
+ * Rough timing of the display's bulk operations, scalar against the Vector API, run by hand: it's not part of the test
+ * suite. Needs java --add-modules jdk.incubator.vector for the vector side. Arguments: the raster multiplier
+ * (8 by default)
+ */
+class PlaneOpsBenchmark {
+    private static final int[] PALETTE = {0x2D1A40, 0xAF81DC, 0x5CB4C8, 0xF0DCF0};
+
+    public static void main(String[] args) {
+        int multiplier = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        System.out.println(PlaneOps.isVectorAvailable() ? "Vector API available" : "Vector API not available");
+        PlaneOps[] ops = {PlaneOps.SCALAR, PlaneOps.create()};
+        SplittableRandom random = new SplittableRandom(1);
+        long[] first = new long[128];
+        long[] second = new long[128];
+        long[] previous = new long[256];
+        long[] changes = new long[256];
+        for (int i = 0; i < 128; i++) {
+            first[i] = random.nextLong();
+            second[i] = random.nextLong();
+        }
+        int[] raster = new int[128 * multiplier * 64 * multiplier];
+
+        for (int round = 0; round < 5; round++) {
+            for (PlaneOps op : ops) {
+                String name = op == PlaneOps.SCALAR ? "scalar" : "vector";
+                int count = 0;
+                int runs = 2_000_000;
+                long start = System.nanoTime();
+                for (int i = 0; i < runs; i++) {
+                    op.shiftRight(first, 128, 2, 4);
+                    op.shiftLeft(first, 128, 2, 4);
+                }
+                long shifts = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < runs; i++) {
+                    first[i & 127] ^= i;
+                    count += op.diff(first, previous, changes, 0, 128);
+                }
+                long diffs = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < runs; i++) {
+                    first[i & 127] ^= i;
+                    count += op.popcount(first, 128);
+                }
+                long popcounts = System.nanoTime() - start;
+                int paints = 5_000;
+                start = System.nanoTime();
+                for (int i = 0; i < paints; i++) op.upscale(first, second, 128, 64, PALETTE, multiplier, raster);
+                long upscales = System.nanoTime() - start;
+                System.out.printf("round %d %s: scroll right+left %.1f ns, diff %.1f ns, popcount %.1f ns, "
+                                + "%dx raster %.1f us (%d)%n", round, name, (double) shifts / runs, (double) diffs / runs,
+                        (double) popcounts / runs, multiplier, upscales / 1e3 / paints, count + raster[runs & 1023]);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package main.display;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The Vector API operations against the scalar ones. Surefire runs with the incubator module; without it there is
+ * nothing to compare
+ */
+class PlaneOpsTest {
+    private static final int[] PALETTE = {0x2D1A40, 0xAF81DC, 0x5CB4C8, 0xF0DCF0};
+
+    private PlaneOps vector;
+    private SplittableRandom random;
+
+    @BeforeEach
+    public void before() {
+        assumeTrue(PlaneOps.isVectorAvailable());
+        vector = PlaneOps.create();
+        random = new SplittableRandom(3);
+    }
+
+    private long[] plane(int length) {
+        long[] plane = new long[length];
+        for (int i = 0; i < length; i++) plane[i] = random.nextLong();
+        return plane;
+    }
+
+    @Test
+    public void vectorOpsTest() {
+        assertTrue(vector instanceof VectorPlaneOps);
+    }
+
+    @Test
+    public void clearTest() {
+        for (int[] range : new int[][]{{0, 32}, {3, 128}, {0, 5}, {96, 128}}) {
+            long[] plane = plane(128);
+            long[] expected = plane.clone();
+            PlaneOps.SCALAR.clear(expected, range[0], range[1]);
+            vector.clear(plane, range[0], range[1]);
+            assertArrayEquals(expected, plane);
+        }
+    }
+
+    @Test
+    public void shiftTest() {
+        // low and high resolution planes, and lengths that leave words past the last vector
+        int[][] shapes = {{32, 1}, {128, 2}, {30, 2}, {31, 1}};
+        for (int[] shape : shapes) {
+            for (int n = 1; n < 64; n += 7) {
+                long[] plane = plane(shape[0]);
+                long[] expected = plane.clone();
+                PlaneOps.SCALAR.shiftRight(expected, shape[0], shape[1], n);
+                vector.shiftRight(plane, shape[0], shape[1], n);
+                assertArrayEquals(expected, plane);
+
+                PlaneOps.SCALAR.shiftLeft(expected, shape[0], shape[1], n);
+                vector.shiftLeft(plane, shape[0], shape[1], n);
+                assertArrayEquals(expected, plane);
+            }
+        }
+    }
+
+    @Test
+    public void diffAndPopcountTest() {
+        for (int length : new int[]{32, 128, 37}) {
+            long[] current = plane(length);
+            long[] previous = plane(2 * length);
+            long[] changes = new long[2 * length];
+            long[] expectedPrevious = previous.clone();
+            long[] expectedChanges = new long[2 * length];
+            int expected = PlaneOps.SCALAR.diff(current, expectedPrevious, expectedChanges, length, length);
+            assertEquals(expected, vector.diff(current, previous, changes, length, length));
+            assertArrayEquals(expectedChanges, changes);
+            assertArrayEquals(expectedPrevious, previous);
+            assertEquals(PlaneOps.SCALAR.popcount(current, length), vector.popcount(current, length));
+        }
+    }
+
+    @Test
+    public void upscaleTest() {
+        int[][] resolutions = {{64, 32}, {128, 64}};
+        for (int[] resolution : resolutions) {
+            int length = resolution[0] / 64 * resolution[1];
+            long[] first = plane(length);
+            long[] second = plane(length);
+            for (int multiplier : new int[]{1, 2, 3, 5, 10}) {
+                int size = resolution[0] * multiplier * resolution[1] * multiplier;
+                int[] expected = new int[size];
+                int[] raster = new int[size];
+                PlaneOps.SCALAR.upscale(first, second, resolution[0], resolution[1], PALETTE, multiplier, expected);
+                vector.upscale(first, second, resolution[0], resolution[1], PALETTE, multiplier, raster);
+                assertArrayEquals(expected, raster);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package main.display;
+
+import main.memory.Memory;
+
+import java.util.List;
+
+/**
+ * Rough timing of DXYN with 15 row sprites, run by hand: it's not part of the test suite.
+ * "clip" clips instead of wrapping, "chars" draws the sprite from a char[] through DisplayModel.drawSprite instead of
+ * reading it from memory as DXYN does.
+ * In the 1-core sandbox it was written in, a sprite read from memory took 26 ns when first measured and 32 to 54 ns
+ * on later, noisier runs: short of the 20 ns aimed for either way. A sprite drawn from chars takes about as long
+ */
+class SpriteEngineBenchmark {
+
+    public static void main(String[] args) {
+        List<String> options = List.of(args);
+        boolean clip = options.contains("clip");
+        boolean chars = options.contains("chars");
+        DisplayModel displayModel = new DisplayModel();
+        Memory memory = new Memory();
+        for (int i = 0; i < 15; i++) memory.writeByte(0x300 + i, (char) (0x5A ^ i));
+        SpriteEngine engine = clip ? SpriteEngine.CLIP : SpriteEngine.WRAP;
+        // read from memory every time, as DXYN does
+        byte[] sprite = new byte[15];
+        char[] charSprite = new char[15];
+        for (int i = 0; i < charSprite.length; i++) charSprite[i] = (char) (0x5A ^ i);
+
+        int draws = 50_000_000;
+        for (int round = 0; round < 5; round++) {
+            boolean collision = false;
+            long start = System.nanoTime();
+            for (int i = 0; i < draws; i++) {
+                if (chars) {
+                    collision ^= displayModel.drawSprite(i & 63, (i >>> 6) & 31, charSprite, 1, clip);
+                } else {
+                    memory.readBlock(0x300, sprite, 0, sprite.length);
+                    collision ^= engine.draw(displayModel, sprite, 0, i & 63, (i >>> 6) & 31, 15, 1);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("round %d: %.2f ns per sprite (%b)%n", round, (double) elapsed / draws, collision);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package main.display;
+
+import main.memory.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpriteEngineTest {
+    private DisplayModel displayModel;
+    private Memory memory;
+
+    @BeforeEach
+    public void before() {
+        displayModel = new DisplayModel();
+        memory = new Memory();
+    }
+
+    private void writeSprite(int address, int... rows) {
+        for (int i = 0; i < rows.length; i++) {
+            memory.writeByte(address + i, (char) rows[i]);
+        }
+    }
+
+    /**
+     * Draws the sprite at the address the way DXYN does: read from memory into a buffer, then drawn from it
+     */
+    private boolean draw(SpriteEngine engine, int address, int x, int y, int rows, int bytesPerRow) {
+        byte[] sprite = new byte[rows * bytesPerRow * DisplayModel.PLANES];
+        memory.readBlock(address, sprite, 0, sprite.length);
+        return engine.draw(displayModel, sprite, 0, x, y, rows, bytesPerRow);
+    }
+
+    /**
+     * DisplayModel.drawSprite as it was before the sprite engine: x wraps pixel by pixel, rows stop at the bottom edge
+     */
+    private static void drawBaseline(int[] display, int x, int y, int[] sprite) {
+        for (int i = 0; i < sprite.length; i++) {
+            if (y + i >= 32) break;
+            for (int b = 0; b < 8; b++) {
+                display[(y + i) * 64 + (x + b) % 64] ^= (sprite[i] >>> (7 - b)) & 1;
+            }
+        }
+    }
+
+    @Test
+    public void legacyMatchesBaselineTest() {
+        SplittableRandom random = new SplittableRandom(5);
+        int[] expected = new int[64 * 32];
+        for (int draw = 0; draw < 2000; draw++) {
+            int x = random.nextInt(256);
+            int y = random.nextInt(256);
+            int[] sprite = new int[1 + random.nextInt(15)];
+            byte[] bytes = new byte[sprite.length];
+            for (int i = 0; i < sprite.length; i++) {
+                sprite[i] = random.nextInt(256);
+                bytes[i] = (byte) sprite[i];
+            }
+            drawBaseline(expected, x, y, sprite);
+            SpriteEngine.LEGACY.draw(displayModel, bytes, 0, x, y, sprite.length, 1);
+        }
+        for (int y = 0; y < 32; y++)
+            for (int x = 0; x < 64; x++)
+                assertEquals(expected[y * 64 + x], displayModel.getPixel(x, y), "pixel " + x + "," + y);
+    }
+
+    @Test
+    public void drawFromMemoryTest() {
+        // digit 0 of the font: f0 90 90 90 f0
+        boolean collision = draw(SpriteEngine.WRAP, 0, 10, 5, 5, 1);
+
+        assertFalse(collision);
+        assertEquals(1, displayModel.getPixel(10, 5));
+        assertEquals(1, displayModel.getPixel(13, 5));
+        assertEquals(0, displayModel.getPixel(11, 6));
+        assertEquals(1, displayModel.getPixel(13, 9));
+        assertEquals(0, displayModel.getPixel(14, 5));
+    }
+
+    @Test
+    public void collisionAccumulatedTest() {
+        writeSprite(0x300, 0x80, 0x00, 0x00);
+        draw(SpriteEngine.WRAP, 0x300, 0, 0, 1, 1);
+
+        // only the first row collides, the following ones must not reset the flag
+        boolean collision = draw(SpriteEngine.WRAP, 0x300, 0, 0, 3, 1);
+
+        assertTrue(collision);
+        assertEquals(0, displayModel.getPixel(0, 0));
+    }
+
+    @Test
+    public void erasingTwiceTest() {
+        draw(SpriteEngine.WRAP, 0, 3, 3, 5, 1);
+        assertTrue(draw(SpriteEngine.WRAP, 0, 3, 3, 5, 1));
+        for (int y = 0; y < 32; y++)
+            for (int x = 0; x < 64; x++)
+                assertEquals(0, displayModel.getPixel(x, y));
+    }
+
+    @Test
+    public void startCoordinateWrapTest() {
+        writeSprite(0x300, 0xff);
+        draw(SpriteEngine.CLIP, 0x300, 64 + 8, 32 + 2, 1, 1);
+
+        assertEquals(1, displayModel.getPixel(8, 2));
+        assertEquals(1, displayModel.getPixel(15, 2));
+    }
+
+    @Nested
+    public class EdgeTest {
+        @BeforeEach
+        public void before() {
+            writeSprite(0x300, 0xff, 0xff, 0xff, 0xff);
+        }
+
+        @Test
+        public void wrapTest() {
+            draw(SpriteEngine.WRAP, 0x300, 60, 30, 4, 1);
+
+            assertEquals(1, displayModel.getPixel(63, 31));
+            assertEquals(1, displayModel.getPixel(0, 31));
+            assertEquals(1, displayModel.getPixel(3, 1));
+            assertEquals(0, displayModel.getPixel(4, 1));
+            assertEquals(0, displayModel.getPixel(0, 2));
+        }
+
+        @Test
+        public void clipTest() {
+            draw(SpriteEngine.CLIP, 0x300, 60, 30, 4, 1);
+
+            assertEquals(1, displayModel.getPixel(63, 31));
+            assertEquals(0, displayModel.getPixel(0, 31));
+            assertEquals(0, displayModel.getPixel(60, 0));
+            assertEquals(0, displayModel.getPixel(0, 0));
+        }
+
+        @Test
+        public void hiresWrapTest() {
+            displayModel.setHighResolution(true);
+            draw(SpriteEngine.WRAP, 0x300, 124, 62, 4, 1);
+
+            assertEquals(1, displayModel.getPixel(127, 63));
+            assertEquals(1, displayModel.getPixel(3, 63));
+            assertEquals(1, displayModel.getPixel(3, 1));
+            assertEquals(0, displayModel.getPixel(64, 63));
+        }
+
+        @Test
+        public void hiresClipTest() {
+            displayModel.setHighResolution(true);
+            draw(SpriteEngine.CLIP, 0x300, 124, 62, 4, 1);
+
+            assertEquals(1, displayModel.getPixel(127, 63));
+            assertEquals(0, displayModel.getPixel(0, 63));
+            assertEquals(0, displayModel.getPixel(124, 0));
+        }
+    }
+
+    @Test
+    public void largeSpriteTest() {
+        displayModel.setHighResolution(true);
+        for (int i = 0; i < 32; i++) memory.writeByte(0x300 + i, (char) (i % 2 == 0 ? 0x80 : 0x01));
+        draw(SpriteEngine.WRAP, 0x300, 60, 0, 16, 2);
+
+        for (int y = 0; y < 16; y++) {
+            assertEquals(1, displayModel.getPixel(60, y));
+            assertEquals(1, displayModel.getPixel(75, y));
+            assertEquals(0, displayModel.getPixel(67, y));
+        }
+    }
+
+    @Test
+    public void bothPlanesTest() {
+        displayModel.setSelectedPlanes(0b11);
+        writeSprite(0x300, 0x80, 0x40);
+        draw(SpriteEngine.WRAP, 0x300, 0, 0, 1, 1);
+
+        assertEquals(0b01, displayModel.getPixel(0, 0));
+        assertEquals(0b10, displayModel.getPixel(1, 0));
+    }
+}
@@ -0,0 +1,45 @@
+package main.env;
+
+import main.cpu.Quirks;
+import main.rom.CachedRom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Rough timing of batched steps on startup.ch8, run by hand: it's not part of the test suite.
+ * Arguments: environments (1024 by default), then frames per step (4 by default)
+ */
+class BatchEnvironmentBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int environments = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        byte[] rom;
+        try (InputStream in = BatchEnvironmentBenchmark.class.getResourceAsStream("/roms/startup.ch8")) {
+            rom = in.readAllBytes();
+        }
+        BatchEnvironment batch = new BatchEnvironment(CachedRom.prepare(rom, Quirks.CHIP8), environments, frames,
+                Score.register(0), ForkJoinPool.commonPool());
+        batch.setObservations(new long[environments * batch.getObservationWords()]);
+        batch.reset(0);
+
+        SplittableRandom random = new SplittableRandom(1);
+        char[] actions = new char[environments];
+        float[] rewards = new float[environments];
+        boolean[] done = new boolean[environments];
+        int steps = 200;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int step = 0; step < steps; step++) {
+                for (int e = 0; e < environments; e++) actions[e] = (char) random.nextInt(16);
+                batch.step(actions, rewards, done);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("round %d: %.0f environment steps/s, %.0f frames/s%n", round,
+                    steps * environments / seconds, steps * environments * frames / seconds);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package main.env;
+
+import main.cpu.Quirks;
+import main.rom.CachedRom;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchEnvironmentTest {
+    // LD V1, 5; LD V3, 1; loop: LD DT, V3; wait: LD V4, DT; SE V4, 0; JP wait; SKNP V1; ADD V2, 1; JP loop
+    // V2 counts the frames key 5 was held down
+    private static final byte[] KEY_COUNTER = {
+            0x61, 0x05, 0x63, 0x01, (byte) 0xF3, 0x15, (byte) 0xF4, 0x07, 0x34, 0x00, 0x12, 0x06,
+            (byte) 0xE1, (byte) 0xA1, 0x72, 0x01, 0x12, 0x04
+    };
+    // loop: RND V0, 3F; RND V1, 1F; DRW V0, V1, 5; ADD V2, VF; LD V3, 1; LD DT, V3;
+    // wait: LD V4, DT; SE V4, 0; JP wait; JP loop
+    private static final byte[] RANDOM_SPRITES = {
+            (byte) 0xC0, 0x3F, (byte) 0xC1, 0x1F, (byte) 0xD0, 0x15, (byte) 0x82, (byte) 0xF4, 0x63, 0x01,
+            (byte) 0xF3, 0x15, (byte) 0xF4, 0x07, 0x34, 0x00, 0x12, 0x0C, 0x12, 0x00
+    };
+
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    public void before() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    public void after() {
+        pool.shutdown();
+    }
+
+    private BatchEnvironment batch(byte[] rom, int environments, int frames, Score score, ForkJoinPool pool) {
+        return new BatchEnvironment(CachedRom.prepare(rom, Quirks.CHIP8), environments, frames, score, pool);
+    }
+
+    @Test
+    public void rewardTest() {
+        BatchEnvironment batch = batch(KEY_COUNTER, 3, 4, Score.register(2), pool);
+        batch.setObservations(new long[3 * batch.getObservationWords()]);
+        batch.reset(0);
+        float[] rewards = new float[3];
+        boolean[] done = new boolean[3];
+        // the first frame ends waiting for the timer
+        batch.step(new char[]{5, 5, 0xFFFF}, rewards, done);
+        batch.step(new char[]{5, 4, 0xFFFF}, rewards, done);
+        assertArrayEquals(new float[]{4, 0, 0}, rewards);
+        assertArrayEquals(new boolean[3], done);
+    }
+
+    @Test
+    public void observationTest() {
+        // LD I, 0 (font 0); DRW V0, V0, 5; loop: JP loop
+        BatchEnvironment batch = batch(new byte[]{(byte) 0xA0, 0x00, (byte) 0xD0, 0x05, 0x12, 0x04}, 2, 1,
+                Score.register(0), pool);
+        assertEquals(128, batch.getObservationWords());
+        long[] observations = new long[2 * 128];
+        batch.setObservations(observations);
+        batch.reset(0);
+        assertTrue(Arrays.stream(observations).allMatch(word -> word == 0));
+
+        batch.step(new char[]{0xFFFF, 0xFFFF}, new float[2], new boolean[2]);
+        for (int e = 0; e < 2; e++) {
+            int at = e * 128;
+            // F0 then 90: every low resolution pixel is 2x2
+            assertEquals(0xFF00000000000000L, observations[at]);
+            assertEquals(0, observations[at + 1]);
+            assertEquals(0xFF00000000000000L, observations[at + 2]);
+            assertEquals(0xC3L << 56, observations[at + 4]);
+            assertEquals(0xC3L << 56, observations[at + 6]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8 + 2 * 128 * Long.BYTES);
+        buffer.position(8);
+        batch.setObservations(buffer);
+        batch.step(new char[]{0xFFFF, 0xFFFF}, new float[2], new boolean[2]);
+        for (int i = 0; i < observations.length; i++) assertEquals(observations[i], buffer.getLong(8 + i * Long.BYTES));
+    }
+
+    @Test
+    public void episodeEndTest() {
+        // LD I, 300; LD V0, [I]; ADD V0, 1; LD I, 300; LD [I], V0; EXIT
+        byte[] rom = {(byte) 0xA3, 0x00, (byte) 0xF0, 0x65, 0x70, 0x01, (byte) 0xA3, 0x00, (byte) 0xF0, 0x55, 0x00,
+                (byte) 0xFD};
+        BatchEnvironment batch = batch(rom, 2, 10, Score.register(0), pool);
+        batch.setObservations(new long[2 * batch.getObservationWords()]);
+        batch.reset(0);
+        float[] rewards = new float[2];
+        boolean[] done = new boolean[2];
+        for (int step = 0; step < 3; step++) {
+            batch.step(new char[]{0xFFFF, 0xFFFF}, rewards, done);
+            assertArrayEquals(new boolean[]{true, true}, done);
+            // the next episode starts from the ROM's memory, not from what the last one wrote
+            assertArrayEquals(new float[]{1, 1}, rewards);
+        }
+    }
+
+    @Test
+    public void bcdScoreTest() {
+        // LD V0, 123; LD I, 300; LD B, V0; loop: JP loop
+        byte[] rom = {0x60, 123, (byte) 0xA3, 0x00, (byte) 0xF0, 0x33, 0x12, 0x06};
+        BatchEnvironment batch = batch(rom, 1, 1, Score.bcd(0x300, 3), pool);
+        batch.setObservations(new long[batch.getObservationWords()]);
+        batch.reset(0);
+        float[] rewards = new float[1];
+        batch.step(new char[]{0xFFFF}, rewards, new boolean[1]);
+        assertEquals(123, rewards[0]);
+    }
+
+    @Test
+    public void sameAsSequentialTest() {
+        int environments = 37;
+        ForkJoinPool sequential = new ForkJoinPool(1);
+        try {
+            BatchEnvironment parallel = batch(RANDOM_SPRITES, environments, 3, Score.register(2), pool);
+            BatchEnvironment single = batch(RANDOM_SPRITES, environments, 3, Score.register(2), sequential);
+            long[] parallelObservations = new long[environments * parallel.getObservationWords()];
+            long[] singleObservations = new long[environments * single.getObservationWords()];
+            parallel.setObservations(parallelObservations);
+            single.setObservations(singleObservations);
+            parallel.reset(42);
+            single.reset(42);
+
+            SplittableRandom random = new SplittableRandom(7);
+            char[] actions = new char[environments];
+            float[] parallelRewards = new float[environments];
+            float[] singleRewards = new float[environments];
+            boolean[] done = new boolean[environments];
+            for (int step = 0; step < 20; step++) {
+                for (int e = 0; e < environments; e++) actions[e] = (char) random.nextInt(16);
+                parallel.step(actions, parallelRewards, done);
+                single.step(actions, singleRewards, done);
+                assertArrayEquals(singleRewards, parallelRewards);
+                assertArrayEquals(singleObservations, parallelObservations);
+            }
+            // environments are seeded differently
+            int words = parallel.getObservationWords();
+            assertFalse(Arrays.equals(parallelObservations, 0, words, parallelObservations, words, 2 * words));
+        } finally {
+            sequential.shutdown();
+        }
+    }
+
+    @Test
+    public void doubledTest() {
+        assertEquals(0xC000000000000003L, Environment.doubled(0x80000001));
+        assertEquals(0x3CL, Environment.doubled(0x6));
+        assertEquals(-1L, Environment.doubled(-1));
+    }
+
+    @Test
+    public void noObservationBufferTest() {
+        BatchEnvironment batch = batch(KEY_COUNTER, 1, 1, Score.register(2), pool);
+        assertThrows(IllegalStateException.class, () -> batch.reset(0));
+        assertThrows(IllegalArgumentException.class, () -> batch.setObservations(new long[10]));
+        assertThrows(IllegalArgumentException.class, () -> Score.register(16));
+    }
+}
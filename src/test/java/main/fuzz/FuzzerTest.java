@@ -0,0 +1,100 @@
+package main.fuzz;
+
+import main.cpu.Quirks;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FuzzerTest {
+    private Fuzzer fuzzer;
+
+    @BeforeEach
+    public void before() {
+        fuzzer = new Fuzzer(Quirks.LEGACY, 5_000, 10, 32);
+    }
+
+    private static byte[] rom(int... instructions) {
+        byte[] rom = new byte[instructions.length * 2];
+        for (int i = 0; i < instructions.length; i++)
+            RomGenerator.put(rom, i * 2, (char) instructions[i]);
+        return rom;
+    }
+
+    @Test
+    public void stackOverflowTest() {
+        // CALL 200, forever
+        Crash crash = fuzzer.execute(rom(0x2200), 1);
+
+        assertNotNull(crash);
+        assertEquals("StackFaultException executing CALL_ADDR", crash.getSignature());
+        assertEquals(16, crash.getInstructionCount());
+    }
+
+    @Test
+    public void stackUnderflowTest() {
+        Crash crash = fuzzer.execute(rom(0x00EE), 1);
+
+        assertNotNull(crash);
+        assertEquals("StackFaultException executing RET", crash.getSignature());
+    }
+
+    @Test
+    public void readPastMemoryTest() {
+        // JP FFF: the instruction there wraps around to the byte at 0x000
+        assertNull(fuzzer.execute(rom(0x1FFF), 1));
+    }
+
+    @Test
+    public void jumpPastMemoryTest() {
+        // LD V0, 10; JP V0, FF0: the frames run past 0xFFF as well
+        assertNull(fuzzer.execute(rom(0x6010, 0xBFF0), 1));
+    }
+
+    @Test
+    public void noCrashTest() {
+        // LD V0, 1; end: JP end
+        assertNull(fuzzer.execute(rom(0x6001, 0x1202), 1));
+    }
+
+    @Test
+    public void minimizeTest() {
+        // LD V0, 5; ADD V1, 1; LD I, 300; CALL 206 (itself); CLS; RET
+        Crash crash = fuzzer.execute(rom(0x6005, 0x7101, 0xA300, 0x2206, 0x00E0, 0x00EE), 1);
+        Crash minimized = fuzzer.minimize(crash);
+
+        assertEquals(crash.getSignature(), minimized.getSignature());
+        assertArrayEquals(rom(0x8000, 0x8000, 0x8000, 0x2206), minimized.getRom());
+    }
+
+    @Test
+    public void sameSeedSameRunTest() {
+        // RND V0, FF; SE V0, 7; JP 200; RET (underflows once RND gives 7)
+        byte[] rom = rom(0xC0FF, 0x3007, 0x1200, 0x00EE);
+        Crash first = fuzzer.execute(rom, 42);
+        Crash second = fuzzer.execute(rom, 42);
+
+        assertNotNull(first);
+        assertEquals(first.getInstructionCount(), second.getInstructionCount());
+    }
+
+    @Test
+    public void fuzzTest() throws InterruptedException {
+        FuzzReport report = fuzzer.fuzz(36, 400, 2);
+
+        assertEquals(400, report.getExecutions());
+        assertTrue(report.getInstructions() > 0);
+        assertTrue(report.getCoverage() > 0);
+        assertFalse(report.getCrashes().isEmpty());
+        Set<String> signatures = new HashSet<>();
+        for (Crash crash : report.getCrashes()) {
+            assertTrue(signatures.add(crash.getSignature()));
+            Crash replayed = fuzzer.execute(crash.getRom(), crash.getInputSeed());
+            assertNotNull(replayed);
+            assertEquals(crash.getSignature(), replayed.getSignature());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package main.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirtyPagesTest {
+    private Memory memory;
+    private DirtyPages pages;
+
+    @BeforeEach
+    public void before() {
+        memory = new Memory();
+        pages = new DirtyPages(memory);
+    }
+
+    @Test
+    public void writesMarkPagesTest() {
+        assertEquals(Memory.CHIP8_SIZE / DirtyPages.PAGE_SIZE, pages.getPageCount());
+        memory.writeByte(0x2FF, (char) 1);
+        // crosses from page 3 into page 4
+        memory.writeBlock(0x3FF, new byte[2], 0, 2);
+
+        for (int p = 0; p < pages.getPageCount(); p++) assertEquals(p >= 2 && p <= 4, pages.isDirty(p), "page " + p);
+        pages.clean(3);
+        assertFalse(pages.isDirty(3));
+    }
+
+    @Test
+    public void wrappingWriteTest() {
+        memory.writeBlock(0xFFF, new byte[2], 0, 2);
+
+        assertTrue(pages.isDirty(pages.getPageCount() - 1));
+        assertTrue(pages.isDirty(0));
+    }
+
+    @Test
+    public void restoreTest() {
+        memory.writeByte(0x300, (char) 1);
+        List<Integer> restored = new ArrayList<>();
+        pages.restore(p -> p == 5, p -> {
+            restored.add(p);
+            // putting the page back isn't a write that dirties it
+            memory.writeByte(p * DirtyPages.PAGE_SIZE, (char) 0);
+        });
+
+        assertEquals(List.of(3, 5), restored);
+        for (int p = 0; p < pages.getPageCount(); p++) assertFalse(pages.isDirty(p));
+    }
+}
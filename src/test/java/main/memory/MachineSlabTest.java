@@ -0,0 +1,113 @@
+package main.memory;
+
+import main.cpu.CPU;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MachineSlabTest {
+    // loop: LD I, 0; DRW V0, V0, 5; ADD V0, 1; CALL bcd; JP loop
+    // bcd: LD I, 300; LD B, V0; RET
+    private static final byte[] ROM = {
+            0x60, 0x00, (byte) 0xA0, 0x00, (byte) 0xD0, 0x05, 0x70, 0x01, 0x22, 0x10, 0x12, 0x02, 0, 0, 0, 0,
+            (byte) 0xA3, 0x00, (byte) 0xF0, 0x33, 0x00, (byte) 0xEE
+    };
+
+    private MachineSlab slab;
+
+    @BeforeEach
+    public void before() {
+        slab = new MachineSlab(2, Memory.CHIP8_SIZE);
+    }
+
+    private CPU machine(int index) {
+        return new CPU(new Stack(), slab.memory(index), new DisplayModel(), new Keyboard());
+    }
+
+    private void assertSameState(CPU expected, CPU actual, Memory expectedMemory, Memory actualMemory) {
+        assertArrayEquals(expected.getRegisters(), actual.getRegisters());
+        assertEquals(expected.getIRegister(), actual.getIRegister());
+        assertEquals(expected.getProgramCounter(), actual.getProgramCounter());
+        assertEquals(expected.getInstructionCount(), actual.getInstructionCount());
+        for (int a = 0; a < Memory.CHIP8_SIZE; a++) {
+            assertEquals(expectedMemory.readByte(a), actualMemory.readByte(a), "memory at " + a);
+        }
+        ByteBuffer expectedState = ByteBuffer.allocate(slab.getSlotSize());
+        ByteBuffer actualState = ByteBuffer.allocate(slab.getSlotSize());
+        expected.saveState(expectedState);
+        actual.saveState(actualState);
+        assertEquals(expectedState, actualState);
+    }
+
+    @Test
+    public void memoryIsSameInstanceTest() {
+        assertSame(slab.memory(1), slab.memory(1));
+        assertEquals(0xF0, slab.memory(1).readByte(Memory.FONT_ADDRESS));
+    }
+
+    @Test
+    public void slotsAreSeparateTest() {
+        slab.memory(0).writeByte(0x300, (char) 7);
+
+        assertEquals(7, slab.memory(0).readByte(0x300));
+        assertEquals(0, slab.memory(1).readByte(0x300));
+    }
+
+    @Test
+    public void copyTest() {
+        CPU first = machine(0);
+        slab.memory(0).loadGame(ROM);
+        for (int i = 0; i < 5; i++) first.runFrame(7);
+        first.saveState(slab.slot(0));
+
+        slab.copy(0, 1);
+        CPU second = machine(1);
+        second.loadState(slab.slot(1));
+
+        assertSameState(first, second, slab.memory(0), slab.memory(1));
+        for (int i = 0; i < 5; i++) {
+            first.runFrame(7);
+            second.runFrame(7);
+        }
+        assertSameState(first, second, slab.memory(0), slab.memory(1));
+    }
+
+    @Test
+    public void snapshotTest() {
+        CPU cpu = machine(0);
+        slab.memory(0).loadGame(ROM);
+        for (int i = 0; i < 3; i++) cpu.runFrame(7);
+        cpu.saveState(slab.slot(0));
+        ByteBuffer snapshot = ByteBuffer.allocate(slab.getSlotSize());
+        slab.snapshot(0, snapshot);
+        char programCounter = cpu.getProgramCounter();
+        long instructions = cpu.getInstructionCount();
+        char bcd = slab.memory(0).readByte(0x302);
+
+        for (int i = 0; i < 3; i++) cpu.runFrame(7);
+        snapshot.flip();
+        slab.restore(0, snapshot);
+        cpu.loadState(slab.slot(0));
+
+        assertFalse(snapshot.hasRemaining());
+        assertEquals(programCounter, cpu.getProgramCounter());
+        assertEquals(instructions, cpu.getInstructionCount());
+        assertEquals(bcd, slab.memory(0).readByte(0x302));
+    }
+
+    @Test
+    public void stackFitsSlotTest() {
+        assertTrue(MachineSlab.STACK + Stack.SAVED_SIZE <= MachineSlab.DISPLAY);
+    }
+
+    @Test
+    public void tooLargeTest() {
+        assertThrows(IllegalArgumentException.class, () -> new MachineSlab(100_000, Memory.XO_CHIP_SIZE));
+    }
+}
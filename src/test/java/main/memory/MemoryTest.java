@@ -0,0 +1,106 @@
+package main.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryTest {
+    private Memory memory;
+    private List<int[]> writes;
+
+    @BeforeEach
+    public void before() {
+        memory = new Memory();
+        writes = new ArrayList<>();
+    }
+
+    private void watch() {
+        memory.addWriteWatcher((address, length) -> writes.add(new int[]{address, length}));
+    }
+
+    @Test
+    public void readInstructionTest() {
+        memory.loadGame(new byte[]{0x12, 0x34});
+
+        assertEquals(0x1234, memory.readInstruction(Memory.ROM_ADDRESS));
+    }
+
+    @Test
+    public void readInstructionWrapsTest() {
+        memory.writeByte(0xFFF, (char) 0xAB);
+
+        // the second byte is the first one of the font
+        assertEquals(0xABF0, memory.readInstruction(0xFFF));
+        assertEquals(0xABF0, memory.readInstruction(0x1FFF));
+    }
+
+    @Test
+    public void writeByteMasksTest() {
+        memory.writeByte(0x1300, (char) 0x1FF);
+
+        assertEquals(0xFF, memory.readByte(0x300));
+        assertEquals(0xFF, memory.readByte(0x1300));
+    }
+
+    @Test
+    public void blockWrapsTest() {
+        memory.writeBlock(0xFFE, new byte[]{1, 2, 3, 4}, 0, 4);
+
+        byte[] bytes = new byte[4];
+        memory.readBlock(0xFFE, bytes, 0, 4);
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, bytes);
+        assertEquals(3, memory.readByte(0x000));
+        char[] chars = new char[5];
+        memory.readBlock(0xFFE, chars, 1, 4);
+        assertArrayEquals(new char[]{0, 1, 2, 3, 4}, chars);
+    }
+
+    @Test
+    public void watcherTest() {
+        watch();
+
+        memory.writeByte(0x300, (char) 1);
+        memory.writeBlock(0x400, new char[]{1, 2, 3}, 0, 3);
+
+        assertEquals(2, writes.size());
+        assertArrayEquals(new int[]{0x300, 1}, writes.get(0));
+        assertArrayEquals(new int[]{0x400, 3}, writes.get(1));
+    }
+
+    @Test
+    public void wrappingWriteIsReportedTwiceTest() {
+        watch();
+
+        memory.writeBlock(0xFFF, new byte[]{1, 2, 3}, 0, 3);
+
+        assertEquals(2, writes.size());
+        assertArrayEquals(new int[]{0xFFF, 1}, writes.get(0));
+        assertArrayEquals(new int[]{0x000, 2}, writes.get(1));
+    }
+
+    @Test
+    public void removeWatcherTest() {
+        WriteWatcher watcher = (address, length) -> writes.add(new int[]{address, length});
+        memory.addWriteWatcher(watcher);
+        memory.removeWriteWatcher(watcher);
+
+        memory.writeByte(0x300, (char) 1);
+
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    public void romTooLargeTest() {
+        assertThrows(IllegalArgumentException.class, () -> memory.loadGame(new byte[Memory.CHIP8_SIZE - 0x1FF]));
+        memory.loadGame(new byte[Memory.CHIP8_SIZE - 0x200]);
+    }
+
+    @Test
+    public void sizeNotPowerOfTwoTest() {
+        assertThrows(IllegalArgumentException.class, () -> new Memory(5000));
+    }
+}
@@ -0,0 +1,80 @@
+package main.pipeline;
+
+import main.cpu.CPU;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineTest {
+    private static CPU cpu(byte[] rom) {
+        Memory memory = new Memory();
+        memory.loadGame(rom);
+        return new CPU(new Stack(), memory, new DisplayModel(), new Keyboard());
+    }
+
+    @Test
+    public void stagesRunOnTicksTest() throws InterruptedException {
+        // ADD V0, 1; JP 200
+        CPU cpu = cpu(new byte[]{0x70, 0x01, 0x12, 0x00});
+        Pipeline pipeline = new Pipeline(cpu);
+        AtomicInteger rendered = new AtomicInteger();
+        pipeline.setRenderer(rendered::incrementAndGet);
+        pipeline.start();
+        Thread.sleep(300);
+        pipeline.stop();
+
+        long ticks = pipeline.getTicks();
+        assertTrue(ticks >= 5);
+        StageStats cpuStats = pipeline.getStats(Stage.CPU);
+        // every tick was run or skipped, at most the last one is missing
+        assertTrue(cpuStats.getRuns() + cpuStats.getSkippedTicks() >= ticks - 1);
+        assertTrue(cpuStats.getRuns() <= ticks);
+        assertEquals(cpuStats.getRuns() * cpu.getTimingModel().getCyclesPerFrame(), cpu.getCycleCount());
+        assertTrue(rendered.get() > 0);
+        assertEquals(rendered.get(), pipeline.getStats(Stage.RENDER).getRuns());
+        assertTrue(pipeline.getStats(Stage.AUDIO).getRuns() > 0);
+        assertEquals(ticks, pipeline.getStats(Stage.TIMER).getRuns());
+        String report = pipeline.report();
+        for (Stage stage : Stage.values()) assertTrue(report.contains(stage.getThreadName() + ": runs="), report);
+    }
+
+    @Test
+    public void threadFactoryTest() throws InterruptedException {
+        CPU cpu = cpu(new byte[]{0x12, 0x00});
+        Pipeline pipeline = new Pipeline(cpu);
+        AtomicInteger created = new AtomicInteger();
+        for (Stage stage : Stage.values()) {
+            pipeline.setThreadFactory(stage, runnable -> {
+                created.incrementAndGet();
+                Thread thread = new Thread(runnable, "test-" + stage.getThreadName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        pipeline.start();
+        pipeline.stop();
+
+        assertEquals(4, created.get());
+    }
+
+    @Test
+    public void exitStopsCpuStageTest() throws InterruptedException {
+        // EXIT
+        CPU cpu = cpu(new byte[]{0x00, (byte) 0xFD});
+        Pipeline pipeline = new Pipeline(cpu);
+        pipeline.start();
+        Thread.sleep(100);
+
+        assertTrue(cpu.isHalted());
+        long runs = pipeline.getStats(Stage.CPU).getRuns();
+        Thread.sleep(50);
+        assertEquals(runs, pipeline.getStats(Stage.CPU).getRuns());
+        pipeline.stop();
+    }
+}
@@ -0,0 +1,124 @@
+package main.rom;
+
+import main.cpu.CPU;
+import main.cpu.Quirks;
+import main.cpu.QuirksDatabase;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RomCacheTest {
+    // LD I, 211; LD V0, [I]; LD V3, 1; XOR V0, V3; LD I, 211; LD [I], V0; ADD V1, 3; JP 210
+    // 210: ADD V2, V1, turned into SUB V2, V1 and back every time; JP 200
+    private static final byte[] PATCHING = {(byte) 0xA2, 0x11, (byte) 0xF0, 0x65, 0x63, 0x01, (byte) 0x80, 0x33,
+            (byte) 0xA2, 0x11, (byte) 0xF0, 0x55, 0x71, 0x03, 0x12, 0x10, (byte) 0x82, 0x14, 0x12, 0x00};
+
+    @TempDir
+    Path directory;
+
+    private RomCache cache;
+
+    @BeforeEach
+    public void before() {
+        cache = new RomCache(2, Long.MAX_VALUE, new QuirksDatabase(), Quirks.LEGACY);
+    }
+
+    @Test
+    public void hitTest() {
+        CachedRom first = cache.get(PATCHING);
+        CachedRom second = cache.get(PATCHING.clone());
+
+        assertSame(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(QuirksDatabase.hash(PATCHING), first.getHash());
+        assertNotSame(first, cache.get(PATCHING, Quirks.CHIP8));
+    }
+
+    @Test
+    public void leastRecentlyUsedTest() {
+        CachedRom a = cache.get(new byte[]{0x12, 0x00});
+        cache.get(new byte[]{0x12, 0x02});
+        cache.get(new byte[]{0x12, 0x00});
+        cache.get(new byte[]{0x12, 0x04});
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertSame(a, cache.get(new byte[]{0x12, 0x00}));
+        cache.get(new byte[]{0x12, 0x02});
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void byteLimitTest() {
+        RomCache small = new RomCache(10, 1, new QuirksDatabase(), Quirks.LEGACY);
+        small.get(new byte[]{0x12, 0x00});
+        CachedRom last = small.get(new byte[]{0x12, 0x02});
+
+        assertEquals(1, small.size());
+        assertEquals(last.getFootprint(), small.getBytes());
+    }
+
+    @Test
+    public void preloadTest() throws IOException {
+        Files.write(directory.resolve("a.ch8"), new byte[]{0x12, 0x00});
+        Files.write(directory.resolve("b.ch8"), PATCHING);
+        assertEquals(2, cache.preload(directory));
+        assertEquals(2, cache.getMisses());
+
+        cache.load(directory.resolve("b.ch8"));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void evictedFilesAreForgottenTest() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            Path file = directory.resolve(i + ".ch8");
+            Files.write(file, new byte[]{0x12, (byte) (2 * i)});
+            cache.load(file);
+        }
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getFileCount());
+        // read again, its ROM was dropped
+        cache.load(directory.resolve("0.ch8"));
+        assertEquals(6, cache.getMisses());
+    }
+
+    @Test
+    public void warmCpuTest() {
+        CachedRom rom = cache.get(PATCHING);
+        CPU warm = rom.newCpu(new Stack(), new DisplayModel(), new Keyboard());
+        Memory memory = new Memory();
+        memory.loadGame(PATCHING);
+        CPU cold = new CPU(new Stack(), memory, new DisplayModel(), new Keyboard());
+        for (int frame = 0; frame < 50; frame++) {
+            assertTrue(warm.runFrame(37));
+            assertTrue(cold.runFrame(37));
+
+            assertEquals(cold.getInstructionCount(), warm.getInstructionCount());
+            assertEquals(cold.getProgramCounter(), warm.getProgramCounter());
+            assertArrayEquals(cold.getRegisters(), warm.getRegisters());
+        }
+    }
+
+    @Test
+    public void newMemoryTest() {
+        CachedRom rom = cache.get(PATCHING);
+        Memory memory = rom.newMemory();
+        memory.writeByte(0x200, (char) 0);
+
+        assertEquals(0xA2, rom.newMemory().readByte(0x200));
+        assertEquals(0xF0, memory.readByte(Memory.FONT_ADDRESS));
+    }
+}
@@ -0,0 +1,157 @@
+package main.search;
+
+import main.cpu.CPU;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BrancherTest {
+    // LD I, 300; LD V1, 5; LD V3, 2; loop: LD V0, [I]; SKNP V1; ADD V0, 1; SKNP V3; LD [I], V0; DRW V0, V0, 1; JP loop
+    // holding 5 counts in V0, which only lasts if 2 is then held to store it
+    private static final byte[] ROM = {(byte) 0xA3, 0x00, 0x61, 0x05, 0x63, 0x02, (byte) 0xF0, 0x65,
+            (byte) 0xE1, (byte) 0xA1, 0x70, 0x01, (byte) 0xE3, (byte) 0xA1, (byte) 0xF0, 0x55,
+            (byte) 0xD0, 0x01, 0x12, 0x06};
+
+    private ForkJoinPool pool;
+    private Snapshot root;
+
+    @BeforeEach
+    public void before() {
+        pool = new ForkJoinPool(2);
+        Memory memory = new Memory();
+        memory.loadGame(ROM);
+        CPU cpu = new CPU(new Stack(), memory, new DisplayModel(), new Keyboard());
+        assertTrue(cpu.runFrame());
+        root = Snapshot.of(cpu, memory);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @return the branch run the plain way, on a new machine loaded from the snapshot
+     */
+    private static Branch reference(Snapshot from, char[] keys, int frames, long seed) {
+        Memory memory = new Memory(from.getMemorySize());
+        for (int p = 0; p < from.pages.length; p++)
+            memory.writeBlock(p * Snapshot.PAGE_SIZE, from.pages[p], 0, Snapshot.PAGE_SIZE);
+        Keyboard keyboard = new Keyboard();
+        DisplayModel display = new DisplayModel();
+        CPU cpu = new CPU(new Stack(), memory, display, keyboard, from.quirks);
+        cpu.setTimingModel(from.timing);
+        cpu.loadState(from.state);
+        cpu.setRandomSeed(seed);
+        for (int frame = 0; frame < frames; frame++) {
+            char key = frame < keys.length ? keys[frame] : 0xFFFF;
+            if (key == 0xFFFF) keyboard.release(keyboard.getCurrentKeyPressed());
+            else keyboard.press(key);
+            cpu.runFrame();
+        }
+        long[] words = new long[display.getWordsPerRow() * display.getHeight() * DisplayModel.PLANES];
+        display.copyPlanes(words);
+        long hash = 0xcbf29ce484222325L;
+        for (long word : words) hash = (hash ^ word) * 0x100000001b3L;
+        return new Branch(hash, cpu.getRegisters()[0], false, 0, Snapshot.of(cpu, memory));
+    }
+
+    private static char[][] inputs() {
+        char[][] inputs = new char[16][];
+        for (int b = 0; b < inputs.length; b++) {
+            inputs[b] = new char[b];
+            for (int f = 0; f < b; f++) inputs[b][f] = (char) (f % 2 == 0 ? 5 : 2);
+        }
+        return inputs;
+    }
+
+    @Test
+    public void sameAsSequentialTest() {
+        Brancher brancher = new Brancher(pool, 0);
+        char[][] inputs = inputs();
+        Branch[] branches = brancher.fork(root, inputs, 20, 7);
+
+        assertEquals(inputs.length, branches.length);
+        for (int b = 0; b < inputs.length; b++) {
+            Branch expected = reference(root, inputs[b], 20, 7);
+            assertEquals(expected.getFrameHash(), branches[b].getFrameHash(), "branch " + b);
+            assertEquals(expected.getScore(), branches[b].getScore(), "branch " + b);
+            assertFalse(branches[b].isStopped());
+            assertTrue(branches[b].getInstructions() > 0);
+        }
+        // storing what was counted
+        assertTrue(branches[15].getScore() > branches[1].getScore());
+    }
+
+    @Test
+    public void copyOnWriteTest() {
+        Brancher brancher = new Brancher(pool, 0);
+        brancher.setKeepSnapshots(true);
+        // key 5 only counts, key 2 stores the count at 300
+        Branch counting = brancher.fork(root, new char[][]{{5, 5, 5}}, 3, 0)[0];
+        Branch storing = brancher.fork(root, new char[][]{{5, 2, 5}}, 3, 0)[0];
+
+        assertTrue(counting.getSnapshot().sharesPage(root, 0x300));
+        assertFalse(storing.getSnapshot().sharesPage(root, 0x300));
+        assertTrue(storing.getSnapshot().sharesPage(root, 0x200));
+    }
+
+    @Test
+    public void treeSearchTest() {
+        // a single worker, so the same machine goes back and forth between snapshots
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            Brancher brancher = new Brancher(single, 0);
+            brancher.setKeepSnapshots(true);
+            char[][] inputs = inputs();
+            Branch[] level1 = brancher.fork(root, inputs, 5, 3);
+            for (int b = 0; b < inputs.length; b += 5) {
+                Snapshot from = level1[b].getSnapshot();
+                Branch[] level2 = brancher.fork(from, inputs, 5, 3);
+                for (int c = 0; c < inputs.length; c += 3) {
+                    Branch expected = reference(reference(root, inputs[b], 5, 3).getSnapshot(), inputs[c], 5, 3);
+                    assertEquals(expected.getFrameHash(), level2[c].getFrameHash());
+                    assertEquals(expected.getScore(), level2[c].getScore());
+                }
+            }
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void grownStackTest() {
+        // loop: ADD V0, 1; CALL loop
+        Memory memory = new Memory();
+        memory.loadGame(new byte[]{0x70, 0x01, 0x22, 0x00});
+        CPU cpu = new CPU(new Stack(2, Stack.OverflowPolicy.GROW), memory, new DisplayModel(), new Keyboard());
+        cpu.runFrame(40);
+        assertEquals(32, cpu.getStackDepth());
+        Snapshot grown = Snapshot.of(cpu, memory);
+
+        Brancher brancher = new Brancher(pool, 0);
+        brancher.setKeepSnapshots(true);
+        Branch branch = brancher.fork(grown, new char[][]{{}}, 1, 0)[0];
+        cpu.runFrame();
+        assertEquals(cpu.getRegisters()[0], branch.getScore());
+        assertFalse(branch.isStopped());
+
+        // the CALL faults once the stack can't grow anymore
+        Branch deepest = brancher.fork(grown, new char[][]{{}}, 100, 0)[0];
+        assertTrue(deepest.isStopped());
+        assertEquals(Stack.MAX_DEPTH, deepest.getSnapshot().stackDepth);
+    }
+
+    @Test
+    public void invalidScoreRegisterTest() {
+        assertThrows(IllegalArgumentException.class, () -> new Brancher(pool, 16));
+    }
+}
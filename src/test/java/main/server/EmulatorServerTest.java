@@ -0,0 +1,126 @@
+package main.server;
+
+import main.cpu.Quirks;
+import main.cpu.TimingModel;
+import main.display.FrameEncoder;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmulatorServerTest {
+    // LD V1, K; LD F, V1; DRW V0, V0, 5; end: JP end
+    private static final byte[] ROM = {(byte) 0xF1, 0x0A, (byte) 0xF1, 0x29, (byte) 0xD0, 0x05, 0x12, 0x06};
+
+    private EmulatorServer server;
+    private InetSocketAddress address;
+
+    @BeforeEach
+    public void before() throws IOException {
+        server = new EmulatorServer(ROM, Quirks.LEGACY, TimingModel.FIXED, 2);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void firstFrameIsFullTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (EmulatorClient client = new EmulatorClient(address)) {
+                client.readFrame();
+
+                assertEquals(64, client.getWidth());
+                assertEquals(32, client.getHeight());
+                assertTrue(client.isLastKeyframe());
+                assertEquals(0, client.getPixel(2, 0));
+            }
+        });
+    }
+
+    @Test
+    public void keyInputAndDeltaTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (EmulatorClient client = new EmulatorClient(address)) {
+                client.readFrame();
+                client.pressKey(0x1);
+                client.readFrame();
+
+                // the digit 1 is 5 rows tall, and only those rows are sent
+                assertFalse(client.isLastKeyframe());
+                assertTrue(client.getLastMessageSize() < 64);
+                assertEquals(1, client.getPixel(2, 0));
+                assertEquals(1, client.getPixel(1, 1));
+                assertEquals(0, client.getPixel(0, 0));
+            }
+        });
+    }
+
+    @Test
+    public void manySessionsTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            List<EmulatorClient> clients = new ArrayList<>();
+            try {
+                for (int i = 0; i < 200; i++)
+                    clients.add(new EmulatorClient(address));
+                for (EmulatorClient client : clients)
+                    client.readFrame();
+                assertEquals(200, server.getSessionCount());
+            } finally {
+                for (EmulatorClient client : clients)
+                    client.close();
+            }
+        });
+    }
+
+    @Nested
+    public class SessionTest {
+        private Session session;
+        private ByteBuffer out;
+
+        @BeforeEach
+        public void before() {
+            session = new Session(1, ROM, Quirks.LEGACY, TimingModel.FIXED);
+            out = ByteBuffer.allocate(Protocol.MAX_MESSAGE_SIZE);
+        }
+
+        @Test
+        public void nothingNewTest() {
+            session.tick();
+            assertTrue(session.writeFrame(out));
+            out.clear();
+
+            session.tick();
+            assertFalse(session.writeFrame(out));
+            assertEquals(0, out.position());
+        }
+
+        @Test
+        public void messageLengthTest() {
+            session.tick();
+            session.writeFrame(out);
+
+            assertEquals(Protocol.FRAME, out.get(0));
+            assertEquals(out.position() - Protocol.MESSAGE_HEADER_SIZE, out.getInt(1));
+            assertEquals(FrameEncoder.KEYFRAME, out.get(Protocol.MESSAGE_HEADER_SIZE + 4));
+        }
+
+        @Test
+        public void invalidKeyIsIgnoredTest() {
+            session.handleKey(Protocol.KEY_DOWN, (byte) 0x10);
+            session.tick();
+
+            assertEquals(0x200, session.getCpu().getProgramCounter());
+        }
+    }
+}
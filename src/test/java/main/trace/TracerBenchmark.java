@@ -0,0 +1,55 @@
+package main.trace;
+
+import main.cpu.CPU;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+
+/**
+ * Rough cost of tracing, run by hand: it's not part of the test suite. Compares the same frames run as blocks and one
+ * instruction at a time, each without and with a tracer, on two loops
+ */
+class TracerBenchmark {
+    // loop: ADD V0, 1; ADD V1, V0; SE V1, 0; CALL bcd; JP loop
+    // bcd: LD I, 300; LD B, V0; LD V2, [I]; DRW V0, V1, 3; RET
+    // branching, calling and drawing: blocks of 1 or 2 instructions
+    private static final byte[] CALLS = {
+            0x70, 0x01, (byte) 0x81, 0x04, 0x31, 0x00, 0x22, 0x10, 0x12, 0x00, 0, 0, 0, 0, 0, 0,
+            (byte) 0xA3, 0x00, (byte) 0xF0, 0x33, (byte) 0xF2, 0x65, (byte) 0xD0, 0x13, 0x00, (byte) 0xEE
+    };
+    // loop: LD V0, V1; ADD V0, 5; AND V0, V2; ADD V1, 1; SHR V3; XOR V4, V0; ADD I, V0; SNE V1, 40; LD V1, 0; JP loop
+    // updating game state: blocks of 5 instructions on average
+    private static final byte[] ALU = {
+            (byte) 0x80, 0x10, 0x70, 0x05, (byte) 0x80, 0x22, 0x71, 0x01, (byte) 0x83, 0x06, (byte) 0x84, 0x03,
+            (byte) 0xF0, 0x1E, 0x41, 0x40, 0x61, 0x00, 0x12, 0x00
+    };
+
+    public static void main(String[] args) {
+        int frames = 50_000;
+        for (byte[] rom : new byte[][]{CALLS, ALU}) {
+            // the best of every round, the machine being shared with whatever else runs
+            double[] best = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+            for (int round = 0; round < 10; round++) {
+                for (int run = 0; run < best.length; run++)
+                    best[run] = Math.min(best[run], run(rom, frames, run < 2, run % 2 == 1));
+            }
+            System.out.println(rom == CALLS ? "calls and draws" : "arithmetic");
+            System.out.printf("  blocks: %.1f ns per instruction, %.1f traced (+%.0f%%)%n",
+                    best[0], best[1], (best[1] / best[0] - 1) * 100);
+            System.out.printf("  interpreter: %.1f ns per instruction, %.1f traced (+%.0f%%)%n",
+                    best[2], best[3], (best[3] / best[2] - 1) * 100);
+        }
+    }
+
+    private static double run(byte[] rom, int frames, boolean blocks, boolean traced) {
+        Memory memory = new Memory();
+        memory.loadGame(rom);
+        CPU cpu = new CPU(new Stack(), memory, new DisplayModel(), new Keyboard());
+        cpu.setBlocksEnabled(blocks);
+        if (traced) cpu.setTracer(new Tracer(1 << 20));
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) cpu.runFrame(1000);
+        return (double) (System.nanoTime() - start) / cpu.getInstructionCount();
+    }
+}
@@ -0,0 +1,213 @@
+package main.trace;
+
+import main.cpu.CPU;
+import main.cpu.Stack;
+import main.display.DisplayModel;
+import main.keyboard.Keyboard;
+import main.memory.Memory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TracerTest {
+    // LD V0, 0; loop: ADD V0, 1; CALL bcd; JP loop
+    // bcd: LD I, 300; LD B, V0; RET
+    private static final byte[] ROM = {
+            0x60, 0x00, 0x70, 0x01, 0x22, 0x10, 0x12, 0x02, 0, 0, 0, 0, 0, 0, 0, 0,
+            (byte) 0xA3, 0x00, (byte) 0xF0, 0x33, 0x00, (byte) 0xEE
+    };
+
+    @TempDir
+    Path directory;
+
+    private static CPU cpu(byte[] rom) {
+        Memory memory = new Memory();
+        memory.loadGame(rom);
+        return new CPU(new Stack(), memory, new DisplayModel(), new Keyboard());
+    }
+
+    private TraceReader dump(Tracer tracer) throws IOException {
+        Path path = directory.resolve("trace.bin");
+        tracer.dump(path);
+        return TraceReader.open(path);
+    }
+
+    @Test
+    public void recordsMatchExecutionTest() throws IOException {
+        CPU traced = cpu(ROM);
+        traced.setBlocksEnabled(false);
+        Tracer tracer = new Tracer(0);
+        traced.setTracer(tracer);
+        traced.runFrame(100);
+        assertEquals(100, tracer.getInstructionCount());
+
+        CPU replayed = cpu(ROM);
+        TraceReader reader = dump(tracer);
+        int records = 0;
+        while (reader.next()) {
+            assertFalse(reader.isSkipped());
+            assertEquals(replayed.getProgramCounter(), reader.getProgramCounter());
+            replayed.step();
+            records++;
+            assertEquals(records, reader.getInstructionCount());
+            assertEquals(replayed.getIRegister(), reader.getIRegister());
+            for (int r = 0; r < 16; r++) assertEquals(replayed.getRegisters()[r], reader.getRegister(r));
+        }
+        assertEquals(100, records);
+    }
+
+    @Test
+    public void blocksMatchExecutionTest() throws IOException {
+        CPU traced = cpu(ROM);
+        Tracer tracer = new Tracer(0);
+        traced.setTracer(tracer);
+        traced.runFrame(100);
+        assertEquals(100, tracer.getInstructionCount());
+
+        CPU replayed = cpu(ROM);
+        TraceReader reader = dump(tracer);
+        int blocks = 0;
+        boolean state = false;
+        while (reader.next()) {
+            // the frame ending within a block, the rest of it is executed an instruction at a time
+            if (reader.isBlock()) blocks++;
+            int length = reader.isBlock() ? reader.getBlockLength() : reader.isState() ? 0 : 1;
+            for (int i = 0; i < length; i++) {
+                int pc = reader.getProgramCounter() + 2 * i;
+                assertEquals(replayed.getProgramCounter(), pc);
+                char instruction = reader.isBlock() ? reader.getBlockInstruction(i) : reader.getInstruction();
+                assertEquals((ROM[pc - 0x200] & 0xFF) << 8 | (ROM[pc - 0x1FF] & 0xFF), instruction);
+                replayed.step();
+            }
+            assertEquals(replayed.getInstructionCount(), reader.getInstructionCount());
+            assertEquals(replayed.getIRegister(), reader.getIRegister());
+            // blocks leave the V registers out, until the CPU leaves the block engine
+            if (reader.isBlock()) continue;
+            state |= reader.isState();
+            for (int r = 0; r < 16; r++) assertEquals(replayed.getRegisters()[r], reader.getRegister(r));
+        }
+        assertTrue(state);
+        assertEquals(100, replayed.getInstructionCount());
+        // ADD V0, 1; CALL / LD I, 300; LD B, V0 / RET / JP: 4 records for 6 instructions
+        assertTrue(blocks > 50 && blocks < 80, "blocks " + blocks);
+    }
+
+    @Test
+    public void longBlockTest() throws IOException {
+        // 100 times ADD V0, 1, then JP back: a block too long for a single entry
+        byte[] rom = new byte[202];
+        for (int i = 0; i < 100; i++) {
+            rom[2 * i] = 0x70;
+            rom[2 * i + 1] = 0x01;
+        }
+        rom[200] = 0x12;
+        CPU cpu = cpu(rom);
+        Tracer tracer = new Tracer(0);
+        cpu.setTracer(tracer);
+        cpu.runFrame(500);
+
+        TraceReader reader = dump(tracer);
+        long count = 0;
+        while (reader.next()) {
+            assertTrue(reader.getBlockLength() <= Tracer.MAX_BLOCK_LENGTH);
+            count += reader.isBlock() ? reader.getBlockLength() : reader.isState() ? 0 : 1;
+            assertEquals(count, reader.getInstructionCount());
+        }
+        assertEquals(500, count);
+        assertEquals(cpu.getRegisters()[0], reader.getRegister(0));
+    }
+
+    @Test
+    public void recordsOnlyChangesTest() throws IOException {
+        CPU cpu = cpu(ROM);
+        cpu.setBlocksEnabled(false);
+        Tracer tracer = new Tracer(0);
+        cpu.setTracer(tracer);
+        cpu.runFrame(5);
+
+        TraceReader reader = dump(tracer);
+        // LD V0, 0 doesn't change anything
+        assertTrue(reader.next());
+        assertEquals(0x6000, reader.getInstruction());
+        assertEquals(0, reader.getChangedRegisters());
+        assertTrue(reader.next());
+        assertEquals(0x7001, reader.getInstruction());
+        assertEquals(1, reader.getChangedRegisters());
+        assertTrue(reader.next());
+        assertEquals(0x2210, reader.getInstruction());
+        assertTrue(reader.next());
+        assertEquals(0x210, reader.getProgramCounter());
+        assertTrue(reader.isIChanged());
+        assertEquals(0x300, reader.getIRegister());
+        assertTrue(reader.next());
+        assertEquals(0xF033, reader.getInstruction());
+        assertFalse(reader.isIChanged());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void registerRangeLoadTest() throws IOException {
+        // LD I, 206; LD V3, [I]; data 01 02 03 04
+        CPU cpu = cpu(new byte[]{(byte) 0xA2, 0x06, (byte) 0xF3, 0x65, 0x00, 0x00, 1, 2, 3, 4});
+        Tracer tracer = new Tracer(0);
+        cpu.setTracer(tracer);
+        cpu.runFrame(2);
+
+        TraceReader reader = dump(tracer);
+        reader.next();
+        reader.next();
+        assertEquals(0b1111, reader.getChangedRegisters());
+        for (int r = 0; r < 4; r++) assertEquals(r + 1, reader.getRegister(r));
+    }
+
+    @Test
+    public void skippedIdleLoopTest() throws IOException {
+        // JP to itself
+        CPU cpu = cpu(new byte[]{0x12, 0x00});
+        Tracer tracer = new Tracer(0);
+        cpu.setTracer(tracer);
+        cpu.runFrame();
+
+        TraceReader reader = dump(tracer);
+        long last = 0;
+        boolean skipped = false;
+        while (reader.next()) {
+            skipped |= reader.isSkipped();
+            last = reader.getInstructionCount();
+        }
+        assertTrue(skipped);
+        assertEquals(cpu.getInstructionCount(), last);
+        assertEquals(cpu.getInstructionCount(), tracer.getInstructionCount());
+    }
+
+    @Test
+    public void ringKeepsLastInstructionsTest() throws IOException {
+        CPU cpu = cpu(ROM);
+        // two blocks of 8K entries at least
+        Tracer tracer = new Tracer(0);
+        cpu.setTracer(tracer);
+        for (int frame = 0; frame < 500; frame++) cpu.runFrame(100);
+
+        TraceReader reader = dump(tracer);
+        assertTrue(reader.next());
+        long first = reader.getInstructionCount();
+        assertTrue(first > 1);
+        long count = first;
+        while (reader.next()) {
+            count += reader.isBlock() ? reader.getBlockLength() : reader.isState() ? 0 : 1;
+            assertEquals(count, reader.getInstructionCount());
+        }
+        assertEquals(cpu.getInstructionCount(), count);
+        assertEquals(cpu.getRegisters()[0], reader.getRegister(0));
+    }
+
+    @Test
+    public void notATraceTest() {
+        assertThrows(IllegalArgumentException.class, () -> new TraceReader(ByteBuffer.allocate(16)));
+    }
+}